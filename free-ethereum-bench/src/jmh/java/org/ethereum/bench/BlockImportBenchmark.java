@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.ImportResult;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlockchainImpl.tryToConnect of a synthetic chain of value transfers into a fresh StandaloneBlockchain
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BlockImportBenchmark {
+
+    private static final int BLOCKS = 20;
+    private static final int TXS_PER_BLOCK = 20;
+
+    private final List<Block> chain = new ArrayList<>();
+    private StandaloneBlockchain importer;
+
+    @Setup(Level.Trial)
+    public void generateChain() {
+        final Random random = new Random(42);
+        final StandaloneBlockchain generator = new StandaloneBlockchain();
+        for (int i = 0; i < BLOCKS; i++) {
+            for (int j = 0; j < TXS_PER_BLOCK; j++) {
+                final byte[] receiver = new byte[20];
+                random.nextBytes(receiver);
+                generator.sendEther(receiver, BigInteger.valueOf(1 + random.nextInt(1000)));
+            }
+            chain.add(generator.createBlock());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createImporter() {
+        importer = new StandaloneBlockchain();
+        importer.getBlockchain();
+    }
+
+    @Benchmark
+    public Block tryToConnect() {
+        for (final Block block : chain) {
+            final ImportResult result = importer.getBlockchain().tryToConnect(block);
+            if (result != ImportResult.IMPORTED_BEST) {
+                throw new IllegalStateException("Unexpected import result " + result + " for block " + block.getShortDescr());
+            }
+        }
+        return importer.getBlockchain().getBestBlock();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.datasource.ReadCache;
+import org.ethereum.datasource.WriteCache;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the caches layered over every data source
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CacheBenchmark {
+
+    private static final int KEYS = 1 << 14;
+
+    private byte[][] keys;
+    private byte[] value;
+    private WriteCache.BytesKey<byte[]> writeCache;
+    private ReadCache.BytesKey<byte[]> readCache;
+    private int index;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        keys = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new byte[32];
+            random.nextBytes(keys[i]);
+        }
+        value = new byte[64];
+        random.nextBytes(value);
+
+        final HashMapDB<byte[]> db = new HashMapDB<>();
+        for (final byte[] key : keys) {
+            db.put(key, value);
+        }
+        writeCache = new WriteCache.BytesKey<>(new HashMapDB<>(), WriteCache.CacheType.SIMPLE);
+        readCache = new ReadCache.BytesKey<>(db);
+    }
+
+    private byte[] nextKey() {
+        return keys[index++ & (KEYS - 1)];
+    }
+
+    @Benchmark
+    public void writeCachePut() {
+        writeCache.put(nextKey(), value);
+    }
+
+    @Benchmark
+    public byte[] writeCacheGet() {
+        return writeCache.get(nextKey());
+    }
+
+    @Benchmark
+    public byte[] readCacheGet() {
+        return readCache.get(nextKey());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SignatureException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keccak-256 hashing and secp256k1 public key recovery, paid for every trie node and every transaction
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CryptoBenchmark {
+
+    private byte[] word;
+    private byte[] kilobyte;
+    private final byte[] hashOut = new byte[32];
+    private byte[] messageHash;
+    private ECKey.ECDSASignature signature;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        word = new byte[32];
+        random.nextBytes(word);
+        kilobyte = new byte[1024];
+        random.nextBytes(kilobyte);
+
+        messageHash = HashUtil.INSTANCE.sha3(kilobyte);
+        signature = new ECKey().sign(messageHash);
+    }
+
+    @Benchmark
+    public byte[] sha3Word() {
+        return HashUtil.INSTANCE.sha3(word);
+    }
+
+    @Benchmark
+    public byte[] sha3WordIntoBuffer() {
+        HashUtil.INSTANCE.sha3(word, 0, word.length, hashOut, 0);
+        return hashOut;
+    }
+
+    @Benchmark
+    public byte[] sha3Kilobyte() {
+        return HashUtil.INSTANCE.sha3(kilobyte);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] recoverAddress() throws SignatureException {
+        return ECKey.signatureToAddress(messageHash, signature);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.vm.DataWord;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 256-bit word arithmetic as used by the arithmetic opcodes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DataWordBenchmark {
+
+    private DataWord a;
+    private DataWord b;
+    private DataWord m;
+    private DataWord half;
+    private DataWord small;
+
+    private static DataWord randomWord(final Random random) {
+        final byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return new DataWord(bytes);
+    }
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        a = randomWord(random);
+        b = randomWord(random);
+        m = randomWord(random);
+        final byte[] halfBytes = new byte[16];
+        random.nextBytes(halfBytes);
+        half = new DataWord(halfBytes);
+        small = new DataWord(0x1_0000_0000L + random.nextInt(Integer.MAX_VALUE));
+    }
+
+    @Benchmark
+    public DataWord add() {
+        final DataWord ret = a.clone();
+        ret.add(b);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord mul() {
+        final DataWord ret = a.clone();
+        ret.mul(b);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord div() {
+        final DataWord ret = a.clone();
+        ret.div(half);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord divSmall() {
+        final DataWord ret = a.clone();
+        ret.div(small);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord sDiv() {
+        final DataWord ret = a.clone();
+        ret.sDiv(b);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord mod() {
+        final DataWord ret = a.clone();
+        ret.mod(small);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord addmod() {
+        final DataWord ret = a.clone();
+        ret.addmod(b, m);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord mulmod() {
+        final DataWord ret = a.clone();
+        ret.mulmod(b, m);
+        return ret;
+    }
+
+    @Benchmark
+    public DataWord exp() {
+        final DataWord ret = a.clone();
+        ret.exp(small);
+        return ret;
+    }
+
+    @Benchmark
+    public int compare() {
+        return a.compareTo(b);
+    }
+
+    @Benchmark
+    public byte[] getData() {
+        return a.clone().getData();
+    }
+}
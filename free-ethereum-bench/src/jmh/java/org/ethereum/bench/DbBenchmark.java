@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.bench;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.ethereum.util.FileUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LevelDB vs RocksDB on the state workload: point reads of random 32 byte
+ * node hashes, a part of them missing, and batched writes of new nodes.
+ * Both are opened with the options of the 'state' database
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DbBenchmark {
+
+    private static final int KEYS = 1 << 18;
+    private static final int BATCH = 1000;
+
+    @Param({"leveldb", "rocksdb"})
+    private String db;
+
+    private String dir;
+    private DbSource<byte[]> source;
+    private byte[][] keys;
+    private Random random;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("db-bench").toString();
+        final SystemProperties config = new SystemProperties();
+        config.setDataBaseDir(dir);
+        final DbSource<byte[]> ret;
+        if ("rocksdb".equals(db)) {
+            ret = new RocksDbDataSource(config);
+        } else {
+            ret = new LevelDbDataSource(config).withSettings(config.dbSettings("state"));
+        }
+        ret.setName("state");
+        ret.init();
+        source = ret;
+
+        random = new Random(42);
+        keys = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i += BATCH) {
+            final Map<byte[], byte[]> batch = new HashMap<>();
+            for (int j = i; j < Math.min(KEYS, i + BATCH); j++) {
+                keys[j] = randomBytes(32);
+                // trie nodes are mostly short leaves and up to 532 byte branches
+                batch.put(keys[j], randomBytes(70 + random.nextInt(460)));
+            }
+            source.updateBatch(batch);
+        }
+    }
+
+    private byte[] randomBytes(final int size) {
+        final byte[] ret = new byte[size];
+        random.nextBytes(ret);
+        return ret;
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.close();
+        FileUtil.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return source.get(keys[random.nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    public byte[] getMissing() {
+        return source.get(randomBytes(32));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void updateBatch() {
+        final Map<byte[], byte[]> batch = new HashMap<>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.put(randomBytes(32), randomBytes(70 + random.nextInt(460)));
+        }
+        source.updateBatch(batch);
+    }
+}
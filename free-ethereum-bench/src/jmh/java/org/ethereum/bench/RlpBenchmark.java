@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RLP encoding and decoding of a list shaped like a block body: nested lists of short and 32 byte items
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RlpBenchmark {
+
+    private byte[][] items;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        items = new byte[200][];
+        for (int i = 0; i < items.length; i++) {
+            final byte[][] fields = new byte[9][];
+            for (int j = 0; j < fields.length; j++) {
+                fields[j] = new byte[j % 3 == 0 ? 32 : 1 + random.nextInt(8)];
+                random.nextBytes(fields[j]);
+                fields[j] = RLP.encodeElement(fields[j]);
+            }
+            items[i] = RLP.encodeList(fields);
+        }
+        encoded = RLP.encodeList(items);
+    }
+
+    @Benchmark
+    public byte[] encodeList() {
+        return RLP.encodeList(items);
+    }
+
+    @Benchmark
+    public RLPList decode2() {
+        return RLP.decode2(encoded);
+    }
+}
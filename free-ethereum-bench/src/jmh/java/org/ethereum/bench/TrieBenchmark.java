@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.trie.TrieImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TrieImpl updates, lookups and root hash calculation over random 32 byte keys
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrieBenchmark {
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private byte[][] keys;
+    private byte[][] values;
+    private TrieImpl trie;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        keys = new byte[size][];
+        values = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            keys[i] = new byte[32];
+            random.nextBytes(keys[i]);
+            values[i] = new byte[1 + random.nextInt(64)];
+            random.nextBytes(values[i]);
+        }
+
+        trie = new TrieImpl(new HashMapDB<>());
+        for (int i = 0; i < size; i++) {
+            trie.put(keys[i], values[i]);
+        }
+        trie.getRootHash();
+    }
+
+    @Benchmark
+    public byte[] putAllAndHash() {
+        final TrieImpl trie = new TrieImpl(new HashMapDB<>());
+        for (int i = 0; i < size; i++) {
+            trie.put(keys[i], values[i]);
+        }
+        return trie.getRootHash();
+    }
+
+    @Benchmark
+    public int getAll() {
+        int found = 0;
+        for (final byte[] key : keys) {
+            if (trie.get(key) != null) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public byte[] updateOneAndHash() {
+        trie.put(keys[0], values[values.length - 1]);
+        trie.put(keys[0], values[0]);
+        return trie.getRootHash();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.bench;
+
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.openjdk.jmh.annotations.*;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VM.play on small hand assembled contracts, each one a counting loop around a typical instruction mix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VmBenchmark {
+
+    /**
+     * 10000 x (DUP1 DUP1 MUL PUSH1 7 ADD DUP2 SWAP1 DIV PUSH1 31 EXP POP)
+     */
+    private static final byte[] ARITHMETIC_LOOP = Hex.decode("6127105b808002600701819004601f0a50600190038060035700");
+
+    /**
+     * 1000 x (MSTORE(counter * 32, counter) SHA3(0, 64) POP), 32 KiB of memory in the end
+     */
+    private static final byte[] MEMORY_LOOP = Hex.decode("6103e85b808060200252604060002050600190038060035700");
+
+    /**
+     * 500 x (SSTORE(counter, counter) SLOAD(counter) POP)
+     */
+    private static final byte[] STORAGE_LOOP = Hex.decode("6101f45b808055805450600190038060035700");
+
+    private ProgramInvokeMockImpl invoke;
+    private VM vm;
+
+    @Setup
+    public void setup() {
+        invoke = new ProgramInvokeMockImpl();
+        invoke.setGas(100_000_000);
+        vm = new VM();
+    }
+
+    private Program play(final byte[] code) {
+        final Program program = new Program(code, invoke);
+        vm.play(program);
+        if (program.getResult().getException() != null) {
+            throw program.getResult().getException();
+        }
+        return program;
+    }
+
+    @Benchmark
+    public Program arithmetic() {
+        return play(ARITHMETIC_LOOP);
+    }
+
+    @Benchmark
+    public Program memory() {
+        return play(MEMORY_LOOP);
+    }
+
+    @Benchmark
+    public Program storage() {
+        return play(STORAGE_LOOP);
+    }
+}
@@ -32,11 +32,14 @@ import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
 import org.ethereum.db.*;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.sync.FastSyncManager;
+import org.ethereum.trie.TrieHasher;
 import org.ethereum.validator.*;
 import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.CodeCache;
 import org.ethereum.vm.program.ProgramPrecompile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,10 +47,7 @@ import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.*;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static java.util.Arrays.asList;
 
@@ -58,8 +58,19 @@ import static java.util.Arrays.asList;
         excludeFilters = @ComponentScan.Filter(NoAutoscan.class))
 public class CommonConfig {
     private static final Logger logger = LoggerFactory.getLogger("general");
+    /**
+     * Data kinds getting their own database when the storage is partitioned,
+     * in the order they are flushed: the index goes last as it makes the blocks visible
+     */
+    private static final List<String> PARTITIONS = asList("state", "journal", "transactions", "block", "index");
     private static CommonConfig defaultInstance;
     private final Set<DbSource> dbSources = new HashSet<>();
+    // read on every contract call, so created once with double-checked locking
+    private volatile CodeCache codeCache;
+    private StateSnapshot stateSnapshot;
+    private TrieHasher trieHasher;
+    private final Map<String, DbSource<byte[]>> partitionDbs = new LinkedHashMap<>();
+    private final Map<String, Source<byte[], byte[]>> partitions = new HashMap<>();
 
     public static CommonConfig getDefault() {
         if (defaultInstance == null && !SystemProperties.isUseOnlySpringConfig()) {
@@ -91,20 +102,52 @@ public class CommonConfig {
 
     @Bean
     public Repository defaultRepository() {
-        return new RepositoryRoot(stateSource(), null);
+        final RepositoryRoot ret = new RepositoryRoot(stateSource(), null, stateSnapshot());
+        ret.setTrieHasher(trieHasher());
+        return ret;
     }
 
     @Bean @Scope("prototype")
     public Repository repository(final byte[] stateRoot) {
-        return new RepositoryRoot(stateSource(), stateRoot);
+        final RepositoryRoot ret = new RepositoryRoot(stateSource(), stateRoot, stateSnapshot());
+        ret.setTrieHasher(trieHasher());
+        return ret;
+    }
+
+    /**
+     * @return hasher of the state tries with the configured number of threads
+     */
+    @Bean
+    public synchronized TrieHasher trieHasher() {
+        if (trieHasher == null) {
+            trieHasher = new TrieHasher(systemProperties().trieHashThreads());
+        }
+        return trieHasher;
     }
 
+    /**
+     * @return flat state snapshot or null if it is disabled
+     */
+    public synchronized StateSnapshot stateSnapshot() {
+        if (stateSnapshot == null && systemProperties().isStateSnapshotEnabled()) {
+            stateSnapshot = new StateSnapshot(keyValueDataSource("snapshot"), systemProperties().stateSnapshotLayers(),
+                    systemProperties().stateSnapshotGeneratingLayers());
+        }
+        return stateSnapshot;
+    }
+
+
+    @Bean
+    public ReadSnapshots readSnapshots() {
+        return new ReadSnapshots(systemProperties(), stateSource(), stateSnapshot());
+    }
 
     @Bean
     public StateSource stateSource() {
         fastSyncCleanUp();
         final StateSource stateSource = new StateSource(blockchainSource("state"),
-                systemProperties().databasePruneDepth() >= 0, systemProperties().getConfig().getInt("cache.maxStateBloomSize") << 20);
+                systemProperties().databasePruneDepth() >= 0, systemProperties().getConfig().getInt("cache.maxStateBloomSize") << 20,
+                systemProperties().stateCacheOffHeapSize());
 
         dbFlushManager().addCache(stateSource.getWriteCache());
 
@@ -130,17 +173,72 @@ public class CommonConfig {
     @Bean
     @Scope("prototype")
     public Source<byte[], byte[]> blockchainSource(final String name) {
+        if (systemProperties().isDatabasePartitioned() || isRocksDb()) {
+            return partitionSource(name);
+        }
+        return legacyBlockchainSource(name);
+    }
+
+    private Source<byte[], byte[]> legacyBlockchainSource(final String name) {
         return new XorDataSource<>(blockchainDbCache(), HashUtil.INSTANCE.sha3(name.getBytes()));
     }
 
+    private boolean isRocksDb() {
+        return "rocksdb".equals(systemProperties().getKeyValueDataSource());
+    }
+
+    /**
+     * @return own database of the data kind, or its column family in the 'blockchain' one for RocksDB
+     */
+    private synchronized DbSource<byte[]> partitionDb(final String name) {
+        DbSource<byte[]> ret = partitionDbs.get(name);
+        if (ret == null) {
+            final DbSource<byte[]> blockchainDB = blockchainDB();
+            ret = blockchainDB instanceof RocksDbDataSource ?
+                    ((RocksDbDataSource) blockchainDB).getColumnFamily(name) : keyValueDataSource(name);
+            partitionDbs.put(name, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return source backed by the own database of the data kind, with its own
+     * write cache flushed before the single 'blockchain' database
+     */
+    private synchronized Source<byte[], byte[]> partitionSource(final String name) {
+        if (partitions.isEmpty()) {
+            // fixes the flush order of the known partitions
+            PARTITIONS.forEach(p -> partitions.put(p, createPartitionSource(p)));
+        }
+        return partitions.computeIfAbsent(name, this::createPartitionSource);
+    }
+
+    private Source<byte[], byte[]> createPartitionSource(final String name) {
+        final WriteCache.BytesKey<byte[]> writeCache = new WriteCache.BytesKey<>(
+                batchWriter(partitionDb(name)), WriteCache.CacheType.SIMPLE);
+        writeCache.setFlushSource(true);
+        dbFlushManager().addDbCache(writeCache);
+        // the RocksDB data has never been XOR-ed into a single column family
+        if (systemProperties().isDatabaseMigrationEnabled() && !isRocksDb()) {
+            // rows written before the storage was partitioned are moved on access
+            return new MigratingSource(writeCache, legacyBlockchainSource(name));
+        }
+        return writeCache;
+    }
+
     @Bean
     public AbstractCachedSource<byte[], byte[]> blockchainDbCache() {
         final WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(
-                new BatchSourceWriter<>(blockchainDB()), WriteCache.CacheType.SIMPLE);
+                batchWriter(blockchainDB()), WriteCache.CacheType.SIMPLE);
         ret.setFlushSource(true);
         return ret;
     }
 
+    private BatchSourceWriter<byte[], byte[]> batchWriter(final DbSource<byte[]> db) {
+        return new BatchSourceWriter<>(db).withMaxBatchSize(systemProperties().flushMaxBatchSize(),
+                MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+    }
+
     @Bean
     @Scope("prototype")
     @Primary
@@ -150,9 +248,11 @@ public class CommonConfig {
             final DbSource<byte[]> dbSource;
             if ("inmem".equals(dataSource)) {
                 dbSource = new HashMapDB<>();
+            } else if ("rocksdb".equals(dataSource)) {
+                dbSource = rocksDbDataSource();
             } else {
                 dataSource = "leveldb";
-                dbSource = levelDbDataSource();
+                dbSource = levelDbDataSource().withSettings(systemProperties().dbSettings(name));
             }
             dbSource.setName(name);
             dbSource.init();
@@ -169,6 +269,12 @@ public class CommonConfig {
         return new LevelDbDataSource();
     }
 
+    @Bean
+    @Scope("prototype")
+    protected RocksDbDataSource rocksDbDataSource() {
+        return new RocksDbDataSource();
+    }
+
     public void fastSyncCleanUp() {
         final byte[] fastsyncStageBytes = blockchainDB().get(FastSyncManager.FASTSYNC_DB_KEY_SYNC_STAGE);
         if (fastsyncStageBytes == null) return; // no uncompleted fast sync
@@ -184,12 +290,17 @@ public class CommonConfig {
 
             final DbSource bcSource = blockchainDB();
             resetDataSource(bcSource);
+            if (systemProperties().isDatabasePartitioned() && !(bcSource instanceof RocksDbDataSource)) {
+                PARTITIONS.forEach(name -> resetDataSource(partitionDb(name)));
+            }
         }
     }
 
     private void resetDataSource(final Source source) {
         if (source instanceof LevelDbDataSource) {
             ((LevelDbDataSource) source).reset();
+        } else if (source instanceof RocksDbDataSource) {
+            ((RocksDbDataSource) source).reset();
         } else {
             throw new Error("Cannot cleanup non-LevelDB database");
         }
@@ -208,6 +319,20 @@ public class CommonConfig {
         return dataSourceArray;
     }
 
+    @Bean
+    public CodeCache codeCache() {
+        CodeCache ret = codeCache;
+        if (ret == null) {
+            synchronized (this) {
+                ret = codeCache;
+                if (ret == null) {
+                    codeCache = ret = new CodeCache(systemProperties().codeCacheSize());
+                }
+            }
+        }
+        return ret;
+    }
+
     @Bean
     public Source<byte[], ProgramPrecompile> precompileSource() {
 
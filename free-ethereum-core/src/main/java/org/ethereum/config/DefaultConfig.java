@@ -27,6 +27,7 @@
 package org.ethereum.config;
 
 import org.ethereum.datasource.Source;
+import org.ethereum.db.BlockArchive;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.PruneManager;
@@ -39,6 +40,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+import java.io.File;
+
 /**
  *
  * @author Roman Mandeleil
@@ -73,6 +76,10 @@ public class DefaultConfig {
         final Source<byte[], byte[]> block = commonConfig.cachedDbSource("block");
         final Source<byte[], byte[]> index = commonConfig.cachedDbSource("index");
         indexedBlockStore.init(index, block);
+        if (config.isBlockArchiveEnabled()) {
+            indexedBlockStore.setArchive(new BlockArchive(new File(config.databaseDir(), "archive"),
+                    config.blockArchiveSegmentBlocks()), config.blockArchiveDepth());
+        }
 
         return indexedBlockStore;
     }
@@ -39,6 +39,7 @@ import org.ethereum.core.genesis.GenesisJson;
 import org.ethereum.core.genesis.GenesisLoader;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.DbSettings;
 import org.ethereum.net.p2p.P2pHandler;
 import org.ethereum.net.rlpx.MessageCodec;
 import org.ethereum.net.rlpx.Node;
@@ -414,6 +415,82 @@ public class SystemProperties {
         return config.getBoolean("database.prune.enabled") ? config.getInt("database.prune.maxDepth") : -1;
     }
 
+    @ValidateMe
+    public boolean isStateSnapshotEnabled() {
+        return config.getBoolean("database.snapshot.enabled");
+    }
+
+    @ValidateMe
+    public int stateSnapshotLayers() {
+        return config.getInt("database.snapshot.layers");
+    }
+
+    @ValidateMe
+    public int stateSnapshotGeneratingLayers() {
+        final int layers = config.getInt("database.snapshot.generatingLayers");
+        return databasePruneDepth() >= 0 ? Math.min(layers, databasePruneDepth()) : layers;
+    }
+
+    /**
+     * @return max size in bytes of a flushed batch, 0 for the whole flush in a single batch
+     */
+    @ValidateMe
+    public long flushMaxBatchSize() {
+        return config.getLong("cache.flush.maxBatchSize") * 1024 * 1024;
+    }
+
+    @ValidateMe
+    public boolean isBlockArchiveEnabled() {
+        return config.getBoolean("database.archive.enabled");
+    }
+
+    @ValidateMe
+    public int blockArchiveDepth() {
+        return config.getInt("database.archive.depth");
+    }
+
+    @ValidateMe
+    public int blockArchiveSegmentBlocks() {
+        return config.getInt("database.archive.segmentBlocks");
+    }
+
+    @ValidateMe
+    public boolean isDatabasePartitioned() {
+        return config.getBoolean("database.partitions.enabled");
+    }
+
+    @ValidateMe
+    public boolean isDatabaseMigrationEnabled() {
+        return config.getBoolean("database.partitions.migrate");
+    }
+
+    @ValidateMe
+    public long rocksDbBlockCacheSize() {
+        return config.getBytes("database.rocksdb.blockCacheSize");
+    }
+
+    @ValidateMe
+    public int rocksDbBloomFilterBits() {
+        return config.getInt("database.rocksdb.bloomFilterBits");
+    }
+
+    /**
+     * @return options of the named database, the ones set in the 'database.options.default'
+     * section overridden by the 'database.options.[name]' section if any
+     */
+    public DbSettings dbSettings(final String name) {
+        Config options = config.getConfig("database.options.default");
+        if (config.hasPath("database.options." + name)) {
+            options = config.getConfig("database.options." + name).withFallback(options);
+        }
+        return DbSettings.newInstance()
+                .withMaxOpenFiles(options.getInt("maxOpenFiles"))
+                .withBlockSize(options.getBytes("blockSize").intValue())
+                .withWriteBufferSize(options.getBytes("writeBufferSize").intValue())
+                .withCacheSize(options.getBytes("cacheSize"))
+                .withCompression(options.getBoolean("compression"));
+    }
+
     @ValidateMe
     public List<Node> peerActive() {
         if (!config.hasPath("peer.active")) {
@@ -472,6 +549,24 @@ public class SystemProperties {
         return ret;
     }
 
+    @ValidateMe
+    public long codeCacheSize() {
+        return config.getLong("cache.codeCacheSize") * 1024 * 1024;
+    }
+
+    @ValidateMe
+    public long encodedBlockCacheSize() {
+        return config.getLong("cache.encodedBlockCacheSize") * 1024 * 1024;
+    }
+
+    /**
+     * @return size in bytes of the off-heap state cache, 0 if the state cache is on the heap
+     */
+    @ValidateMe
+    public long stateCacheOffHeapSize() {
+        return config.getBoolean("cache.stateCacheOffHeap") ? config.getLong("cache.stateCacheSize") * 1024 * 1024 : 0;
+    }
+
     @ValidateMe
     public Integer blockQueueSize() {
         return config.getInt("cache.blockQueueSize") * 1024 * 1024;
@@ -487,6 +582,31 @@ public class SystemProperties {
         return config.getInt("peer.channel.read.timeout");
     }
 
+    @ValidateMe
+    public int peerServingThreads() {
+        return config.getInt("peer.serving.threads");
+    }
+
+    @ValidateMe
+    public int peerServingMaxQueuedPerPeer() {
+        return config.getInt("peer.serving.maxQueuedPerPeer");
+    }
+
+    @ValidateMe
+    public long peerServingMaxBytesPerSecond() {
+        return config.getLong("peer.serving.maxBytesPerSecond");
+    }
+
+    @ValidateMe
+    public long peerServingMaxTotalBytesPerSecond() {
+        return config.getLong("peer.serving.maxTotalBytesPerSecond");
+    }
+
+    @ValidateMe
+    public long peerServingMaxSyncingBytesPerSecond() {
+        return config.getLong("peer.serving.maxSyncingBytesPerSecond");
+    }
+
     @ValidateMe
     public Integer traceStartBlock() {
         return config.getInt("trace.startblock");
@@ -540,6 +660,26 @@ public class SystemProperties {
         return config.getBoolean("play.vm");
     }
 
+    @ValidateMe
+    public boolean isParallelExecutionEnabled() {
+        return config.getBoolean("blockchain.parallelExecution.enabled");
+    }
+
+    @ValidateMe
+    public int parallelExecutionThreads() {
+        return config.getInt("blockchain.parallelExecution.threads");
+    }
+
+    @ValidateMe
+    public int trieHashThreads() {
+        return config.getInt("blockchain.trieHash.threads");
+    }
+
+    @ValidateMe
+    public boolean isPipelinedStateRootEnabled() {
+        return config.getBoolean("blockchain.pipelinedStateRoot");
+    }
+
     @ValidateMe
     public boolean blockChainOnly() {
         return config.getBoolean("blockchain.only");
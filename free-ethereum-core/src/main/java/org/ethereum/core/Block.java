@@ -31,8 +31,8 @@ import org.ethereum.trie.Trie;
 import org.ethereum.trie.TrieImpl;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.Arrays;
@@ -40,6 +40,7 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -146,24 +147,17 @@ public class Block {
     private synchronized void parseRLP() {
         if (parsed) return;
 
-        final RLPList params = RLP.decode2(rlpEncoded);
-        final RLPList block = (RLPList) params.get(0);
+        final Iterator<RLPView> block = RLPView.decode(rlpEncoded).iterator();
 
         // Parse Header
-        final RLPList header = (RLPList) block.get(0);
-        this.header = new BlockHeader(header);
+        this.header = new BlockHeader(block.next());
 
         // Parse Transactions
-        final RLPList txTransactions = (RLPList) block.get(1);
-        this.parseTxs(this.header.getTxTrieRoot(), txTransactions, false);
+        this.parseTxs(this.header.getTxTrieRoot(), block.next(), false);
 
         // Parse Uncles
-        final RLPList uncleBlocks = (RLPList) block.get(2);
-        for (final RLPElement rawUncle : uncleBlocks) {
-
-            final RLPList uncleHeader = (RLPList) rawUncle;
-            final BlockHeader blockData = new BlockHeader(uncleHeader);
-            this.uncleList.add(blockData);
+        for (final RLPView uncleHeader : block.next()) {
+            this.uncleList.add(new BlockHeader(uncleHeader));
         }
         this.parsed = true;
     }
@@ -352,21 +346,22 @@ public class Block {
         return toStringBuff.toString();
     }
 
-    private byte[] parseTxs(final RLPList txTransactions, final boolean validate) {
+    private byte[] parseTxs(final RLPView txTransactions, final boolean validate) {
 
         final Trie<byte[]> txsState = new TrieImpl();
-        for (int i = 0; i < txTransactions.size(); i++) {
-            final RLPElement transactionRaw = txTransactions.get(i);
-            final Transaction tx = new Transaction(transactionRaw.getRLPData());
+        int i = 0;
+        for (final RLPView transactionRaw : txTransactions) {
+            final byte[] encoded = transactionRaw.getEncoded();
+            final Transaction tx = new Transaction(encoded);
             if (validate) tx.verify();
             this.transactionsList.add(tx);
-            txsState.put(RLP.encodeInt(i), transactionRaw.getRLPData());
+            txsState.put(RLP.encodeInt(i++), encoded);
         }
         return txsState.getRootHash();
     }
 
 
-    private boolean parseTxs(final byte[] expectedRoot, final RLPList txTransactions, final boolean validate) {
+    private boolean parseTxs(final byte[] expectedRoot, final RLPView txTransactions, final boolean validate) {
 
         final byte[] rootHash = parseTxs(txTransactions, validate);
         final String calculatedRoot = Hex.toHexString(rootHash);
@@ -396,26 +391,30 @@ public class Block {
         return Arrays.areEqual(this.getHash(), block.getHash());
     }
 
-    private byte[] getTransactionsEncoded() {
+    private RLPWriter getTransactionsWriter() {
 
-        final byte[][] transactionsEncoded = new byte[transactionsList.size()][];
+        final RLPWriter[] transactionsEncoded = new RLPWriter[transactionsList.size()];
         int i = 0;
         for (final Transaction tx : transactionsList) {
-            transactionsEncoded[i] = tx.getEncoded();
+            transactionsEncoded[i] = RLPWriter.encoded(tx.getEncoded());
             ++i;
         }
-        return RLP.encodeList(transactionsEncoded);
+        return RLPWriter.list(transactionsEncoded);
     }
 
-    private byte[] getUnclesEncoded() {
+    private RLPWriter getUnclesWriter() {
 
-        final byte[][] unclesEncoded = new byte[uncleList.size()][];
+        final RLPWriter[] unclesEncoded = new RLPWriter[uncleList.size()];
         int i = 0;
         for (final BlockHeader uncle : uncleList) {
-            unclesEncoded[i] = uncle.getEncoded();
+            unclesEncoded[i] = uncle.getRLPWriter();
             ++i;
         }
-        return RLP.encodeList(unclesEncoded);
+        return RLPWriter.list(unclesEncoded);
+    }
+
+    private byte[] getUnclesEncoded() {
+        return getUnclesWriter().encode();
     }
 
     public void addUncle(final BlockHeader uncle) {
@@ -426,39 +425,29 @@ public class Block {
 
     public byte[] getEncoded() {
         if (rlpEncoded == null) {
-            final byte[] header = this.header.getEncoded();
-
-            final List<byte[]> block = getBodyElements();
-            block.add(0, header);
-            final byte[][] elements = block.toArray(new byte[block.size()][]);
-
-            this.rlpEncoded = RLP.encodeList(elements);
+            this.rlpEncoded = getRLPWriter().encode();
         }
         return rlpEncoded;
     }
 
+    /**
+     * @return writer of the block encoding, the transactions are written from their cached encoding
+     */
+    public RLPWriter getRLPWriter() {
+        if (rlpEncoded != null) {
+            return RLPWriter.encoded(rlpEncoded);
+        }
+        return RLPWriter.list(this.header.getRLPWriter(), getTransactionsWriter(), getUnclesWriter());
+    }
+
     public byte[] getEncodedWithoutNonce() {
         parseRLP();
         return this.header.getEncodedWithoutNonce();
     }
 
     public byte[] getEncodedBody() {
-        final List<byte[]> body = getBodyElements();
-        final byte[][] elements = body.toArray(new byte[body.size()][]);
-        return RLP.encodeList(elements);
-    }
-
-    private List<byte[]> getBodyElements() {
         parseRLP();
-
-        final byte[] transactions = getTransactionsEncoded();
-        final byte[] uncles = getUnclesEncoded();
-
-        final List<byte[]> body = new ArrayList<>();
-        body.add(transactions);
-        body.add(uncles);
-
-        return body;
+        return RLPWriter.list(getTransactionsWriter(), getUnclesWriter()).encode();
     }
 
     public String getShortHash() {
@@ -496,25 +485,22 @@ public class Block {
             block.header = header;
             block.parsed = true;
 
-            final RLPList items = (RLPList) RLP.decode2(body).get(0);
+            final Iterator<RLPView> items = RLPView.decode(body).iterator();
 
-            final RLPList transactions = (RLPList) items.get(0);
-            final RLPList uncles = (RLPList) items.get(1);
+            final RLPView transactions = items.next();
+            final RLPView uncles = items.next();
 
             if (!block.parseTxs(header.getTxTrieRoot(), transactions, false)) {
                 return null;
             }
 
-            final byte[] unclesHash = HashUtil.INSTANCE.sha3(uncles.getRLPData());
+            final byte[] unclesHash = uncles.sha3();
             if (!java.util.Arrays.equals(header.getUnclesHash(), unclesHash)) {
                 return null;
             }
 
-            for (final RLPElement rawUncle : uncles) {
-
-                final RLPList uncleHeader = (RLPList) rawUncle;
-                final BlockHeader blockData = new BlockHeader(uncleHeader);
-                block.uncleList.add(blockData);
+            for (final RLPView uncleHeader : uncles) {
+                block.uncleList.add(new BlockHeader(uncleHeader));
             }
 
             return block;
@@ -31,12 +31,15 @@ import org.ethereum.crypto.HashUtil;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.Arrays;
 import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.ethereum.util.ByteUtil.toHexString;
@@ -103,41 +106,46 @@ public class BlockHeader {
     private byte[] hashCache;
 
     public BlockHeader(final byte[] encoded) {
-        this((RLPList) RLP.decode2(encoded).get(0));
+        this(RLPView.decode(encoded));
     }
 
     public BlockHeader(final RLPList rlpHeader) {
+        this(RLPView.decode(rlpHeader.getRLPData()));
+    }
+
+    public BlockHeader(final RLPView rlpHeader) {
+        final Iterator<RLPView> fields = rlpHeader.iterator();
 
-        this.parentHash = rlpHeader.get(0).getRLPData();
-        this.unclesHash = rlpHeader.get(1).getRLPData();
-        this.coinbase = rlpHeader.get(2).getRLPData();
-        this.stateRoot = rlpHeader.get(3).getRLPData();
+        this.parentHash = fields.next().getRLPData();
+        this.unclesHash = fields.next().getRLPData();
+        this.coinbase = fields.next().getRLPData();
+        this.stateRoot = fields.next().getRLPData();
 
-        this.txTrieRoot = rlpHeader.get(4).getRLPData();
+        this.txTrieRoot = fields.next().getRLPData();
         if (this.txTrieRoot == null)
             this.txTrieRoot = HashUtil.INSTANCE.getEMPTY_TRIE_HASH();
 
-        this.receiptTrieRoot = rlpHeader.get(5).getRLPData();
+        this.receiptTrieRoot = fields.next().getRLPData();
         if (this.receiptTrieRoot == null)
             this.receiptTrieRoot = HashUtil.INSTANCE.getEMPTY_TRIE_HASH();
 
-        this.logsBloom = rlpHeader.get(6).getRLPData();
-        this.difficulty = rlpHeader.get(7).getRLPData();
+        this.logsBloom = fields.next().getRLPData();
+        this.difficulty = fields.next().getRLPData();
 
-        final byte[] nrBytes = rlpHeader.get(8).getRLPData();
-        final byte[] glBytes = rlpHeader.get(9).getRLPData();
-        final byte[] guBytes = rlpHeader.get(10).getRLPData();
-        final byte[] tsBytes = rlpHeader.get(11).getRLPData();
+        final RLPView nr = fields.next();
+        final RLPView gl = fields.next();
+        final RLPView gu = fields.next();
+        final RLPView ts = fields.next();
 
-        this.number = nrBytes == null ? 0 : (new BigInteger(1, nrBytes)).longValue();
+        this.number = nr.isEmpty() ? 0 : nr.asBigInteger().longValue();
 
-        this.gasLimit = glBytes;
-        this.gasUsed = guBytes == null ? 0 : (new BigInteger(1, guBytes)).longValue();
-        this.timestamp = tsBytes == null ? 0 : (new BigInteger(1, tsBytes)).longValue();
+        this.gasLimit = gl.getRLPData();
+        this.gasUsed = gu.isEmpty() ? 0 : gu.asBigInteger().longValue();
+        this.timestamp = ts.isEmpty() ? 0 : ts.asBigInteger().longValue();
 
-        this.extraData = rlpHeader.get(12).getRLPData();
-        this.mixHash = rlpHeader.get(13).getRLPData();
-        this.nonce = rlpHeader.get(14).getRLPData();
+        this.extraData = fields.next().getRLPData();
+        this.mixHash = fields.next().getRLPData();
+        this.nonce = fields.next().getRLPData();
     }
 
     public BlockHeader(final byte[] parentHash, final byte[] unclesHash, final byte[] coinbase,
@@ -314,49 +322,50 @@ public class BlockHeader {
     }
 
     private byte[] getEncoded(final boolean withNonce) {
-        final byte[] parentHash = RLP.encodeElement(this.parentHash);
-
-        final byte[] unclesHash = RLP.encodeElement(this.unclesHash);
-        final byte[] coinbase = RLP.encodeElement(this.coinbase);
+        return getRLPWriter(withNonce).encode();
+    }
 
-        final byte[] stateRoot = RLP.encodeElement(this.stateRoot);
+    /**
+     * @return writer of the header encoding referencing the field values
+     */
+    public RLPWriter getRLPWriter() {
+        return getRLPWriter(true);
+    }
 
+    private RLPWriter getRLPWriter(final boolean withNonce) {
         if (txTrieRoot == null) this.txTrieRoot = HashUtil.INSTANCE.getEMPTY_TRIE_HASH();
-        final byte[] txTrieRoot = RLP.encodeElement(this.txTrieRoot);
-
         if (receiptTrieRoot == null) this.receiptTrieRoot = HashUtil.INSTANCE.getEMPTY_TRIE_HASH();
-        final byte[] receiptTrieRoot = RLP.encodeElement(this.receiptTrieRoot);
-
-        final byte[] logsBloom = RLP.encodeElement(this.logsBloom);
-        final byte[] difficulty = RLP.encodeBigInteger(new BigInteger(1, this.difficulty));
-        final byte[] number = RLP.encodeBigInteger(BigInteger.valueOf(this.number));
-        final byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        final byte[] gasUsed = RLP.encodeBigInteger(BigInteger.valueOf(this.gasUsed));
-        final byte[] timestamp = RLP.encodeBigInteger(BigInteger.valueOf(this.timestamp));
 
-        final byte[] extraData = RLP.encodeElement(this.extraData);
+        final RLPWriter[] elements = new RLPWriter[withNonce ? 15 : 13];
+        elements[0] = RLPWriter.item(this.parentHash);
+        elements[1] = RLPWriter.item(this.unclesHash);
+        elements[2] = RLPWriter.item(this.coinbase);
+        elements[3] = RLPWriter.item(this.stateRoot);
+        elements[4] = RLPWriter.item(this.txTrieRoot);
+        elements[5] = RLPWriter.item(this.receiptTrieRoot);
+        elements[6] = RLPWriter.item(this.logsBloom);
+        elements[7] = RLPWriter.item(new BigInteger(1, this.difficulty));
+        elements[8] = RLPWriter.item(this.number);
+        elements[9] = RLPWriter.item(this.gasLimit);
+        elements[10] = RLPWriter.item(this.gasUsed);
+        elements[11] = RLPWriter.item(this.timestamp);
+        elements[12] = RLPWriter.item(this.extraData);
         if (withNonce) {
-            final byte[] mixHash = RLP.encodeElement(this.mixHash);
-            final byte[] nonce = RLP.encodeElement(this.nonce);
-            return RLP.encodeList(parentHash, unclesHash, coinbase,
-                    stateRoot, txTrieRoot, receiptTrieRoot, logsBloom, difficulty, number,
-                    gasLimit, gasUsed, timestamp, extraData, mixHash, nonce);
-        } else {
-            return RLP.encodeList(parentHash, unclesHash, coinbase,
-                    stateRoot, txTrieRoot, receiptTrieRoot, logsBloom, difficulty, number,
-                    gasLimit, gasUsed, timestamp, extraData);
+            elements[13] = RLPWriter.item(this.mixHash);
+            elements[14] = RLPWriter.item(this.nonce);
         }
+        return RLPWriter.list(elements);
     }
 
     public byte[] getUnclesEncoded(final List<BlockHeader> uncleList) {
 
-        final byte[][] unclesEncoded = new byte[uncleList.size()][];
+        final RLPWriter[] unclesEncoded = new RLPWriter[uncleList.size()];
         int i = 0;
         for (final BlockHeader uncle : uncleList) {
-            unclesEncoded[i] = uncle.getEncoded();
+            unclesEncoded[i] = uncle.getRLPWriter();
             ++i;
         }
-        return RLP.encodeList(unclesEncoded);
+        return RLPWriter.list(unclesEncoded).encode();
     }
 
     public byte[] getPowBoundary() {
@@ -83,7 +83,11 @@ public interface Blockchain {
 
     List<BlockHeader> getListOfHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
 
+    List<byte[]> getListOfEncodedHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse);
+
     List<byte[]> getListOfBodiesByHashes(List<byte[]> hashes);
 
+    List<byte[]> getListOfEncodedReceiptsByHashes(List<byte[]> hashes);
+
     Block createNewBlock(Block parent, List<Transaction> transactions, List<BlockHeader> uncles);
 }
@@ -55,6 +55,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static java.lang.Math.max;
 import static java.lang.Runtime.getRuntime;
@@ -140,7 +141,6 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private BigInteger totalDifficulty = ZERO;
     @Autowired
     private EthereumListener listener;
-    @Autowired
     private AdminInfo adminInfo;
     @Autowired
     private DependentBlockHeaderRule parentHeaderValidator;
@@ -153,6 +153,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private BigInteger INCLUSION_REWARD;
     private int UNCLE_LIST_LIMIT;
     private int UNCLE_GENERATION_LIMIT;
+    private ParallelTransactionExecutor parallelExecutor;
+    private ExecutorService stateRootExecutor;
+    // whether stateRootExecutor was created by this blockchain and is shut down on close
+    private boolean ownsStateRootExecutor;
+    private EncodedBlockCache encodedBlockCache;
 
     /** Tests only **/
     public BlockchainImpl() {
@@ -175,6 +180,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         this.eventDispatchThread = EventDispatchThread.Companion.getDefault();
         this.programInvokeFactory = new ProgramInvokeFactoryImpl();
         initConst(SystemProperties.getDefault());
+        adminInfo.setEncodedBlockCache(encodedBlockCache);
     }
 
     public static byte[] calcTxTrie(final List<Transaction> transactions) {
@@ -221,8 +227,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return this;
     }
 
+    @Autowired
     public BlockchainImpl withAdminInfo(final AdminInfo adminInfo) {
         this.adminInfo = adminInfo;
+        adminInfo.setEncodedBlockCache(encodedBlockCache);
         return this;
     }
 
@@ -241,7 +249,50 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return this;
     }
 
+    public BlockchainImpl withParallelExecutor(final ParallelTransactionExecutor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+        return this;
+    }
+
+    /**
+     * @param stateRootExecutor executor for {@link StateRootPipeline}, null to compute
+     *                          the intermediate state roots synchronously
+     */
+    public BlockchainImpl withStateRootExecutor(final ExecutorService stateRootExecutor) {
+        if (ownsStateRootExecutor) {
+            this.stateRootExecutor.shutdown();
+            ownsStateRootExecutor = false;
+        }
+        this.stateRootExecutor = stateRootExecutor;
+        return this;
+    }
+
+    /**
+     * @param encodedBlockCache cache of the encodings served to the peers, null to read them from the block store
+     */
+    public BlockchainImpl withEncodedBlockCache(final EncodedBlockCache encodedBlockCache) {
+        this.encodedBlockCache = encodedBlockCache;
+        if (adminInfo != null) {
+            adminInfo.setEncodedBlockCache(encodedBlockCache);
+        }
+        return this;
+    }
+
+    public EncodedBlockCache getEncodedBlockCache() {
+        return encodedBlockCache;
+    }
+
     private void initConst(final SystemProperties config) {
+        if (config.isParallelExecutionEnabled()) {
+            parallelExecutor = new ParallelTransactionExecutor(config.parallelExecutionThreads());
+        }
+        if (config.isPipelinedStateRootEnabled()) {
+            stateRootExecutor = StateRootPipeline.newExecutor();
+            ownsStateRootExecutor = true;
+        }
+        if (config.encodedBlockCacheSize() > 0) {
+            encodedBlockCache = new EncodedBlockCache(config.encodedBlockCacheSize());
+        }
         minerCoinbase = config.getMinerCoinbase();
         minerExtraData = config.getMineExtraData();
         BLOCK_REWARD = config.getBlockchainConfig().getCommonConstants().getBlockReward();
@@ -406,6 +457,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             // cause we proved that total difficulty
             // is greateer
             blockStore.reBranch(block);
+            if (encodedBlockCache != null) {
+                encodedBlockCache.reBranch(block);
+            }
 
             // The main repository rebranch
             this.repository = repo;
@@ -841,55 +895,99 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         config.getBlockchainConfig().getConfigForBlock(block.getNumber()).hardForkTransfers(block, track);
 
         final long saveTime = System.nanoTime();
-        final int i = 1;
         long totalGasUsed = 0;
         final List<TransactionReceipt> receipts = new ArrayList<>();
         final List<TransactionExecutionSummary> summaries = new ArrayList<>();
+        final List<Transaction> txs = block.getTransactionsList();
 
-        for (final Transaction tx : block.getTransactionsList()) {
-            stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
-
-            final Repository txTrack = track.startTracking();
-            final TransactionExecutor executor = new TransactionExecutor(tx, block.getCoinbase(),
-                    txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed)
-                    .withCommonConfig(commonConfig);
-
-            executor.init();
-            executor.execute();
-            executor.go();
-            final TransactionExecutionSummary summary = executor.finalization();
+        final ParallelTransactionExecutor.BlockExecution parallelExecution =
+                parallelExecutor != null && txs.size() > 1 && !config.vmTrace() && track instanceof RepositoryImpl ?
+                        parallelExecutor.execute(block, (RepositoryImpl) track, (tx, txTrack, txListener, gasUsed) ->
+                                createExecutor(tx, block, txTrack, txListener, gasUsed), listener) : null;
+        final StateRootPipeline rootPipeline = stateRootExecutor != null && !txs.isEmpty() &&
+                track instanceof RepositoryRoot ? new StateRootPipeline((RepositoryRoot) track, stateRootExecutor) : null;
+        final RepositoryRoot.HashTime hashTimeBefore = track instanceof RepositoryRoot ?
+                ((RepositoryRoot) track).getHashTime() : null;
 
-            totalGasUsed += executor.getGasUsed();
-
-            txTrack.commit();
-            final TransactionReceipt receipt = executor.getReceipt();
-
-            receipt.setPostTxState(track.getRoot());
+        try {
+            for (int i = 0; i < txs.size(); i++) {
+                final Transaction tx = txs.get(i);
+                stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
+
+                final TransactionExecutor executor;
+                final TransactionExecutionSummary summary;
+                if (parallelExecution != null) {
+                    final ParallelTransactionExecutor.Result result = parallelExecution.commit(i, totalGasUsed);
+                    executor = result.getExecutor();
+                    summary = result.getSummary();
+                } else {
+                    final Repository txTrack = track.startTracking();
+                    executor = createExecutor(tx, block, txTrack, listener, totalGasUsed);
+
+                    executor.init();
+                    executor.execute();
+                    executor.go();
+                    summary = executor.finalization();
+
+                    txTrack.commit();
+                }
 
-            stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
-                    Hex.toHexString(track.getRoot()));
+                totalGasUsed += executor.getGasUsed();
 
-            stateLogger.info("[{}] ", receipt.toString());
+                final TransactionReceipt receipt = executor.getReceipt();
 
-            if (stateLogger.isInfoEnabled())
-                stateLogger.info("tx[{}].receipt: [{}] ", i, Hex.toHexString(receipt.getEncoded()));
+                if (rootPipeline != null) {
+                    final int txIndex = i;
+                    rootPipeline.submit(root -> {
+                        receipt.setPostTxState(root);
+                        logTxState(block, txIndex, receipt);
+                    });
+                } else {
+                    receipt.setPostTxState(track.getRoot());
+                    logTxState(block, i, receipt);
+                }
 
-            // TODO
-//            if (block.getNumber() >= config.traceStartBlock())
-//                repository.dumpState(block, totalGasUsed, i++, tx.getHash());
+                // TODO
+//                if (block.getNumber() >= config.traceStartBlock())
+//                    repository.dumpState(block, totalGasUsed, i++, tx.getHash());
 
-            receipts.add(receipt);
-            if (summary != null) {
-                summaries.add(summary);
+                receipts.add(receipt);
+                if (summary != null) {
+                    summaries.add(summary);
+                }
+            }
+            if (rootPipeline != null) {
+                // the receipts are complete and the block repository can be flushed to its trie again
+                rootPipeline.await();
+            }
+        } finally {
+            if (parallelExecution != null) {
+                parallelExecution.cancel();
+            }
+            if (rootPipeline != null) {
+                rootPipeline.cancel();
             }
         }
 
+        if (parallelExecution != null) {
+            adminInfo.addParallelExecution(txs.size(), parallelExecution.getConflicts());
+            logger.debug("block: num: [{}] executed in parallel, conflicting txs: [{}] of [{}]",
+                    block.getNumber(), parallelExecution.getConflicts(), txs.size());
+        }
+
         final Map<byte[], BigInteger> rewards = addReward(track, block, summaries);
 
         stateLogger.info("applied reward for block: [{}]  \n  state: [{}]",
                 block.getNumber(),
                 Hex.toHexString(track.getRoot()));
 
+        if (hashTimeBefore != null) {
+            final RepositoryRoot.HashTime hashTime = ((RepositoryRoot) track).getHashTime().since(hashTimeBefore);
+            adminInfo.addTrieHashTime(hashTime.getStorageTries(), hashTime.getStorageNanos(), hashTime.getStateNanos());
+            logger.debug("block: num: [{}] hashed [{}] storage tries in [{}]nano, account trie in [{}]nano",
+                    block.getNumber(), hashTime.getStorageTries(), hashTime.getStorageNanos(), hashTime.getStateNanos());
+        }
+
 
         // TODO
 //        if (block.getNumber() >= config.traceStartBlock())
@@ -902,6 +1000,23 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return new BlockSummary(block, rewards, receipts, summaries);
     }
 
+    private void logTxState(final Block block, final int i, final TransactionReceipt receipt) {
+        stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
+                Hex.toHexString(receipt.getPostTxState()));
+
+        stateLogger.info("[{}] ", receipt.toString());
+
+        if (stateLogger.isInfoEnabled())
+            stateLogger.info("tx[{}].receipt: [{}] ", i, Hex.toHexString(receipt.getEncoded()));
+    }
+
+    private TransactionExecutor createExecutor(final Transaction tx, final Block block, final Repository txTrack,
+                                               final EthereumListener listener, final long totalGasUsed) {
+        return new TransactionExecutor(tx, block.getCoinbase(), txTrack, blockStore, programInvokeFactory, block,
+                listener, totalGasUsed)
+                .withCommonConfig(commonConfig);
+    }
+
     /**
      * Add reward to block- and every uncle coinbase
      * assuming the entire block is valid.
@@ -948,6 +1063,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             transactionStore.put(new TransactionInfo(receipts.get(i), block.getHash(), i));
         }
 
+        if (encodedBlockCache != null) {
+            encodedBlockCache.putBlock(block, receipts, !fork);
+        }
+
         if (pruneManager != null) {
             pruneManager.blockCommitted(block.getHeader());
         }
@@ -997,6 +1116,12 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public synchronized void close() {
+        if (parallelExecutor != null) {
+            parallelExecutor.shutdown();
+        }
+        if (ownsStateRootExecutor) {
+            stateRootExecutor.shutdown();
+        }
         blockStore.close();
     }
 
@@ -1141,6 +1266,62 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return headers;
     }
 
+    /**
+     * Returns the same headers as {@link #getListOfHeadersStartFrom} RLP encoded,
+     * taking them from the encoded block cache when it holds the whole range
+     */
+    @Override
+    public List<byte[]> getListOfEncodedHeadersStartFrom(final BlockIdentifier identifier, final int skip, final int limit, final boolean reverse) {
+        final EncodedBlockCache cache = encodedBlockCache;
+        if (cache == null) {
+            return encode(getListOfHeadersStartFrom(identifier, skip, limit, reverse));
+        }
+
+        final long chainVersion = cache.getChainVersion();
+        final List<byte[]> cached = getCachedHeaders(cache, identifier, skip, limit, reverse);
+        if (cached != null) {
+            return cached;
+        }
+        final List<BlockHeader> headers = getListOfHeadersStartFrom(identifier, skip, limit, reverse);
+        cache.putChainHeaders(headers, chainVersion);
+        return encode(headers);
+    }
+
+    private static List<byte[]> encode(final List<BlockHeader> headers) {
+        final List<byte[]> ret = new ArrayList<>(headers.size());
+        for (final BlockHeader header : headers) {
+            ret.add(header.getEncoded());
+        }
+        return ret;
+    }
+
+    /**
+     * @return headers found by query or null if some of the main chain headers aren't cached
+     */
+    private List<byte[]> getCachedHeaders(final EncodedBlockCache cache, final BlockIdentifier identifier,
+                                          final int skip, final int limit, final boolean reverse) {
+        long number;
+        if (identifier.getHash() != null) {
+            number = cache.getNumber(identifier.getHash());
+            final byte[] chainHash = number < 0 ? null : cache.getChainHash(number);
+            if (chainHash == null) return null;
+            if (!FastByteComparisons.equal(chainHash, identifier.getHash())) return emptyList();
+        } else {
+            number = identifier.getNumber();
+        }
+
+        final long maxNumber = blockStore.getMaxNumber();
+        final long step = reverse ? -(skip + 1L) : skip + 1L;
+        final List<byte[]> headers = new ArrayList<>();
+        for (; headers.size() < limit && number >= 0 && number <= maxNumber; number += step) {
+            final byte[] hash = cache.getChainHash(number);
+            final byte[] header = hash == null ? null : cache.getHeader(hash);
+            if (header == null) return null;
+            headers.add(header);
+        }
+        return headers;
+    }
+
     /**
      * Finds up to limit blocks starting from blockNumber on main chain
      * @param bestNumber        Number of best block
@@ -1186,7 +1367,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
         while(!finished && headers.size() < limit) {
             currentNumber += offset;
-            final Block nextBlock = blockStore.getChainBlockByNumber(currentNumber);
+            final Block nextBlock = currentNumber < 0 ? null : blockStore.getChainBlockByNumber(currentNumber);
             if (nextBlock == null) {
                 finished = true;
             } else {
@@ -1239,14 +1420,54 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         final List<byte[]> bodies = new ArrayList<>(hashes.size());
 
         for (final byte[] hash : hashes) {
-            final Block block = blockStore.getBlockByHash(hash);
-            if (block == null) break;
-            bodies.add(block.getEncodedBody());
+            byte[] body = encodedBlockCache == null ? null : encodedBlockCache.getBody(hash);
+            if (body == null) {
+                final Block block = blockStore.getBlockByHash(hash);
+                if (block == null) break;
+                body = block.getEncodedBody();
+                if (encodedBlockCache != null) {
+                    encodedBlockCache.putBody(block, body);
+                }
+            }
+            bodies.add(body);
         }
 
         return bodies;
     }
 
+    /**
+     * Returns list of block receipts by block hashes, skipping not found blocks
+     * @param hashes List of hashes
+     * @return List of RLP encoded lists of the block receipts, cut at the first missing receipt
+     */
+    @Override
+    public List<byte[]> getListOfEncodedReceiptsByHashes(final List<byte[]> hashes) {
+        final List<byte[]> ret = new ArrayList<>(hashes.size());
+
+        for (final byte[] hash : hashes) {
+            byte[] receipts = encodedBlockCache == null ? null : encodedBlockCache.getReceipts(hash);
+            if (receipts == null) {
+                final Block block = getBlockByHash(hash);
+                if (block == null) continue;
+
+                final List<TransactionReceipt> blockReceipts = new ArrayList<>();
+                for (final Transaction transaction : block.getTransactionsList()) {
+                    final TransactionInfo transactionInfo = getTransactionInfo(transaction.getHash());
+                    if (transactionInfo == null) break;
+                    blockReceipts.add(transactionInfo.getReceipt());
+                }
+                receipts = EncodedBlockCache.encodeReceipts(blockReceipts);
+                // the receipts of blocks imported by the fast sync may be missing
+                if (encodedBlockCache != null && blockReceipts.size() == block.getTransactionsList().size()) {
+                    encodedBlockCache.putReceipts(block, receipts);
+                }
+            }
+            ret.add(receipts);
+        }
+
+        return ret;
+    }
+
     public void setPruneManager(final PruneManager pruneManager) {
         this.pruneManager = pruneManager;
     }
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.ReadWriteSet;
+import org.ethereum.db.RepositoryImpl;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Optimistic parallel execution of the block transactions.
+ *
+ * All the transactions of a block are speculatively executed concurrently, each one
+ * in its own track of the block repository which records the accounts and storage slots
+ * read (see {@link ReadWriteSet}). The results are then committed in the block order:
+ * a result is taken only if none of its reads was written by a preceding transaction,
+ * otherwise the transaction is executed again on top of the committed state.
+ * The resulting state and receipts are thus identical to the sequential execution.
+ *
+ * The fee transfer to the miner is deferred to the commit, otherwise every transaction
+ * would conflict on the miner account. A transaction which accesses the miner account
+ * itself is always executed again.
+ */
+public class ParallelTransactionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    private final ExecutorService pool;
+
+    /**
+     * @param threads number of execution threads, 0 for the number of available processors
+     */
+    public ParallelTransactionExecutor(final int threads) {
+        pool = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ParallelTxExecutor-%d").build());
+    }
+
+    /**
+     * Starts the speculative execution of the block transactions
+     * @param track block repository, it must not be modified while the block is executed
+     *              other than by {@link BlockExecution#commit}
+     */
+    public BlockExecution execute(final Block block, final RepositoryImpl track, final ExecutorFactory factory,
+                                  final EthereumListener listener) {
+        return new BlockExecution(block, track, factory, listener);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public interface ExecutorFactory {
+        TransactionExecutor create(Transaction tx, Repository track, EthereumListener listener, long gasUsedInTheBlock);
+    }
+
+    public static class Result {
+        private final TransactionExecutor executor;
+        private final TransactionExecutionSummary summary;
+
+        Result(final TransactionExecutor executor, final TransactionExecutionSummary summary) {
+            this.executor = executor;
+            this.summary = summary;
+        }
+
+        public TransactionExecutor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @return summary or null if the transaction was not executed
+         */
+        public TransactionExecutionSummary getSummary() {
+            return summary;
+        }
+    }
+
+    private static class Speculation {
+        final ReadWriteSet readWriteSet = new ReadWriteSet();
+        RepositoryImpl track;
+        TransactionExecutor executor;
+        TransactionExecutionSummary summary;
+    }
+
+    public class BlockExecution {
+        private final Block block;
+        private final RepositoryImpl track;
+        private final ExecutorFactory factory;
+        private final EthereumListener listener;
+        private final ByteArrayWrapper coinbase;
+        private final List<Future<Speculation>> speculations = new ArrayList<>();
+        private final Set<ByteArrayWrapper> written = new HashSet<>();
+        private int conflicts;
+
+        BlockExecution(final Block block, final RepositoryImpl track, final ExecutorFactory factory,
+                       final EthereumListener listener) {
+            this.block = block;
+            this.track = track;
+            this.factory = factory;
+            this.listener = listener;
+            this.coinbase = ReadWriteSet.accountKey(block.getCoinbase());
+
+            for (final Transaction tx : block.getTransactionsList()) {
+                speculations.add(pool.submit(() -> speculate(tx)));
+            }
+        }
+
+        private Speculation speculate(final Transaction tx) {
+            final Speculation ret = new Speculation();
+            ret.track = track.startTracking(ret.readWriteSet);
+            ret.executor = factory.create(tx, ret.track, new EthereumListenerAdapter(), 0)
+                    .setDeferredFee(true);
+            ret.executor.init();
+            ret.executor.execute();
+            ret.executor.go();
+            ret.summary = ret.executor.finalization();
+            return ret;
+        }
+
+        private Speculation getSpeculation(final int i) {
+            try {
+                return speculations.get(i).get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                // e.g. the speculation read an inconsistent state: executed again on the caller thread.
+                // A VM stack overflow never gets here, VM.play exits the process on it in any thread
+                logger.debug("Speculative execution of tx #{} failed: {}", i, e.getCause().toString());
+                return null;
+            }
+        }
+
+        private boolean isValid(final Speculation speculation, final Transaction tx, final long gasUsedInTheBlock) {
+            // the speculation was checked against an empty block gas counter
+            final BigInteger gasLimit = new BigInteger(1, tx.getGasLimit()).add(BigInteger.valueOf(gasUsedInTheBlock));
+            return gasLimit.compareTo(new BigInteger(1, block.getGasLimit())) <= 0 &&
+                    !speculation.readWriteSet.isRead(coinbase) &&
+                    !speculation.readWriteSet.isAnyRead(written);
+        }
+
+        /**
+         * Commits the i-th transaction to the block repository, executing it again
+         * if its speculative result depends on the preceding transactions.
+         * Must be called for each transaction in the block order
+         */
+        public Result commit(final int i, final long gasUsedInTheBlock) {
+            final Transaction tx = block.getTransactionsList().get(i);
+            final Speculation speculation = getSpeculation(i);
+
+            if (speculation != null && isValid(speculation, tx, gasUsedInTheBlock)) {
+                speculation.track.commit();
+                written.addAll(speculation.readWriteSet.getWrites());
+                if (speculation.summary != null) {
+                    speculation.executor.payDeferredFee(track, speculation.summary);
+                    written.add(coinbase);
+                    listener.onTransactionExecuted(speculation.summary);
+                }
+                speculation.executor.getReceipt().setCumulativeGas(gasUsedInTheBlock + speculation.executor.getGasUsed());
+                return new Result(speculation.executor, speculation.summary);
+            }
+
+            conflicts++;
+
+            final ReadWriteSet readWriteSet = new ReadWriteSet();
+            final RepositoryImpl txTrack = track.startTracking(readWriteSet);
+            final TransactionExecutor executor = factory.create(tx, txTrack, listener, gasUsedInTheBlock);
+            executor.init();
+            executor.execute();
+            executor.go();
+            final TransactionExecutionSummary summary = executor.finalization();
+            txTrack.commit();
+            written.addAll(readWriteSet.getWrites());
+            return new Result(executor, summary);
+        }
+
+        /**
+         * @return number of transactions of this block executed again so far
+         */
+        public int getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * Cancels the speculations which are still running when the block execution is aborted
+         */
+        public void cancel() {
+            for (final Future<Speculation> speculation : speculations) {
+                speculation.cancel(true);
+            }
+        }
+    }
+}
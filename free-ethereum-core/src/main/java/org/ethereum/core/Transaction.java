@@ -40,6 +40,7 @@ import org.spongycastle.util.encoders.Hex;
 import java.math.BigInteger;
 import java.security.SignatureException;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.apache.commons.lang3.ArrayUtils.isEmpty;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
@@ -217,13 +218,12 @@ public class Transaction {
     protected synchronized void rlpParse() {
         if (parsed) return;
         try {
-            final RLPList decodedTxList = RLP.decode2(rlpEncoded);
-            final RLPList transaction = (RLPList) decodedTxList.get(0);
+            final List<RLPView> transaction = RLPView.decode(rlpEncoded).getChildren();
 
             // Basic verification
             if (transaction.size() > 9 ) throw new RuntimeException("Too many RLP elements");
-            for (final RLPElement rlpElement : transaction) {
-                if (!(rlpElement instanceof RLPItem))
+            for (final RLPView rlpElement : transaction) {
+                if (rlpElement.isList())
                     throw new RuntimeException("Transaction RLP elements shouldn't be lists");
             }
 
@@ -234,9 +234,8 @@ public class Transaction {
             this.value = transaction.get(4).getRLPData();
             this.data = transaction.get(5).getRLPData();
             // only parse signature in case tx is signed
-            if (transaction.get(6).getRLPData() != null) {
-                final byte[] vData = transaction.get(6).getRLPData();
-                final BigInteger v = ByteUtil.bytesToBigInteger(vData);
+            if (!transaction.get(6).isEmpty()) {
+                final BigInteger v = transaction.get(6).asBigInteger();
                 this.chainId = extractChainIdFromV(v);
                 final byte[] r = transaction.get(7).getRLPData();
                 final byte[] s = transaction.get(8).getRLPData();
@@ -465,32 +464,15 @@ public class Transaction {
         rlpParse();
         if (rlpRaw != null) return rlpRaw;
 
-        // parse null as 0 for nonce
-        byte[] nonce = null;
-        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
-            nonce = RLP.encodeElement(null);
-        } else {
-            nonce = RLP.encodeElement(this.nonce);
-        }
-        final byte[] gasPrice = RLP.encodeElement(this.gasPrice);
-        final byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        final byte[] receiveAddress = RLP.encodeElement(this.receiveAddress);
-        final byte[] value = RLP.encodeElement(this.value);
-        final byte[] data = RLP.encodeElement(this.data);
-
         // Since EIP-155 use chainId for v
         if (chainId == null) {
-            rlpRaw = RLP.encodeList(nonce, gasPrice, gasLimit, receiveAddress,
-                    value, data);
+            rlpRaw = RLPWriter.list(getFieldWriters(6)).encode();
         } else {
-            final byte[] v;
-            final byte[] r;
-            final byte[] s;
-            v = RLP.encodeInt(chainId);
-            r = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            s = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            rlpRaw = RLP.encodeList(nonce, gasPrice, gasLimit, receiveAddress,
-                    value, data, v, r, s);
+            final RLPWriter[] elements = getFieldWriters(9);
+            elements[6] = RLPWriter.itemInt(chainId);
+            elements[7] = RLPWriter.item(EMPTY_BYTE_ARRAY);
+            elements[8] = RLPWriter.item(EMPTY_BYTE_ARRAY);
+            rlpRaw = RLPWriter.list(elements).encode();
         }
         return rlpRaw;
     }
@@ -499,23 +481,7 @@ public class Transaction {
 
         if (rlpEncoded != null) return rlpEncoded;
 
-        // parse null as 0 for nonce
-        byte[] nonce = null;
-        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
-            nonce = RLP.encodeElement(null);
-        } else {
-            nonce = RLP.encodeElement(this.nonce);
-        }
-        final byte[] gasPrice = RLP.encodeElement(this.gasPrice);
-        final byte[] gasLimit = RLP.encodeElement(this.gasLimit);
-        final byte[] receiveAddress = RLP.encodeElement(this.receiveAddress);
-        final byte[] value = RLP.encodeElement(this.value);
-        final byte[] data = RLP.encodeElement(this.data);
-
-        final byte[] v;
-        final byte[] r;
-        final byte[] s;
-
+        final RLPWriter[] elements = getFieldWriters(9);
         if (signature != null) {
             int encodeV;
             if (chainId == null) {
@@ -524,24 +490,42 @@ public class Transaction {
                 encodeV = signature.v - LOWER_REAL_V;
                 encodeV += chainId * 2 + CHAIN_ID_INC;
             }
-            v = RLP.encodeInt(encodeV);
-            r = RLP.encodeElement(BigIntegers.asUnsignedByteArray(signature.r));
-            s = RLP.encodeElement(BigIntegers.asUnsignedByteArray(signature.s));
+            elements[6] = RLPWriter.itemInt(encodeV);
+            elements[7] = RLPWriter.item(BigIntegers.asUnsignedByteArray(signature.r));
+            elements[8] = RLPWriter.item(BigIntegers.asUnsignedByteArray(signature.s));
         } else {
             // Since EIP-155 use chainId for v
-            v = chainId == null ? RLP.encodeElement(EMPTY_BYTE_ARRAY) : RLP.encodeInt(chainId);
-            r = RLP.encodeElement(EMPTY_BYTE_ARRAY);
-            s = RLP.encodeElement(EMPTY_BYTE_ARRAY);
+            elements[6] = chainId == null ? RLPWriter.item(EMPTY_BYTE_ARRAY) : RLPWriter.itemInt(chainId);
+            elements[7] = RLPWriter.item(EMPTY_BYTE_ARRAY);
+            elements[8] = RLPWriter.item(EMPTY_BYTE_ARRAY);
         }
 
-        this.rlpEncoded = RLP.encodeList(nonce, gasPrice, gasLimit,
-                receiveAddress, value, data, v, r, s);
+        this.rlpEncoded = RLPWriter.list(elements).encode();
 
         this.hash = this.getHash();
 
         return rlpEncoded;
     }
 
+    /**
+     * @return array of the given size starting with the writers of the unsigned transaction fields
+     */
+    private RLPWriter[] getFieldWriters(final int size) {
+        final RLPWriter[] ret = new RLPWriter[size];
+        // parse null as 0 for nonce
+        if (this.nonce == null || this.nonce.length == 1 && this.nonce[0] == 0) {
+            ret[0] = RLPWriter.item((byte[]) null);
+        } else {
+            ret[0] = RLPWriter.item(this.nonce);
+        }
+        ret[1] = RLPWriter.item(this.gasPrice);
+        ret[2] = RLPWriter.item(this.gasLimit);
+        ret[3] = RLPWriter.item(this.receiveAddress);
+        ret[4] = RLPWriter.item(this.value);
+        ret[5] = RLPWriter.item(this.data);
+        return ret;
+    }
+
     @Override
     public int hashCode() {
 
@@ -82,6 +82,7 @@ public class TransactionExecutor {
     private long basicTxCost = 0;
     private List<LogInfo> logs = null;
     private boolean localCall = false;
+    private boolean deferredFee = false;
     private boolean readyToExecute = false;
     private String execError;
     private TransactionReceipt receipt;
@@ -230,7 +231,7 @@ public class TransactionExecutor {
 
         } else {
 
-            final byte[] code = track.getCode(targetAddress);
+            final byte[] code = commonConfig.codeCache().getCode(track, targetAddress);
             if (isEmpty(code)) {
                 m_endGas = m_endGas.subtract(BigInteger.valueOf(basicTxCost));
                 result.spendGas(basicTxCost);
@@ -397,10 +398,12 @@ public class TransactionExecutor {
         track.addBalance(tx.getSender(), summary.getLeftover().add(summary.getRefund()));
         logger.info("Pay total refund to sender: [{}], refund val: [{}]", Hex.toHexString(tx.getSender()), summary.getRefund());
 
-        // Transfer fees to miner
-        track.addBalance(coinbase, summary.getFee());
-        touchedAccounts.add(coinbase);
-        logger.info("Pay fees to miner: [{}], feesEarned: [{}]", Hex.toHexString(coinbase), summary.getFee());
+        if (!deferredFee) {
+            // Transfer fees to miner
+            track.addBalance(coinbase, summary.getFee());
+            touchedAccounts.add(coinbase);
+            logger.info("Pay fees to miner: [{}], feesEarned: [{}]", Hex.toHexString(coinbase), summary.getFee());
+        }
 
         if (result != null) {
             logs = result.getLogInfoList();
@@ -445,6 +448,33 @@ public class TransactionExecutor {
         return this;
     }
 
+    /**
+     * When set the fee is not transferred to the miner by {@link #finalization()}
+     * and {@link #payDeferredFee} has to be called instead. This leaves the
+     * miner account untouched when the transaction itself doesn't access it
+     */
+    public TransactionExecutor setDeferredFee(final boolean deferredFee) {
+        this.deferredFee = deferredFee;
+        return this;
+    }
+
+    /**
+     * Transfers the fee to the miner after the transaction changes were committed to the repository.
+     * Equivalent to the transfer done by {@link #finalization()} provided the transaction hasn't
+     * accessed the miner account
+     */
+    public void payDeferredFee(final Repository repository, final TransactionExecutionSummary summary) {
+        repository.addBalance(coinbase, summary.getFee());
+        logger.info("Pay fees to miner: [{}], feesEarned: [{}]", Hex.toHexString(coinbase), summary.getFee());
+
+        if (blockchainConfig.eip161()) {
+            final AccountState state = repository.getAccountState(coinbase);
+            if (state != null && state.isEmpty()) {
+                repository.delete(coinbase);
+            }
+        }
+    }
+
 
     public TransactionReceipt getReceipt() {
         if (receipt == null) {
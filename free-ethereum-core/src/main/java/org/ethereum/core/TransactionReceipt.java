@@ -224,30 +224,34 @@ public class TransactionReceipt {
     }
 
     public byte[] getEncoded(final boolean receiptTrie) {
+        return getRLPWriter(receiptTrie).encode();
+    }
+
+    public RLPWriter getRLPWriter(final boolean receiptTrie) {
 
-        final byte[] postTxStateRLP = RLP.encodeElement(this.postTxState);
-        final byte[] cumulativeGasRLP = RLP.encodeElement(this.cumulativeGas);
-        final byte[] bloomRLP = RLP.encodeElement(this.bloomFilter.data);
+        final RLPWriter postTxStateRLP = RLPWriter.item(this.postTxState);
+        final RLPWriter cumulativeGasRLP = RLPWriter.item(this.cumulativeGas);
+        final RLPWriter bloomRLP = RLPWriter.item(this.bloomFilter.data);
 
-        final byte[] logInfoListRLP;
+        final RLPWriter logInfoListRLP;
         if (logInfoList != null) {
-            final byte[][] logInfoListE = new byte[logInfoList.size()][];
+            final RLPWriter[] logInfoListE = new RLPWriter[logInfoList.size()];
 
             int i = 0;
             for (final LogInfo logInfo : logInfoList) {
-                logInfoListE[i] = logInfo.getEncoded();
+                logInfoListE[i] = logInfo.getRLPWriter();
                 ++i;
             }
-            logInfoListRLP = RLP.encodeList(logInfoListE);
+            logInfoListRLP = RLPWriter.list(logInfoListE);
         } else {
-            logInfoListRLP = RLP.encodeList();
+            logInfoListRLP = RLPWriter.list();
         }
 
         return receiptTrie ?
-                RLP.encodeList(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP):
-                RLP.encodeList(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP,
-                        RLP.encodeElement(gasUsed), RLP.encodeElement(executionResult),
-                        RLP.encodeElement(error.getBytes(StandardCharsets.UTF_8)));
+                RLPWriter.list(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP):
+                RLPWriter.list(postTxStateRLP, cumulativeGasRLP, bloomRLP, logInfoListRLP,
+                        RLPWriter.item(gasUsed), RLPWriter.item(executionResult),
+                        RLPWriter.item(error.getBytes(StandardCharsets.UTF_8)));
 
     }
 
@@ -37,7 +37,6 @@ import org.spongycastle.asn1.ASN1Integer;
 import org.spongycastle.asn1.DLSequence;
 import org.spongycastle.asn1.sec.SECNamedCurves;
 import org.spongycastle.asn1.x9.X9ECParameters;
-import org.spongycastle.asn1.x9.X9IntegerConverter;
 import org.spongycastle.crypto.agreement.ECDHBasicAgreement;
 import org.spongycastle.crypto.digests.SHA256Digest;
 import org.spongycastle.crypto.engines.AESFastEngine;
@@ -50,8 +49,6 @@ import org.spongycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
 import org.spongycastle.jce.spec.ECParameterSpec;
 import org.spongycastle.jce.spec.ECPrivateKeySpec;
 import org.spongycastle.jce.spec.ECPublicKeySpec;
-import org.spongycastle.math.ec.ECAlgorithms;
-import org.spongycastle.math.ec.ECCurve;
 import org.spongycastle.math.ec.ECPoint;
 import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Base64;
@@ -513,6 +510,9 @@ public class ECKey implements Serializable {
      * @return -
      */
     private static boolean verify(final byte[] data, final ECDSASignature signature, final byte[] pub) {
+        if (Secp256k1.isSupportedEncoding(pub)) {
+            return Secp256k1.verify(data, signature.r, signature.s, pub);
+        }
         final ECDSASigner signer = new ECDSASigner();
         final ECPublicKeyParameters params = new ECPublicKeyParameters(CURVE.getCurve().decodePoint(pub), CURVE);
         signer.init(false, params);
@@ -583,49 +583,9 @@ public class ECKey implements Serializable {
         check(sig.r.signum() >= 0, "r must be positive");
         check(sig.s.signum() >= 0, "s must be positive");
         check(messageHash != null, "messageHash must not be null");
-        // 1.0 For j from 0 to h   (h == recId here and the loop is outside this function)
-        //   1.1 Let x = r + jn
-        final BigInteger n = CURVE.getN();  // Curve order.
-        final BigInteger i = BigInteger.valueOf((long) recId / 2);
-        final BigInteger x = sig.r.add(i.multiply(n));
-        //   1.2. Convert the integer x to an octet string X of length mlen using the conversion routine
-        //        specified in Section 2.3.7, where mlen = ⌈(log2 p)/8⌉ or mlen = ⌈m/8⌉.
-        //   1.3. Convert the octet string (16 set binary digits)||X to an elliptic curve point R using the
-        //        conversion routine specified in Section 2.3.4. If this conversion routine outputs “invalid”, then
-        //        do another iteration of Step 1.
-        //
-        // More concisely, what these points mean is to use X as a compressed public key.
-        final ECCurve.Fp curve = (ECCurve.Fp) CURVE.getCurve();
-        final BigInteger prime = curve.getQ();  // Bouncy Castle is not consistent about the letter it uses for the prime.
-        if (x.compareTo(prime) >= 0) {
-            // Cannot have point co-ordinates larger than this as everything takes place modulo Q.
-            return null;
-        }
-        // Compressed keys require you to know an extra bit of data about the y-coord as there are two possibilities.
-        // So it's encoded in the recId.
-        final ECPoint R = decompressKey(x, (recId & 1) == 1);
-        //   1.4. If nR != point at infinity, then do another iteration of Step 1 (callers responsibility).
-        if (!R.multiply(n).isInfinity())
-            return null;
-        //   1.5. Compute e from M using Steps 2 and 3 of ECDSA signature verification.
-        final BigInteger e = new BigInteger(1, messageHash);
-        //   1.6. For k from 1 to 2 do the following.   (loop is outside this function via iterating recId)
-        //   1.6.1. Compute a candidate public key as:
-        //               Q = mi(r) * (sR - eG)
-        //
-        // Where mi(x) is the modular multiplicative inverse. We transform this into the following:
-        //               Q = (mi(r) * s ** R) + (mi(r) * -e ** G)
-        // Where -e is the modular additive inverse of e, that is z such that z + e = 0 (mod n). In the above equation
-        // ** is point multiplication and + is point addition (the EC group operator).
-        //
-        // We can find the additive inverse by subtracting e from zero then taking the mod. For example the additive
-        // inverse of 3 modulo 11 is 8 because 3 + 8 mod 11 = 0, and -3 mod 11 = 8.
-        final BigInteger eInv = BigInteger.ZERO.subtract(e).mod(n);
-        final BigInteger rInv = sig.r.modInverse(n);
-        final BigInteger srInv = rInv.multiply(sig.s).mod(n);
-        final BigInteger eInvrInv = rInv.multiply(eInv).mod(n);
-        final ECPoint.Fp q = (ECPoint.Fp) ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), eInvrInv, R, srInv);
-        return q.getEncoded(/* compressed */ false);
+        // SEC1v2 4.1.6 steps 1.1 - 1.6.1 are done by the specialized curve implementation,
+        // nR is always the point at infinity (step 1.4) as the secp256k1 cofactor is 1
+        return Secp256k1.recoverPublicKey(recId, sig.r, sig.s, messageHash);
     }
 
     /**
@@ -662,20 +622,6 @@ public class ECKey implements Serializable {
         }
     }
 
-    /**
-     * Decompress a compressed public key (x co-ord and low-bit of y-coord).
-     *
-     * @param xBN -
-     * @param yBit -
-     * @return -
-     */
-    private static ECPoint decompressKey(final BigInteger xBN, final boolean yBit) {
-        final X9IntegerConverter x9 = new X9IntegerConverter();
-        final byte[] compEnc = x9.integerToBytes(xBN, 1 + x9.getByteLength(CURVE.getCurve()));
-        compEnc[0] = (byte) (yBit ? 0x03 : 0x02);
-        return CURVE.getCurve().decodePoint(compEnc);
-    }
-
     private static void check(final boolean test, final String message) {
         if (!test) throw new IllegalArgumentException(message);
     }
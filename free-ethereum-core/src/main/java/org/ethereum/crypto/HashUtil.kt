@@ -27,6 +27,7 @@
 package org.ethereum.crypto
 
 import org.ethereum.config.SystemProperties
+import org.ethereum.crypto.cryptohash.Keccak256
 import org.ethereum.crypto.jce.SpongyCastleProvider
 import org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY
 import org.ethereum.util.RLP
@@ -35,6 +36,7 @@ import org.slf4j.LoggerFactory
 import org.spongycastle.crypto.digests.RIPEMD160Digest
 import org.spongycastle.util.encoders.Hex
 import java.math.BigInteger
+import java.nio.ByteBuffer
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
 import java.security.Provider
@@ -55,6 +57,11 @@ object HashUtil {
 
     private val sha256digest: MessageDigest
 
+    private const val SHA3_LENGTH = 32
+    private const val KECCAK_256_ALGORITHM_NAME = "ETH-KECCAK-256"
+    // digests are stateful, keeping one per thread saves the provider lookup and allocation
+    private val sha3Digest = ThreadLocal.withInitial<MessageDigest> { newSha3Digest() }
+
     init {
         val props = SystemProperties.getDefault()
         Security.addProvider(SpongyCastleProvider.instance)
@@ -84,30 +91,15 @@ object HashUtil {
     }
 
     fun sha3(input: ByteArray): ByteArray {
-        val digest: MessageDigest
-        try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER)
-            digest.update(input)
-            return digest.digest()
-        } catch (e: NoSuchAlgorithmException) {
-            LOG.error("Can't find such algorithm", e)
-            throw RuntimeException(e)
-        }
-
+        return sha3(input, 0, input.size)
     }
 
     fun sha3(input1: ByteArray, input2: ByteArray): ByteArray {
-        val digest: MessageDigest
-        try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER)
+        return withSha3Digest { digest ->
             digest.update(input1, 0, input1.size)
             digest.update(input2, 0, input2.size)
-            return digest.digest()
-        } catch (e: NoSuchAlgorithmException) {
-            LOG.error("Can't find such algorithm", e)
-            throw RuntimeException(e)
+            digest.digest()
         }
-
     }
 
     /**
@@ -125,16 +117,90 @@ object HashUtil {
      * @return - keccak hash of the chunk
      */
     fun sha3(input: ByteArray, start: Int, length: Int): ByteArray {
-        val digest: MessageDigest
-        try {
-            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER)
+        return withSha3Digest { digest ->
             digest.update(input, start, length)
-            return digest.digest()
+            digest.digest()
+        }
+    }
+
+    /**
+     * Hashes the chunk of the data into out[outOffset, outOffset + 32) without allocating
+     */
+    fun sha3(input: ByteArray, start: Int, length: Int, out: ByteArray, outOffset: Int) {
+        withSha3Digest { digest ->
+            digest.update(input, start, length)
+            digest.digest(out, outOffset, SHA3_LENGTH)
+        }
+    }
+
+    /**
+     * @return keccak hash of the remaining bytes of the buffer, which is consumed
+     */
+    fun sha3(input: ByteBuffer): ByteArray {
+        return withSha3Digest { digest ->
+            digest.update(input)
+            digest.digest()
+        }
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer into out[outOffset, outOffset + 32)
+     */
+    fun sha3(input: ByteBuffer, out: ByteArray, outOffset: Int) {
+        withSha3Digest { digest ->
+            digest.update(input)
+            digest.digest(out, outOffset, SHA3_LENGTH)
+        }
+    }
+
+    /**
+     * Hashes each of the inputs, the results are written one after another
+     * starting from out[outOffset]
+     */
+    fun sha3Batch(inputs: Array<ByteArray>, out: ByteArray, outOffset: Int) {
+        withSha3Digest { digest ->
+            var off = outOffset
+            for (input in inputs) {
+                digest.update(input, 0, input.size)
+                digest.digest(out, off, SHA3_LENGTH)
+                off += SHA3_LENGTH
+            }
+        }
+    }
+
+    /**
+     * @return keccak hashes of the inputs in the same order
+     */
+    fun sha3Batch(inputs: List<ByteArray>): List<ByteArray> {
+        return withSha3Digest { digest ->
+            inputs.map { digest.digest(it) }
+        }
+    }
+
+    /**
+     * Runs the block with the calling thread's Keccak-256 state, which is left reset
+     * when the block completes or fails. The block must not call back into HashUtil.
+     */
+    private inline fun <T> withSha3Digest(block: (MessageDigest) -> T): T {
+        val digest = sha3Digest.get()
+        try {
+            return block(digest)
+        } catch (e: RuntimeException) {
+            digest.reset()
+            throw e
+        }
+    }
+
+    private fun newSha3Digest(): MessageDigest {
+        if (HASH_256_ALGORITHM_NAME == KECCAK_256_ALGORITHM_NAME) {
+            return Keccak256()
+        }
+        try {
+            return MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER)
         } catch (e: NoSuchAlgorithmException) {
             LOG.error("Can't find such algorithm", e)
             throw RuntimeException(e)
         }
-
     }
 
     fun sha512(input: ByteArray): ByteArray {
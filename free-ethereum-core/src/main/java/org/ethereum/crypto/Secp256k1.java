@@ -0,0 +1,713 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * Specialized secp256k1 arithmetic for public key recovery and signature verification.
+ *
+ * Field elements are 8 x 32-bit limbs (little endian) held in long[] and kept fully reduced,
+ * the reduction uses p = 2^256 - 0x1000003D1. Points are in Jacobian coordinates.
+ * u1 * G + u2 * Q is computed with the interleaved (Strauss) method where both scalars
+ * are split with the GLV endomorphism (x, y) -> (beta * x, y) = lambda * (x, y)
+ * into ~128-bit halves encoded in wNAF form; the odd multiples of G are precomputed.
+ *
+ * Scalar arithmetic modulo the curve order is left to BigInteger as it is done only
+ * a few times per operation.
+ */
+public final class Secp256k1 {
+
+    static final BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+    static final BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    static final BigInteger GX = new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16);
+    static final BigInteger GY = new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16);
+
+    // cube roots of unity: beta mod p and lambda mod n
+    static final BigInteger BETA = new BigInteger("7AE96A2B657C07106E64479EAC3434E99CF0497512F58995C1396C28719501EE", 16);
+    static final BigInteger LAMBDA = new BigInteger("5363AD4CC05C30E0A5261C028812645A122E22EA20816678DF02967C1B23BD72", 16);
+
+    // short basis of the lattice {(a, b): a + b * lambda = 0 mod n}
+    private static final BigInteger A1 = new BigInteger("3086D221A7D46BCDE86C90E49284EB15", 16);
+    private static final BigInteger B1 = new BigInteger("-E4437ED6010E88286F547FA90ABFE4C3", 16);
+    private static final BigInteger A2 = new BigInteger("114CA50F7A8E2F3F657C1108D9D44CFD8", 16);
+    private static final BigInteger B2 = A1;
+    private static final BigInteger HALF_N = N.shiftRight(1);
+
+    private static final long M = 0xFFFFFFFFL;
+    private static final long[] P_LIMBS = toLimbs(P);
+    private static final long[] ONE = toLimbs(BigInteger.ONE);
+    private static final long[] SEVEN = toLimbs(BigInteger.valueOf(7));
+    private static final long[] BETA_LIMBS = toLimbs(BETA);
+    private static final int[] INV_EXP = nibbles(P.subtract(BigInteger.valueOf(2)));
+    private static final int[] SQRT_EXP = nibbles(P.add(BigInteger.ONE).shiftRight(2));
+
+    private static final int G_WINDOW = 8;
+    private static final int Q_WINDOW = 5;
+
+    // affine odd multiples G, 3G, 5G... and their images under the endomorphism
+    private static final long[][] G_X = new long[1 << (G_WINDOW - 2)][];
+    private static final long[][] G_Y = new long[1 << (G_WINDOW - 2)][];
+    private static final long[][] G_BETA_X = new long[1 << (G_WINDOW - 2)][];
+
+    private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(Context::new);
+
+    static {
+        final Context ctx = new Context();
+        final Point[] table = ctx.oddMultiples(ctx.affine(toLimbs(GX), toLimbs(GY)), G_X.length);
+        final long[] zInv = new long[8];
+        final long[] zInv2 = new long[8];
+        for (int i = 0; i < table.length; i++) {
+            ctx.inv(table[i].z, zInv);
+            ctx.sqr(zInv, zInv2);
+            G_X[i] = new long[8];
+            G_Y[i] = new long[8];
+            G_BETA_X[i] = new long[8];
+            ctx.mul(table[i].x, zInv2, G_X[i]);
+            ctx.mul(zInv2, zInv, zInv2);
+            ctx.mul(table[i].y, zInv2, G_Y[i]);
+            ctx.mul(G_X[i], BETA_LIMBS, G_BETA_X[i]);
+        }
+    }
+
+    private Secp256k1() {
+    }
+
+    /**
+     * Recovers the public key according to SEC1v2 section 4.1.6, see
+     * {@link ECKey#recoverPubBytesFromSignature(int, ECKey.ECDSASignature, byte[])}
+     *
+     * @return 65-byte uncompressed public key or null if the recId doesn't yield a key
+     * @throws IllegalArgumentException if R is not on the curve
+     */
+    public static byte[] recoverPublicKey(final int recId, final BigInteger r, final BigInteger s, final byte[] messageHash) {
+        // x = r + jn
+        final BigInteger x = r.add(BigInteger.valueOf((long) recId / 2).multiply(N));
+        if (x.compareTo(P) >= 0) {
+            return null;
+        }
+        final Context ctx = CONTEXT.get();
+        final Point R = ctx.decompress(toLimbs(x), (recId & 1) == 1);
+        // nR is always the point at infinity as the cofactor is 1
+
+        // Q = r^-1 * (sR - eG)
+        final BigInteger e = new BigInteger(1, messageHash);
+        final BigInteger eInv = BigInteger.ZERO.subtract(e).mod(N);
+        final BigInteger rInv = r.modInverse(N);
+        final BigInteger srInv = rInv.multiply(s).mod(N);
+        final BigInteger eInvrInv = rInv.multiply(eInv).mod(N);
+        return ctx.encode(ctx.sumOfTwoMultiplies(eInvrInv, R, srInv));
+    }
+
+    /**
+     * Verifies the ECDSA signature the same way as spongycastle ECDSASigner does
+     *
+     * @param pub compressed or uncompressed public key
+     * @throws IllegalArgumentException if the public key encoding is invalid
+     */
+    public static boolean verify(final byte[] messageHash, final BigInteger r, final BigInteger s, final byte[] pub) {
+        final Context ctx = CONTEXT.get();
+        final Point q = ctx.decode(pub);
+
+        if (r.signum() <= 0 || r.compareTo(N) >= 0 || s.signum() <= 0 || s.compareTo(N) >= 0) {
+            return false;
+        }
+
+        BigInteger e = new BigInteger(1, messageHash);
+        if (messageHash.length * 8 > N.bitLength()) {
+            e = e.shiftRight(messageHash.length * 8 - N.bitLength());
+        }
+        final BigInteger c = s.modInverse(N);
+        final BigInteger u1 = e.multiply(c).mod(N);
+        final BigInteger u2 = r.multiply(c).mod(N);
+
+        final Point point = ctx.sumOfTwoMultiplies(u1, q, u2);
+        if (point.infinity) {
+            return false;
+        }
+        final long[] x = new long[8];
+        ctx.affineX(point, x);
+        return new BigInteger(1, toBytes(x)).mod(N).equals(r);
+    }
+
+    /**
+     * @return true if the public key encoding is supported by {@link #verify}
+     */
+    public static boolean isSupportedEncoding(final byte[] pub) {
+        return pub.length == 65 && pub[0] == 0x04 || pub.length == 33 && (pub[0] == 0x02 || pub[0] == 0x03);
+    }
+
+    /**
+     * Splits k into k1 + k2 * lambda (mod n) with k1, k2 of about 128 bits
+     */
+    static BigInteger[] split(final BigInteger k) {
+        final BigInteger c1 = B2.multiply(k).add(HALF_N).divide(N);
+        final BigInteger c2 = B1.negate().multiply(k).add(HALF_N).divide(N);
+        final BigInteger k1 = k.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+        final BigInteger k2 = c1.multiply(B1).add(c2.multiply(B2)).negate();
+        return new BigInteger[] {k1, k2};
+    }
+
+    /**
+     * Width-w non-adjacent form of k >= 0, least significant digit first.
+     * Non-zero digits are odd and lie in (-2^(w-1), 2^(w-1))
+     */
+    static int[] wnaf(final BigInteger k, final int w) {
+        final int len = k.bitLength() + 1;
+        final int[] ret = new int[len];
+        int carry = 0;
+        int bit = 0;
+        while (bit < len) {
+            if ((k.testBit(bit) ? 1 : 0) == carry) {
+                bit++;
+                continue;
+            }
+            final int now = Math.min(w, len - bit);
+            int word = carry;
+            for (int i = 0; i < now; i++) {
+                if (k.testBit(bit + i)) {
+                    word += 1 << i;
+                }
+            }
+            carry = (word >> (w - 1)) & 1;
+            word -= carry << w;
+            ret[bit] = word;
+            bit += now;
+        }
+        return ret;
+    }
+
+    static long[] toLimbs(final BigInteger v) {
+        final long[] ret = new long[8];
+        for (int i = 0; i < 8; i++) {
+            ret[i] = v.shiftRight(32 * i).longValue() & M;
+        }
+        return ret;
+    }
+
+    private static long[] toLimbs(final byte[] bytes, final int off) {
+        final long[] ret = new long[8];
+        for (int i = 0; i < 8; i++) {
+            final int p = off + 28 - 4 * i;
+            ret[i] = (bytes[p] & 0xFFL) << 24 | (bytes[p + 1] & 0xFFL) << 16 | (bytes[p + 2] & 0xFFL) << 8 | bytes[p + 3] & 0xFFL;
+        }
+        return ret;
+    }
+
+    private static void toBytes(final long[] a, final byte[] out, final int off) {
+        for (int i = 0; i < 8; i++) {
+            final int p = off + 28 - 4 * i;
+            out[p] = (byte) (a[i] >>> 24);
+            out[p + 1] = (byte) (a[i] >>> 16);
+            out[p + 2] = (byte) (a[i] >>> 8);
+            out[p + 3] = (byte) a[i];
+        }
+    }
+
+    private static byte[] toBytes(final long[] a) {
+        final byte[] ret = new byte[32];
+        toBytes(a, ret, 0);
+        return ret;
+    }
+
+    private static int[] nibbles(final BigInteger e) {
+        final int[] ret = new int[(e.bitLength() + 3) / 4];
+        for (int i = 0; i < ret.length; i++) {
+            ret[ret.length - 1 - i] = e.shiftRight(4 * i).intValue() & 0xF;
+        }
+        return ret;
+    }
+
+    private static boolean isZero(final long[] a) {
+        long ret = 0;
+        for (int i = 0; i < 8; i++) {
+            ret |= a[i];
+        }
+        return ret == 0;
+    }
+
+    private static boolean isGreaterOrEqualP(final long[] a) {
+        for (int i = 7; i >= 0; i--) {
+            if (a[i] != P_LIMBS[i]) {
+                return a[i] > P_LIMBS[i];
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOdd(final long[] a) {
+        return (a[0] & 1) != 0;
+    }
+
+    private static void subtractP(final long[] r) {
+        long borrow = 0;
+        for (int i = 0; i < 8; i++) {
+            final long d = r[i] - P_LIMBS[i] - borrow;
+            r[i] = d & M;
+            borrow = d >>> 63;
+        }
+    }
+
+    private static void add(final long[] a, final long[] b, final long[] r) {
+        long c = 0;
+        for (int i = 0; i < 8; i++) {
+            c += a[i] + b[i];
+            r[i] = c & M;
+            c >>>= 32;
+        }
+        if (c != 0 || isGreaterOrEqualP(r)) {
+            subtractP(r);
+        }
+    }
+
+    private static void sub(final long[] a, final long[] b, final long[] r) {
+        long borrow = 0;
+        for (int i = 0; i < 8; i++) {
+            final long d = a[i] - b[i] - borrow;
+            r[i] = d & M;
+            borrow = d >>> 63;
+        }
+        if (borrow != 0) {
+            long c = 0;
+            for (int i = 0; i < 8; i++) {
+                c += r[i] + P_LIMBS[i];
+                r[i] = c & M;
+                c >>>= 32;
+            }
+        }
+    }
+
+    private static void negate(final long[] a, final long[] r) {
+        if (isZero(a)) {
+            System.arraycopy(a, 0, r, 0, 8);
+        } else {
+            sub(P_LIMBS, a, r);
+        }
+    }
+
+    private static boolean equal(final long[] a, final long[] b) {
+        for (int i = 0; i < 8; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Point {
+        final long[] x = new long[8];
+        final long[] y = new long[8];
+        final long[] z = new long[8];
+        boolean infinity = true;
+
+        void set(final Point p) {
+            System.arraycopy(p.x, 0, x, 0, 8);
+            System.arraycopy(p.y, 0, y, 0, 8);
+            System.arraycopy(p.z, 0, z, 0, 8);
+            infinity = p.infinity;
+        }
+    }
+
+    /**
+     * Per thread scratch space
+     */
+    private static final class Context {
+        private final long[] wide = new long[16];
+        private final long[][] powTable = new long[16][8];
+        private final long[][] t = new long[14][8];
+
+        void mul(final long[] a, final long[] b, final long[] r) {
+            final long[] w = wide;
+            long c = 0;
+            final long a0 = a[0];
+            for (int j = 0; j < 8; j++) {
+                c += a0 * b[j];
+                w[j] = c & M;
+                c >>>= 32;
+            }
+            w[8] = c;
+            for (int i = 1; i < 8; i++) {
+                c = 0;
+                final long ai = a[i];
+                for (int j = 0; j < 8; j++) {
+                    // at most (2^32 - 1)^2 + 2 * (2^32 - 1) = 2^64 - 1
+                    c += ai * b[j] + w[i + j];
+                    w[i + j] = c & M;
+                    c >>>= 32;
+                }
+                w[i + 8] = c;
+            }
+            reduce(w, r);
+        }
+
+        void sqr(final long[] a, final long[] r) {
+            mul(a, a, r);
+        }
+
+        /**
+         * r = w mod p, with 2^256 = 2^32 + 977 (mod p)
+         */
+        private void reduce(final long[] w, final long[] r) {
+            long c = 0;
+            for (int i = 0; i < 8; i++) {
+                c += w[i] + w[8 + i] * 977 + (i > 0 ? w[7 + i] : 0);
+                r[i] = c & M;
+                c >>>= 32;
+            }
+            final long top = c + w[15];
+
+            c = r[0] + top * 977;
+            r[0] = c & M;
+            c >>>= 32;
+            c += r[1] + top;
+            r[1] = c & M;
+            c >>>= 32;
+            for (int i = 2; i < 8 && c != 0; i++) {
+                c += r[i];
+                r[i] = c & M;
+                c >>>= 32;
+            }
+            if (c != 0) {
+                c = r[0] + 977;
+                r[0] = c & M;
+                c >>>= 32;
+                c += r[1] + 1;
+                r[1] = c & M;
+                c >>>= 32;
+                for (int i = 2; i < 8 && c != 0; i++) {
+                    c += r[i];
+                    r[i] = c & M;
+                    c >>>= 32;
+                }
+            }
+            if (isGreaterOrEqualP(r)) {
+                subtractP(r);
+            }
+        }
+
+        private void pow(final long[] a, final int[] exp, final long[] r) {
+            final long[][] table = powTable;
+            System.arraycopy(ONE, 0, table[0], 0, 8);
+            System.arraycopy(a, 0, table[1], 0, 8);
+            for (int i = 2; i < 16; i++) {
+                mul(table[i - 1], a, table[i]);
+            }
+            System.arraycopy(table[exp[0]], 0, r, 0, 8);
+            for (int i = 1; i < exp.length; i++) {
+                sqr(r, r);
+                sqr(r, r);
+                sqr(r, r);
+                sqr(r, r);
+                if (exp[i] != 0) {
+                    mul(r, table[exp[i]], r);
+                }
+            }
+        }
+
+        void inv(final long[] a, final long[] r) {
+            pow(a, INV_EXP, r);
+        }
+
+        Point affine(final long[] x, final long[] y) {
+            final Point ret = new Point();
+            System.arraycopy(x, 0, ret.x, 0, 8);
+            System.arraycopy(y, 0, ret.y, 0, 8);
+            System.arraycopy(ONE, 0, ret.z, 0, 8);
+            ret.infinity = false;
+            return ret;
+        }
+
+        /**
+         * @throws IllegalArgumentException if there is no point with the given x
+         */
+        Point decompress(final long[] x, final boolean yOdd) {
+            final long[] rhs = t[0];
+            final long[] y = t[1];
+            final long[] check = t[2];
+            sqr(x, rhs);
+            mul(rhs, x, rhs);
+            add(rhs, SEVEN, rhs);
+            pow(rhs, SQRT_EXP, y);
+            sqr(y, check);
+            if (!equal(check, rhs)) {
+                throw new IllegalArgumentException("Invalid point compression");
+            }
+            if (isOdd(y) != yOdd) {
+                negate(y, y);
+            }
+            return affine(x, y);
+        }
+
+        Point decode(final byte[] pub) {
+            if (pub.length == 33 && (pub[0] == 0x02 || pub[0] == 0x03)) {
+                final long[] x = toLimbs(pub, 1);
+                if (isGreaterOrEqualP(x)) {
+                    throw new IllegalArgumentException("Invalid point compression");
+                }
+                return decompress(x, pub[0] == 0x03);
+            }
+            if (pub.length == 65 && pub[0] == 0x04) {
+                final long[] x = toLimbs(pub, 1);
+                final long[] y = toLimbs(pub, 33);
+                final long[] lhs = t[0];
+                final long[] rhs = t[1];
+                if (isGreaterOrEqualP(x) || isGreaterOrEqualP(y)) {
+                    throw new IllegalArgumentException("Invalid point coordinates");
+                }
+                sqr(y, lhs);
+                sqr(x, rhs);
+                mul(rhs, x, rhs);
+                add(rhs, SEVEN, rhs);
+                if (!equal(lhs, rhs)) {
+                    throw new IllegalArgumentException("Invalid point coordinates");
+                }
+                return affine(x, y);
+            }
+            throw new IllegalArgumentException("Invalid point encoding 0x" + Integer.toString(pub[0] & 0xFF, 16));
+        }
+
+        void affineX(final Point p, final long[] x) {
+            final long[] zInv = t[0];
+            inv(p.z, zInv);
+            sqr(zInv, zInv);
+            mul(p.x, zInv, x);
+        }
+
+        byte[] encode(final Point p) {
+            if (p.infinity) {
+                return new byte[1];
+            }
+            final long[] zInv = t[0];
+            final long[] zInv2 = t[1];
+            final long[] c = t[2];
+            final byte[] ret = new byte[65];
+            ret[0] = 0x04;
+            inv(p.z, zInv);
+            sqr(zInv, zInv2);
+            mul(p.x, zInv2, c);
+            toBytes(c, ret, 1);
+            mul(zInv2, zInv, zInv2);
+            mul(p.y, zInv2, c);
+            toBytes(c, ret, 33);
+            return ret;
+        }
+
+        void dbl(final Point p, final Point r) {
+            if (p.infinity || isZero(p.y)) {
+                r.infinity = true;
+                return;
+            }
+            final long[] a = t[0], b = t[1], c = t[2], d = t[3], e = t[4], f = t[5];
+            sqr(p.x, a);
+            sqr(p.y, b);
+            sqr(b, c);
+            // d = 2 * ((x + b)^2 - a - c)
+            add(p.x, b, d);
+            sqr(d, d);
+            sub(d, a, d);
+            sub(d, c, d);
+            add(d, d, d);
+            // e = 3 * a
+            add(a, a, e);
+            add(e, a, e);
+            sqr(e, f);
+            // z3 = 2 * y * z
+            mul(p.y, p.z, r.z);
+            add(r.z, r.z, r.z);
+            // x3 = f - 2 * d
+            sub(f, d, r.x);
+            sub(r.x, d, r.x);
+            // y3 = e * (d - x3) - 8 * c
+            sub(d, r.x, d);
+            mul(e, d, d);
+            add(c, c, c);
+            add(c, c, c);
+            add(c, c, c);
+            sub(d, c, r.y);
+            r.infinity = false;
+        }
+
+        /**
+         * r = p + (x2, +-y2), r may be the same as p
+         */
+        void addAffine(final Point p, final long[] x2, final long[] y2, final boolean negate, final Point r) {
+            if (p.infinity) {
+                System.arraycopy(x2, 0, r.x, 0, 8);
+                if (negate) {
+                    negate(y2, r.y);
+                } else {
+                    System.arraycopy(y2, 0, r.y, 0, 8);
+                }
+                System.arraycopy(ONE, 0, r.z, 0, 8);
+                r.infinity = false;
+                return;
+            }
+            final long[] z1z1 = t[6], u2 = t[7], s2 = t[8], h = t[9], rr = t[10];
+            sqr(p.z, z1z1);
+            mul(x2, z1z1, u2);
+            mul(p.z, z1z1, s2);
+            mul(s2, y2, s2);
+            if (negate) {
+                negate(s2, s2);
+            }
+            sub(u2, p.x, h);
+            sub(s2, p.y, rr);
+            if (isZero(h)) {
+                if (isZero(rr)) {
+                    dbl(p, r);
+                } else {
+                    r.infinity = true;
+                }
+                return;
+            }
+            finishAdd(p.x, p.y, p.z, null, h, rr, r);
+        }
+
+        /**
+         * r = p + q or p - q, r may be the same as p
+         */
+        void addPoint(final Point p, final Point q, final boolean negate, final Point r) {
+            if (p.infinity) {
+                r.set(q);
+                if (negate) {
+                    negate(r.y, r.y);
+                }
+                return;
+            }
+            final long[] z1z1 = t[6], z2z2 = t[7], s2 = t[8], h = t[9], rr = t[10], u1 = t[11], s1 = t[12], u2 = t[13];
+            sqr(p.z, z1z1);
+            sqr(q.z, z2z2);
+            mul(p.x, z2z2, u1);
+            mul(q.x, z1z1, u2);
+            mul(p.y, q.z, s1);
+            mul(s1, z2z2, s1);
+            mul(q.y, p.z, s2);
+            mul(s2, z1z1, s2);
+            if (negate) {
+                negate(s2, s2);
+            }
+            sub(u2, u1, h);
+            sub(s2, s1, rr);
+            if (isZero(h)) {
+                if (isZero(rr)) {
+                    dbl(p, r);
+                } else {
+                    r.infinity = true;
+                }
+                return;
+            }
+            finishAdd(u1, s1, p.z, q.z, h, rr, r);
+        }
+
+        /**
+         * x3 = rr^2 - h^3 - 2 * u1 * h^2, y3 = rr * (u1 * h^2 - x3) - s1 * h^3, z3 = z1 * z2 * h
+         */
+        private void finishAdd(final long[] u1, final long[] s1, final long[] z1, final long[] z2,
+                               final long[] h, final long[] rr, final Point r) {
+            final long[] hh = t[0], hhh = t[1], v = t[2], x3 = t[3], tmp = t[4];
+            sqr(h, hh);
+            mul(h, hh, hhh);
+            mul(u1, hh, v);
+            sqr(rr, x3);
+            sub(x3, hhh, x3);
+            sub(x3, v, x3);
+            sub(x3, v, x3);
+            mul(s1, hhh, tmp);
+            sub(v, x3, v);
+            mul(rr, v, v);
+            sub(v, tmp, r.y);
+            if (z2 != null) {
+                mul(z1, z2, r.z);
+                mul(r.z, h, r.z);
+            } else {
+                mul(z1, h, r.z);
+            }
+            System.arraycopy(x3, 0, r.x, 0, 8);
+            r.infinity = false;
+        }
+
+        /**
+         * @return p, 3p, 5p...
+         */
+        Point[] oddMultiples(final Point p, final int count) {
+            final Point[] ret = new Point[count];
+            final Point twice = new Point();
+            dbl(p, twice);
+            ret[0] = new Point();
+            ret[0].set(p);
+            for (int i = 1; i < count; i++) {
+                ret[i] = new Point();
+                addPoint(ret[i - 1], twice, false, ret[i]);
+            }
+            return ret;
+        }
+
+        /**
+         * @return u1 * G + u2 * q
+         */
+        Point sumOfTwoMultiplies(final BigInteger u1, final Point q, final BigInteger u2) {
+            final BigInteger[] g = split(u1);
+            final BigInteger[] k = split(u2);
+            final int[] wg1 = wnaf(g[0].abs(), G_WINDOW);
+            final int[] wg2 = wnaf(g[1].abs(), G_WINDOW);
+            final int[] wq1 = wnaf(k[0].abs(), Q_WINDOW);
+            final int[] wq2 = wnaf(k[1].abs(), Q_WINDOW);
+
+            final Point[] qTable = oddMultiples(q, 1 << (Q_WINDOW - 2));
+            final Point[] qBetaTable = new Point[qTable.length];
+            for (int i = 0; i < qTable.length; i++) {
+                qBetaTable[i] = new Point();
+                qBetaTable[i].set(qTable[i]);
+                mul(qTable[i].x, BETA_LIMBS, qBetaTable[i].x);
+            }
+
+            final Point ret = new Point();
+            final int len = Math.max(Math.max(wg1.length, wg2.length), Math.max(wq1.length, wq2.length));
+            for (int i = len - 1; i >= 0; i--) {
+                if (!ret.infinity) {
+                    dbl(ret, ret);
+                }
+                if (i < wg1.length && wg1[i] != 0) {
+                    final int d = wg1[i];
+                    addAffine(ret, G_X[Math.abs(d) >> 1], G_Y[Math.abs(d) >> 1], (d < 0) != (g[0].signum() < 0), ret);
+                }
+                if (i < wg2.length && wg2[i] != 0) {
+                    final int d = wg2[i];
+                    addAffine(ret, G_BETA_X[Math.abs(d) >> 1], G_Y[Math.abs(d) >> 1], (d < 0) != (g[1].signum() < 0), ret);
+                }
+                if (i < wq1.length && wq1[i] != 0) {
+                    final int d = wq1[i];
+                    addPoint(ret, qTable[Math.abs(d) >> 1], (d < 0) != (k[0].signum() < 0), ret);
+                }
+                if (i < wq2.length && wq2[i] != 0) {
+                    final int d = wq2[i];
+                    addPoint(ret, qBetaTable[Math.abs(d) >> 1], (d < 0) != (k[1].signum() < 0), ret);
+                }
+            }
+            return ret;
+        }
+    }
+}
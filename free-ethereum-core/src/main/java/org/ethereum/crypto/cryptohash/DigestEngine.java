@@ -28,6 +28,7 @@
 
 package org.ethereum.crypto.cryptohash;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 
 public abstract class DigestEngine extends MessageDigest implements Digest {
@@ -165,6 +166,33 @@ public abstract class DigestEngine extends MessageDigest implements Digest {
 		}
 	}
 
+	/**
+	 * Insert the remaining bytes of the buffer without an intermediate
+	 * copy when it is backed by an accessible array. This is what
+	 * {@code MessageDigest.update(ByteBuffer)} ends up calling.
+	 *
+	 * @param input   the data buffer, consumed up to its limit
+	 */
+	@Override
+	protected void engineUpdate(final ByteBuffer input) {
+		if (input.hasArray()) {
+			final int len = input.remaining();
+			update(input.array(), input.arrayOffset() + input.position(), len);
+			input.position(input.position() + len);
+			return;
+		}
+		while (input.hasRemaining()) {
+			final int copyLen = Math.min(blockLen - inputLen, input.remaining());
+			input.get(inputBuf, inputLen, copyLen);
+			inputLen += copyLen;
+			if (inputLen == blockLen) {
+				processBlock(inputBuf);
+				blockCount ++;
+				inputLen = 0;
+			}
+		}
+	}
+
 	/**
 	 * Get the internal block length. This is the length (in
 	 * bytes) of the array which will be passed as parameter to
@@ -40,14 +40,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public abstract class AsyncWriteCache<Key, Value> extends AbstractCachedSource<Key, Value> implements AsyncFlushable {
     private static final Logger logger = LoggerFactory.getLogger("db");
 
+    // a thread per concurrently flushed cache as the caches are flushed in parallel
     private static final ListeningExecutorService flushExecutor = MoreExecutors.listeningDecorator(
-            Executors.newFixedThreadPool(2, new ThreadFactoryBuilder().setNameFormat("AsyncWriteCacheThread-%d").build()));
+            Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("AsyncWriteCacheThread-%d").build()));
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     private final ALock rLock = new ALock(rwLock.readLock());
     private final ALock wLock = new ALock(rwLock.writeLock());
     private final WriteCache<Key, Value> flushingCache;
     private volatile WriteCache<Key, Value> curCache;
     private ListenableFuture<Boolean> lastFlush = Futures.immediateFuture(false);
+    private volatile long generation;
     private String name = "<null>";
 
     public AsyncWriteCache(final Source<Key, Value> source) {
@@ -123,9 +125,17 @@ public abstract class AsyncWriteCache<Key, Value> extends AbstractCachedSource<K
         try (ALock l = wLock.lock()) {
             flushingCache.cache = curCache.cache;
             curCache = createCache(flushingCache);
+            generation++;
         }
     }
 
+    /**
+     * @return number of the storage flips, i.e. of the write cache generations handed over to flushing
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     public synchronized ListenableFuture<Boolean> flushAsync() {
         logger.debug("AsyncWriteCache (" + name + "): flush submitted");
         lastFlush = flushExecutor.submit(() -> {
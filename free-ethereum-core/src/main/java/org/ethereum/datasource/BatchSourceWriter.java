@@ -37,11 +37,37 @@ import java.util.Map;
 public class BatchSourceWriter<Key, Value> extends AbstractChainedSource<Key, Value, Key, Value> {
 
     private final Map<Key, Value> buf = new HashMap<>();
+    private MemSizeEstimator<Key> keySizeEstimator;
+    private MemSizeEstimator<Value> valueSizeEstimator;
+    private long maxBatchSize = 0;
+    private long bytesWritten = 0;
 
     public BatchSourceWriter(final BatchSource<Key, Value> src) {
         super(src);
     }
 
+    /**
+     * Splits the flushed changes into batches of the given size in bytes
+     * to bound the memory taken by the DB to apply them. The changes are
+     * then no more applied atomically
+     * @param maxBatchSize 0 to write all the changes in a single batch
+     */
+    public BatchSourceWriter<Key, Value> withMaxBatchSize(final long maxBatchSize,
+                                                         final MemSizeEstimator<Key> keySizeEstimator,
+                                                         final MemSizeEstimator<Value> valueSizeEstimator) {
+        this.maxBatchSize = maxBatchSize;
+        this.keySizeEstimator = keySizeEstimator;
+        this.valueSizeEstimator = valueSizeEstimator;
+        return this;
+    }
+
+    /**
+     * @return estimated size of the changes written to the DB, 0 if no estimators are set
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
     private BatchSource<Key, Value> getBatchSource() {
         return (BatchSource<Key, Value>) getSource();
     }
@@ -64,11 +90,45 @@ public class BatchSourceWriter<Key, Value> extends AbstractChainedSource<Key, Va
     @Override
     public synchronized boolean flushImpl() {
         if (!buf.isEmpty()) {
-            getBatchSource().updateBatch(buf);
+            if (keySizeEstimator == null) {
+                getBatchSource().updateBatch(buf);
+            } else {
+                writeBatches();
+            }
             buf.clear();
             return true;
         } else {
             return false;
         }
     }
+
+    private long estimateSize(final Map.Entry<Key, Value> entry) {
+        return keySizeEstimator.estimateSize(entry.getKey()) + valueSizeEstimator.estimateSize(entry.getValue());
+    }
+
+    private void writeBatches() {
+        if (maxBatchSize == 0) {
+            for (final Map.Entry<Key, Value> entry : buf.entrySet()) {
+                bytesWritten += estimateSize(entry);
+            }
+            getBatchSource().updateBatch(buf);
+            return;
+        }
+        final Map<Key, Value> batch = new HashMap<>();
+        long batchSize = 0;
+        for (final Map.Entry<Key, Value> entry : buf.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            batchSize += estimateSize(entry);
+            if (batchSize >= maxBatchSize) {
+                getBatchSource().updateBatch(batch);
+                bytesWritten += batchSize;
+                batch.clear();
+                batchSize = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            getBatchSource().updateBatch(batch);
+            bytesWritten += batchSize;
+        }
+    }
 }
@@ -27,64 +27,76 @@
 package org.ethereum.datasource;
 
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.util.ByteUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Special optimization when the majority of get requests to the slower underlying source
  * are targeted to missing entries. The BloomFilter handles most of these requests.
  *
+ * The filter is a {@link SegmentedQuotientFilter} which grows with the source and
+ * persists its modified segments only. The deleted keys stay in the filter as false
+ * positives: the deletes reaching this source include keys the filter never had, e.g. from
+ * {@link CountingBytesSource}, and removing their fingerprints could hide live keys.
+ *
  * Created by Anton Nashatyrev on 16.01.2017.
  */
 public class BloomedSource extends AbstractChainedSource<byte[], byte[], byte[], byte[]> {
     private final static Logger logger = LoggerFactory.getLogger("db");
 
+    private static final int SEGMENTS = 64;
+
+    // the single filter of the earlier versions, an empty one marks the filter disabled forever
     private final byte[] filterKey = HashUtil.INSTANCE.sha3("filterKey".getBytes());
+    private final byte[] segmentsKey = HashUtil.INSTANCE.sha3("filterSegments".getBytes());
     private final int maxBloomSize;
-    private QuotientFilter filter;
-    private int hits = 0;
-    private int misses = 0;
-    private int falseMisses = 0;
-    private boolean dirty = false;
+    private volatile SegmentedQuotientFilter filter;
+    // filter of the earlier versions which is still checked for the keys it has
+    private QuotientFilter legacyFilter;
+    private boolean sizeWarned = false;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong falseMisses = new AtomicLong();
 
     public BloomedSource(final Source<byte[], byte[]> source, final int maxBloomSize) {
         super(source);
         this.maxBloomSize = maxBloomSize;
+        final byte[] segmentCount = source.get(segmentsKey);
         final byte[] filterBytes = source.get(filterKey);
-        if (filterBytes != null) {
-            if (filterBytes.length > 0) {
-                filter = QuotientFilter.deserialize(filterBytes);
-            } else {
-                // filter size exceeded limit and is disabled forever
-                filter = null;
+        if (segmentCount != null) {
+            filter = new SegmentedQuotientFilter(ByteUtil.byteArrayToInt(segmentCount), 50_000_000, 100_000);
+            for (int i = 0; i < filter.getSegmentCount(); i++) {
+                final byte[] segment = source.get(segmentKey(i));
+                if (segment != null) {
+                    filter.deserializeSegment(i, segment);
+                }
             }
-        } else {
-            if (maxBloomSize > 0) {
-                filter = QuotientFilter.create(50_000_000, 100_000);
-            } else {
-                // we can't re-enable filter later
-                getSource().put(filterKey, new byte[0]);
+            if (filterBytes != null && filterBytes.length > 0) {
+                legacyFilter = QuotientFilter.deserialize(filterBytes);
             }
+        } else if (filterBytes != null && filterBytes.length == 0) {
+            // filter was disabled and doesn't know the keys written since then
+            filter = null;
+        } else if (maxBloomSize > 0) {
+            if (filterBytes != null) {
+                legacyFilter = QuotientFilter.deserialize(filterBytes);
+            }
+            filter = new SegmentedQuotientFilter(SEGMENTS, 50_000_000, 100_000);
+            getSource().put(segmentsKey, ByteUtil.intToBytes(SEGMENTS));
+        } else {
+            // we can't re-enable filter later
+            getSource().put(filterKey, new byte[0]);
         }
-//
-//        new Thread() {
-//            @Override
-//            public void run() {
-//                while(true) {
-//                    synchronized (BloomedSource.this) {
-//                        logger.debug("BloomedSource: hits: " + hits + ", misses: " + misses + ", false: " + falseMisses);
-//                        hits = misses = falseMisses = 0;
-//                    }
-//
-//                    try {
-//                        Thread.sleep(5000);
-//                    } catch (InterruptedException e) {}
-//                }
-//            }
-//        }.start();
     }
 
-    public void startBlooming(final QuotientFilter filter) {
+    private byte[] segmentKey(final int segment) {
+        return HashUtil.INSTANCE.sha3(ByteUtil.merge(segmentsKey, ByteUtil.intToBytes(segment)));
+    }
+
+    public void startBlooming(final SegmentedQuotientFilter filter) {
         this.filter = filter;
     }
 
@@ -92,50 +104,96 @@ public class BloomedSource extends AbstractChainedSource<byte[], byte[], byte[],
         filter = null;
     }
 
+    public SegmentedQuotientFilter getFilter() {
+        return filter;
+    }
+
     @Override
     public void put(final byte[] key, final byte[] val) {
+        final SegmentedQuotientFilter filter = this.filter;
         if (filter != null) {
             filter.insert(key);
-            dirty = true;
-            if (filter.getAllocatedBytes() > maxBloomSize) {
-                logger.info("Bloom filter became too large (" + filter.getAllocatedBytes() + " exceeds max threshold " + maxBloomSize + ") and is now disabled forever.");
-                getSource().put(filterKey, new byte[0]);
-                filter = null;
-                dirty = false;
-            }
         }
         getSource().put(key, val);
     }
 
     @Override
     public byte[] get(final byte[] key) {
+        final SegmentedQuotientFilter filter = this.filter;
         if (filter == null) return getSource().get(key);
 
-        if (!filter.maybeContains(key)) {
-            hits++;
+        if (!filter.maybeContains(key) && !legacyContains(key)) {
+            hits.incrementAndGet();
             return null;
         } else {
             final byte[] ret = getSource().get(key);
-            if (ret == null) falseMisses++;
-            else misses++;
+            if (ret == null) falseMisses.incrementAndGet();
+            else misses.incrementAndGet();
             return ret;
         }
     }
 
+    private boolean legacyContains(final byte[] key) {
+        final QuotientFilter legacyFilter = this.legacyFilter;
+        return legacyFilter != null && legacyFilter.maybeContains(key);
+    }
+
     @Override
     public void delete(final byte[] key) {
-        if (filter != null) filter.remove(key);
         getSource().delete(key);
     }
 
     @Override
     protected boolean flushImpl() {
-        if (filter != null && dirty) {
-            getSource().put(filterKey, filter.serialize());
-            dirty = false;
-            return true;
-        } else {
-            return false;
+        final SegmentedQuotientFilter filter = this.filter;
+        if (filter == null) return false;
+
+        boolean ret = false;
+        for (int i = 0; i < filter.getSegmentCount(); i++) {
+            if (filter.isDirty(i)) {
+                getSource().put(segmentKey(i), filter.serializeSegment(i));
+                ret = true;
+            }
+        }
+        if (ret && !sizeWarned && filter.getAllocatedBytes() > maxBloomSize) {
+            logger.warn("Bloom filter size " + filter.getAllocatedBytes() + " exceeds cache.maxStateBloomSize " + maxBloomSize +
+                    " with " + filter.getEntries() + " entries");
+            sizeWarned = true;
         }
+        if (logger.isDebugEnabled()) {
+            logger.debug("BloomedSource: hits: " + hits + ", misses: " + misses + ", false: " + falseMisses +
+                    ", false positive rate: " + String.format("%.4f", getFalsePositiveRate()) + ", filters: " + filter.getFilterCount());
+        }
+        return ret;
+    }
+
+    /**
+     * @return gets answered by the filter without reading the source
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return gets of the existing keys
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return gets of the missing keys the filter failed to answer
+     */
+    public long getFalseMisses() {
+        return falseMisses.get();
+    }
+
+    /**
+     * @return measured share of the missing keys the filter reported as maybe present
+     */
+    public double getFalsePositiveRate() {
+        final long falseMisses = this.falseMisses.get();
+        final long total = falseMisses + hits.get();
+        return total == 0 ? 0 : (double) falseMisses / total;
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+/**
+ * Tuning options of a key-value database, the defaults are the ones
+ * the single 'blockchain' database has always been opened with
+ */
+public class DbSettings {
+
+    private int maxOpenFiles = 32;
+    private int blockSize = 10 * 1024 * 1024;
+    private int writeBufferSize = 10 * 1024 * 1024;
+    private long cacheSize = 0;
+    private boolean compression = false;
+
+    public static DbSettings newInstance() {
+        return new DbSettings();
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public DbSettings withMaxOpenFiles(final int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+        return this;
+    }
+
+    /**
+     * @return size in bytes of the blocks the table files are read by
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public DbSettings withBlockSize(final int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * @return size in bytes of the memtable collecting writes before they go to a table file
+     */
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    public DbSettings withWriteBufferSize(final int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    /**
+     * @return size in bytes of the database own block cache, 0 to disable it
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public DbSettings withCacheSize(final long cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public DbSettings withCompression(final boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "DbSettings{" +
+                "maxOpenFiles=" + maxOpenFiles +
+                ", blockSize=" + blockSize +
+                ", writeBufferSize=" + writeBufferSize +
+                ", cacheSize=" + cacheSize +
+                ", compression=" + compression +
+                '}';
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import com.google.common.util.concurrent.Striped;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves the rows of a legacy Source into a new one as they are accessed.
+ *
+ * The values missing in the backing Source are looked up in the legacy one
+ * and moved, deletes are applied to both so a deleted row doesn't come back
+ * from the legacy Source.
+ *
+ * The rows already in the backing Source are read without locking, only
+ * the move of a row and the writes are serialized by a lock striped by key
+ * so that a move never overwrites a concurrent put or delete of the same key
+ */
+public class MigratingSource extends AbstractChainedSource<byte[], byte[], byte[], byte[]> {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Source<byte[], byte[]> legacySource;
+    private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+    private final AtomicLong migrated = new AtomicLong();
+
+    public MigratingSource(final Source<byte[], byte[]> source, final Source<byte[], byte[]> legacySource) {
+        super(source);
+        this.legacySource = legacySource;
+        setFlushSource(true);
+    }
+
+    @Override
+    public void put(final byte[] key, final byte[] val) {
+        final Lock lock = lock(key);
+        try {
+            getSource().put(key, val);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] get(final byte[] key) {
+        final byte[] ret = getSource().get(key);
+        return ret != null ? ret : migrate(key);
+    }
+
+    private byte[] migrate(final byte[] key) {
+        final Lock lock = lock(key);
+        try {
+            // the row may have been moved or written while waiting for the lock
+            byte[] ret = getSource().get(key);
+            if (ret == null) {
+                ret = legacySource.get(key);
+                if (ret != null) {
+                    getSource().put(key, ret);
+                    legacySource.delete(key);
+                    migrated.incrementAndGet();
+                }
+            }
+            return ret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(final byte[] key) {
+        final Lock lock = lock(key);
+        try {
+            getSource().delete(key);
+            legacySource.delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lock lock(final byte[] key) {
+        final Lock lock = locks.get(new ByteArrayWrapper(key));
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * @return number of the rows moved from the legacy Source
+     */
+    public long getMigrated() {
+        return migrated.get();
+    }
+
+    @Override
+    protected boolean flushImpl() {
+        return false;
+    }
+}
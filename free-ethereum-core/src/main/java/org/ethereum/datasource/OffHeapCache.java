@@ -0,0 +1,660 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read cache of byte[] keys and values kept off the heap in direct memory
+ *
+ * The memory budget is split into lock-striped segments, each having its own hash index,
+ * frequency sketch and data pages. A page is assigned to a size class on demand and split into
+ * chunks of the class size, an entry takes a chunk of the smallest class which fits it. A page which
+ * drains is given back and may be assigned to another class later. When a class has no free chunks
+ * its least recently used entry is the eviction victim, which is replaced only if the new entry was
+ * accessed at least as frequently (TinyLFU admission), so a scan of cold nodes doesn't wipe out the hot ones.
+ * If the class has no entries, or the least recently used entry of the class holding the most pages is
+ * colder than its own victim, the page of that entry is evicted as a whole and moved to the class instead,
+ * so the pages follow the shifts of the entry sizes.
+ *
+ * The index, the sketch and the pages are all allocated up front within the budget.
+ * Like the {@link ReadCache} it is a write-through cache, missing values are not cached.
+ */
+public class OffHeapCache extends AbstractCachedSource<byte[], byte[]> implements CachedSource.BytesKey<byte[]> {
+
+    private static final int MIN_SEGMENT_SIZE = 16 << 20;
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MAX_PAGE_SIZE = 1 << 20;
+    private static final int MIN_PAGE_SIZE = 4 << 10;
+    private static final int MIN_CHUNK_SIZE = 64;
+    // expected average entry size, the index and the sketch are sized by it
+    private static final int AVG_ENTRY_SIZE = 256;
+
+    // chunk header: next entry in the index bucket, LRU links, key hash, key and value lengths
+    private static final int BUCKET_NEXT = 0;
+    private static final int LRU_PREV = 4;
+    private static final int LRU_NEXT = 8;
+    private static final int HASH = 12;
+    private static final int KEY_LENGTH = 16;
+    private static final int VALUE_LENGTH = 18;
+    private static final int HEADER_SIZE = 22;
+    private static final int NONE = -1;
+    // value length of a free chunk
+    private static final int FREE = -1;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final long capacity;
+
+    /**
+     * @param capacity memory budget in bytes
+     */
+    public OffHeapCache(final Source<byte[], byte[]> src, final long capacity) {
+        super(src);
+        int count = 1;
+        while (count < MAX_SEGMENTS && capacity / (count * 2) >= MIN_SEGMENT_SIZE) {
+            count *= 2;
+        }
+        while (capacity / count > MAX_SEGMENT_SIZE) {
+            count *= 2;
+        }
+        final int segmentSize = (int) (capacity / count);
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        long allocated = 0;
+        for (final Segment segment : segments) {
+            allocated += segment.allocated();
+        }
+        this.capacity = allocated;
+    }
+
+    static int hash(final byte[] key) {
+        int h = 1;
+        for (final byte b : key) {
+            h = 31 * h + b;
+        }
+        // murmur3 finalizer
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment segment(final int hash) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    @Override
+    public void put(final byte[] key, final byte[] val) {
+        if (val == null) {
+            delete(key);
+        } else {
+            final int hash = hash(key);
+            segment(hash).put(key, val, hash, true);
+            getSource().put(key, val);
+        }
+    }
+
+    @Override
+    public byte[] get(final byte[] key) {
+        final int hash = hash(key);
+        final Segment segment = segment(hash);
+        byte[] ret = segment.get(key, hash);
+        if (ret == null) {
+            ret = getSource().get(key);
+            if (ret != null) {
+                segment.put(key, ret, hash, false);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void delete(final byte[] key) {
+        final int hash = hash(key);
+        segment(hash).delete(key, hash);
+        getSource().delete(key);
+    }
+
+    @Override
+    protected boolean flushImpl() {
+        return false;
+    }
+
+    @Override
+    Entry<byte[]> getCached(final byte[] key) {
+        final int hash = hash(key);
+        final byte[] value = segment(hash).peek(key, hash);
+        return value == null ? null : new SimpleEntry<>(value);
+    }
+
+    @Override
+    public Collection<byte[]> getModified() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean hasModified() {
+        return false;
+    }
+
+    /**
+     * @return bytes taken by the cached keys and values including the chunk headers
+     */
+    @Override
+    public long estimateCacheSize() {
+        long ret = 0;
+        for (final Segment segment : segments) {
+            ret += segment.stat(s -> s.usedBytes);
+        }
+        return ret;
+    }
+
+    /**
+     * @return direct memory allocated by the cache
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getEntryCount() {
+        return sum(s -> s.entries);
+    }
+
+    public long getHits() {
+        return sum(s -> s.hits);
+    }
+
+    public long getMisses() {
+        return sum(s -> s.misses);
+    }
+
+    public long getEvictions() {
+        return sum(s -> s.evictions);
+    }
+
+    /**
+     * @return number of the entries not cached as they were accessed less frequently than the eviction victims
+     */
+    public long getRejections() {
+        return sum(s -> s.rejections);
+    }
+
+    private long sum(final Stat stat) {
+        long ret = 0;
+        for (final Segment segment : segments) {
+            ret += segment.stat(stat);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapCache{capacity=" + capacity + ", used=" + estimateCacheSize() + ", entries=" + getEntryCount() +
+                ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() +
+                ", rejections=" + getRejections() + "}";
+    }
+
+    private interface Stat {
+        long get(Segment segment);
+    }
+
+    /**
+     * Count-min sketch of 4-bit access counters which are halved periodically so that
+     * the frequencies reflect the recent accesses
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb9a7d5b7, 0x2fa8d7e1, 0xc34b9e2d};
+
+        private final ByteBuffer counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(final int width, final int sampleSize) {
+            counters = ByteBuffer.allocateDirect(width / 2);
+            mask = width - 1;
+            this.sampleSize = sampleSize;
+        }
+
+        int allocated() {
+            return counters.capacity();
+        }
+
+        private int index(final int hash, final int i) {
+            int h = hash * SEEDS[i];
+            h ^= h >>> 17;
+            return h & mask;
+        }
+
+        private int counter(final int index) {
+            return (counters.get(index >>> 1) >>> ((index & 1) << 2)) & 0xF;
+        }
+
+        void increment(final int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = index(hash, i);
+                if (counter(index) < 15) {
+                    final int b = counters.get(index >>> 1);
+                    counters.put(index >>> 1, (byte) (b + (1 << ((index & 1) << 2))));
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < counters.capacity(); i++) {
+                    counters.put(i, (byte) ((counters.get(i) >>> 1) & 0x77));
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(final int hash) {
+            int ret = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                ret = Math.min(ret, counter(index(hash, i)));
+            }
+            return ret;
+        }
+    }
+
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer data;
+        // for the bulk reads and writes under the lock
+        private final ByteBuffer view;
+        private final ByteBuffer index;
+        private final int indexMask;
+        private final FrequencySketch sketch;
+
+        private final int pageSize;
+        private final int[] chunkSizes;
+        private final byte[] pageClasses;
+        private final int[] pageEntries;
+        private final int[] classPages;
+        private int nextPage;
+        private final int[] freePages;
+        private int freePageCount;
+        private final int[] lruHeads;
+        private final int[] lruTails;
+        private final int[][] freeChunks;
+        private final int[] freeCounts;
+
+        long hits;
+        long misses;
+        long evictions;
+        long rejections;
+        long entries;
+        long usedBytes;
+
+        Segment(final int size) {
+            int buckets = 16;
+            while (buckets < size / AVG_ENTRY_SIZE) {
+                buckets *= 2;
+            }
+            index = ByteBuffer.allocateDirect(buckets * 4);
+            for (int i = 0; i < buckets; i++) {
+                index.putInt(i * 4, NONE);
+            }
+            indexMask = buckets - 1;
+            // 16 counters per expected entry, halved after 10 accesses per entry on average
+            sketch = new FrequencySketch(buckets * 16, buckets * 10);
+
+            int page = MAX_PAGE_SIZE;
+            while (page > MIN_PAGE_SIZE && page > size / 64) {
+                page /= 2;
+            }
+            pageSize = page;
+            final int pages = (size - index.capacity() - sketch.allocated()) / pageSize;
+            data = ByteBuffer.allocateDirect(Math.max(0, pages) * pageSize);
+            view = data.duplicate();
+            pageClasses = new byte[Math.max(0, pages)];
+            pageEntries = new int[pageClasses.length];
+            freePages = new int[pageClasses.length];
+
+            int classes = 0;
+            final int[] sizes = new int[64];
+            for (int chunk = MIN_CHUNK_SIZE; chunk < pageSize; chunk = (chunk + chunk / 4 + 7) & ~7) {
+                sizes[classes++] = chunk;
+            }
+            sizes[classes++] = pageSize;
+            chunkSizes = new int[classes];
+            System.arraycopy(sizes, 0, chunkSizes, 0, classes);
+            lruHeads = new int[classes];
+            lruTails = new int[classes];
+            Arrays.fill(lruHeads, NONE);
+            Arrays.fill(lruTails, NONE);
+            freeChunks = new int[classes][];
+            freeCounts = new int[classes];
+            classPages = new int[classes];
+        }
+
+        long allocated() {
+            return (long) data.capacity() + index.capacity() + sketch.allocated();
+        }
+
+        long stat(final Stat stat) {
+            lock.lock();
+            try {
+                return stat.get(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int sizeClass(final int size) {
+            for (int i = 0; i < chunkSizes.length; i++) {
+                if (chunkSizes[i] >= size) return i;
+            }
+            return NONE;
+        }
+
+        private int chunkClass(final int chunk) {
+            return pageClasses[chunk / pageSize];
+        }
+
+        private int find(final byte[] key, final int hash) {
+            int chunk = index.getInt((hash & indexMask) * 4);
+            while (chunk != NONE) {
+                if (data.getInt(chunk + HASH) == hash && keyEquals(chunk, key)) {
+                    return chunk;
+                }
+                chunk = data.getInt(chunk + BUCKET_NEXT);
+            }
+            return NONE;
+        }
+
+        private boolean keyEquals(final int chunk, final byte[] key) {
+            if ((data.getShort(chunk + KEY_LENGTH) & 0xFFFF) != key.length) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (data.get(chunk + HEADER_SIZE + i) != key[i]) return false;
+            }
+            return true;
+        }
+
+        private byte[] readValue(final int chunk) {
+            final byte[] ret = new byte[data.getInt(chunk + VALUE_LENGTH)];
+            view.position(chunk + HEADER_SIZE + (data.getShort(chunk + KEY_LENGTH) & 0xFFFF));
+            view.get(ret);
+            return ret;
+        }
+
+        private int entrySize(final int chunk) {
+            return HEADER_SIZE + (data.getShort(chunk + KEY_LENGTH) & 0xFFFF) + data.getInt(chunk + VALUE_LENGTH);
+        }
+
+        byte[] get(final byte[] key, final int hash) {
+            lock.lock();
+            try {
+                sketch.increment(hash);
+                final int chunk = find(key, hash);
+                if (chunk == NONE) {
+                    misses++;
+                    return null;
+                }
+                hits++;
+                lruUnlink(chunk);
+                lruLink(chunk);
+                return readValue(chunk);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        byte[] peek(final byte[] key, final int hash) {
+            lock.lock();
+            try {
+                final int chunk = find(key, hash);
+                return chunk == NONE ? null : readValue(chunk);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @param access true if the entry is accessed, false if it is only filled after a miss
+         */
+        void put(final byte[] key, final byte[] value, final int hash, final boolean access) {
+            final int size = HEADER_SIZE + key.length + value.length;
+            final int sizeClass = key.length <= 0xFFFF ? sizeClass(size) : NONE;
+            lock.lock();
+            try {
+                if (access) {
+                    sketch.increment(hash);
+                }
+                final int existing = find(key, hash);
+                if (existing != NONE) {
+                    remove(existing);
+                }
+                if (sizeClass == NONE) return;
+                final int chunk = allocate(sizeClass, hash);
+                if (chunk == NONE) return;
+
+                data.putInt(chunk + HASH, hash);
+                data.putShort(chunk + KEY_LENGTH, (short) key.length);
+                data.putInt(chunk + VALUE_LENGTH, value.length);
+                view.position(chunk + HEADER_SIZE);
+                view.put(key);
+                view.put(value);
+                final int bucket = (hash & indexMask) * 4;
+                data.putInt(chunk + BUCKET_NEXT, index.getInt(bucket));
+                index.putInt(bucket, chunk);
+                lruLink(chunk);
+                pageEntries[chunk / pageSize]++;
+                entries++;
+                usedBytes += size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void delete(final byte[] key, final int hash) {
+            lock.lock();
+            try {
+                final int chunk = find(key, hash);
+                if (chunk != NONE) {
+                    remove(chunk);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return free chunk of the class or NONE if the entry isn't admitted
+         */
+        private int allocate(final int sizeClass, final int hash) {
+            if (freeCounts[sizeClass] == 0) {
+                if (freePageCount > 0) {
+                    assignPage(freePages[--freePageCount], sizeClass);
+                } else if (nextPage < pageClasses.length) {
+                    assignPage(nextPage++, sizeClass);
+                }
+            }
+            if (freeCounts[sizeClass] > 0) {
+                return freeChunks[sizeClass][--freeCounts[sizeClass]];
+            }
+            final int frequency = sketch.frequency(hash);
+            final int victim = lruTails[sizeClass];
+            final int victimFrequency = victim == NONE ? Integer.MAX_VALUE : sketch.frequency(data.getInt(victim + HASH));
+            final int donor = donorClass(sizeClass);
+            if (donor != NONE) {
+                final int donorVictim = lruTails[donor];
+                final int donorFrequency = sketch.frequency(data.getInt(donorVictim + HASH));
+                if (donorFrequency < victimFrequency && frequency >= donorFrequency) {
+                    final int page = donorVictim / pageSize;
+                    evictPage(page);
+                    assignPage(page, sizeClass);
+                    return freeChunks[sizeClass][--freeCounts[sizeClass]];
+                }
+            }
+            if (frequency < victimFrequency) {
+                rejections++;
+                return NONE;
+            }
+            evictions++;
+            unlink(victim);
+            return victim;
+        }
+
+        /**
+         * @return class other than the given one holding the most pages or NONE if there are none
+         */
+        private int donorClass(final int sizeClass) {
+            int ret = NONE;
+            for (int i = 0; i < classPages.length; i++) {
+                if (i != sizeClass && classPages[i] > 0 && (ret == NONE || classPages[i] > classPages[ret])) {
+                    ret = i;
+                }
+            }
+            return ret;
+        }
+
+        private void assignPage(final int page, final int sizeClass) {
+            pageClasses[page] = (byte) sizeClass;
+            classPages[sizeClass]++;
+            final int chunkSize = chunkSizes[sizeClass];
+            final int count = pageSize / chunkSize;
+            final int[] free = freeChunks[sizeClass];
+            if (free == null || free.length < freeCounts[sizeClass] + count) {
+                final int[] newFree = new int[Math.max(freeCounts[sizeClass] + count, free == null ? 0 : free.length * 2)];
+                if (free != null) System.arraycopy(free, 0, newFree, 0, freeCounts[sizeClass]);
+                freeChunks[sizeClass] = newFree;
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                final int chunk = page * pageSize + i * chunkSize;
+                data.putInt(chunk + VALUE_LENGTH, FREE);
+                freeChunks[sizeClass][freeCounts[sizeClass]++] = chunk;
+            }
+        }
+
+        /**
+         * Evicts all the entries of the page and takes its chunks off the free list of its class
+         */
+        private void evictPage(final int page) {
+            final int chunkSize = chunkSizes[pageClasses[page]];
+            for (int chunk = page * pageSize; chunk + chunkSize <= (page + 1) * pageSize; chunk += chunkSize) {
+                if (data.getInt(chunk + VALUE_LENGTH) != FREE) {
+                    evictions++;
+                    unlink(chunk);
+                }
+            }
+            releasePage(page);
+        }
+
+        private void releasePage(final int page) {
+            final int sizeClass = pageClasses[page];
+            final int[] free = freeChunks[sizeClass];
+            int count = 0;
+            for (int i = 0; i < freeCounts[sizeClass]; i++) {
+                if (free[i] / pageSize != page) {
+                    free[count++] = free[i];
+                }
+            }
+            freeCounts[sizeClass] = count;
+            classPages[sizeClass]--;
+        }
+
+        private void remove(final int chunk) {
+            unlink(chunk);
+            data.putInt(chunk + VALUE_LENGTH, FREE);
+            final int sizeClass = chunkClass(chunk);
+            int[] free = freeChunks[sizeClass];
+            if (free.length == freeCounts[sizeClass]) {
+                free = Arrays.copyOf(free, free.length * 2);
+                freeChunks[sizeClass] = free;
+            }
+            free[freeCounts[sizeClass]++] = chunk;
+            final int page = chunk / pageSize;
+            if (pageEntries[page] == 0) {
+                releasePage(page);
+                freePages[freePageCount++] = page;
+            }
+        }
+
+        /**
+         * Removes the entry from the index and the LRU list
+         */
+        private void unlink(final int chunk) {
+            final int bucket = (data.getInt(chunk + HASH) & indexMask) * 4;
+            int prev = NONE;
+            int cur = index.getInt(bucket);
+            while (cur != chunk) {
+                prev = cur;
+                cur = data.getInt(cur + BUCKET_NEXT);
+            }
+            final int next = data.getInt(chunk + BUCKET_NEXT);
+            if (prev == NONE) {
+                index.putInt(bucket, next);
+            } else {
+                data.putInt(prev + BUCKET_NEXT, next);
+            }
+            lruUnlink(chunk);
+            pageEntries[chunk / pageSize]--;
+            entries--;
+            usedBytes -= entrySize(chunk);
+        }
+
+        private void lruLink(final int chunk) {
+            final int sizeClass = chunkClass(chunk);
+            final int head = lruHeads[sizeClass];
+            data.putInt(chunk + LRU_PREV, NONE);
+            data.putInt(chunk + LRU_NEXT, head);
+            if (head != NONE) {
+                data.putInt(head + LRU_PREV, chunk);
+            } else {
+                lruTails[sizeClass] = chunk;
+            }
+            lruHeads[sizeClass] = chunk;
+        }
+
+        private void lruUnlink(final int chunk) {
+            final int sizeClass = chunkClass(chunk);
+            final int prev = data.getInt(chunk + LRU_PREV);
+            final int next = data.getInt(chunk + LRU_NEXT);
+            if (prev == NONE) {
+                lruHeads[sizeClass] = next;
+            } else {
+                data.putInt(prev + LRU_NEXT, next);
+            }
+            if (next == NONE) {
+                lruTails[sizeClass] = prev;
+            } else {
+                data.putInt(next + LRU_PREV, prev);
+            }
+        }
+    }
+}
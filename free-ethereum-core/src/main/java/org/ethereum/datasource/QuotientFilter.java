@@ -672,6 +672,24 @@ private byte QUOTIENT_BITS;
         return table.length << 3;
     }
 
+    public synchronized long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return fingerprint bits left after the quotient, each resize takes one of them
+     */
+    public synchronized int getRemainderBits() {
+        return REMAINDER_BITS;
+    }
+
+    /**
+     * @return true if the next insert resizes the filter
+     */
+    public synchronized boolean isFull() {
+        return entries >= MAX_INSERTIONS;
+    }
+
     public void clear() {
         entries = 0;
         Arrays.fill(table, 0L);
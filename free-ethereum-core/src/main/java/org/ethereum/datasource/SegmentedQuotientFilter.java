@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPList;
+
+import java.util.Arrays;
+
+/**
+ * Quotient filter split into independently locked segments which grows without limit
+ *
+ * A key is assigned to a segment by its last byte, i.e. by other bits than the
+ * first 8 bytes the {@link QuotientFilter} hashes, so lookups of the different
+ * segments don't contend. Each segment is a stack of quotient filters: the newest one
+ * doubles itself while it has enough fingerprint bits left to keep the false positive
+ * rate low and a new one is pushed when it runs out of them. Lookups check all the
+ * filters of the segment.
+ *
+ * Keys can't be removed: a matching fingerprint doesn't prove the key was inserted
+ * into that filter, and removing it could drop the fingerprint of another live key.
+ *
+ * The segments are serialized separately so only the modified ones need to be persisted.
+ */
+public class SegmentedQuotientFilter {
+
+    private static final int MIN_REMAINDER_BITS = 8;
+
+    private final long largestNumberOfElements;
+    private final long startingElements;
+    private final Segment[] segments;
+
+    /**
+     * @param segmentCount power of 2 up to 256
+     * @param largestNumberOfElements expected elements of all the segments
+     * @param startingElements initial capacity of all the segments
+     */
+    public SegmentedQuotientFilter(final int segmentCount, final long largestNumberOfElements, final long startingElements) {
+        if (segmentCount < 1 || segmentCount > 256 || Integer.bitCount(segmentCount) != 1) {
+            throw new IllegalArgumentException("Segment count should be a power of 2 up to 256: " + segmentCount);
+        }
+        this.largestNumberOfElements = Math.max(1, largestNumberOfElements / segmentCount);
+        this.startingElements = Math.max(1, Math.min(this.largestNumberOfElements, startingElements / segmentCount));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    private Segment segment(final byte[] key) {
+        return segments[key[key.length - 1] & (segments.length - 1)];
+    }
+
+    public void insert(final byte[] key) {
+        segment(key).insert(key);
+    }
+
+    public boolean maybeContains(final byte[] key) {
+        return segment(key).maybeContains(key);
+    }
+
+    public boolean isDirty(final int segment) {
+        return segments[segment].dirty;
+    }
+
+    /**
+     * Serializes the segment and marks it as persisted
+     */
+    public byte[] serializeSegment(final int segment) {
+        return segments[segment].serialize();
+    }
+
+    public void deserializeSegment(final int segment, final byte[] bytes) {
+        segments[segment].deserialize(bytes);
+    }
+
+    public long getAllocatedBytes() {
+        long ret = 0;
+        for (final Segment segment : segments) {
+            ret += segment.getAllocatedBytes();
+        }
+        return ret;
+    }
+
+    public long getEntries() {
+        long ret = 0;
+        for (final Segment segment : segments) {
+            ret += segment.getEntries();
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of the quotient filters in all the segments
+     */
+    public int getFilterCount() {
+        int ret = 0;
+        for (final Segment segment : segments) {
+            ret += segment.getFilterCount();
+        }
+        return ret;
+    }
+
+    private class Segment {
+        // the newest filter is the last one
+        private QuotientFilter[] filters = {create()};
+        private volatile boolean dirty;
+
+        private QuotientFilter create() {
+            return QuotientFilter.create(largestNumberOfElements, startingElements);
+        }
+
+        synchronized void insert(final byte[] key) {
+            QuotientFilter filter = filters[filters.length - 1];
+            if (filter.isFull() && filter.getRemainderBits() <= MIN_REMAINDER_BITS) {
+                filters = Arrays.copyOf(filters, filters.length + 1);
+                filters[filters.length - 1] = filter = create();
+            }
+            filter.insert(key);
+            dirty = true;
+        }
+
+        synchronized boolean maybeContains(final byte[] key) {
+            for (int i = filters.length - 1; i >= 0; i--) {
+                if (filters[i].maybeContains(key)) return true;
+            }
+            return false;
+        }
+
+        synchronized byte[] serialize() {
+            final byte[][] encoded = new byte[filters.length][];
+            for (int i = 0; i < filters.length; i++) {
+                encoded[i] = RLP.encodeElement(filters[i].serialize());
+            }
+            dirty = false;
+            return RLP.encodeList(encoded);
+        }
+
+        synchronized void deserialize(final byte[] bytes) {
+            final RLPList list = (RLPList) RLP.decode2(bytes).get(0);
+            final QuotientFilter[] ret = new QuotientFilter[list.size()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = QuotientFilter.deserialize(list.get(i).getRLPData());
+            }
+            filters = ret;
+            dirty = false;
+        }
+
+        synchronized long getAllocatedBytes() {
+            long ret = 0;
+            for (final QuotientFilter filter : filters) {
+                ret += filter.getAllocatedBytes();
+            }
+            return ret;
+        }
+
+        synchronized long getEntries() {
+            long ret = 0;
+            for (final QuotientFilter filter : filters) {
+                ret += filter.getEntries();
+            }
+            return ret;
+        }
+
+        synchronized int getFilterCount() {
+            return filters.length;
+        }
+    }
+}
@@ -27,6 +27,7 @@
 package org.ethereum.datasource.leveldb;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.DbSettings;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.util.FileUtil;
 import org.iq80.leveldb.*;
@@ -40,9 +41,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -67,6 +70,12 @@ public class LevelDbDataSource implements DbSource<byte[]> {
     private String name;
     private DB db;
     private boolean alive;
+    private DbSettings settings = DbSettings.newInstance();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeBytes = new AtomicLong();
 
     public LevelDbDataSource() {
     }
@@ -81,6 +90,18 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         this.config = config;
     }
 
+    /**
+     * Sets the options the database is opened with on the next {@link #init()}
+     */
+    public LevelDbDataSource withSettings(final DbSettings settings) {
+        this.settings = settings;
+        return this;
+    }
+
+    public DbSettings getSettings() {
+        return settings;
+    }
+
     @Override
     public void init() {
         resetDbLock.writeLock().lock();
@@ -93,20 +114,20 @@ public class LevelDbDataSource implements DbSource<byte[]> {
 
             final Options options = new Options();
             options.createIfMissing(true);
-            options.compressionType(CompressionType.NONE);
-            options.blockSize(10 * 1024 * 1024);
-            options.writeBufferSize(10 * 1024 * 1024);
-            options.cacheSize(0);
+            options.compressionType(settings.isCompression() ? CompressionType.SNAPPY : CompressionType.NONE);
+            options.blockSize(settings.getBlockSize());
+            options.writeBufferSize(settings.getWriteBufferSize());
+            options.cacheSize(settings.getCacheSize());
             options.paranoidChecks(true);
             options.verifyChecksums(true);
-            options.maxOpenFiles(32);
+            options.maxOpenFiles(settings.getMaxOpenFiles());
 
             try {
                 logger.debug("Opening database");
                 final Path dbPath = getPath();
                 if (!Files.isSymbolicLink(dbPath.getParent())) Files.createDirectories(dbPath.getParent());
 
-                logger.debug("Initializing new or existing database: '{}'", name);
+                logger.debug("Initializing new or existing database: '{}' {}", name, settings);
                 try {
                     db = factory.open(dbPath.toFile(), options);
                 } catch (final IOException e) {
@@ -183,16 +204,17 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         resetDbLock.readLock().lock();
         try {
             if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key));
+            byte[] ret;
             try {
-                final byte[] ret = db.get(key);
-                if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key) + ", " + (ret == null ? "null" : ret.length));
-                return ret;
+                ret = db.get(key);
             } catch (final DBException e) {
                 logger.warn("Exception. Retrying again...", e);
-                final byte[] ret = db.get(key);
-                if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key) + ", " + (ret == null ? "null" : ret.length));
-                return ret;
+                ret = db.get(key);
             }
+            if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key) + ", " + (ret == null ? "null" : ret.length));
+            reads.incrementAndGet();
+            if (ret != null) readBytes.addAndGet(ret.length);
+            return ret;
         } finally {
             resetDbLock.readLock().unlock();
         }
@@ -204,6 +226,8 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         try {
             if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.put(): " + name + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
             db.put(key, value);
+            writes.incrementAndGet();
+            writeBytes.addAndGet(key.length + value.length);
             if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.put(): " + name + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
         } finally {
             resetDbLock.readLock().unlock();
@@ -216,6 +240,8 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         try {
             if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.delete(): " + name + ", key: " + Hex.toHexString(key));
             db.delete(key);
+            writes.incrementAndGet();
+            writeBytes.addAndGet(key.length);
             if (logger.isTraceEnabled()) logger.trace("<~ LevelDbDataSource.delete(): " + name + ", key: " + Hex.toHexString(key));
         } finally {
             resetDbLock.readLock().unlock();
@@ -244,16 +270,21 @@ public class LevelDbDataSource implements DbSource<byte[]> {
     }
 
     private void updateBatchInternal(final Map<byte[], byte[]> rows) throws IOException {
+        long bytes = 0;
         try (WriteBatch batch = db.createWriteBatch()) {
             for (final Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
                 if (entry.getValue() == null) {
                     batch.delete(entry.getKey());
                 } else {
                     batch.put(entry.getKey(), entry.getValue());
+                    bytes += entry.getValue().length;
                 }
+                bytes += entry.getKey().length;
             }
             db.write(batch);
         }
+        writes.addAndGet(rows.size());
+        writeBytes.addAndGet(bytes);
     }
 
     @Override
@@ -285,6 +316,65 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         return false;
     }
 
+    /**
+     * @return number of the key reads since the database was created
+     */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @return total size of the values read
+     */
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    /**
+     * @return number of the rows written or deleted since the database was created
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * @return total size of the keys and values written
+     */
+    public long getWriteBytes() {
+        return writeBytes.get();
+    }
+
+    /**
+     * @return size in bytes of the database files
+     */
+    public long getSizeOnDisk() {
+        final Path dbPath = getPath();
+        if (!Files.isDirectory(dbPath)) return 0;
+        try (Stream<Path> files = Files.list(dbPath)) {
+            return files.mapToLong(f -> f.toFile().length()).sum();
+        } catch (final IOException e) {
+            logger.warn("Can't list the database files: " + dbPath, e);
+            return 0;
+        }
+    }
+
+    /**
+     * @return per level table sizes and compaction IO as reported by LevelDB
+     */
+    public String getCompactionStats() {
+        resetDbLock.readLock().lock();
+        try {
+            return isAlive() ? db.getProperty("leveldb.stats") : "";
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    public String getStats() {
+        return String.format("%s: %d reads (%d bytes), %d writes (%d bytes), %d bytes on disk",
+                name, getReads(), getReadBytes(), getWrites(), getWriteBytes(), getSizeOnDisk());
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
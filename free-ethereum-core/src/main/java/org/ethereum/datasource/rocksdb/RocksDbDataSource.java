@@ -0,0 +1,440 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource.rocksdb;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.DbSettings;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.util.FileUtil;
+import org.rocksdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * RocksDB database, the DbSource methods access its default column family
+ * and {@link #getColumnFamily(String)} gives the other ones.
+ *
+ * Each column family is tuned with the {@link SystemProperties#dbSettings(String)}
+ * of its name and gets a bloom filter, the block cache is shared by all of them
+ */
+public class RocksDbDataSource implements DbSource<byte[]> {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+    private static final String DEFAULT_FAMILY = new String(RocksDB.DEFAULT_COLUMN_FAMILY, UTF_8);
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    // same as in LevelDbDataSource: reads and writes run concurrently
+    // but not with init/close which would crash the native code
+    private final ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
+    private final Map<String, ColumnFamilyHandle> families = new ConcurrentHashMap<>();
+    private final Map<String, ColumnFamilySource> familySources = new ConcurrentHashMap<>();
+    private final List<AbstractNativeReference> resources = new ArrayList<>();
+    private SystemProperties config = SystemProperties.getDefault(); // initialized for standalone test
+    private String name;
+    private RocksDB db;
+    private Cache blockCache;
+    private WriteOptions writeOptions;
+    private boolean alive;
+
+    public RocksDbDataSource() {
+    }
+
+    public RocksDbDataSource(final String name) {
+        this.name = name;
+        logger.debug("New RocksDbDataSource: " + name);
+    }
+
+    @Autowired
+    public RocksDbDataSource(final SystemProperties config) {
+        this.config = config;
+    }
+
+    @Override
+    public void init() {
+        resetDbLock.writeLock().lock();
+        try {
+            logger.debug("~> RocksDbDataSource.init(): " + name);
+
+            if (isAlive()) return;
+
+            if (name == null) throw new NullPointerException("no name set to the db");
+
+            final DbSettings settings = config.dbSettings(name);
+            blockCache = keep(new LRUCache(config.rocksDbBlockCacheSize()));
+            writeOptions = keep(new WriteOptions());
+            final DBOptions options = keep(new DBOptions());
+            options.setCreateIfMissing(true);
+            options.setCreateMissingColumnFamilies(true);
+            options.setParanoidChecks(true);
+            options.setMaxOpenFiles(settings.getMaxOpenFiles());
+
+            try {
+                final Path dbPath = getPath();
+                if (!Files.isSymbolicLink(dbPath.getParent())) Files.createDirectories(dbPath.getParent());
+
+                final List<String> names = new ArrayList<>();
+                names.add(DEFAULT_FAMILY);
+                for (final byte[] family : listColumnFamilies(dbPath)) {
+                    final String familyName = new String(family, UTF_8);
+                    if (!names.contains(familyName)) names.add(familyName);
+                }
+                final List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+                for (final String familyName : names) {
+                    descriptors.add(descriptor(familyName));
+                }
+
+                logger.debug("Initializing new or existing database: '{}' {} families {}", name, settings, names);
+                final List<ColumnFamilyHandle> handles = new ArrayList<>();
+                db = RocksDB.open(options, dbPath.toString(), descriptors, handles);
+                for (int i = 0; i < names.size(); i++) {
+                    families.put(names.get(i), handles.get(i));
+                }
+
+                alive = true;
+            } catch (final IOException | RocksDBException e) {
+                logger.error(e.getMessage(), e);
+                throw new RuntimeException("Can't initialize database", e);
+            }
+            logger.debug("<~ RocksDbDataSource.init(): " + name);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    private static List<byte[]> listColumnFamilies(final Path dbPath) throws RocksDBException {
+        if (!Files.exists(dbPath.resolve("CURRENT"))) return Collections.emptyList();
+        try (Options options = new Options()) {
+            return RocksDB.listColumnFamilies(options, dbPath.toString());
+        }
+    }
+
+    private <T extends AbstractNativeReference> T keep(final T resource) {
+        resources.add(resource);
+        return resource;
+    }
+
+    private ColumnFamilyDescriptor descriptor(final String familyName) {
+        final DbSettings settings = config.dbSettings(DEFAULT_FAMILY.equals(familyName) ? name : familyName);
+        final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                .setBlockSize(settings.getBlockSize())
+                .setBlockCache(blockCache)
+                .setFilter(keep(new BloomFilter(config.rocksDbBloomFilterBits(), false)))
+                .setCacheIndexAndFilterBlocks(true)
+                .setPinL0FilterAndIndexBlocksInCache(true);
+        final ColumnFamilyOptions options = keep(new ColumnFamilyOptions())
+                .setTableFormatConfig(tableConfig)
+                .setWriteBufferSize(settings.getWriteBufferSize())
+                .setCompressionType(settings.isCompression() ? CompressionType.LZ4_COMPRESSION : CompressionType.NO_COMPRESSION);
+        return new ColumnFamilyDescriptor(familyName.getBytes(UTF_8), options);
+    }
+
+    /**
+     * @return handle of the column family, which is created if missing
+     */
+    private ColumnFamilyHandle family(final String familyName) {
+        final ColumnFamilyHandle ret = families.get(familyName);
+        if (ret != null) return ret;
+        // the caller holds the read lock which can't be upgraded,
+        // the families are created rarely so a separate monitor is fine
+        synchronized (families) {
+            return families.computeIfAbsent(familyName, n -> {
+                try {
+                    logger.debug("Creating column family '{}' in '{}'", n, name);
+                    return db.createColumnFamily(descriptor(n));
+                } catch (final RocksDBException e) {
+                    throw new RuntimeException("Can't create column family " + n, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return source over the named column family of this database, it is
+     * alive as long as the database and isn't closed on its own
+     */
+    public DbSource<byte[]> getColumnFamily(final String familyName) {
+        return familySources.computeIfAbsent(familyName, ColumnFamilySource::new);
+    }
+
+    private Path getPath() {
+        return Paths.get(config.databaseDir(), name);
+    }
+
+    public void reset() {
+        close();
+        FileUtil.recursiveDelete(getPath().toString());
+        init();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    private byte[] get(final String familyName, final byte[] key) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.get(): " + name + "/" + familyName + ", key: " + Hex.toHexString(key));
+            final byte[] ret = db.get(family(familyName), key);
+            if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.get(): " + name + "/" + familyName + ", key: " + Hex.toHexString(key) + ", " + (ret == null ? "null" : ret.length));
+            return ret;
+        } catch (final RocksDBException e) {
+            logger.error("Failed to get from db '{}/{}'", name, familyName, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private void put(final String familyName, final byte[] key, final byte[] value) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.put(): " + name + "/" + familyName + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
+            if (value == null) {
+                db.delete(family(familyName), writeOptions, key);
+            } else {
+                db.put(family(familyName), writeOptions, key, value);
+            }
+        } catch (final RocksDBException e) {
+            logger.error("Failed to put into db '{}/{}'", name, familyName, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private void updateBatch(final String familyName, final Map<byte[], byte[]> rows) {
+        resetDbLock.readLock().lock();
+        try (WriteBatch batch = new WriteBatch()) {
+            if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.updateBatch(): " + name + "/" + familyName + ", " + rows.size());
+            final ColumnFamilyHandle family = family(familyName);
+            for (final Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+                if (entry.getValue() == null) {
+                    batch.delete(family, entry.getKey());
+                } else {
+                    batch.put(family, entry.getKey(), entry.getValue());
+                }
+            }
+            db.write(writeOptions, batch);
+            if (logger.isTraceEnabled()) logger.trace("<~ RocksDbDataSource.updateBatch(): " + name + "/" + familyName + ", " + rows.size());
+        } catch (final RocksDBException e) {
+            logger.error("Failed to update batch in db '{}/{}'", name, familyName, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the keys starting with the prefix, all of them for an empty prefix
+     */
+    private Set<byte[]> keys(final String familyName, final byte[] prefix) {
+        resetDbLock.readLock().lock();
+        try (RocksIterator iterator = db.newIterator(family(familyName))) {
+            final Set<byte[]> result = new HashSet<>();
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                final byte[] key = iterator.key();
+                if (!startsWith(key, prefix)) break;
+                result.add(key);
+            }
+            return result;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    private static boolean startsWith(final byte[] key, final byte[] prefix) {
+        if (key.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] get(final byte[] key) {
+        return get(DEFAULT_FAMILY, key);
+    }
+
+    @Override
+    public void put(final byte[] key, final byte[] value) {
+        put(DEFAULT_FAMILY, key, value);
+    }
+
+    @Override
+    public void delete(final byte[] key) {
+        put(DEFAULT_FAMILY, key, null);
+    }
+
+    @Override
+    public Set<byte[]> keys() {
+        return keys(DEFAULT_FAMILY, new byte[0]);
+    }
+
+    /**
+     * @return the keys starting with the prefix, found with a single seek
+     */
+    public Set<byte[]> keys(final byte[] prefix) {
+        return keys(DEFAULT_FAMILY, prefix);
+    }
+
+    @Override
+    public void updateBatch(final Map<byte[], byte[]> rows) {
+        updateBatch(DEFAULT_FAMILY, rows);
+    }
+
+    @Override
+    public boolean flush() {
+        return false;
+    }
+
+    /**
+     * @return per level table sizes and compaction IO as reported by RocksDB
+     */
+    public String getCompactionStats() {
+        resetDbLock.readLock().lock();
+        try {
+            return isAlive() ? db.getProperty("rocksdb.stats") : "";
+        } catch (final RocksDBException e) {
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        resetDbLock.writeLock().lock();
+        try {
+            if (!isAlive()) return;
+
+            logger.debug("Close db: {}", name);
+            for (final ColumnFamilyHandle handle : families.values()) {
+                handle.close();
+            }
+            families.clear();
+            db.close();
+            for (final AbstractNativeReference resource : resources) {
+                resource.close();
+            }
+            resources.clear();
+
+            alive = false;
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Column family accessed as a separate database
+     */
+    private class ColumnFamilySource implements DbSource<byte[]> {
+        private final String familyName;
+
+        ColumnFamilySource(final String familyName) {
+            this.familyName = familyName;
+        }
+
+        @Override
+        public void setName(final String name) {
+            throw new UnsupportedOperationException("Column family can't be renamed");
+        }
+
+        @Override
+        public String getName() {
+            return name + "/" + familyName;
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return RocksDbDataSource.this.isAlive();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Set<byte[]> keys() {
+            return RocksDbDataSource.this.keys(familyName, new byte[0]);
+        }
+
+        @Override
+        public void updateBatch(final Map<byte[], byte[]> rows) {
+            RocksDbDataSource.this.updateBatch(familyName, rows);
+        }
+
+        @Override
+        public void put(final byte[] key, final byte[] val) {
+            RocksDbDataSource.this.put(familyName, key, val);
+        }
+
+        @Override
+        public byte[] get(final byte[] key) {
+            return RocksDbDataSource.this.get(familyName, key);
+        }
+
+        @Override
+        public void delete(final byte[] key) {
+            RocksDbDataSource.this.put(familyName, key, null);
+        }
+
+        @Override
+        public boolean flush() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.util.RLP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only archive of the canonical blocks, numbered from the genesis.
+ *
+ * The blocks are written to segment files of a fixed number of blocks, the
+ * header and the body of each one next to each other, and a fixed width index
+ * file per segment holds their offsets. The segments are read through memory
+ * mapping so a range of blocks is a sequential read of a single file
+ */
+public class BlockArchive {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    // header, body and end offsets
+    private static final int ENTRY_SIZE = 3 * Long.BYTES;
+
+    private final File dir;
+    private final int segmentBlocks;
+    private final List<Segment> segments = new ArrayList<>();
+    private long size;
+
+    public BlockArchive(final File dir, final int segmentBlocks) {
+        this.dir = dir;
+        this.segmentBlocks = segmentBlocks;
+        open();
+    }
+
+    private void open() {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Can't create the block archive dir " + dir));
+        }
+        for (int i = 0; ; i++) {
+            if (!segmentFile(i, "idx").exists()) break;
+            final Segment segment = new Segment((long) i * segmentBlocks, segmentFile(i, "dat"), segmentFile(i, "idx"));
+            segments.add(segment);
+            size = segment.first + segment.count;
+            if (segment.count < segmentBlocks) break;
+        }
+        logger.info("Block archive opened with {} blocks in {} segments", size, segments.size());
+    }
+
+    private File segmentFile(final int index, final String extension) {
+        return new File(dir, String.format("blocks-%06d.%s", index, extension));
+    }
+
+    /**
+     * @return number of the archived blocks, which is the number of the next one
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Appends the block, it isn't durable until {@link #sync()}
+     */
+    public synchronized void append(final Block block) {
+        if (block.getNumber() != size) {
+            throw new IllegalArgumentException("Block #" + block.getNumber() + " doesn't follow the archived #" + (size - 1));
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.count == segmentBlocks) {
+            if (segment != null) segment.sync();
+            final int index = segments.size();
+            segment = new Segment((long) index * segmentBlocks, segmentFile(index, "dat"), segmentFile(index, "idx"));
+            segments.add(segment);
+        }
+        final byte[] header = block.getHeader().getEncoded();
+        final byte[] body = block.getEncodedBody();
+        if (segment.dataSize + header.length + body.length > Integer.MAX_VALUE) {
+            // a segment is mapped as a whole
+            throw new IllegalStateException("Block archive segment exceeds 2Gb, segmentBlocks should be lower");
+        }
+        segment.append(header, body);
+        size++;
+    }
+
+    /**
+     * Forces the appended blocks to the disk
+     */
+    public synchronized void sync() {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).sync();
+        }
+    }
+
+    private Segment segment(final long number) {
+        if (number < 0 || number >= size) return null;
+        return segments.get((int) (number / segmentBlocks));
+    }
+
+    /**
+     * @return encoded header, a read-only view of the mapped segment, or null if not archived
+     */
+    public synchronized ByteBuffer getHeader(final long number) {
+        final Segment segment = segment(number);
+        return segment == null ? null : segment.slice(number - segment.first, 0);
+    }
+
+    /**
+     * @return encoded body as sent in the BlockBodies message, a read-only
+     * view of the mapped segment, or null if not archived
+     */
+    public synchronized ByteBuffer getBody(final long number) {
+        final Segment segment = segment(number);
+        return segment == null ? null : segment.slice(number - segment.first, 1);
+    }
+
+    public synchronized Block getBlock(final long number) {
+        final ByteBuffer header = getHeader(number);
+        if (header == null) return null;
+        final ByteBuffer body = getBody(number);
+        // the block is the header followed by the body elements
+        final int prefixByte = body.get(body.position()) & 0xFF;
+        final int bodyStart = prefixByte <= 0xF7 ? 1 : 1 + prefixByte - 0xF7;
+        final int payload = header.remaining() + body.remaining() - bodyStart;
+        final byte[] prefix = RLP.encodeListHeader(payload);
+        final byte[] ret = new byte[prefix.length + payload];
+        System.arraycopy(prefix, 0, ret, 0, prefix.length);
+        header.get(ret, prefix.length, header.remaining());
+        body.position(body.position() + bodyStart);
+        body.get(ret, ret.length - body.remaining(), body.remaining());
+        return new Block(ret);
+    }
+
+    public static byte[] toBytes(final ByteBuffer buffer) {
+        final byte[] ret = new byte[buffer.remaining()];
+        buffer.get(ret);
+        return ret;
+    }
+
+    public synchronized void close() {
+        for (final Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private static class Segment {
+        final long first;
+        final FileChannel data;
+        final FileChannel index;
+        MappedByteBuffer dataMap;
+        MappedByteBuffer indexMap;
+        long dataSize;
+        int count;
+
+        Segment(final long first, final File dataFile, final File indexFile) {
+            this.first = first;
+            try {
+                data = FileChannel.open(dataFile.toPath(), CREATE, READ, WRITE);
+                index = FileChannel.open(indexFile.toPath(), CREATE, READ, WRITE);
+                recover();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Drops a torn index entry and the data past the last indexed block
+         */
+        private void recover() throws IOException {
+            count = (int) (index.size() / ENTRY_SIZE);
+            while (count > 0 && entry(count - 1, 2) > data.size()) {
+                count--;
+            }
+            index.truncate((long) count * ENTRY_SIZE);
+            dataSize = count == 0 ? 0 : entry(count - 1, 2);
+            data.truncate(dataSize);
+        }
+
+        private long entry(final int i, final int field) throws IOException {
+            final ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+            index.read(buf, (long) i * ENTRY_SIZE + field * Long.BYTES);
+            buf.flip();
+            return buf.getLong();
+        }
+
+        void append(final byte[] header, final byte[] body) {
+            try {
+                final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                entry.putLong(dataSize).putLong(dataSize + header.length).putLong(dataSize + header.length + body.length);
+                entry.flip();
+                writeFully(data, ByteBuffer.wrap(header), dataSize);
+                writeFully(data, ByteBuffer.wrap(body), dataSize + header.length);
+                writeFully(index, entry, (long) count * ENTRY_SIZE);
+                dataSize += header.length + body.length;
+                count++;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void writeFully(final FileChannel channel, final ByteBuffer buf, long position) throws IOException {
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        }
+
+        /**
+         * @param field 0 for the header, 1 for the body
+         */
+        ByteBuffer slice(final long i, final int field) {
+            try {
+                final long indexEnd = (i + 1) * ENTRY_SIZE;
+                if (indexMap == null || indexMap.capacity() < indexEnd) {
+                    // remapped as the segment grows, at most once per archived batch
+                    indexMap = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * ENTRY_SIZE);
+                }
+                final int entry = (int) (i * ENTRY_SIZE);
+                final long start = indexMap.getLong(entry + field * Long.BYTES);
+                final long end = indexMap.getLong(entry + (field + 1) * Long.BYTES);
+                if (dataMap == null || dataMap.capacity() < end) {
+                    dataMap = data.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+                }
+                final ByteBuffer ret = dataMap.duplicate();
+                ret.limit((int) end).position((int) start);
+                return ret.slice().asReadOnlyBuffer();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void sync() {
+            try {
+                data.force(false);
+                index.force(false);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            try {
+                data.close();
+                index.close();
+            } catch (final IOException e) {
+                logger.warn("Problem closing the block archive segment", e);
+            }
+        }
+    }
+}
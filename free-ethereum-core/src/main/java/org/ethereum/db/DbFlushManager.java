@@ -32,6 +32,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.datasource.AbstractCachedSource;
 import org.ethereum.datasource.AsyncFlushable;
 import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.slf4j.Logger;
@@ -49,20 +50,32 @@ public class DbFlushManager {
     private final BlockingQueue<Runnable> executorQueue = new ArrayBlockingQueue<>(1);
     private final ExecutorService flushThread = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
             executorQueue, new ThreadFactoryBuilder().setNameFormat("DbFlushManagerThread-%d").build());
+    // flushes the synchronous write caches in parallel with the async ones
+    private final ExecutorService cacheFlushExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("DbFlushCacheThread-%d").setDaemon(true).build());
     private final List<AbstractCachedSource<byte[], byte[]>> writeCaches = new ArrayList<>();
+    private final List<AbstractCachedSource<byte[], byte[]>> dbCaches = new ArrayList<>();
     private final AbstractCachedSource<byte[], byte[]> stateDbCache;
     private final int commitsCountThreshold;
     private final boolean flushAfterSyncDone;
     private Set<DbSource> dbSources = new HashSet<>();
     private long sizeThreshold;
+    private long maxSize;
     private boolean syncDone = false;
     private int commitCount = 0;
     private Future<Boolean> lastFlush = Futures.immediateFuture(false);
 
+    private volatile long flushCount;
+    private volatile long lastFlushTime;
+    private volatile long totalFlushTime;
+    private volatile long flushedBytes;
+    private volatile long stallTime;
+
     public DbFlushManager(final SystemProperties config, final Set<DbSource> dbSources, final AbstractCachedSource<byte[], byte[]> stateDbCache) {
         final SystemProperties config1 = config;
         this.dbSources = dbSources;
         sizeThreshold = config.getConfig().getInt("cache.flush.writeCacheSize") * 1024 * 1024;
+        maxSize = config.getConfig().getLong("cache.flush.maxWriteCacheSize") * 1024 * 1024;
         commitsCountThreshold = config.getConfig().getInt("cache.flush.blocks");
         flushAfterSyncDone = config.getConfig().getBoolean("cache.flush.shortSyncFlush");
         this.stateDbCache = stateDbCache;
@@ -86,10 +99,26 @@ public class DbFlushManager {
         this.sizeThreshold = sizeThreshold;
     }
 
+    /**
+     * @param maxSize write caches size the importer is blocked at until the running
+     *                flush completes, a value < 0 blocks it as soon as a flush is due
+     */
+    public void setMaxSize(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
     public void addCache(final AbstractCachedSource<byte[], byte[]> cache) {
         writeCaches.add(cache);
     }
 
+    /**
+     * Adds the cache of a database which is flushed after the write caches,
+     * in the order added and before the state DB cache
+     */
+    public void addDbCache(final AbstractCachedSource<byte[], byte[]> cache) {
+        dbCaches.add(cache);
+    }
+
     private long getCacheSize() {
         long ret = 0;
         for (final AbstractCachedSource<byte[], byte[]> writeCache : writeCaches) {
@@ -106,19 +135,35 @@ public class DbFlushManager {
     public synchronized void commit() {
         final long cacheSize = getCacheSize();
         if (sizeThreshold >= 0 && cacheSize >= sizeThreshold) {
-            logger.info("DbFlushManager: flushing db due to write cache size (" + cacheSize + ") reached threshold (" + sizeThreshold + ")");
-            flush();
+            if (canFlush(cacheSize)) {
+                logger.info("DbFlushManager: flushing db due to write cache size (" + cacheSize + ") reached threshold (" + sizeThreshold + ")");
+                flush();
+            }
         } else if (commitsCountThreshold > 0 && commitCount >= commitsCountThreshold) {
-            logger.info("DbFlushManager: flushing db due to commits (" + commitCount + ") reached threshold (" + commitsCountThreshold + ")");
-            flush();
-            commitCount = 0;
+            if (canFlush(cacheSize)) {
+                logger.info("DbFlushManager: flushing db due to commits (" + commitCount + ") reached threshold (" + commitsCountThreshold + ")");
+                flush();
+                commitCount = 0;
+            }
         } else if (flushAfterSyncDone && syncDone) {
-            logger.debug("DbFlushManager: flushing db due to short sync");
-            flush();
+            if (canFlush(cacheSize)) {
+                logger.debug("DbFlushManager: flushing db due to short sync");
+                flush();
+            }
         }
         commitCount++;
     }
 
+    /**
+     * A due flush is postponed while the previous one is running unless
+     * the write caches have grown to the max size, the importer then waits
+     */
+    private boolean canFlush(final long cacheSize) {
+        if (lastFlush.isDone() || maxSize < 0 || cacheSize >= maxSize) return true;
+        logger.debug("DbFlushManager: previous flush is running, postponing the flush of " + cacheSize + " bytes");
+        return false;
+    }
+
     public synchronized void flushSync() {
         try {
             flush().get();
@@ -130,12 +175,15 @@ public class DbFlushManager {
     public synchronized Future<Boolean> flush() {
         if (!lastFlush.isDone()) {
             logger.info("Waiting for previous flush to complete...");
+            final long s = System.nanoTime();
             try {
                 lastFlush.get();
             } catch (final Exception e) {
                 logger.error("Error during last flush", e);
             }
+            stallTime += (System.nanoTime() - s) / 1000000;
         }
+        final long cacheSize = getCacheSize();
         logger.debug("Flipping async storages");
         for (final AbstractCachedSource<byte[], byte[]> writeCache : writeCaches) {
             try {
@@ -153,27 +201,75 @@ public class DbFlushManager {
             final long s = System.nanoTime();
             logger.info("Flush started");
 
+            // the write caches don't depend on each other and are flushed in parallel
+            final List<Future<Boolean>> flushes = new ArrayList<>();
             for (final AbstractCachedSource<byte[], byte[]> writeCache : writeCaches) {
                 if (writeCache instanceof AsyncFlushable) {
-                    try {
-                        ret |= ((AsyncFlushable) writeCache).flushAsync().get();
-                    } catch (final InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
+                    flushes.add(((AsyncFlushable) writeCache).flushAsync());
                 } else {
-                    ret |= writeCache.flush();
+                    flushes.add(cacheFlushExecutor.submit(writeCache::flush));
+                }
+            }
+            for (final Future<Boolean> flush : flushes) {
+                try {
+                    ret |= flush.get();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
                 }
             }
+            logger.debug("Flushing to DB");
+            for (final AbstractCachedSource<byte[], byte[]> dbCache : dbCaches) {
+                dbCache.flush();
+            }
             if (stateDbCache != null) {
-                logger.debug("Flushing to DB");
                 stateDbCache.flush();
             }
-            logger.info("Flush completed in " + (System.nanoTime() - s) / 1000000 + " ms");
+            lastFlushTime = (System.nanoTime() - s) / 1000000;
+            totalFlushTime += lastFlushTime;
+            flushedBytes += cacheSize;
+            flushCount++;
+            logger.info("Flush completed in " + lastFlushTime + " ms, " + cacheSize + " bytes, importer stalled for " + stallTime + " ms in total");
+            if (logger.isDebugEnabled()) {
+                for (final DbSource dbSource : dbSources) {
+                    if (dbSource instanceof LevelDbDataSource) {
+                        logger.debug("DB " + ((LevelDbDataSource) dbSource).getStats());
+                    }
+                }
+            }
 
             return ret;
         });
     }
 
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return duration in ms of the last flush
+     */
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    public long getTotalFlushTime() {
+        return totalFlushTime;
+    }
+
+    /**
+     * @return estimated size of the flushed write caches
+     */
+    public long getFlushedBytes() {
+        return flushedBytes;
+    }
+
+    /**
+     * @return total time in ms the committing threads waited for a running flush
+     */
+    public long getStallTime() {
+        return stallTime;
+    }
+
     /**
      * Flushes all caches and closes all databases
      */
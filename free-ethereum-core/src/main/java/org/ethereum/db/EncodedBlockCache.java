@@ -0,0 +1,285 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.util.RLPWriter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the RLP encoded headers, bodies and receipts of recent blocks
+ * keyed by block hash, with an index of the main chain block hashes by number.
+ *
+ * The encodings are the ones sent to the peers, so eth responses are assembled
+ * from the cached arrays without reading and re-encoding the blocks.
+ * Blocks are added on import and on the first serve of an uncached block.
+ *
+ * The number index is dropped on rebranch; the index updates computed from the
+ * block store carry the {@link #getChainVersion() chain version} they were read at,
+ * so a concurrent rebranch can't leave a stale entry behind.
+ * The cache is bounded by the estimated memory size of its entries.
+ */
+public class EncodedBlockCache {
+
+    private final long maxSize;
+    private final Map<ByteArrayWrapper, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final NavigableMap<Long, ByteArrayWrapper> chain = new TreeMap<>();
+    private long size;
+    private long chainVersion;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize max estimated size of the cached entries in bytes
+     */
+    public EncodedBlockCache(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Encodes the block receipts as they are sent in the Receipts message
+     */
+    public static byte[] encodeReceipts(final List<TransactionReceipt> receipts) {
+        final List<RLPWriter> writers = new ArrayList<>(receipts.size());
+        for (final TransactionReceipt receipt : receipts) {
+            writers.add(receipt.getRLPWriter(true));
+        }
+        return RLPWriter.list(writers).encode();
+    }
+
+    /**
+     * Adds the imported block
+     * @param receipts receipts of all the block transactions
+     * @param mainChain whether the block is the new head of the main chain
+     */
+    public synchronized void putBlock(final Block block, final List<TransactionReceipt> receipts, final boolean mainChain) {
+        final ByteArrayWrapper key = new ByteArrayWrapper(block.getHash());
+        final Entry entry = entry(key, block.getHeader());
+        entry.setBody(block.getEncodedBody());
+        entry.setReceipts(encodeReceipts(receipts));
+        if (mainChain) {
+            // nothing above the head belongs to the main chain
+            chain.tailMap(block.getNumber(), true).clear();
+            chain.put(block.getNumber(), key);
+        }
+        add(entry);
+    }
+
+    /**
+     * Adds the encoded body of the block read from the block store
+     */
+    public synchronized void putBody(final Block block, final byte[] body) {
+        final Entry entry = entry(new ByteArrayWrapper(block.getHash()), block.getHeader());
+        entry.setBody(body);
+        add(entry);
+    }
+
+    /**
+     * Adds the encoded receipts of the block read from the block store
+     */
+    public synchronized void putReceipts(final Block block, final byte[] receipts) {
+        final Entry entry = entry(new ByteArrayWrapper(block.getHash()), block.getHeader());
+        entry.setReceipts(receipts);
+        add(entry);
+    }
+
+    /**
+     * Adds main chain headers read from the block store
+     * @param chainVersion the chain version read before the block store was accessed
+     */
+    public synchronized void putChainHeaders(final List<BlockHeader> headers, final long chainVersion) {
+        final boolean sameChain = chainVersion == this.chainVersion;
+        for (final BlockHeader header : headers) {
+            final ByteArrayWrapper key = new ByteArrayWrapper(header.getHash());
+            if (sameChain) {
+                chain.put(header.getNumber(), key);
+            }
+            add(entry(key, header));
+        }
+    }
+
+    /**
+     * Drops the main chain index when another branch becomes the main chain
+     * @param best the new head of the main chain
+     */
+    public synchronized void reBranch(final Block best) {
+        chainVersion++;
+        chain.clear();
+        final ByteArrayWrapper key = new ByteArrayWrapper(best.getHash());
+        if (entries.containsKey(key)) {
+            chain.put(best.getNumber(), key);
+        }
+    }
+
+    public synchronized long getChainVersion() {
+        return chainVersion;
+    }
+
+    /**
+     * @return hash of the main chain block with the given number or null if it isn't indexed
+     */
+    public synchronized byte[] getChainHash(final long number) {
+        final ByteArrayWrapper key = chain.get(number);
+        return key == null ? null : key.getData();
+    }
+
+    /**
+     * @return number of the block or -1 if it isn't cached
+     */
+    public synchronized long getNumber(final byte[] hash) {
+        final Entry entry = entries.get(new ByteArrayWrapper(hash));
+        return entry == null ? -1 : entry.number;
+    }
+
+    /**
+     * The returned arrays are shared and must not be modified
+     */
+    public byte[] getHeader(final byte[] hash) {
+        final byte[] ret;
+        synchronized (this) {
+            final Entry entry = entries.get(new ByteArrayWrapper(hash));
+            ret = entry == null ? null : entry.header;
+        }
+        return count(ret);
+    }
+
+    public byte[] getBody(final byte[] hash) {
+        final byte[] ret;
+        synchronized (this) {
+            final Entry entry = entries.get(new ByteArrayWrapper(hash));
+            ret = entry == null ? null : entry.body;
+        }
+        return count(ret);
+    }
+
+    public byte[] getReceipts(final byte[] hash) {
+        final byte[] ret;
+        synchronized (this) {
+            final Entry entry = entries.get(new ByteArrayWrapper(hash));
+            ret = entry == null ? null : entry.receipts;
+        }
+        return count(ret);
+    }
+
+    private byte[] count(final byte[] ret) {
+        (ret == null ? misses : hits).incrementAndGet();
+        return ret;
+    }
+
+    private Entry entry(final ByteArrayWrapper key, final BlockHeader header) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.size;
+            return entry;
+        }
+        return new Entry(key, header.getNumber(), header.getEncoded());
+    }
+
+    private void add(final Entry entry) {
+        entries.put(entry.key, entry);
+        size += entry.size;
+        evict();
+    }
+
+    private void evict() {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            final Entry entry = it.next();
+            size -= entry.size;
+            it.remove();
+            chain.remove(entry.number, entry.key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return estimated size of the cached entries in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedBlockCache{entries: " + getEntryCount() + ", size: " + getSize() +
+                ", hits/misses: " + getHits() + "/" + getMisses() + ", evictions: " + getEvictions() + "}";
+    }
+
+    private static class Entry {
+        final ByteArrayWrapper key;
+        final long number;
+        final byte[] header;
+        byte[] body;
+        byte[] receipts;
+        long size;
+
+        Entry(final ByteArrayWrapper key, final long number, final byte[] header) {
+            this.key = key;
+            this.number = number;
+            this.header = header;
+            // array headers plus the key with its wrapper, the map and index entries
+            this.size = header.length + 3 * 16 + 192;
+        }
+
+        void setBody(final byte[] body) {
+            size += body.length - (this.body == null ? 0 : this.body.length);
+            this.body = body;
+        }
+
+        void setReceipts(final byte[] receipts) {
+            size += receipts.length - (this.receipts == null ? 0 : this.receipts.length);
+            this.receipts = receipts;
+        }
+    }
+}
@@ -88,10 +88,16 @@ public class IndexedBlockStore extends AbstractBlockstore{
         }
     };
     private static final Logger logger = LoggerFactory.getLogger("general");
+    // the archived blocks are moved from the blocks source in batches
+    private static final int ARCHIVE_BATCH = 128;
     Source<byte[], byte[]> indexDS;
     Source<byte[], byte[]> blocksDS;
     private DataSourceArray<List<BlockInfo>> index;
     private ObjectDataSource<Block> blocks;
+    private BlockArchive archive;
+    private long archiveDepth;
+    // the first block missing from the main chain below the archive depth, -1 when none
+    private long archiveGap = -1;
 
     public IndexedBlockStore(){
     }
@@ -117,11 +123,65 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
             @Override
             public Block deserialize(final byte[] bytes) {
-                return bytes == null ? null : new Block(bytes);
+                if (bytes == null) return null;
+                return isArchivedRef(bytes) ? archive.getBlock(ByteUtil.byteArrayToLong(bytes)) : new Block(bytes);
             }
         }, 512);
     }
 
+    /**
+     * Moves the main chain blocks deeper than the given depth to the archive,
+     * they are no more rebranched and stay in the blocks source as a reference
+     * by number
+     */
+    public void setArchive(final BlockArchive archive, final long depth) {
+        this.archive = archive;
+        this.archiveDepth = depth;
+    }
+
+    public BlockArchive getArchive() {
+        return archive;
+    }
+
+    private static byte[] archivedRef(final long number) {
+        // a block encoding is an RLP list and never starts with zero
+        final byte[] ret = new byte[1 + Long.BYTES];
+        System.arraycopy(ByteUtil.longToBytes(number), 0, ret, 1, Long.BYTES);
+        return ret;
+    }
+
+    private static boolean isArchivedRef(final byte[] bytes) {
+        return bytes.length == 1 + Long.BYTES && bytes[0] == 0;
+    }
+
+    private void archiveBlocks() {
+        final long last = getMaxNumber() - archiveDepth;
+        if (last - archive.size() + 1 < ARCHIVE_BATCH) return;
+
+        // a database with a long unarchived chain catches up a batch per saved block
+        final long end = Math.min(last, archive.size() + ARCHIVE_BATCH - 1);
+        final List<Block> archived = new ArrayList<>();
+        for (long number = archive.size(); number <= end; number++) {
+            final Block block = getChainBlockByNumber(number);
+            if (block == null) {
+                // a gap left by the fast sync, the archive waits until it's downloaded
+                archiveGap = number;
+                logger.info("Block #{} is missing, archiving paused until it's downloaded", number);
+                break;
+            }
+            archive.append(block);
+            archived.add(block);
+        }
+        if (archived.isEmpty()) return;
+
+        // the blocks are dropped only once they can't be lost
+        archive.sync();
+        for (final Block block : archived) {
+            blocksDS.put(block.getHash(), archivedRef(block.getNumber()));
+        }
+        logger.debug("Archived blocks #{} - #{}", archived.get(0).getNumber(), archive.size() - 1);
+    }
+
     public synchronized Block getBestBlock(){
 
         Long maxLevel = getMaxNumber();
@@ -174,6 +234,15 @@ public class IndexedBlockStore extends AbstractBlockstore{
         index.set((int) block.getNumber(), blockInfos);
 
         blocks.put(block.getHash(), block);
+
+        if (archive != null && mainChain) {
+            if (block.getNumber() == archiveGap) {
+                archiveGap = -1;
+            }
+            if (archiveGap < 0) {
+                archiveBlocks();
+            }
+        }
     }
 
     private void putBlockInfo(final List<BlockInfo> blockInfos, final BlockInfo blockInfo) {
@@ -213,6 +282,9 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     @Override
     public synchronized Block getChainBlockByNumber(final long number) {
+        if (archive != null && number < archive.size()) {
+            return archive.getBlock(number);
+        }
         if (number >= index.size()){
             return null;
         }
@@ -322,11 +394,21 @@ public class IndexedBlockStore extends AbstractBlockstore{
     @Override
     public synchronized List<BlockHeader> getListHeadersEndWith(final byte[] hash, final long qty) {
 
-        final List<Block> blocks = getListBlocksEndWith(hash, qty);
-        final List<BlockHeader> headers = new ArrayList<>(blocks.size());
-
-        for (final Block b : blocks) {
-            headers.add(b.getHeader());
+        final List<BlockHeader> headers = new ArrayList<>();
+        Block block = this.blocks.get(hash);
+        while (block != null && headers.size() < qty) {
+            headers.add(block.getHeader());
+            if (archive != null && block.getNumber() - 1 < archive.size() && block.getNumber() > 0) {
+                // the ancestors of a main chain block are archived in a row
+                final BlockHeader parent = new BlockHeader(BlockArchive.toBytes(archive.getHeader(block.getNumber() - 1)));
+                if (areEqual(parent.getHash(), block.getParentHash())) {
+                    for (long number = parent.getNumber(); number >= 0 && headers.size() < qty; number--) {
+                        headers.add(new BlockHeader(BlockArchive.toBytes(archive.getHeader(number))));
+                    }
+                    break;
+                }
+            }
+            block = this.blocks.get(block.getParentHash());
         }
 
         return headers;
@@ -479,6 +561,9 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     @Override
     public synchronized void close() {
+        if (archive != null) {
+            archive.close();
+        }
 //        logger.info("Closing IndexedBlockStore...");
 //        try {
 //            indexDS.close();
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.Serializers;
+import org.ethereum.datasource.Source;
+import org.ethereum.facade.Repository;
+import org.ethereum.trie.SecureTrie;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.vm.DataWord;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable read-only view of the state of a root, created by {@link ReadSnapshots#create(byte[])}
+ *
+ * The trie nodes are content addressed, so the state of a root never changes once the root
+ * is committed and the snapshot can be queried from any number of threads without locking:
+ * each lookup walks a trie of its own over the state source below the journal and the
+ * repository monitors, the flat {@link StateSnapshot} is used instead when it has the state.
+ *
+ * The snapshot should be closed once it is no longer needed to account its lifetime.
+ */
+public class ReadSnapshot implements Repository, Closeable {
+
+    private final ReadSnapshots owner;
+    private final Source<byte[], byte[]> stateDS;
+    private final byte[] root;
+    private final long generation;
+    private final long created = System.nanoTime();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final StateSnapshot snapshot;
+    private volatile StateSnapshot.Layer snapshotLayer;
+
+    ReadSnapshot(final ReadSnapshots owner, final Source<byte[], byte[]> stateDS, final byte[] root,
+                 final long generation, final StateSnapshot snapshot) {
+        this.owner = owner;
+        this.stateDS = stateDS;
+        this.root = root;
+        this.generation = generation;
+        this.snapshot = snapshot;
+        snapshotLayer = snapshot == null ? null : snapshot.getLayer(root);
+    }
+
+    public byte[] getRoot() {
+        return root;
+    }
+
+    /**
+     * @return state write cache generation at the creation of the snapshot
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return flat snapshot value, {@link StateSnapshot#UNKNOWN} if the state isn't there
+     */
+    private byte[] snapshotGet(final byte[] key) {
+        final StateSnapshot.Layer layer = snapshotLayer;
+        if (layer == null) return StateSnapshot.UNKNOWN;
+        final byte[] ret = snapshot.get(layer, key);
+        // the layer isn't dropped while the snapshot is being generated
+        if (ret == StateSnapshot.UNKNOWN && layer.stale) {
+            snapshotLayer = null;
+        }
+        return ret;
+    }
+
+    private byte[] getAccountRaw(final byte[] addr) {
+        final byte[] ret = snapshotGet(StateSnapshot.accountKey(addr));
+        return ret != StateSnapshot.UNKNOWN ? ret : new SecureTrie(stateDS, root).get(addr);
+    }
+
+    public AccountState getAccountState(final byte[] addr) {
+        owner.readStarted();
+        try {
+            final byte[] encoded = getAccountRaw(addr);
+            return encoded == null ? null : Serializers.INSTANCE.getAccountStateSerializer().deserialize(encoded);
+        } finally {
+            owner.readCompleted();
+        }
+    }
+
+    @Override
+    public boolean isExist(final byte[] addr) {
+        return getAccountState(addr) != null;
+    }
+
+    @Override
+    public BigInteger getBalance(final byte[] addr) {
+        final AccountState accountState = getAccountState(addr);
+        return accountState == null ? BigInteger.ZERO : accountState.getBalance();
+    }
+
+    @Override
+    public BigInteger getNonce(final byte[] addr) {
+        final AccountState accountState = getAccountState(addr);
+        return accountState == null ? owner.getConfig().getBlockchainConfig().getCommonConstants().getInitialNonce() :
+                accountState.getNonce();
+    }
+
+    @Override
+    public byte[] getCode(final byte[] addr) {
+        final AccountState accountState = getAccountState(addr);
+        if (accountState == null || FastByteComparisons.equal(accountState.getCodeHash(), HashUtil.INSTANCE.getEMPTY_DATA_HASH())) {
+            return ByteUtil.EMPTY_BYTE_ARRAY;
+        }
+        owner.readStarted();
+        try {
+            return stateDS.get(accountState.getCodeHash());
+        } finally {
+            owner.readCompleted();
+        }
+    }
+
+    @Override
+    public DataWord getStorageValue(final byte[] addr, final DataWord key) {
+        final AccountState accountState = getAccountState(addr);
+        return accountState == null ? null : getStorageValue(addr, accountState, key);
+    }
+
+    private DataWord getStorageValue(final byte[] addr, final AccountState accountState, final DataWord key) {
+        owner.readStarted();
+        try {
+            final byte[] trieKey = Serializers.INSTANCE.getStorageKeySerializer().serialize(key);
+            byte[] encoded = snapshotGet(StateSnapshot.storageKey(StateSnapshot.accountKey(addr), trieKey));
+            if (encoded == StateSnapshot.UNKNOWN) {
+                encoded = new SecureTrie(stateDS, accountState.getStateRoot()).get(trieKey);
+            }
+            return Serializers.INSTANCE.getStorageValueSerializer().deserialize(encoded);
+        } finally {
+            owner.readCompleted();
+        }
+    }
+
+    @Override
+    public int getStorageSize(final byte[] addr) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Set<DataWord> getStorageKeys(final byte[] addr) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Map<DataWord, DataWord> getStorage(final byte[] addr, final Collection<? extends DataWord> keys) {
+        if (keys == null) {
+            throw new RuntimeException("Not supported");
+        }
+        final Map<DataWord, DataWord> ret = new HashMap<>();
+        final AccountState accountState = getAccountState(addr);
+        if (accountState != null) {
+            for (final DataWord key : keys) {
+                final DataWord value = getStorageValue(addr, accountState, key);
+                if (value != null) {
+                    ret.put(key, value);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            owner.snapshotClosed(System.nanoTime() - created);
+        }
+    }
+}
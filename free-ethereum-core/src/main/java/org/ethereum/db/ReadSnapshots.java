@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.AsyncWriteCache;
+import org.ethereum.datasource.Source;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the {@link ReadSnapshot}s of the state for the RPC and the other read-only queries
+ * and keeps the snapshot lifetime and concurrency metrics
+ *
+ * The snapshots read the trie nodes from the state write cache, i.e. from below the
+ * {@link org.ethereum.datasource.JournalSource} and the repository monitors the block
+ * importer holds while committing, so that a block commit doesn't stall the readers.
+ */
+public class ReadSnapshots {
+
+    private final SystemProperties config;
+    private final Source<byte[], byte[]> stateDS;
+    private final AsyncWriteCache<byte[], byte[]> writeCache;
+    private final StateSnapshot snapshot;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong totalLifetime = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicInteger concurrentReads = new AtomicInteger();
+    private final AtomicInteger maxConcurrentReads = new AtomicInteger();
+
+    public ReadSnapshots(final SystemProperties config, final StateSource stateSource, final StateSnapshot snapshot) {
+        this(config, stateSource.getNoJournalSource(), (AsyncWriteCache<byte[], byte[]>) stateSource.getWriteCache(), snapshot);
+    }
+
+    /**
+     * @param writeCache state write cache whose generation is recorded, null if there is none
+     * @param snapshot flat state snapshot, null if there is none
+     */
+    public ReadSnapshots(final SystemProperties config, final Source<byte[], byte[]> stateDS,
+                         final AsyncWriteCache<byte[], byte[]> writeCache, final StateSnapshot snapshot) {
+        this.config = config;
+        this.stateDS = stateDS;
+        this.writeCache = writeCache;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @param root committed state root
+     */
+    public ReadSnapshot create(final byte[] root) {
+        created.incrementAndGet();
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        return new ReadSnapshot(this, stateDS, root, getGeneration(), snapshot);
+    }
+
+    /**
+     * @return current state write cache generation
+     */
+    public long getGeneration() {
+        return writeCache == null ? 0 : writeCache.getGeneration();
+    }
+
+    SystemProperties getConfig() {
+        return config;
+    }
+
+    void readStarted() {
+        reads.incrementAndGet();
+        maxConcurrentReads.accumulateAndGet(concurrentReads.incrementAndGet(), Math::max);
+    }
+
+    void readCompleted() {
+        concurrentReads.decrementAndGet();
+    }
+
+    void snapshotClosed(final long lifetimeNanos) {
+        active.decrementAndGet();
+        closed.incrementAndGet();
+        totalLifetime.addAndGet(lifetimeNanos);
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return number of the snapshots created and not closed yet
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getMaxActiveCount() {
+        return maxActive.get();
+    }
+
+    /**
+     * @return average lifetime of the closed snapshots in ms
+     */
+    public double getAverageLifetime() {
+        final long count = closed.get();
+        return count == 0 ? 0 : totalLifetime.get() / 1_000_000.0 / count;
+    }
+
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * @return max number of the state reads run at the same time by all the snapshots
+     */
+    public int getMaxConcurrentReads() {
+        return maxConcurrentReads.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ReadSnapshots{created=" + getCreatedCount() + ", active=" + getActiveCount() +
+                ", maxActive=" + getMaxActiveCount() + ", avgLifetime=" + String.format("%.2f", getAverageLifetime()) +
+                "ms, reads=" + getReadCount() + ", maxConcurrentReads=" + getMaxConcurrentReads() + "}";
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.datasource.Source;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Accounts and storage slots read from and written to the parent repository
+ * by a track created with {@link RepositoryImpl#startTracking(ReadWriteSet)}
+ *
+ * Only the values coming from the parent are recorded as reads: a slot the
+ * track has written before reading it doesn't depend on the parent state.
+ * Writes are recorded when the track is committed.
+ */
+public class ReadWriteSet {
+
+    private final Set<ByteArrayWrapper> reads = new HashSet<>();
+    private final Set<ByteArrayWrapper> writes = new HashSet<>();
+
+    public static ByteArrayWrapper accountKey(final byte[] addr) {
+        return new ByteArrayWrapper(addr);
+    }
+
+    public static ByteArrayWrapper storageKey(final byte[] addr, final DataWord key) {
+        return new ByteArrayWrapper(ByteUtil.merge(addr, key.getData()));
+    }
+
+    public synchronized Set<ByteArrayWrapper> getReads() {
+        return Collections.unmodifiableSet(new HashSet<>(reads));
+    }
+
+    public synchronized Set<ByteArrayWrapper> getWrites() {
+        return Collections.unmodifiableSet(new HashSet<>(writes));
+    }
+
+    public synchronized boolean isRead(final ByteArrayWrapper key) {
+        return reads.contains(key);
+    }
+
+    /**
+     * @return true if any of the given keys was read
+     */
+    public synchronized boolean isAnyRead(final Set<ByteArrayWrapper> keys) {
+        return !Collections.disjoint(reads, keys);
+    }
+
+    private synchronized void read(final ByteArrayWrapper key) {
+        reads.add(key);
+    }
+
+    private synchronized void write(final ByteArrayWrapper key) {
+        writes.add(key);
+    }
+
+    <V> Source<byte[], V> accounts(final Source<byte[], V> src, final Object lock) {
+        return new RecordingSource<byte[], V>(src, lock) {
+            @Override
+            ByteArrayWrapper key(final byte[] addr) {
+                return accountKey(addr);
+            }
+        };
+    }
+
+    Source<DataWord, DataWord> storage(final byte[] addr, final Source<DataWord, DataWord> src, final Object lock) {
+        return new RecordingSource<DataWord, DataWord>(src, lock) {
+            @Override
+            ByteArrayWrapper key(final DataWord key) {
+                return storageKey(addr, key);
+            }
+
+            @Override
+            void recordWrite(final DataWord key) {
+                super.recordWrite(key);
+                // the account storage root is updated when the storage is flushed
+                write(accountKey(addr));
+            }
+        };
+    }
+
+    /**
+     * Source which isn't recorded but still needs parent access to be serialized
+     */
+    <K, V> Source<K, V> unrecorded(final Source<K, V> src, final Object lock) {
+        return new RecordingSource<K, V>(src, lock) {
+            @Override
+            ByteArrayWrapper key(final K key) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Delegates to the parent source under the parent lock as the parent
+     * caches and tries are not safe for concurrent reads
+     */
+    private abstract class RecordingSource<K, V> implements Source<K, V> {
+        private final Source<K, V> src;
+        private final Object lock;
+
+        RecordingSource(final Source<K, V> src, final Object lock) {
+            this.src = src;
+            this.lock = lock;
+        }
+
+        abstract ByteArrayWrapper key(K key);
+
+        void recordRead(final K key) {
+            final ByteArrayWrapper k = key(key);
+            if (k != null) {
+                read(k);
+            }
+        }
+
+        void recordWrite(final K key) {
+            final ByteArrayWrapper k = key(key);
+            if (k != null) {
+                write(k);
+            }
+        }
+
+        @Override
+        public void put(final K key, final V val) {
+            recordWrite(key);
+            synchronized (lock) {
+                src.put(key, val);
+            }
+        }
+
+        @Override
+        public V get(final K key) {
+            recordRead(key);
+            synchronized (lock) {
+                return src.get(key);
+            }
+        }
+
+        @Override
+        public void delete(final K key) {
+            recordWrite(key);
+            synchronized (lock) {
+                src.delete(key);
+            }
+        }
+
+        @Override
+        public boolean flush() {
+            return false;
+        }
+    }
+}
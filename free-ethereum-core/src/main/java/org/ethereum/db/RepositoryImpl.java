@@ -196,6 +196,30 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         return ret;
     }
 
+    /**
+     * Starts a track which records the accounts and storage slots it reads from
+     * and writes to this repository. Reads of this repository are serialized so several
+     * such tracks may run concurrently while this repository itself is not modified
+     */
+    public synchronized RepositoryImpl startTracking(final ReadWriteSet readWriteSet) {
+        final Source<byte[], AccountState> trackAccountStateCache = new WriteCache.BytesKey<>(
+                readWriteSet.accounts(accountStateCache, this), WriteCache.CacheType.SIMPLE);
+        final Source<byte[], byte[]> trackCodeCache = new WriteCache.BytesKey<>(
+                readWriteSet.unrecorded(codeCache, this), WriteCache.CacheType.SIMPLE);
+        final MultiCache<CachedSource<DataWord, DataWord>> trackStorageCache = new MultiCache(
+                readWriteSet.unrecorded(storageCache, this)) {
+            @Override
+            protected CachedSource create(final byte[] key, final CachedSource srcCache) {
+                return new WriteCache<>(readWriteSet.storage(key, srcCache, RepositoryImpl.this),
+                        WriteCache.CacheType.SIMPLE);
+            }
+        };
+
+        final RepositoryImpl ret = new RepositoryImpl(trackAccountStateCache, trackCodeCache, trackStorageCache);
+        ret.parent = this;
+        return ret;
+    }
+
     @Override
     public synchronized Repository getSnapshotTo(final byte[] root) {
         return parent.getSnapshotTo(root);
@@ -28,21 +28,52 @@ package org.ethereum.db;
 
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Repository;
+import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
 import org.ethereum.trie.SecureTrie;
 import org.ethereum.trie.Trie;
+import org.ethereum.trie.TrieHasher;
 import org.ethereum.trie.TrieImpl;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
 import org.ethereum.vm.DataWord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class RepositoryRoot extends RepositoryImpl {
 
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
     private final Source<byte[], byte[]> stateDS;
     private final CachedSource.BytesKey<byte[]> trieCache;
-    private final Trie<byte[]> stateTrie;
+    private final TrieImpl stateTrie;
+    private TrieHasher trieHasher = TrieHasher.getDefault();
+    private volatile StateRootPipeline.Journal journal;
+    private final HashTime hashTime = new HashTime();
+
+    private final StateSnapshot snapshot;
+    // the values written to the tries since the state of snapshotRoot, null values for the deleted ones
+    private final Map<ByteArrayWrapper, byte[]> snapshotChanges = new HashMap<>();
+    // hashes of the addresses whose storage was deleted since the state of snapshotRoot
+    private final Set<ByteArrayWrapper> snapshotStorageResets = new HashSet<>();
+    private byte[] snapshotRoot;
+    private StateSnapshot.Layer snapshotLayer;
 
     public RepositoryRoot(final Source<byte[], byte[]> stateDS) {
         this(stateDS, null);
     }
+
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, final byte[] root) {
+        this(stateDS, root, null);
+    }
     /**
      * Building the following structure for snapshot Repository:
      *
@@ -52,17 +83,38 @@ public class RepositoryRoot extends RepositoryImpl {
      *    \--> codeCache
      *
      *
+     * The accounts and the storage values are read from the snapshot first if it has the state of the root
+     *
      * @param stateDS
      * @param root
+     * @param snapshot flat state snapshot maintained by {@link #commit()}, null if there is none
      */
-    public RepositoryRoot(final Source<byte[], byte[]> stateDS, final byte[] root) {
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, final byte[] root, final StateSnapshot snapshot) {
         this.stateDS = stateDS;
+        this.snapshot = snapshot;
+        snapshotRoot = root == null ? HashUtil.INSTANCE.getEMPTY_TRIE_HASH() : root;
+        snapshotLayer = snapshot == null ? null : snapshot.getLayer(snapshotRoot);
 
         trieCache = new WriteCache.BytesKey<>(stateDS, WriteCache.CacheType.COUNTING);
         stateTrie = new SecureTrie(trieCache, root);
 
-        final SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(stateTrie, Serializers.INSTANCE.getAccountStateSerializer());
-        final ReadWriteCache.BytesKey<AccountState> accountStateCache = new ReadWriteCache.BytesKey<>(accountStateCodec, WriteCache.CacheType.SIMPLE);
+        final SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(
+                snapshotSource(null, stateTrie), Serializers.INSTANCE.getAccountStateSerializer());
+        final ReadWriteCache.BytesKey<AccountState> accountStateCache = new ReadWriteCache.BytesKey<AccountState>(accountStateCodec, WriteCache.CacheType.SIMPLE) {
+            @Override
+            public void put(final byte[] key, final AccountState val) {
+                final StateRootPipeline.Journal journal = RepositoryRoot.this.journal;
+                if (journal != null) journal.account(key);
+                super.put(key, val);
+            }
+
+            @Override
+            public void delete(final byte[] key) {
+                final StateRootPipeline.Journal journal = RepositoryRoot.this.journal;
+                if (journal != null) journal.account(key);
+                super.delete(key);
+            }
+        };
 
         final MultiCache<StorageCache> storageCache = new MultiStorageCache();
 
@@ -78,14 +130,79 @@ public class RepositoryRoot extends RepositoryImpl {
 
         stateTrie.flush();
         trieCache.flush();
+
+        if (snapshot != null) {
+            updateSnapshot();
+        }
+    }
+
+    /**
+     * Adds the committed state to the snapshot on top of the state this repository was built on
+     */
+    private void updateSnapshot() {
+        final byte[] root = stateTrie.getRootHash();
+        synchronized (snapshotChanges) {
+            if (!FastByteComparisons.equal(root, snapshotRoot) && snapshotLayer != null) {
+                try {
+                    for (final ByteArrayWrapper addrHash : snapshotStorageResets) {
+                        deleteSnapshotStorage(addrHash.getData());
+                    }
+                    snapshot.update(snapshotRoot, root, snapshotChanges);
+                } catch (final RuntimeException e) {
+                    logger.warn("State snapshot isn't updated to root " + Hex.toHexString(root), e);
+                }
+            } else if (!FastByteComparisons.equal(root, snapshotRoot)) {
+                snapshot.updateUntracked(root);
+            }
+            snapshotChanges.clear();
+            snapshotStorageResets.clear();
+            snapshotRoot = root;
+            snapshotLayer = snapshot.getLayer(root);
+        }
+    }
+
+    /**
+     * Deletes the storage values the account had in the state of snapshotRoot
+     * unless they were written again
+     */
+    private void deleteSnapshotStorage(final byte[] addrHash) {
+        byte[] account = snapshot.get(snapshotLayer, addrHash);
+        if (account == StateSnapshot.UNKNOWN) {
+            // the snapshot is being generated
+            account = new TrieImpl(trieCache, snapshotRoot).get(addrHash);
+        }
+        if (account != null) {
+            new TrieImpl(trieCache, new AccountState(account).getStateRoot()).scanTree(new TrieImpl.ScanAction() {
+                @Override
+                public void doOnNode(final byte[] hash, final TrieImpl.Node node) {
+                }
+
+                @Override
+                public void doOnValue(final byte[] nodeHash, final TrieImpl.Node node, final byte[] key, final byte[] value) {
+                    snapshotChanges.putIfAbsent(new ByteArrayWrapper(ByteUtil.merge(addrHash, key)), null);
+                }
+            });
+        }
     }
 
     @Override
     public synchronized byte[] getRoot() {
+        final long start = System.nanoTime();
         storageCache.flush();
+        final long storageEnd = System.nanoTime();
         accountStateCache.flush();
 
-        return stateTrie.getRootHash();
+        final byte[] ret = stateTrie.getRootHash();
+        hashTime.storageNanos += storageEnd - start;
+        hashTime.stateNanos += System.nanoTime() - storageEnd;
+        return ret;
+    }
+
+    /**
+     * @return total time spent computing the roots of this repository
+     */
+    public synchronized HashTime getHashTime() {
+        return hashTime.copy();
     }
 
     @Override
@@ -95,33 +212,218 @@ public class RepositoryRoot extends RepositoryImpl {
 
     @Override
     public Repository getSnapshotTo(final byte[] root) {
-        return new RepositoryRoot(stateDS, root);
+        final RepositoryRoot ret = new RepositoryRoot(stateDS, root, snapshot);
+        ret.setTrieHasher(trieHasher);
+        return ret;
     }
 
     @Override
     public synchronized String dumpStateTrie() {
-        return ((TrieImpl) stateTrie).dumpTrie();
+        return stateTrie.dumpTrie();
     }
 
     @Override
     public synchronized void syncToRoot(final byte[] root) {
         stateTrie.setRoot(root);
+        if (snapshot != null) {
+            synchronized (snapshotChanges) {
+                snapshotChanges.clear();
+                snapshotStorageResets.clear();
+                snapshotRoot = root;
+                snapshotLayer = snapshot.getLayer(root);
+            }
+        }
+    }
+
+    /**
+     * @return repository of the current state which reads the trie nodes through this repository
+     * trie cache and never writes them back
+     */
+    synchronized RepositoryRoot createShadow() {
+        final RepositoryRoot ret = new RepositoryRoot(trieCache, getRoot());
+        ret.setTrieHasher(trieHasher);
+        return ret;
+    }
+
+    /**
+     * @param journal records the keys written to this repository, null to stop recording
+     */
+    void setJournal(final StateRootPipeline.Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @param trieHasher scheduler of the concurrent hashing of the account trie and the storage tries
+     */
+    public void setTrieHasher(final TrieHasher trieHasher) {
+        this.trieHasher = trieHasher;
+        stateTrie.setHasher(trieHasher);
     }
 
     private TrieImpl createTrie(final CachedSource.BytesKey<byte[]> trieCache, final byte[] root) {
-        return new SecureTrie(trieCache, root);
+        final TrieImpl ret = new SecureTrie(trieCache, root);
+        ret.setHasher(trieHasher);
+        return ret;
+    }
+
+    /**
+     * @param addr storage owner address, null for the account trie
+     */
+    private Source<byte[], byte[]> snapshotSource(final byte[] addr, final Source<byte[], byte[]> trie) {
+        return snapshot == null ? trie : new SnapshotSource(addr == null ? null : StateSnapshot.accountKey(addr), trie);
     }
 
-    private static class StorageCache extends ReadWriteCache<DataWord, DataWord> {
+    /**
+     * Reads the values of the snapshotRoot state from the snapshot and records
+     * the values written to the trie for the next snapshot layer
+     */
+    private void resetSnapshotStorage(final byte[] addr) {
+        final byte[] addrHash = StateSnapshot.accountKey(addr);
+        synchronized (snapshotChanges) {
+            snapshotChanges.keySet().removeIf(key -> key.getData().length > addrHash.length &&
+                    FastByteComparisons.compareTo(key.getData(), 0, addrHash.length, addrHash, 0, addrHash.length) == 0);
+            snapshotStorageResets.add(new ByteArrayWrapper(addrHash));
+        }
+    }
+
+    private class SnapshotSource implements Source<byte[], byte[]> {
+        private final byte[] addrHash;
+        private final Source<byte[], byte[]> trie;
+
+        SnapshotSource(final byte[] addrHash, final Source<byte[], byte[]> trie) {
+            this.addrHash = addrHash;
+            this.trie = trie;
+        }
+
+        private ByteArrayWrapper key(final byte[] key) {
+            return new ByteArrayWrapper(addrHash == null ? StateSnapshot.accountKey(key) : StateSnapshot.storageKey(addrHash, key));
+        }
+
+        @Override
+        public void put(final byte[] key, final byte[] val) {
+            trie.put(key, val);
+            synchronized (snapshotChanges) {
+                snapshotChanges.put(key(key), val);
+            }
+        }
+
+        @Override
+        public byte[] get(final byte[] key) {
+            final ByteArrayWrapper snapshotKey = key(key);
+            synchronized (snapshotChanges) {
+                if (snapshotChanges.containsKey(snapshotKey)) {
+                    return snapshotChanges.get(snapshotKey);
+                }
+                if (addrHash != null && snapshotStorageResets.contains(new ByteArrayWrapper(addrHash))) {
+                    return null;
+                }
+                if (snapshotLayer != null) {
+                    final byte[] ret = snapshot.get(snapshotLayer, snapshotKey.getData());
+                    if (ret != StateSnapshot.UNKNOWN) {
+                        return ret;
+                    }
+                    // the layer isn't dropped while the snapshot is being generated
+                    if (snapshotLayer.stale) {
+                        snapshotLayer = null;
+                    }
+                }
+            }
+            return trie.get(key);
+        }
+
+        @Override
+        public void delete(final byte[] key) {
+            trie.delete(key);
+            synchronized (snapshotChanges) {
+                snapshotChanges.put(key(key), null);
+            }
+        }
+
+        @Override
+        public boolean flush() {
+            return trie.flush();
+        }
+    }
+
+    private class StorageCache extends ReadWriteCache<DataWord, DataWord> {
+        final byte[] addr;
         final Trie<byte[]> trie;
 
-        public StorageCache(final Trie<byte[]> trie) {
-            super(new SourceCodec<>(trie, Serializers.INSTANCE.getStorageKeySerializer(), Serializers.INSTANCE.getStorageValueSerializer()), WriteCache.CacheType.SIMPLE);
+        public StorageCache(final byte[] addr, final Trie<byte[]> trie) {
+            super(new SourceCodec<>(snapshotSource(addr, trie), Serializers.INSTANCE.getStorageKeySerializer(),
+                    Serializers.INSTANCE.getStorageValueSerializer()), WriteCache.CacheType.SIMPLE);
+            this.addr = addr;
             this.trie = trie;
         }
+
+        @Override
+        public void put(final DataWord key, final DataWord val) {
+            final StateRootPipeline.Journal journal = RepositoryRoot.this.journal;
+            if (journal != null) journal.storage(addr, key);
+            super.put(key, val);
+        }
+
+        @Override
+        public void delete(final DataWord key) {
+            final StateRootPipeline.Journal journal = RepositoryRoot.this.journal;
+            if (journal != null) journal.storage(addr, key);
+            super.delete(key);
+        }
+    }
+
+    /**
+     * Time spent hashing the storage tries and the account trie
+     */
+    public static class HashTime {
+        private int storageTries;
+        private long storageNanos;
+        private long stateNanos;
+
+        /**
+         * @return number of the storage tries hashed
+         */
+        public int getStorageTries() {
+            return storageTries;
+        }
+
+        /**
+         * @return time to flush the storage caches and to hash the storage tries
+         */
+        public long getStorageNanos() {
+            return storageNanos;
+        }
+
+        /**
+         * @return time to flush the accounts and to hash the account trie
+         */
+        public long getStateNanos() {
+            return stateNanos;
+        }
+
+        HashTime copy() {
+            final HashTime ret = new HashTime();
+            ret.storageTries = storageTries;
+            ret.storageNanos = storageNanos;
+            ret.stateNanos = stateNanos;
+            return ret;
+        }
+
+        /**
+         * @return time spent since the earlier measurement
+         */
+        public HashTime since(final HashTime earlier) {
+            final HashTime ret = new HashTime();
+            ret.storageTries = storageTries - earlier.storageTries;
+            ret.storageNanos = storageNanos - earlier.storageNanos;
+            ret.stateNanos = stateNanos - earlier.stateNanos;
+            return ret;
+        }
     }
 
     private class MultiStorageCache extends MultiCache<StorageCache> {
+        // storage caches flushed to their tries which are yet to be hashed
+        private final List<StorageCache> flushed = new ArrayList<>();
+
         public MultiStorageCache() {
             super(null);
         }
@@ -130,18 +432,48 @@ public class RepositoryRoot extends RepositoryImpl {
         protected synchronized StorageCache create(final byte[] key, final StorageCache srcCache) {
             final AccountState accountState = accountStateCache.get(key);
             final TrieImpl storageTrie = createTrie(trieCache, accountState == null ? null : accountState.getStateRoot());
-            return new StorageCache(storageTrie);
+            return new StorageCache(key, storageTrie);
+        }
+
+        @Override
+        public synchronized void delete(final byte[] key) {
+            final StateRootPipeline.Journal journal = RepositoryRoot.this.journal;
+            if (journal != null) journal.storageReset(key);
+            if (snapshot != null) resetSnapshotStorage(key);
+            super.delete(key);
+        }
+
+        /**
+         * Hashes the storage tries of all the modified contracts concurrently
+         * before their account storage roots are updated
+         */
+        @Override
+        public synchronized boolean flushImpl() {
+            try {
+                final boolean ret = super.flushImpl();
+                final List<Trie<byte[]>> tries = new ArrayList<>(flushed.size());
+                for (final StorageCache childCache : flushed) {
+                    tries.add(childCache.trie);
+                }
+                trieHasher.flushAll(tries);
+                hashTime.storageTries += tries.size();
+                for (final StorageCache childCache : flushed) {
+                    final AccountState storageOwnerAcct = accountStateCache.get(childCache.addr);
+                    // need to update account storage root
+                    accountStateCache.put(childCache.addr, storageOwnerAcct.withStateRoot(childCache.trie.getRootHash()));
+                }
+                return ret;
+            } finally {
+                flushed.clear();
+            }
         }
 
         @Override
         protected synchronized boolean flushChild(final byte[] key, final StorageCache childCache) {
             if (super.flushChild(key, childCache)) {
                 if (childCache != null) {
-                    final AccountState storageOwnerAcct = accountStateCache.get(key);
-                    // need to update account storage root
-                    childCache.trie.flush();
-                    final byte[] rootHash = childCache.trie.getRootHash();
-                    accountStateCache.put(key, storageOwnerAcct.withStateRoot(rootHash));
+                    // the trie is hashed and the account is updated once all the children are flushed
+                    flushed.add(childCache);
                     return true;
                 } else {
                     // account was deleted
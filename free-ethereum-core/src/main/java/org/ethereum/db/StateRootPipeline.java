@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.AccountState;
+import org.ethereum.datasource.Source;
+import org.ethereum.vm.DataWord;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Computes the intermediate state roots of a block on a background thread.
+ *
+ * The block repository isn't flushed to its trie after every transaction. Instead the accounts
+ * and storage slots it changed since the previous transaction are copied out and applied to
+ * a shadow repository on top of the same trie nodes, which is hashed while the next transaction
+ * is executed. The copies are taken in the block order, so the shadow never sees later writes.
+ *
+ * The block repository must not be flushed to its trie until {@link #await()} returns
+ * as the shadow reads the trie nodes through the same cache.
+ */
+public class StateRootPipeline {
+
+    private final RepositoryRoot track;
+    private final RepositoryRoot shadow;
+    private final ExecutorService executor;
+    private final Journal journal = new Journal();
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private volatile boolean cancelled;
+
+    /**
+     * @param track block repository, the changes are recorded from now on
+     */
+    public StateRootPipeline(final RepositoryRoot track, final ExecutorService executor) {
+        this.track = track;
+        this.executor = executor;
+        this.shadow = track.createShadow();
+        track.setJournal(journal);
+    }
+
+    /**
+     * @return single thread executor for the pipelines, roots of a block are computed in order
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("StateRootPipeline-%d").build());
+    }
+
+    /**
+     * Takes the changes of the block repository since the previous call, the state root
+     * after them is passed to the consumer on the pipeline thread
+     */
+    public void submit(final Consumer<byte[]> rootConsumer) {
+        final Changes changes = journal.take(track);
+        tail = tail.thenRunAsync(() -> {
+            if (!cancelled) {
+                changes.applyTo(shadow);
+                rootConsumer.accept(shadow.getRoot());
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for all the submitted roots and stops recording the changes
+     */
+    public void await() {
+        track.setJournal(null);
+        try {
+            tail.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops recording the changes, the roots which are not computed yet are skipped
+     */
+    public void cancel() {
+        cancelled = true;
+        track.setJournal(null);
+    }
+
+    /**
+     * Keys written to the block repository
+     */
+    static class Journal {
+        private Set<ByteArrayWrapper> accounts = new HashSet<>();
+        private Map<ByteArrayWrapper, Set<DataWord>> storage = new HashMap<>();
+        private Set<ByteArrayWrapper> storageResets = new HashSet<>();
+
+        synchronized void account(final byte[] addr) {
+            accounts.add(new ByteArrayWrapper(addr));
+        }
+
+        synchronized void storage(final byte[] addr, final DataWord key) {
+            storage.computeIfAbsent(new ByteArrayWrapper(addr), k -> new HashSet<>()).add(key.clone());
+        }
+
+        synchronized void storageReset(final byte[] addr) {
+            final ByteArrayWrapper key = new ByteArrayWrapper(addr);
+            storageResets.add(key);
+            storage.remove(key);
+        }
+
+        /**
+         * @return current values of the keys written since the previous call
+         */
+        Changes take(final RepositoryImpl repo) {
+            // the same lock order as of the writes being recorded
+            synchronized (repo) {
+                synchronized (this) {
+                    final Changes ret = new Changes(storageResets);
+                    for (final ByteArrayWrapper addr : accounts) {
+                        ret.accounts.put(addr, repo.accountStateCache.get(addr.getData()));
+                    }
+                    for (final Map.Entry<ByteArrayWrapper, Set<DataWord>> entry : storage.entrySet()) {
+                        final Source<DataWord, DataWord> contractStorage = repo.storageCache.get(entry.getKey().getData());
+                        final Map<DataWord, DataWord> values = new HashMap<>();
+                        for (final DataWord key : entry.getValue()) {
+                            final DataWord value = contractStorage.get(key);
+                            values.put(key, value == null ? null : value.clone());
+                        }
+                        ret.storage.put(entry.getKey(), values);
+                    }
+                    accounts = new HashSet<>();
+                    storage = new HashMap<>();
+                    storageResets = new HashSet<>();
+                    return ret;
+                }
+            }
+        }
+    }
+
+    private static class Changes {
+        final Set<ByteArrayWrapper> storageResets;
+        final Map<ByteArrayWrapper, AccountState> accounts = new HashMap<>();
+        final Map<ByteArrayWrapper, Map<DataWord, DataWord>> storage = new HashMap<>();
+
+        Changes(final Set<ByteArrayWrapper> storageResets) {
+            this.storageResets = storageResets;
+        }
+
+        void applyTo(final RepositoryRoot repo) {
+            for (final ByteArrayWrapper addr : storageResets) {
+                repo.storageCache.delete(addr.getData());
+            }
+            for (final Map.Entry<ByteArrayWrapper, AccountState> entry : accounts.entrySet()) {
+                final byte[] addr = entry.getKey().getData();
+                AccountState state = entry.getValue();
+                if (state == null) {
+                    repo.accountStateCache.delete(addr);
+                    continue;
+                }
+                // the storage root of the block repository account is updated only when
+                // its storage is flushed, so the one of the shadow is the actual one
+                final AccountState current = repo.accountStateCache.get(addr);
+                if (current != null && !storageResets.contains(entry.getKey())) {
+                    state = state.withStateRoot(current.getStateRoot());
+                }
+                repo.accountStateCache.put(addr, state);
+            }
+            for (final Map.Entry<ByteArrayWrapper, Map<DataWord, DataWord>> entry : storage.entrySet()) {
+                final Source<DataWord, DataWord> contractStorage =
+                        repo.storageCache.get(entry.getKey().getData());
+                for (final Map.Entry<DataWord, DataWord> slot : entry.getValue().entrySet()) {
+                    contractStorage.put(slot.getKey(), slot.getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.core.AccountState;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.ethereum.trie.TrieImpl;
+import org.ethereum.util.ALock;
+import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPElement;
+import org.ethereum.util.RLPList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Flat copy of the accounts and the storage values of the recent states kept alongside the state trie
+ *
+ * The values are stored by their secure trie keys: the accounts by sha3(address) and the storage
+ * values by sha3(address) + sha3(key), so a value is read with a single lookup instead of a trie walk.
+ *
+ * The database holds the values of a single (disk) state. Each state committed on top of a known
+ * state is kept as a diff layer referring to its parent, so the states of the recent blocks, including
+ * the ones of short forks, are available. Once the newest state has more than the configured number of
+ * layers above the disk state its bottom layer is merged into the database and the layers of the other
+ * forks are dropped. The states which are not available here are read from the trie.
+ *
+ * The diff layers are journaled to the database too so that they survive restarts.
+ *
+ * The database is generated from the trie in the background. Meanwhile the disk layer answers
+ * {@link #UNKNOWN} so the values are read from the trie, and the states committed on top of it
+ * are kept as diff layers (not journaled) which are merged once the generation completes.
+ * The generated state must outlive the generation in the trie: if it gets pruned meanwhile, or more
+ * states than the configured limit are committed on top of it, the generation is restarted at the
+ * newest state, and it is given up after a few attempts, leaving the snapshot empty until the next start.
+ */
+public class StateSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    // the flat keys are 32 or 64 bytes long so these never clash with them
+    private static final byte[] DISK_ROOT_KEY = "snapshot-root".getBytes();
+    private static final byte[] LAYERS_KEY = "snapshot-layers".getBytes();
+    private static final byte[] LAYER_KEY_PREFIX = "snapshot-layer-".getBytes();
+
+    private static final int GENERATE_BATCH_SIZE = 10_000;
+    private static final int GENERATE_ATTEMPTS = 3;
+    private static final int DEFAULT_MAX_GENERATING_LAYERS = 1024;
+
+    /**
+     * Returned by {@link #get(Layer, byte[])} when the state is no longer available
+     */
+    static final byte[] UNKNOWN = new byte[0];
+
+    private final DbSource<byte[]> db;
+    private final int maxLayers;
+    private final int maxGeneratingLayers;
+    private final Map<ByteArrayWrapper, DiffLayer> diffLayers = new LinkedHashMap<>();
+    private DiskLayer disk;
+    // newest committed root, set once the running generation is aborted
+    private byte[] restartRoot;
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final ALock readLock = new ALock(rwLock.readLock());
+    private final ALock writeLock = new ALock(rwLock.writeLock());
+
+    /**
+     * @param db flat state database
+     * @param maxLayers number of the diff layers above the disk state kept for the newest state
+     */
+    public StateSnapshot(final DbSource<byte[]> db, final int maxLayers) {
+        this(db, maxLayers, DEFAULT_MAX_GENERATING_LAYERS);
+    }
+
+    /**
+     * @param db flat state database
+     * @param maxLayers number of the diff layers above the disk state kept for the newest state
+     * @param maxGeneratingLayers number of the diff layers kept while the disk state is generated,
+     *                            the generation is restarted at the newest state beyond that
+     */
+    public StateSnapshot(final DbSource<byte[]> db, final int maxLayers, final int maxGeneratingLayers) {
+        this.db = db;
+        this.maxLayers = maxLayers;
+        this.maxGeneratingLayers = maxGeneratingLayers;
+        load();
+    }
+
+    public static byte[] accountKey(final byte[] addr) {
+        return HashUtil.INSTANCE.sha3(addr);
+    }
+
+    public static byte[] storageKey(final byte[] addrHash, final byte[] key) {
+        return ByteUtil.merge(addrHash, HashUtil.INSTANCE.sha3(key));
+    }
+
+    private static byte[] layerKey(final byte[] root) {
+        return ByteUtil.merge(LAYER_KEY_PREFIX, root);
+    }
+
+    private void load() {
+        final byte[] diskRoot = db.get(DISK_ROOT_KEY);
+        // an empty database is the empty state, an empty root marks an interrupted generation
+        disk = new DiskLayer(diskRoot == null ? HashUtil.INSTANCE.getEMPTY_TRIE_HASH() : diskRoot);
+        disk.stale = diskRoot != null && diskRoot.length == 0;
+
+        final byte[] roots = db.get(LAYERS_KEY);
+        if (roots != null && !disk.stale) {
+            for (final RLPElement root : (RLPList) RLP.decode2(roots).get(0)) {
+                final byte[] encoded = db.get(layerKey(root.getRLPData()));
+                final DiffLayer layer = encoded == null ? null : decodeLayer(root.getRLPData(), encoded);
+                if (layer != null) {
+                    diffLayers.put(new ByteArrayWrapper(layer.root), layer);
+                }
+            }
+        }
+        logger.info("State snapshot loaded: disk root {}, {} diff layers",
+                disk.stale ? "<none>" : Hex.toHexString(disk.root), diffLayers.size());
+    }
+
+    private Layer findLayer(final byte[] root) {
+        if (!disk.stale && FastByteComparisons.equal(disk.root, root)) {
+            return disk;
+        }
+        return diffLayers.get(new ByteArrayWrapper(root));
+    }
+
+    /**
+     * @return the layer of the state or null if the state isn't available
+     */
+    public Layer getLayer(final byte[] root) {
+        try (ALock l = readLock.lock()) {
+            return findLayer(root);
+        }
+    }
+
+    public boolean contains(final byte[] root) {
+        return getLayer(root) != null;
+    }
+
+    /**
+     * @return root of the state stored in the database, null if there is no consistent one
+     */
+    public byte[] getDiskRoot() {
+        try (ALock l = readLock.lock()) {
+            return disk.stale || disk.generating ? null : disk.root;
+        }
+    }
+
+    public boolean isGenerating() {
+        return disk.generating;
+    }
+
+    public int getDiffLayerCount() {
+        try (ALock l = readLock.lock()) {
+            return diffLayers.size();
+        }
+    }
+
+    /**
+     * @param key {@link #accountKey(byte[])} or {@link #storageKey(byte[], byte[])}
+     * @return value of the state of the layer, null if there is no such value,
+     * {@link #UNKNOWN} if the layer was dropped
+     */
+    byte[] get(final Layer layer, final byte[] key) {
+        try (ALock l = readLock.lock()) {
+            return layer.stale ? UNKNOWN : layer.get(new ByteArrayWrapper(key));
+        }
+    }
+
+    /**
+     * Adds the state built on top of a known state
+     *
+     * @param changes new values of the state, null values for the deleted ones
+     */
+    public void update(final byte[] parentRoot, final byte[] root, final Map<ByteArrayWrapper, byte[]> changes) {
+        try (ALock l = writeLock.lock()) {
+            if (restartRoot != null) {
+                // the generation is restarted at the newest state
+                restartRoot = root;
+                return;
+            }
+            final Layer parent = findLayer(parentRoot);
+            if (parent == null || findLayer(root) != null) {
+                return;
+            }
+            final DiffLayer layer = new DiffLayer(root, parent, new HashMap<>(changes));
+            diffLayers.put(new ByteArrayWrapper(root), layer);
+
+            if (disk.generating) {
+                // the disk state being generated can't be merged into yet, and the layers
+                // are journaled once it is as an interrupted generation drops them anyway
+                if (diffLayers.size() > maxGeneratingLayers) {
+                    logger.warn("{} states committed during the state snapshot generation, restarting it",
+                            diffLayers.size());
+                    abortGeneration(root);
+                }
+                return;
+            }
+            final Map<byte[], byte[]> batch = new ByteArrayMap<>();
+            batch.put(layerKey(root), encodeLayer(layer));
+            capLayers(layer, batch);
+            putLayerRoots(batch);
+            db.updateBatch(batch);
+        }
+    }
+
+    /**
+     * Notes the state committed on top of a state which isn't available, which the generation
+     * restarts at if it is aborted
+     */
+    public void updateUntracked(final byte[] root) {
+        try (ALock l = writeLock.lock()) {
+            if (restartRoot != null) {
+                restartRoot = root;
+            }
+        }
+    }
+
+    /**
+     * Stops the running generation and drops the diff layers, the generator restarts at the given root
+     */
+    private void abortGeneration(final byte[] newestRoot) {
+        disk.stale = true;
+        dropDiffLayers();
+        restartRoot = newestRoot;
+    }
+
+    /**
+     * Leaves the snapshot empty, the states are read from the trie
+     */
+    private void stopGeneration() {
+        disk.stale = true;
+        disk.generating = false;
+        dropDiffLayers();
+        restartRoot = null;
+    }
+
+    private void dropDiffLayers() {
+        diffLayers.values().forEach(layer -> layer.stale = true);
+        diffLayers.clear();
+    }
+
+    /**
+     * Merges the layers below the newest state which exceed the configured number into the disk state
+     */
+    private void capLayers(final DiffLayer newest, final Map<byte[], byte[]> batch) {
+        final List<DiffLayer> chain = new ArrayList<>();
+        for (Layer l = newest; l instanceof DiffLayer; l = ((DiffLayer) l).parent) {
+            chain.add((DiffLayer) l);
+        }
+        for (int i = chain.size() - 1; i >= maxLayers; i--) {
+            merge(chain.get(i), batch);
+        }
+    }
+
+    private void putLayerRoots(final Map<byte[], byte[]> batch) {
+        final byte[][] roots = new byte[diffLayers.size()][];
+        int i = 0;
+        for (final DiffLayer diffLayer : diffLayers.values()) {
+            roots[i++] = RLP.encodeElement(diffLayer.root);
+        }
+        batch.put(LAYERS_KEY, RLP.encodeList(roots));
+    }
+
+    /**
+     * Merges the bottom layer into the disk state and drops the layers of the other forks
+     */
+    private void merge(final DiffLayer bottom, final Map<byte[], byte[]> batch) {
+        for (final Map.Entry<ByteArrayWrapper, byte[]> entry : bottom.changes.entrySet()) {
+            batch.put(entry.getKey().getData(), entry.getValue());
+        }
+        batch.put(DISK_ROOT_KEY, bottom.root);
+
+        final DiskLayer newDisk = new DiskLayer(bottom.root);
+        disk.stale = true;
+        bottom.stale = true;
+        diffLayers.remove(new ByteArrayWrapper(bottom.root));
+        batch.put(layerKey(bottom.root), null);
+
+        // the parents precede their children in the insertion order
+        for (final Iterator<DiffLayer> it = diffLayers.values().iterator(); it.hasNext(); ) {
+            final DiffLayer layer = it.next();
+            if (layer.parent == bottom) {
+                layer.parent = newDisk;
+            } else if (layer.parent.stale) {
+                layer.stale = true;
+                it.remove();
+                batch.put(layerKey(layer.root), null);
+            }
+        }
+        disk = newDisk;
+    }
+
+    /**
+     * Rebuilds the database from the trie, all the diff layers are dropped
+     *
+     * @param trieSource trie nodes source
+     * @param root state root to generate the snapshot of
+     */
+    public void generate(final Source<byte[], byte[]> trieSource, final byte[] root) {
+        final DiskLayer layer = startGeneration(root);
+        try {
+            fill(trieSource, layer);
+        } catch (final RuntimeException e) {
+            try (ALock l = writeLock.lock()) {
+                if (layer == disk) {
+                    stopGeneration();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the current data and rebuilds the database from the trie in a background thread.
+     * The states committed on top of the root meanwhile are kept
+     *
+     * @param trieSource trie nodes source
+     * @param root state root to generate the snapshot of
+     * @return completes when the generation completes
+     */
+    public Future<?> generateInBackground(final Source<byte[], byte[]> trieSource, final byte[] root) {
+        final DiskLayer first = startGeneration(root);
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("StateSnapshotGenerator-%d").setDaemon(true).build());
+        try {
+            return executor.submit(() -> {
+                DiskLayer layer = first;
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        fill(trieSource, layer);
+                        return;
+                    } catch (final RuntimeException e) {
+                        layer = restartGeneration(layer, attempt, e);
+                        if (layer == null) {
+                            return;
+                        }
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the generation restarted at the newest state or null if it is given up
+     */
+    private DiskLayer restartGeneration(final DiskLayer failed, final int attempt, final RuntimeException e) {
+        // the lock is held until the new generation starts so that no state committed meanwhile is missed
+        try (ALock l = writeLock.lock()) {
+            if (failed != disk) {
+                // another generation has started
+                return null;
+            }
+            if (restartRoot == null) {
+                // e.g. the generated state has been pruned from the trie
+                logger.warn("State snapshot generation failed", e);
+                DiffLayer newest = null;
+                for (final DiffLayer diffLayer : diffLayers.values()) {
+                    newest = diffLayer;
+                }
+                abortGeneration(newest == null ? null : newest.root);
+            }
+            final byte[] root = restartRoot;
+            restartRoot = null;
+            if (root == null || attempt >= GENERATE_ATTEMPTS) {
+                logger.error("State snapshot generation given up after {} attempts, the state is read from the trie",
+                        attempt);
+                stopGeneration();
+                return null;
+            }
+            return startGeneration(root);
+        }
+    }
+
+    private DiskLayer startGeneration(final byte[] root) {
+        try (ALock l = writeLock.lock()) {
+            logger.info("Generating the state snapshot of root {}", Hex.toHexString(root));
+            disk.stale = true;
+            dropDiffLayers();
+            restartRoot = null;
+            clear();
+            // the database is inconsistent until the generation completes
+            db.put(DISK_ROOT_KEY, EMPTY_BYTE_ARRAY);
+            disk = new DiskLayer(root);
+            disk.generating = true;
+            return disk;
+        }
+    }
+
+    /**
+     * Drops the database content without loading all its keys
+     */
+    private void clear() {
+        if (db instanceof LevelDbDataSource) {
+            ((LevelDbDataSource) db).reset();
+        } else if (db instanceof RocksDbDataSource) {
+            ((RocksDbDataSource) db).reset();
+        } else {
+            // an in-memory source
+            final Set<byte[]> keys = db.keys();
+            final Map<byte[], byte[]> batch = new ByteArrayMap<>();
+            for (final byte[] key : keys) {
+                batch.put(key, null);
+                flushBatch(batch, GENERATE_BATCH_SIZE);
+            }
+            flushBatch(batch, 0);
+        }
+    }
+
+    /**
+     * Writes the values of the disk layer state to the database, doesn't hold the lock as
+     * nothing else writes the flat values of the state being generated
+     */
+    private void fill(final Source<byte[], byte[]> trieSource, final DiskLayer layer) {
+        final long start = System.currentTimeMillis();
+        final Map<byte[], byte[]> batch = new ByteArrayMap<>();
+        final long[] accounts = new long[1];
+        new TrieImpl(trieSource, layer.root).scanTree(new ValueScan((addrHash, value) -> {
+            if (layer.stale) {
+                throw new GenerationAbortedException();
+            }
+            batch.put(addrHash, value);
+            flushBatch(batch, GENERATE_BATCH_SIZE);
+            final AccountState account = new AccountState(value);
+            new TrieImpl(trieSource, account.getStateRoot()).scanTree(new ValueScan((keyHash, storageValue) -> {
+                if (layer.stale) {
+                    throw new GenerationAbortedException();
+                }
+                batch.put(ByteUtil.merge(addrHash, keyHash), storageValue);
+                flushBatch(batch, GENERATE_BATCH_SIZE);
+            }));
+            accounts[0]++;
+        }));
+        flushBatch(batch, 0);
+
+        try (ALock l = writeLock.lock()) {
+            if (layer.stale) {
+                // aborted or another generation has started
+                throw new GenerationAbortedException();
+            }
+            batch.put(DISK_ROOT_KEY, layer.root);
+            layer.generating = false;
+            // merge the states committed during the generation
+            DiffLayer newest = null;
+            for (final DiffLayer diffLayer : diffLayers.values()) {
+                newest = diffLayer;
+            }
+            if (newest != null) {
+                capLayers(newest, batch);
+                for (final DiffLayer diffLayer : diffLayers.values()) {
+                    batch.put(layerKey(diffLayer.root), encodeLayer(diffLayer));
+                }
+                putLayerRoots(batch);
+            }
+            db.updateBatch(batch);
+        }
+        logger.info("State snapshot generated: {} accounts in {} ms", accounts[0], System.currentTimeMillis() - start);
+    }
+
+    private void flushBatch(final Map<byte[], byte[]> batch, final int minSize) {
+        if (batch.size() >= minSize) {
+            db.updateBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private static byte[] encodeLayer(final DiffLayer layer) {
+        final List<byte[]> puts = new ArrayList<>();
+        final List<byte[]> deletes = new ArrayList<>();
+        for (final Map.Entry<ByteArrayWrapper, byte[]> entry : layer.changes.entrySet()) {
+            final byte[] key = RLP.encodeElement(entry.getKey().getData());
+            if (entry.getValue() == null) {
+                deletes.add(key);
+            } else {
+                puts.add(RLP.encodeList(key, RLP.encodeElement(entry.getValue())));
+            }
+        }
+        return RLP.encodeList(RLP.encodeElement(layer.parent.root),
+                RLP.encodeList(puts.toArray(new byte[0][])),
+                RLP.encodeList(deletes.toArray(new byte[0][])));
+    }
+
+    private DiffLayer decodeLayer(final byte[] root, final byte[] encoded) {
+        final RLPList list = (RLPList) RLP.decode2(encoded).get(0);
+        final Layer parent = findLayer(list.get(0).getRLPData());
+        if (parent == null) {
+            return null;
+        }
+        final Map<ByteArrayWrapper, byte[]> changes = new HashMap<>();
+        for (final RLPElement put : (RLPList) list.get(1)) {
+            final RLPList kv = (RLPList) put;
+            changes.put(new ByteArrayWrapper(kv.get(0).getRLPData()), kv.get(1).getRLPData());
+        }
+        for (final RLPElement delete : (RLPList) list.get(2)) {
+            changes.put(new ByteArrayWrapper(delete.getRLPData()), null);
+        }
+        return new DiffLayer(root, parent, changes);
+    }
+
+    /**
+     * State of a root, is valid until it is merged into the disk state or dropped
+     */
+    public static abstract class Layer {
+        final byte[] root;
+        volatile boolean stale;
+
+        Layer(final byte[] root) {
+            this.root = root;
+        }
+
+        abstract byte[] get(ByteArrayWrapper key);
+    }
+
+    private class DiskLayer extends Layer {
+        volatile boolean generating;
+
+        DiskLayer(final byte[] root) {
+            super(root);
+        }
+
+        @Override
+        byte[] get(final ByteArrayWrapper key) {
+            return generating ? UNKNOWN : db.get(key.getData());
+        }
+    }
+
+    private static class DiffLayer extends Layer {
+        final Map<ByteArrayWrapper, byte[]> changes;
+        Layer parent;
+
+        DiffLayer(final byte[] root, final Layer parent, final Map<ByteArrayWrapper, byte[]> changes) {
+            super(root);
+            this.parent = parent;
+            this.changes = changes;
+        }
+
+        @Override
+        byte[] get(final ByteArrayWrapper key) {
+            return changes.containsKey(key) ? changes.get(key) : parent.get(key);
+        }
+    }
+
+    private static class GenerationAbortedException extends RuntimeException {
+        GenerationAbortedException() {
+            super("State snapshot generation aborted");
+        }
+    }
+
+    private static class ValueScan implements TrieImpl.ScanAction {
+        private final BiConsumer<byte[], byte[]> consumer;
+
+        ValueScan(final BiConsumer<byte[], byte[]> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void doOnNode(final byte[] hash, final TrieImpl.Node node) {
+        }
+
+        @Override
+        public void doOnValue(final byte[] nodeHash, final TrieImpl.Node node, final byte[] key, final byte[] value) {
+            consumer.accept(key, value);
+        }
+    }
+}
@@ -38,6 +38,7 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     private static final Logger logger = LoggerFactory.getLogger("db");
 
     private final ReadCache<byte[], byte[]> readCache;
+    private final OffHeapCache offHeapCache;
     private final AbstractCachedSource<byte[], byte[]> writeCache;
     private final BloomedSource bloomedSource;
     private JournalSource<byte[]> journalSource;
@@ -47,14 +48,30 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     }
 
     public StateSource(final Source<byte[], byte[]> src, final boolean pruningEnabled, final int maxBloomSize) {
+        this(src, pruningEnabled, maxBloomSize, 0);
+    }
+
+    /**
+     * @param offHeapCacheSize size in bytes of the off-heap node cache used in place of
+     *                         the heap {@link ReadCache}, 0 to keep the nodes on the heap
+     */
+    public StateSource(final Source<byte[], byte[]> src, final boolean pruningEnabled, final int maxBloomSize,
+                       final long offHeapCacheSize) {
         super(src);
         final StateSource INST = this;
         add(bloomedSource = new BloomedSource(src, maxBloomSize));
         bloomedSource.setFlushSource(false);
-        add(readCache = new ReadCache.BytesKey<>(bloomedSource).withMaxCapacity(16 * 1024 * 1024 / 512)); // 512 - approx size of a node
-        readCache.setFlushSource(true);
+        final AbstractCachedSource<byte[], byte[]> nodeCache;
+        if (offHeapCacheSize > 0) {
+            readCache = null;
+            add(nodeCache = offHeapCache = new OffHeapCache(bloomedSource, offHeapCacheSize));
+        } else {
+            offHeapCache = null;
+            add(nodeCache = readCache = new ReadCache.BytesKey<>(bloomedSource).withMaxCapacity(16 * 1024 * 1024 / 512)); // 512 - approx size of a node
+        }
+        nodeCache.setFlushSource(true);
         final CountingBytesSource countingSource;
-        add(countingSource = new CountingBytesSource(readCache, true));
+        add(countingSource = new CountingBytesSource(nodeCache, true));
         countingSource.setFlushSource(true);
         writeCache = new AsyncWriteCache<byte[], byte[]>(countingSource) {
             @Override
@@ -78,8 +95,10 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
 
     @Autowired
     public void setConfig(final SystemProperties config) {
-        final int size = config.getConfig().getInt("cache.stateCacheSize");
-        readCache.withMaxCapacity(size * 1024 * 1024 / 512); // 512 - approx size of a node
+        if (readCache != null) {
+            final int size = config.getConfig().getInt("cache.stateCacheSize");
+            readCache.withMaxCapacity(size * 1024 * 1024 / 512); // 512 - approx size of a node
+        }
     }
 
     @Autowired
@@ -108,7 +127,17 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
         return writeCache;
     }
 
+    /**
+     * @return heap node cache, null if the nodes are cached off the heap
+     */
     public ReadCache<byte[], byte[]> getReadCache() {
         return readCache;
     }
+
+    /**
+     * @return off-heap node cache, null if the nodes are cached on the heap
+     */
+    public OffHeapCache getOffHeapCache() {
+        return offHeapCache;
+    }
 }
@@ -34,6 +34,8 @@ import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.ReadSnapshot;
+import org.ethereum.db.ReadSnapshots;
 import org.ethereum.db.TransactionStore;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.listener.CompositeEthereumListener;
@@ -63,6 +65,7 @@ import org.springframework.stereotype.Component;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static java.lang.Math.max;
 import static org.ethereum.jsonrpc.TypeConverter.*;
@@ -88,6 +91,8 @@ public class JsonRpcImpl implements JsonRpc {
     @Autowired
     private Repository repository;
     @Autowired
+    private ReadSnapshots readSnapshots;
+    @Autowired
     private
     SystemProperties config;
     @Autowired
@@ -195,12 +200,17 @@ public class JsonRpcImpl implements JsonRpc {
         }
     }
 
-    private Repository getRepoByJsonBlockId(final String id) {
+    /**
+     * Reads the state of the block from a lock free snapshot or from the pending state
+     */
+    private <T> T readState(final String id, final Function<org.ethereum.facade.Repository, T> read) {
         if ("pending".equalsIgnoreCase(id)) {
-            return pendingState.getRepository();
+            return read.apply(pendingState.getRepository());
         } else {
             final Block block = getByJsonBlockId(id);
-            return this.repository.getSnapshotTo(block.getStateRoot());
+            try (ReadSnapshot snapshot = readSnapshots.create(block.getStateRoot())) {
+                return read.apply(snapshot);
+            }
         }
     }
 
@@ -365,7 +375,7 @@ public class JsonRpcImpl implements JsonRpc {
         String s = null;
         try {
             final byte[] addressAsByteArray = TypeConverter.StringHexToByteArray(address);
-            final BigInteger balance = getRepoByJsonBlockId(blockId).getBalance(addressAsByteArray);
+            final BigInteger balance = readState(blockId, r -> r.getBalance(addressAsByteArray));
             return s = TypeConverter.toJsonHex(balance);
         } finally {
             if (logger.isDebugEnabled()) logger.debug("eth_getBalance(" + address + ", " + blockId + "): " + s);
@@ -386,8 +396,8 @@ public class JsonRpcImpl implements JsonRpc {
         String s = null;
         try {
             final byte[] addressAsByteArray = StringHexToByteArray(address);
-            final DataWord storageValue = getRepoByJsonBlockId(blockId).
-                    getStorageValue(addressAsByteArray, new DataWord(StringHexToByteArray(storageIdx)));
+            final DataWord storageValue = readState(blockId,
+                    r -> r.getStorageValue(addressAsByteArray, new DataWord(StringHexToByteArray(storageIdx))));
             return s = TypeConverter.toJsonHex(storageValue.getData());
         } finally {
             if (logger.isDebugEnabled()) logger.debug("eth_getStorageAt(" + address + ", " + storageIdx + ", " + blockId + "): " + s);
@@ -399,7 +409,7 @@ public class JsonRpcImpl implements JsonRpc {
         String s = null;
         try {
             final byte[] addressAsByteArray = TypeConverter.StringHexToByteArray(address);
-            final BigInteger nonce = getRepoByJsonBlockId(blockId).getNonce(addressAsByteArray);
+            final BigInteger nonce = readState(blockId, r -> r.getNonce(addressAsByteArray));
             return s = TypeConverter.toJsonHex(nonce);
         } finally {
             if (logger.isDebugEnabled()) logger.debug("eth_getTransactionCount(" + address + ", " + blockId + "): " + s);
@@ -458,7 +468,7 @@ public class JsonRpcImpl implements JsonRpc {
         String s = null;
         try {
             final byte[] addressAsByteArray = TypeConverter.StringHexToByteArray(address);
-            final byte[] code = getRepoByJsonBlockId(blockId).getCode(addressAsByteArray);
+            final byte[] code = readState(blockId, r -> r.getCode(addressAsByteArray));
             return s = TypeConverter.toJsonHex(code);
         } finally {
             if (logger.isDebugEnabled()) logger.debug("eth_getCode(" + address + ", " + blockId + "): " + s);
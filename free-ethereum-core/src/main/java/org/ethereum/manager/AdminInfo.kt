@@ -26,6 +26,9 @@
 
 package org.ethereum.manager
 
+import org.ethereum.db.EncodedBlockCache
+import org.ethereum.vm.program.CodeCache
+import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
 import java.util.*
 import javax.annotation.PostConstruct
@@ -38,6 +41,26 @@ import javax.annotation.PostConstruct
 @Component
 class AdminInfo {
     private val blockExecTime = LinkedList<Long>()
+    /** number of transactions executed in the parallel mode */
+    var parallelTxCount: Long = 0
+        private set
+    /** number of those executed again due to conflicts with preceding transactions */
+    var parallelTxConflicts: Long = 0
+        private set
+    /** number of contract storage tries hashed while importing the blocks */
+    var hashedStorageTries: Long = 0
+        private set
+    /** time spent hashing the contract storage tries, nanoseconds */
+    var storageHashTime: Long = 0
+        private set
+    /** time spent hashing the account trie, nanoseconds */
+    var stateHashTime: Long = 0
+        private set
+    /** cache of the contract code and its analysis, with its hit, miss and eviction counts */
+    @Autowired(required = false)
+    var codeCache: CodeCache? = null
+    /** cache of the encoded headers, bodies and receipts served to the peers, with its hit, miss and eviction counts */
+    var encodedBlockCache: EncodedBlockCache? = null
     var startupTimeStamp: Long = 0
         private set
     var isConsensus = true
@@ -69,6 +92,20 @@ class AdminInfo {
             return sum / blockExecTime.size
         }
 
+    @Synchronized fun addParallelExecution(txCount: Int, conflicts: Int) {
+        parallelTxCount += txCount
+        parallelTxConflicts += conflicts
+    }
+
+    @Synchronized fun addTrieHashTime(storageTries: Int, storageNanos: Long, stateNanos: Long) {
+        hashedStorageTries += storageTries
+        storageHashTime += storageNanos
+        stateHashTime += stateNanos
+    }
+
+    val parallelTxConflictRate: Double
+        @Synchronized get() = if (parallelTxCount == 0L) 0.0 else parallelTxConflicts.toDouble() / parallelTxCount
+
     fun getBlockExecTime(): List<Long> {
         return blockExecTime
     }
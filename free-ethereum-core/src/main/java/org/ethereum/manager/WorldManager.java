@@ -26,11 +26,13 @@
 
 package org.ethereum.manager;
 
+import org.ethereum.config.CommonConfig;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.DbFlushManager;
+import org.ethereum.db.StateSnapshot;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.client.PeerClient;
@@ -108,9 +110,25 @@ public class WorldManager {
 
     @PostConstruct
     private void init() {
+        initStateSnapshot();
         syncManager.init(channelManager, pool);
     }
 
+    /**
+     * Starts generating the state snapshot from the trie if it doesn't have the best block state
+     * e.g. when it is enabled for an existing database
+     */
+    private void initStateSnapshot() {
+        final CommonConfig commonConfig = ctx.getBean(CommonConfig.class);
+        final StateSnapshot snapshot = commonConfig.stateSnapshot();
+        final byte[] root = blockchain.getBestBlock().getStateRoot();
+        if (snapshot != null && !snapshot.contains(root)) {
+            snapshot.generateInBackground(commonConfig.stateSource(), root);
+            // the repository picks the snapshot up
+            repository.syncToRoot(root);
+        }
+    }
+
     public void addListener(final EthereumListener listener) {
         logger.info("Ethereum listener added");
         ((CompositeEthereumListener) this.listener).addListener(listener);
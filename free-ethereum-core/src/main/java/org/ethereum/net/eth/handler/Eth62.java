@@ -44,6 +44,7 @@ import org.ethereum.sync.PeerState;
 import org.ethereum.sync.SyncManager;
 import org.ethereum.sync.SyncStatistics;
 import org.ethereum.util.ByteUtil;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.validator.BlockHeaderRule;
 import org.ethereum.validator.BlockHeaderValidator;
 import org.slf4j.Logger;
@@ -56,6 +57,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static java.lang.Math.min;
 import static java.util.Collections.singletonList;
@@ -100,6 +102,9 @@ public class Eth62 extends EthHandler {
     long processingTime = 0;
     @Autowired
     private PendingState pendingState;
+    @Autowired
+    EthServingExecutor servingExecutor;
+    private EthServingExecutor.Peer servingPeer;
     private EthState ethState = EthState.INIT;
     /**
      * Number and hash of best known remote block
@@ -403,16 +408,35 @@ public class Eth62 extends EthHandler {
         }
     }
 
-    protected synchronized void processGetBlockHeaders(final GetBlockHeadersMessage msg) {
-        final List<BlockHeader> headers = blockchain.getListOfHeadersStartFrom(
-                msg.getBlockIdentifier(),
-                msg.getSkipBlocks(),
-                min(msg.getMaxHeaders(), MAX_HASHES_TO_SEND),
-                msg.isReverse()
-        );
+    /**
+     * Sends the response to the request from the serving executor, or right away without it
+     */
+    void serve(final EthMessage request, final Supplier<EthMessage> responder) {
+        if (servingExecutor == null) {
+            sendMessage(responder.get());
+            return;
+        }
+        final EthServingExecutor.Peer peer;
+        synchronized (this) {
+            if (servingPeer == null) {
+                servingPeer = servingExecutor.newPeer(channel.getNodeStatistics());
+            }
+            peer = servingPeer;
+        }
+        peer.submit(request, responder, this::sendMessage);
+    }
 
-        final BlockHeadersMessage response = new BlockHeadersMessage(headers);
-        sendMessage(response);
+    protected void processGetBlockHeaders(final GetBlockHeadersMessage msg) {
+        serve(msg, () -> {
+            final List<byte[]> headers = blockchain.getListOfEncodedHeadersStartFrom(
+                    msg.getBlockIdentifier(),
+                    msg.getSkipBlocks(),
+                    min(msg.getMaxHeaders(), MAX_HASHES_TO_SEND),
+                    msg.isReverse()
+            );
+
+            return new BlockHeadersMessage(RLPWriter.encodedList(headers).encode());
+        });
     }
 
     private synchronized void processBlockHeaders(final BlockHeadersMessage msg) {
@@ -446,11 +470,12 @@ public class Eth62 extends EthHandler {
         peerState = IDLE;
     }
 
-    protected synchronized void processGetBlockBodies(final GetBlockBodiesMessage msg) {
-        final List<byte[]> bodies = blockchain.getListOfBodiesByHashes(msg.getBlockHashes());
+    protected void processGetBlockBodies(final GetBlockBodiesMessage msg) {
+        serve(msg, () -> {
+            final List<byte[]> bodies = blockchain.getListOfBodiesByHashes(msg.getBlockHashes());
 
-        final BlockBodiesMessage response = new BlockBodiesMessage(bodies);
-        sendMessage(response);
+            return new BlockBodiesMessage(bodies);
+        });
     }
 
     private synchronized void processBlockBodies(final BlockBodiesMessage msg) {
@@ -511,6 +536,9 @@ public class Eth62 extends EthHandler {
 
     @Override
     public synchronized void onShutdown() {
+        if (servingPeer != null) {
+            servingPeer.close();
+        }
     }
 
     @Override
@@ -39,6 +39,7 @@ import org.ethereum.net.eth.EthVersion;
 import org.ethereum.net.eth.message.*;
 import org.ethereum.sync.PeerState;
 import org.ethereum.util.ByteArraySet;
+import org.ethereum.util.RLPWriter;
 import org.ethereum.util.Value;
 import org.spongycastle.util.encoders.Hex;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -102,7 +103,7 @@ public class Eth63 extends Eth62 {
         }
     }
 
-    private synchronized void processGetNodeData(final GetNodeDataMessage msg) {
+    private void processGetNodeData(final GetNodeDataMessage msg) {
 
         if (logger.isTraceEnabled()) logger.trace(
                 "Peer {}: processing GetNodeData, size [{}]",
@@ -110,20 +111,22 @@ public class Eth63 extends Eth62 {
                 msg.getNodeKeys().size()
         );
 
-        final List<Value> nodeValues = new ArrayList<>();
-        for (final byte[] nodeKey : msg.getNodeKeys()) {
-            final byte[] rawNode = stateSource.get(nodeKey);
-            if (rawNode != null) {
-                final Value value = new Value(rawNode);
-                nodeValues.add(value);
-                logger.trace("Eth63: " + Hex.toHexString(nodeKey).substring(0, 8) + " -> " + value);
+        serve(msg, () -> {
+            final List<Value> nodeValues = new ArrayList<>();
+            for (final byte[] nodeKey : msg.getNodeKeys()) {
+                final byte[] rawNode = stateSource.get(nodeKey);
+                if (rawNode != null) {
+                    final Value value = new Value(rawNode);
+                    nodeValues.add(value);
+                    logger.trace("Eth63: " + Hex.toHexString(nodeKey).substring(0, 8) + " -> " + value);
+                }
             }
-        }
 
-        sendMessage(new NodeDataMessage(nodeValues));
+            return new NodeDataMessage(nodeValues);
+        });
     }
 
-    private synchronized void processGetReceipts(final GetReceiptsMessage msg) {
+    private void processGetReceipts(final GetReceiptsMessage msg) {
 
         if (logger.isTraceEnabled()) logger.trace(
                 "Peer {}: processing GetReceipts, size [{}]",
@@ -131,21 +134,11 @@ public class Eth63 extends Eth62 {
                 msg.getBlockHashes().size()
         );
 
-        final List<List<TransactionReceipt>> receipts = new ArrayList<>();
-        for (final byte[] blockHash : msg.getBlockHashes()) {
-            final Block block = blockchain.getBlockByHash(blockHash);
-            if (block == null) continue;
-
-            final List<TransactionReceipt> blockReceipts = new ArrayList<>();
-            for (final Transaction transaction : block.getTransactionsList()) {
-                final TransactionInfo transactionInfo = blockchain.getTransactionInfo(transaction.getHash());
-                if (transactionInfo == null) break;
-                blockReceipts.add(transactionInfo.getReceipt());
-            }
-            receipts.add(blockReceipts);
-        }
+        serve(msg, () -> {
+            final List<byte[]> receipts = blockchain.getListOfEncodedReceiptsByHashes(msg.getBlockHashes());
 
-        sendMessage(new ReceiptsMessage(receipts));
+            return new ReceiptsMessage(RLPWriter.encodedList(receipts).encode());
+        });
     }
 
     public synchronized ListenableFuture<List<Pair<byte[], byte[]>>> requestTrieNodes(final List<byte[]> hashes) {
@@ -0,0 +1,341 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.net.eth.handler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.CompositeEthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.net.eth.message.EthMessage;
+import org.ethereum.net.rlpx.discover.NodeStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Serves the data requests of the peers (block headers, bodies, receipts and state nodes)
+ * in a pool of worker threads so that the blocking database reads never stall the Netty
+ * event loops shared by the channels, including the ones our own sync is using.
+ *
+ * Every peer has its own queue: a single request of a peer is served at a time, as the eth/62
+ * and eth/63 responses carry no request id and must be sent in the order of the requests,
+ * at most maxQueuedPerPeer wait and the ones over the limit are dropped, and its next request
+ * waits while the bytes already sent exceed the maxBytesPerSecond rate.
+ * Identical requests of several peers served at the same time read the data only once
+ * and share the encoded response.
+ *
+ * All the peers together are limited to the maxTotalBytesPerSecond rate, and to the lower
+ * maxSyncingBytesPerSecond one until our own sync is done, so that serving doesn't take
+ * the database and disk bandwidth the sync needs.
+ */
+@Component
+public class EthServingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("net");
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final int maxQueuedPerPeer;
+    private final long maxBytesPerSecond;
+    private final long maxTotalBytesPerSecond;
+    private final long maxSyncingBytesPerSecond;
+    // the time in ns the rate limit of all the peers allows the next request to be served at
+    private final AtomicLong totalAvailableAt = new AtomicLong(System.nanoTime());
+    private volatile boolean syncDone;
+    private final ConcurrentMap<ByteArrayWrapper, CompletableFuture<EthMessage>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong servedBytes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    @Autowired
+    public EthServingExecutor(final SystemProperties config) {
+        this(config.peerServingThreads(), config.peerServingMaxQueuedPerPeer(), config.peerServingMaxBytesPerSecond(),
+                config.peerServingMaxTotalBytesPerSecond(), config.peerServingMaxSyncingBytesPerSecond());
+        syncDone = !config.isSyncEnabled();
+    }
+
+    /**
+     * @param maxBytesPerSecond the response rate limit of every peer, not limited when 0
+     * @param maxTotalBytesPerSecond the response rate limit of all the peers, not limited when 0
+     * @param maxSyncingBytesPerSecond the response rate limit of all the peers until the sync is done,
+     *                                 not limited when 0
+     */
+    public EthServingExecutor(final int threads, final int maxQueuedPerPeer, final long maxBytesPerSecond,
+                              final long maxTotalBytesPerSecond, final long maxSyncingBytesPerSecond) {
+        this.maxQueuedPerPeer = maxQueuedPerPeer;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.maxTotalBytesPerSecond = maxTotalBytesPerSecond;
+        this.maxSyncingBytesPerSecond = maxSyncingBytesPerSecond;
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("EthServingThread-%d").setDaemon(true).build());
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("EthServingTimer-%d").setDaemon(true).build());
+    }
+
+    @Autowired
+    public void setEthereumListener(final CompositeEthereumListener listener) {
+        listener.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onSyncDone(final SyncState state) {
+                if (state == SyncState.COMPLETE) {
+                    setSyncDone(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param syncDone true to serve at the maxTotalBytesPerSecond rate, false for the maxSyncingBytesPerSecond one
+     */
+    public void setSyncDone(final boolean syncDone) {
+        this.syncDone = syncDone;
+    }
+
+    public Peer newPeer(final NodeStatistics stats) {
+        return new Peer(stats);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * @return requests waiting in the peer queues
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    public long getServedBytes() {
+        return servedBytes.get();
+    }
+
+    /**
+     * @return requests answered with the response of an identical request served at the same time
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return average time from receiving a request to sending its response in ms
+     */
+    public double getAvgLatency() {
+        final long count = served.get();
+        return count == 0 ? 0 : totalLatency.get() / 1_000_000d / count;
+    }
+
+    private static ByteArrayWrapper requestKey(final EthMessage request) {
+        final byte[] encoded = request.getEncoded();
+        final byte[] key = new byte[encoded.length + 1];
+        key[0] = request.getCommand().asByte();
+        System.arraycopy(encoded, 0, key, 1, encoded.length);
+        return new ByteArrayWrapper(key);
+    }
+
+    /**
+     * @return the response, read by the first of the identical requests served at the same time
+     */
+    private EthMessage respond(final Task task) {
+        final CompletableFuture<EthMessage> future = new CompletableFuture<>();
+        final CompletableFuture<EthMessage> existing = inFlight.putIfAbsent(task.key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            task.stats.ethServingCoalesced.add();
+            return existing.join();
+        }
+        try {
+            final EthMessage response = task.responder.get();
+            // encoded once for all the peers
+            response.getEncoded();
+            future.complete(response);
+            return response;
+        } catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(task.key, future);
+        }
+    }
+
+    private static final class Task {
+        final ByteArrayWrapper key;
+        final Supplier<EthMessage> responder;
+        final Consumer<EthMessage> sender;
+        final NodeStatistics stats;
+        final long received = System.nanoTime();
+
+        Task(final ByteArrayWrapper key, final Supplier<EthMessage> responder, final Consumer<EthMessage> sender,
+             final NodeStatistics stats) {
+            this.key = key;
+            this.responder = responder;
+            this.sender = sender;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Requests queue of a single peer
+     */
+    public final class Peer {
+        private final NodeStatistics stats;
+        private final Deque<Task> queue = new ArrayDeque<>();
+        private int running;
+        // the time in ns the rate limit allows the next request to be served at
+        private long availableAt = System.nanoTime();
+        private boolean delayed;
+        private boolean closed;
+
+        private Peer(final NodeStatistics stats) {
+            this.stats = stats;
+        }
+
+        /**
+         * Queues the request, the response of the responder is passed to the sender in a worker thread
+         */
+        public void submit(final EthMessage request, final Supplier<EthMessage> responder,
+                           final Consumer<EthMessage> sender) {
+            final Task task = new Task(requestKey(request), responder, sender, stats);
+            synchronized (this) {
+                if (closed) return;
+                if (queue.size() >= maxQueuedPerPeer) {
+                    dropped.incrementAndGet();
+                    stats.ethServingDropped.add();
+                    logger.debug("Dropping {} request, {} requests of the peer are queued", request.getCommand(),
+                            queue.size());
+                    return;
+                }
+                queue.add(task);
+                queued.incrementAndGet();
+                stats.ethServingQueued.add(1);
+                dispatch();
+            }
+        }
+
+        /**
+         * Drops the queued requests, the running ones are still completed
+         */
+        public synchronized void close() {
+            closed = true;
+            queued.addAndGet(-queue.size());
+            stats.ethServingQueued.add(-queue.size());
+            queue.clear();
+        }
+
+        private synchronized void dispatch() {
+            while (running == 0 && !queue.isEmpty() && !delayed) {
+                final long delay = Math.max(availableAt, totalAvailableAt.get()) - System.nanoTime();
+                if (delay > 0) {
+                    delayed = true;
+                    timer.schedule(this::resume, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                final Task task = queue.poll();
+                queued.decrementAndGet();
+                stats.ethServingQueued.add(-1);
+                running++;
+                try {
+                    workers.execute(() -> run(task));
+                } catch (final RejectedExecutionException e) {
+                    running--;
+                    return;
+                }
+            }
+        }
+
+        private synchronized void resume() {
+            delayed = false;
+            dispatch();
+        }
+
+        private void run(final Task task) {
+            EthServingExecutor.this.running.incrementAndGet();
+            int bytes = 0;
+            try {
+                final EthMessage response = respond(task);
+                bytes = response.getEncoded().length;
+                task.sender.accept(response);
+
+                final long latency = System.nanoTime() - task.received;
+                served.incrementAndGet();
+                servedBytes.addAndGet(bytes);
+                totalLatency.addAndGet(latency);
+                stats.ethServingRequests.add();
+                stats.ethServingBytes.add(bytes);
+                stats.ethServingLatency.add(TimeUnit.NANOSECONDS.toMillis(latency));
+            } catch (final Exception e) {
+                logger.warn("Failed to serve the peer request", e);
+            } finally {
+                EthServingExecutor.this.running.decrementAndGet();
+                synchronized (this) {
+                    running--;
+                    if (maxBytesPerSecond > 0) {
+                        availableAt = Math.max(availableAt, System.nanoTime()) +
+                                bytes * TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond;
+                    }
+                    final long totalRate = syncDone ? maxTotalBytesPerSecond : maxSyncingBytesPerSecond;
+                    if (totalRate > 0) {
+                        final long cost = bytes * TimeUnit.SECONDS.toNanos(1) / totalRate;
+                        totalAvailableAt.updateAndGet(at -> Math.max(at, System.nanoTime()) + cost);
+                    }
+                    if (!closed) {
+                        dispatch();
+                    }
+                }
+            }
+        }
+    }
+}
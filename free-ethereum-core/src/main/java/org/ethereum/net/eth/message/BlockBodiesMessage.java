@@ -26,9 +26,8 @@
 
 package org.ethereum.net.eth.message;
 
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -57,22 +56,15 @@ public class BlockBodiesMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        final RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
-
         blockBodies = new ArrayList<>();
-        for (final RLPElement aParamsList : paramsList) {
-            final RLPList rlpData = ((RLPList) aParamsList);
-            blockBodies.add(rlpData.getRLPData());
+        for (final RLPView body : RLPView.decode(encoded)) {
+            blockBodies.add(body.getEncoded());
         }
         parsed = true;
     }
 
     private void encode() {
-
-        final byte[][] encodedElementArray = blockBodies
-                .toArray(new byte[blockBodies.size()][]);
-
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encodedList(blockBodies).encode();
     }
 
 
@@ -27,9 +27,8 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.core.BlockHeader;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -61,22 +60,18 @@ public class BlockHeadersMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        final RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
-
         blockHeaders = new ArrayList<>();
-        for (final RLPElement aParamsList : paramsList) {
-            final RLPList rlpData = ((RLPList) aParamsList);
+        for (final RLPView rlpData : RLPView.decode(encoded)) {
             blockHeaders.add(new BlockHeader(rlpData));
         }
         parsed = true;
     }
 
     private void encode() {
-        final List<byte[]> encodedElements = new ArrayList<>();
+        final List<RLPWriter> encodedElements = new ArrayList<>();
         for (final BlockHeader blockHeader : blockHeaders)
-            encodedElements.add(blockHeader.getEncoded());
-        final byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+            encodedElements.add(blockHeader.getRLPWriter());
+        this.encoded = RLPWriter.list(encodedElements).encode();
     }
 
 
@@ -29,6 +29,7 @@ package org.ethereum.net.eth.message
 import org.ethereum.core.Block
 import org.ethereum.util.RLP
 import org.ethereum.util.RLPList
+import org.ethereum.util.RLPWriter
 import org.spongycastle.util.encoders.Hex
 
 import java.math.BigInteger
@@ -58,10 +59,7 @@ class NewBlockMessage : EthMessage {
     }
 
     private fun encode() {
-        val block = this.block!!.encoded
-        val diff = RLP.encodeElement(this.difficulty)
-
-        this.encoded = RLP.encodeList(block, diff)
+        this.encoded = RLPWriter.list(this.block!!.rlpWriter, RLPWriter.item(this.difficulty)).encode()
     }
 
     @Synchronized private fun parse() {
@@ -27,8 +27,8 @@
 package org.ethereum.net.eth.message
 
 import org.ethereum.net.message.Message
-import org.ethereum.util.RLP
-import org.ethereum.util.RLPList
+import org.ethereum.util.RLPView
+import org.ethereum.util.RLPWriter
 import org.ethereum.util.Value
 import java.util.*
 
@@ -51,10 +51,8 @@ class NodeDataMessage : EthMessage {
     }
 
     private fun parse() {
-        val paramsList = RLP.decode2(encoded)[0] as RLPList
-
         dataList = ArrayList<Value>()
-        for (aParamsList in paramsList) {
+        for (aParamsList in RLPView.decode(encoded)) {
             // Need it AS IS
             dataList!!.add(Value.fromRlpEncoded(aParamsList.rlpData)!!)
         }
@@ -63,15 +61,12 @@ class NodeDataMessage : EthMessage {
 
     private fun encode() {
         val dataListRLP = dataList!!
-                .asSequence()
                 .filterNotNull()
                 .map {
                     // Bad sign
-                    RLP.encodeElement(it.data)
+                    RLPWriter.item(it.data)
                 }
-                .toList()
-        val encodedElementArray = dataListRLP.toTypedArray()
-        this.encoded = RLP.encodeList(*encodedElementArray)
+        this.encoded = RLPWriter.list(dataListRLP).encode()
     }
 
 
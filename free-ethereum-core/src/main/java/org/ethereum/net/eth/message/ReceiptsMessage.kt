@@ -29,6 +29,7 @@ package org.ethereum.net.eth.message
 import org.ethereum.core.TransactionReceipt
 import org.ethereum.util.RLP
 import org.ethereum.util.RLPList
+import org.ethereum.util.RLPWriter
 import java.util.*
 
 /**
@@ -69,15 +70,8 @@ class ReceiptsMessage : EthMessage {
     }
 
     private fun encode() {
-        val blocks = receipts!!
-                .asSequence()
-                .map { blockReceipts -> blockReceipts.map { it.getEncoded(true) } }
-                .map { it.toTypedArray() }
-                .map { RLP.encodeList(*it) }
-                .toList()
-
-        val encodedElementArray = blocks.toTypedArray()
-        this.encoded = RLP.encodeList(*encodedElementArray)
+        val blocks = receipts!!.map { blockReceipts -> RLPWriter.list(blockReceipts.map { it.getRLPWriter(true) }) }
+        this.encoded = RLPWriter.list(blocks).encode()
     }
 
     override fun getEncoded(): ByteArray {
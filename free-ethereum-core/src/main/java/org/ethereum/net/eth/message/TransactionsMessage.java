@@ -27,9 +27,8 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Transaction;
-import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -61,12 +60,9 @@ public class TransactionsMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        final RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
-
         transactions = new ArrayList<>();
-        for (final RLPElement aParamsList : paramsList) {
-            final RLPList rlpTxData = (RLPList) aParamsList;
-            final Transaction tx = new Transaction(rlpTxData.getRLPData());
+        for (final RLPView rlpTxData : RLPView.decode(encoded)) {
+            final Transaction tx = new Transaction(rlpTxData.getEncoded());
             transactions.add(tx);
         }
         parsed = true;
@@ -76,8 +72,7 @@ public class TransactionsMessage extends EthMessage {
         final List<byte[]> encodedElements = new ArrayList<>();
         for (final Transaction tx : transactions)
             encodedElements.add(tx.getEncoded());
-        final byte[][] encodedElementArray = encodedElements.toArray(new byte[encodedElements.size()][]);
-        this.encoded = RLP.encodeList(encodedElementArray);
+        this.encoded = RLPWriter.encodedList(encodedElements).encode();
     }
 
     @Override
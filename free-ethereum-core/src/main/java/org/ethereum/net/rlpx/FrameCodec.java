@@ -26,12 +26,12 @@
 
 package org.ethereum.net.rlpx;
 
+import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import org.ethereum.net.swarm.Util;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPView;
+import org.ethereum.util.RLPWriter;
 import org.spongycastle.crypto.StreamCipher;
 import org.spongycastle.crypto.digests.KeccakDigest;
 import org.spongycastle.crypto.engines.AESFastEngine;
@@ -40,25 +40,46 @@ import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static org.ethereum.util.RLP.decode2OneItem;
-
+/**
+ * Encrypts and authenticates RLPx frames
+ *
+ * The frames are encrypted and their MACs computed in place within the frame buffer: a pooled
+ * buffer of the channel allocator when it isn't backed by an array, {@link FrameCodecHandler}
+ * encodes into heap buffers so that isn't the case. The received frames usually come in direct
+ * buffers, which are copied once to a pooled heap buffer. The received payload is decrypted
+ * straight into its own array, which becomes the message encoding without another copy.
+ *
+ * The egress and ingress sides have their own scratch buffers and may be used by different threads.
+ */
 public class FrameCodec {
+    private static final int HEADER_SIZE = 32;
+    private static final int MAC_SIZE = 16;
+
     private final StreamCipher enc;
     private final StreamCipher dec;
     private final KeccakDigest egressMac;
     private final KeccakDigest ingressMac;
-    private final byte[] mac;
+    // Stateless AES encryption
+    private final AESFastEngine egressMacCipher;
+    private final AESFastEngine ingressMacCipher;
+    private final byte[] egressMacSeed;
+    private final byte[] egressMacBlock;
+    private final byte[] egressMacResult;
+    private final byte[] ingressMacSeed;
+    private final byte[] ingressMacBlock;
+    private final byte[] ingressMacResult;
+    private final byte[] ingressHead = new byte[HEADER_SIZE];
+    private final byte[] ingressScratch = new byte[16];
     private boolean isHeadRead;
     private int totalBodySize;
     private int contextId = -1;
     private int totalFrameSize = -1;
 
     public FrameCodec(final EncryptionHandshake.Secrets secrets) {
-        this.mac = secrets.getMac();
         final int blockSize = secrets.getAes().length * 8;
         enc = new SICBlockCipher(new AESFastEngine());
         enc.init(true, new ParametersWithIV(new KeyParameter(secrets.getAes()), new byte[blockSize / 8]));
@@ -66,146 +87,215 @@ public class FrameCodec {
         dec.init(false, new ParametersWithIV(new KeyParameter(secrets.getAes()), new byte[blockSize / 8]));
         egressMac = secrets.getEgressMac();
         ingressMac = secrets.getIngressMac();
+        egressMacCipher = makeMacCipher(secrets.getMac());
+        ingressMacCipher = makeMacCipher(secrets.getMac());
+        egressMacSeed = new byte[egressMac.getDigestSize()];
+        egressMacBlock = new byte[egressMac.getDigestSize()];
+        egressMacResult = new byte[egressMac.getDigestSize()];
+        ingressMacSeed = new byte[ingressMac.getDigestSize()];
+        ingressMacBlock = new byte[ingressMac.getDigestSize()];
+        ingressMacResult = new byte[ingressMac.getDigestSize()];
     }
 
-    private AESFastEngine makeMacCipher() {
-        // Stateless AES encryption
+    private static AESFastEngine makeMacCipher(final byte[] mac) {
         final AESFastEngine macc = new AESFastEngine();
         macc.init(true, new KeyParameter(mac));
         return macc;
     }
 
+    private static int padding(final int size) {
+        final int padding = 16 - (size % 16);
+        return padding == 16 ? 0 : padding;
+    }
+
+    /**
+     * Writes the frame at the buffer writer index, the frame is encrypted in the buffer
+     * array or in a pooled array buffer copied to the direct buffers
+     */
     public void writeFrame(final Frame frame, final ByteBuf buf) throws IOException {
-        writeFrame(frame, new ByteBufOutputStream(buf));
+        final byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
+        final int length = frameLength(frame, ptype);
+        buf.ensureWritable(length);
+        if (buf.hasArray()) {
+            final int idx = buf.writerIndex();
+            writeFrame(frame, ptype, buf.array(), buf.arrayOffset() + idx);
+            buf.writerIndex(idx + length);
+        } else {
+            final ByteBuf heap = buf.alloc().heapBuffer(length);
+            try {
+                writeFrame(frame, ptype, heap.array(), heap.arrayOffset());
+                buf.writeBytes(heap.array(), heap.arrayOffset(), length);
+            } finally {
+                heap.release();
+            }
+        }
     }
 
     public void writeFrame(final Frame frame, final OutputStream out) throws IOException {
-        final byte[] headBuffer = new byte[32];
         final byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
-        final int totalSize = frame.size + ptype.length;
-        headBuffer[0] = (byte)(totalSize >> 16);
-        headBuffer[1] = (byte)(totalSize >> 8);
-        headBuffer[2] = (byte)(totalSize);
-
-        final List<byte[]> headerDataElems = new ArrayList<>();
-        headerDataElems.add(RLP.encodeInt(0));
-        if (frame.contextId >= 0) headerDataElems.add(RLP.encodeInt(frame.contextId));
-        if (frame.totalFrameSize >= 0) headerDataElems.add(RLP.encodeInt(frame.totalFrameSize));
+        final byte[] data = new byte[frameLength(frame, ptype)];
+        writeFrame(frame, ptype, data, 0);
+        out.write(data);
+    }
 
-        final byte[] headerData = RLP.encodeList(headerDataElems.toArray(new byte[0][]));
-        System.arraycopy(headerData, 0, headBuffer, 3, headerData.length);
+    private int frameLength(final Frame frame, final byte[] ptype) {
+        final int totalSize = frame.size + ptype.length;
+        return HEADER_SIZE + totalSize + padding(totalSize) + MAC_SIZE;
+    }
 
-        enc.processBytes(headBuffer, 0, 16, headBuffer, 0);
+    private void writeFrame(final Frame frame, final byte[] ptype, final byte[] out, final int offset) throws IOException {
+        final int totalSize = frame.size + ptype.length;
+        // the buffer may be a reused one
+        Arrays.fill(out, offset, offset + 16, (byte) 0);
+        out[offset] = (byte)(totalSize >> 16);
+        out[offset + 1] = (byte)(totalSize >> 8);
+        out[offset + 2] = (byte)(totalSize);
+
+        final RLPWriter[] headerDataElems = new RLPWriter[1 + (frame.contextId >= 0 ? 1 : 0) +
+                (frame.totalFrameSize >= 0 ? 1 : 0)];
+        int elem = 0;
+        headerDataElems[elem++] = RLPWriter.itemInt(0);
+        if (frame.contextId >= 0) headerDataElems[elem++] = RLPWriter.itemInt(frame.contextId);
+        if (frame.totalFrameSize >= 0) headerDataElems[elem] = RLPWriter.itemInt(frame.totalFrameSize);
+        RLPWriter.list(headerDataElems).encode(out, offset + 3);
+
+        enc.processBytes(out, offset, 16, out, offset);
 
         // Header MAC
-        updateMac(egressMac, headBuffer, 0, headBuffer, 16, true);
-
-        final byte[] buff = new byte[256];
-        out.write(headBuffer);
-        enc.processBytes(ptype, 0, ptype.length, buff, 0);
-        out.write(buff, 0, ptype.length);
-        egressMac.update(buff, 0, ptype.length);
-        while (true) {
-            final int n = frame.payload.read(buff);
-            if (n <= 0) break;
-            enc.processBytes(buff, 0, n, buff, 0);
-            egressMac.update(buff, 0, n);
-            out.write(buff, 0, n);
-        }
-        final int padding = 16 - (totalSize % 16);
-        final byte[] pad = new byte[16];
-        if (padding < 16) {
-            enc.processBytes(pad, 0, padding, buff, 0);
-            egressMac.update(buff, 0, padding);
-            out.write(buff, 0, padding);
-        }
+        updateMac(egressMac, out, offset, out, offset + 16, true);
+
+        final int bodyOffset = offset + HEADER_SIZE;
+        System.arraycopy(ptype, 0, out, bodyOffset, ptype.length);
+        frame.readPayload(out, bodyOffset + ptype.length);
+        final int padding = padding(totalSize);
+        Arrays.fill(out, bodyOffset + totalSize, bodyOffset + totalSize + padding, (byte) 0);
+        enc.processBytes(out, bodyOffset, totalSize + padding, out, bodyOffset);
+        egressMac.update(out, bodyOffset, totalSize + padding);
 
         // Frame MAC
-        final byte[] macBuffer = new byte[egressMac.getDigestSize()];
-        doSum(egressMac, macBuffer); // fmacseed
-        updateMac(egressMac, macBuffer, 0, macBuffer, 0, true);
-        out.write(macBuffer, 0, 16);
+        doSum(egressMac, egressMacSeed); // fmacseed
+        updateMac(egressMac, egressMacSeed, 0, out, bodyOffset + totalSize + padding, true);
     }
 
+    /**
+     * @return the next frame or null when the buffer doesn't contain it yet
+     */
     public List<Frame> readFrames(final ByteBuf buf) throws IOException {
-        try (ByteBufInputStream bufInputStream = new ByteBufInputStream(buf)) {
-            return readFrames(bufInputStream);
+        if (!isHeadRead) {
+            if (buf.readableBytes() < HEADER_SIZE) {
+                return null;
+            }
+            buf.readBytes(ingressHead);
+            readHeader(ingressHead);
+        }
+
+        final int length = totalBodySize + padding(totalBodySize) + MAC_SIZE;
+        if (buf.readableBytes() < length) {
+            return null;
+        }
+        final Frame frame;
+        if (buf.hasArray()) {
+            frame = readBody(buf.array(), buf.arrayOffset() + buf.readerIndex());
+            buf.skipBytes(length);
+        } else {
+            final ByteBuf heap = buf.alloc().heapBuffer(length);
+            try {
+                buf.readBytes(heap, length);
+                frame = readBody(heap.array(), heap.arrayOffset());
+            } finally {
+                heap.release();
+            }
         }
+        return Collections.singletonList(frame);
     }
 
     public List<Frame> readFrames(final DataInput inp) throws IOException {
         if (!isHeadRead) {
-            final byte[] headBuffer = new byte[32];
             try {
-                inp.readFully(headBuffer);
+                inp.readFully(ingressHead);
             } catch (final EOFException e) {
                 return null;
             }
-
-            // Header MAC
-            updateMac(ingressMac, headBuffer, 0, headBuffer, 16, false);
-
-            dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
-            totalBodySize = headBuffer[0] & 0xFF;
-            totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
-            totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
-
-            final RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
-
-            final int protocol = Util.rlpDecodeInt(rlpList.get(0));
-            contextId = -1;
-            totalFrameSize = -1;
-            if (rlpList.size() > 1) {
-                contextId = Util.rlpDecodeInt(rlpList.get(1));
-                if (rlpList.size() > 2) {
-                    totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
-                }
-            }
-
-            isHeadRead = true;
+            readHeader(ingressHead);
         }
 
-        int padding = 16 - (totalBodySize % 16);
-        if (padding == 16) padding = 0;
-        final int macSize = 16;
-        final byte[] buffer = new byte[totalBodySize + padding + macSize];
+        final byte[] buffer = new byte[totalBodySize + padding(totalBodySize) + MAC_SIZE];
         try {
             inp.readFully(buffer);
         } catch (final EOFException e) {
             return null;
         }
-        final int frameSize = buffer.length - macSize;
-        ingressMac.update(buffer, 0, frameSize);
-        dec.processBytes(buffer, 0, frameSize, buffer, 0);
-        int pos = 0;
-        final long type = RLP.decodeInt(buffer, pos); // FIXME long
-        pos = RLP.getNextElementIndex(buffer, pos);
-        final InputStream payload = new ByteArrayInputStream(buffer, pos, totalBodySize - pos);
-        final int size = totalBodySize - pos;
-        final byte[] macBuffer = new byte[ingressMac.getDigestSize()];
+        return Collections.singletonList(readBody(buffer, 0));
+    }
+
+    private void readHeader(final byte[] headBuffer) throws IOException {
+        // Header MAC
+        updateMac(ingressMac, headBuffer, 0, headBuffer, 16, false);
+
+        dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        totalBodySize = headBuffer[0] & 0xFF;
+        totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
+        totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
+
+        final RLPView rlpList = RLPView.decode(headBuffer, 3, 16);
+
+        final int protocol = Util.rlpDecodeInt(rlpList.get(0));
+        contextId = -1;
+        totalFrameSize = -1;
+        if (rlpList.size() > 1) {
+            contextId = Util.rlpDecodeInt(rlpList.get(1));
+            if (rlpList.size() > 2) {
+                totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
+            }
+        }
+
+        isHeadRead = true;
+    }
+
+    /**
+     * Authenticates the encrypted body at offset and decrypts the payload into the frame array
+     */
+    private Frame readBody(final byte[] buffer, final int offset) throws IOException {
+        final int padding = padding(totalBodySize);
+        final int frameSize = totalBodySize + padding;
+        ingressMac.update(buffer, offset, frameSize);
+
+        // the type is decrypted first to find where the payload starts
+        dec.processBytes(buffer, offset, 1, ingressScratch, 0);
+        final int prefix = ingressScratch[0] & 0xFF;
+        final int typeSize = prefix < 0x80 ? 1 : prefix - 0x80 + 1;
+        if (typeSize > 9 || typeSize > totalBodySize) {
+            throw new IOException("Invalid frame type prefix: " + prefix);
+        }
+        dec.processBytes(buffer, offset + 1, typeSize - 1, ingressScratch, 1);
+        final long type = RLP.decodeInt(ingressScratch, 0); // FIXME long
+
+        final byte[] payload = new byte[totalBodySize - typeSize];
+        dec.processBytes(buffer, offset + typeSize, payload.length, payload, 0);
+        dec.processBytes(buffer, offset + totalBodySize, padding, ingressScratch, 0);
 
         // Frame MAC
-        doSum(ingressMac, macBuffer); // fmacseed
-        updateMac(ingressMac, macBuffer, 0, buffer, frameSize, false);
+        doSum(ingressMac, ingressMacSeed); // fmacseed
+        updateMac(ingressMac, ingressMacSeed, 0, buffer, offset + frameSize, false);
 
         isHeadRead = false;
-        final Frame frame = new Frame(type, size, payload);
+        final Frame frame = new Frame(type, payload, 0, payload.length);
         frame.contextId = contextId;
         frame.totalFrameSize = totalFrameSize;
-        return Collections.singletonList(frame);
+        return frame;
     }
 
-    private byte[] updateMac(final KeccakDigest mac, final byte[] seed, final int offset, final byte[] out, final int outOffset, final boolean egress) throws IOException {
-        final byte[] aesBlock = new byte[mac.getDigestSize()];
+    private void updateMac(final KeccakDigest mac, final byte[] seed, final int offset, final byte[] out, final int outOffset, final boolean egress) throws IOException {
+        final byte[] aesBlock = egress ? egressMacBlock : ingressMacBlock;
+        final byte[] result = egress ? egressMacResult : ingressMacResult;
         doSum(mac, aesBlock);
-        makeMacCipher().processBlock(aesBlock, 0, aesBlock, 0);
+        (egress ? egressMacCipher : ingressMacCipher).processBlock(aesBlock, 0, aesBlock, 0);
         // Note that although the mac digest size is 32 bytes, we only use 16 bytes in the computation
         final int length = 16;
         for (int i = 0; i < length; i++) {
             aesBlock[i] ^= seed[i + offset];
         }
         mac.update(aesBlock, 0, length);
-        final byte[] result = new byte[mac.getDigestSize()];
         doSum(mac, result);
         if (egress) {
             System.arraycopy(result, 0, out, outOffset, length);
@@ -216,7 +306,6 @@ public class FrameCodec {
                 }
             }
         }
-        return result;
     }
 
     private void doSum(final KeccakDigest mac, final byte[] out) {
@@ -228,6 +317,8 @@ public class FrameCodec {
         final long type;
         final int size;
         final InputStream payload;
+        private final byte[] data;
+        private final int offset;
 
         int totalFrameSize = -1;
         int contextId = -1;
@@ -236,12 +327,23 @@ public class FrameCodec {
             this.type = type;
             this.size = size;
             this.payload = payload;
+            this.data = null;
+            this.offset = 0;
         }
 
         public Frame(final int type, final byte[] payload) {
+            this(type, payload, 0, payload.length);
+        }
+
+        /**
+         * Frame of the array range which isn't copied
+         */
+        public Frame(final long type, final byte[] payload, final int offset, final int length) {
             this.type = type;
-            this.size = payload.length;
-            this.payload = new ByteArrayInputStream(payload);
+            this.size = length;
+            this.payload = new ByteArrayInputStream(payload, offset, length);
+            this.data = payload;
+            this.offset = offset;
         }
 
         public int getSize() {
@@ -256,6 +358,29 @@ public class FrameCodec {
             return payload;
         }
 
+        /**
+         * @return the payload, the frame array itself when the frame covers all of it
+         */
+        public byte[] getPayloadArray() throws IOException {
+            if (data == null) {
+                final byte[] ret = new byte[size];
+                ByteStreams.readFully(payload, ret);
+                return ret;
+            }
+            return offset == 0 && size == data.length ? data : Arrays.copyOfRange(data, offset, offset + size);
+        }
+
+        /**
+         * Copies the payload into the array at pos
+         */
+        void readPayload(final byte[] out, final int pos) throws IOException {
+            if (data == null) {
+                ByteStreams.readFully(payload, out, pos, size);
+            } else {
+                System.arraycopy(data, offset, out, pos, size);
+            }
+        }
+
         public boolean isChunked() {
             return contextId >= 0;
         }
@@ -49,6 +49,8 @@ public class FrameCodecHandler extends NettyByteToMessageCodec<FrameCodec.Frame>
     private final Channel channel;
 
     public FrameCodecHandler(final FrameCodec frameCodec, final Channel channel) {
+        // the frames are encrypted in place in heap buffers
+        super(false);
         this.frameCodec = frameCodec;
         this.channel = channel;
     }
@@ -26,7 +26,6 @@
 
 package org.ethereum.net.rlpx;
 
-import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -184,7 +183,7 @@ public class HandshakeHandler extends ByteToMessageDecoder {
                 if (frames == null || frames.isEmpty())
                     return;
                 final Frame frame = frames.get(0);
-                final byte[] payload = ByteStreams.toByteArray(frame.getStream());
+                final byte[] payload = frame.getPayloadArray();
                 if (frame.getType() == P2pMessageCodes.HELLO.asByte()) {
                     final HelloMessage helloMessage = new HelloMessage(payload);
                     if (loggerNet.isDebugEnabled())
@@ -266,7 +265,7 @@ public class HandshakeHandler extends ByteToMessageDecoder {
                 final Frame frame = frames.get(0);
 
                 final Message message = new P2pMessageFactory().create((byte) frame.getType(),
-                        ByteStreams.toByteArray(frame.getStream()));
+                        frame.getPayloadArray());
                 loggerNet.debug("From: {}    Recv:  {}", ctx.channel().remoteAddress(), message);
 
                 if (frame.getType() == P2pMessageCodes.DISCONNECT.asByte()) {
@@ -26,7 +26,6 @@
 
 package org.ethereum.net.rlpx;
 
-import com.google.common.io.ByteStreams;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import org.apache.commons.collections4.map.LRUMap;
@@ -146,10 +145,17 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
     private Message decodeMessage(final ChannelHandlerContext ctx, final List<Frame> frames) throws IOException {
         final long frameType = frames.get(0).getType();
 
-        final byte[] payload = new byte[frames.size() == 1 ? frames.get(0).getSize() : frames.get(0).totalFrameSize];
-        int pos = 0;
-        for (final Frame frame : frames) {
-            pos += ByteStreams.read(frame.getStream(), payload, pos, frame.getSize());
+        // the payload of a single frame is already an array of its own
+        final byte[] payload;
+        if (frames.size() == 1) {
+            payload = frames.get(0).getPayloadArray();
+        } else {
+            payload = new byte[frames.get(0).totalFrameSize];
+            int pos = 0;
+            for (final Frame frame : frames) {
+                frame.readPayload(payload, pos);
+                pos += frame.getSize();
+            }
         }
 
         if (loggerWire.isDebugEnabled())
@@ -186,23 +192,22 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
         if (loggerWire.isDebugEnabled())
             loggerWire.debug("Send: Encoded: {} [{}]", getCode(msg.getCommand()), Hex.toHexString(encoded));
 
-        final List<Frame> frames = splitMessageToFrames(msg);
+        final List<Frame> frames = splitMessageToFrames(getCode(msg.getCommand()), encoded);
 
         out.addAll(frames);
 
         channel.getNodeStatistics().rlpxOutMessages.add();
     }
 
-    private List<Frame> splitMessageToFrames(final Message msg) {
-        final byte code = getCode(msg.getCommand());
+    /**
+     * Chunks of a large message are read from the message encoding without copying it
+     */
+    private List<Frame> splitMessageToFrames(final byte code, final byte[] bytes) {
         final List<Frame> ret = new ArrayList<>();
-        final byte[] bytes = msg.getEncoded();
         int curPos = 0;
         while(curPos < bytes.length) {
             final int newPos = min(curPos + maxFramePayloadSize, bytes.length);
-            final byte[] frameBytes = curPos == 0 && newPos == bytes.length ? bytes :
-                    Arrays.copyOfRange(bytes, curPos, newPos);
-            ret.add(new Frame(code, frameBytes));
+            ret.add(new Frame(code, bytes, curPos, newPos - curPos));
             curPos = newPos;
         }
 
@@ -40,6 +40,16 @@ import java.util.List;
  */
 abstract class NettyByteToMessageCodec<I> extends ByteToMessageCodec<I> {
 
+    NettyByteToMessageCodec() {
+    }
+
+    /**
+     * @param preferDirect whether the encoded messages are written to direct buffers
+     */
+    NettyByteToMessageCodec(final boolean preferDirect) {
+        super(preferDirect);
+    }
+
     private final ByteToMessageDecoder decoder = new ByteToMessageDecoder() {
         {
             setCumulator(COMPOSITE_CUMULATOR);
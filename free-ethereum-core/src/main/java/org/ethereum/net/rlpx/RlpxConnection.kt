@@ -61,15 +61,13 @@ internal class RlpxConnection(secrets: EncryptionHandshake.Secrets, inp: InputSt
             if (frame.type != HandshakeMessage.HANDSHAKE_MESSAGE_TYPE.toLong())
                 throw IOException("expected handshake or disconnect")
             // TODO handle disconnect
-            val wire = ByteArray(frame.size)
-            frame.payload.read(wire)
+            val wire = frame.payloadArray
             println("packet " + Hex.toHexString(wire))
             handshakeMessage = HandshakeMessage.parse(wire)
             logger.info(" ===> " + handshakeMessage!!)
         } else {
             println("packet type " + frame.type)
-            val wire = ByteArray(frame.size)
-            frame.payload.read(wire)
+            val wire = frame.payloadArray
             println("packet " + Hex.toHexString(wire))
         }
     }
@@ -79,6 +79,15 @@ public class NodeStatistics {
     public final StatHandler eth63NodesRequested = new StatHandler();
     public final StatHandler eth63NodesReceived = new StatHandler();
     public final StatHandler eth63NodesRetrieveTime = new StatHandler();
+    // serving stat
+    public final StatHandler ethServingRequests = new StatHandler();
+    public final StatHandler ethServingBytes = new StatHandler();
+    // total ms from receiving the requests to sending the responses
+    public final StatHandler ethServingLatency = new StatHandler();
+    // requests currently waiting in the peer queue
+    public final StatHandler ethServingQueued = new StatHandler();
+    public final StatHandler ethServingDropped = new StatHandler();
+    public final StatHandler ethServingCoalesced = new StatHandler();
     private final Node node;
     // Eth stat
     private final StatHandler ethHandshake = new StatHandler();
@@ -204,6 +213,14 @@ public class NodeStatistics {
         this.isPredefined = isPredefined;
     }
 
+    /**
+     * @return average time from receiving a request of the peer to sending the response in ms
+     */
+    public long getEthServingAvgLatency() {
+        final long requests = ethServingRequests.get();
+        return requests == 0 ? 0 : ethServingLatency.get() / requests;
+    }
+
     public StatusMessage getEthLastInboundStatusMsg() {
         return ethLastInboundStatusMsg;
     }
@@ -232,6 +249,8 @@ public class NodeStatistics {
                 rlpxInMessages + "/" + rlpxOutMessages +
                 ", eth: " + ethHandshake + "/" + ethInbound + "/" + ethOutbound + " " +
                 (ethLastInboundStatusMsg != null ? ByteUtil.toHexString(ethLastInboundStatusMsg.getTotalDifficulty()) : "-") + " " +
+                ", serving: " + ethServingRequests + "/" + ethServingQueued + "/" + ethServingDropped + " " +
+                getEthServingAvgLatency() + "ms " +
                 (wasDisconnected() ? "X " : "") +
                 (rlpxLastLocalDisconnectReason != null ? ("<=" + rlpxLastLocalDisconnectReason) : " ") +
                 (rlpxLastRemoteDisconnectReason != null ? ("=>" + rlpxLastRemoteDisconnectReason) : " ")  +
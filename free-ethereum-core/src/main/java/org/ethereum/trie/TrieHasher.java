@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.trie;
+
+import org.ethereum.config.SystemProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Work-stealing scheduler of the trie hashing
+ *
+ * The dirty subtrees of a {@link TrieImpl} are hashed as fork/join tasks which are split
+ * at any depth while the pool workers are short of work, several tries (e.g. the storage
+ * tries of the modified contracts) are hashed concurrently by {@link #flushAll(Collection)}.
+ * The tries without their own hasher share the {@link #getDefault()} one.
+ */
+public final class TrieHasher {
+
+    /**
+     * A subtree is forked only while a worker has less queued tasks than this
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    private static volatile TrieHasher defaultHasher;
+
+    private final int parallelism;
+    private volatile ForkJoinPool pool;
+
+    /**
+     * @param threads number of the hashing threads, 0 - number of available processors,
+     *                1 - the tries are hashed by the calling thread only
+     */
+    public TrieHasher(final int threads) {
+        parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return hasher with the blockchain.trieHash.threads of the default config
+     */
+    public static TrieHasher getDefault() {
+        TrieHasher ret = defaultHasher;
+        if (ret == null) {
+            synchronized (TrieHasher.class) {
+                ret = defaultHasher;
+                if (ret == null) {
+                    final SystemProperties config = SystemProperties.getDefault();
+                    ret = new TrieHasher(config == null ? 0 : config.trieHashThreads());
+                    defaultHasher = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, p -> {
+                final ForkJoinWorkerThread ret = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                ret.setName("trie-hash-thread-" + ret.getPoolIndex());
+                ret.setDaemon(true);
+                return ret;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    boolean isParallel() {
+        return parallelism > 1;
+    }
+
+    /**
+     * @return true if the current thread is a worker of this hasher's pool, the workers
+     * of other pools (e.g. of the parallel streams) don't count
+     */
+    boolean inPool() {
+        final ForkJoinPool pool = this.pool;
+        return pool != null && ForkJoinTask.getPool() == pool;
+    }
+
+    /**
+     * @return true if a subtree should be forked instead of being hashed by the current thread
+     */
+    static boolean shouldFork() {
+        return ForkJoinTask.getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS;
+    }
+
+    /**
+     * Runs the task in the hashing pool unless it is already run by one of its workers
+     */
+    void invoke(final Runnable task) {
+        if (inPool()) {
+            task.run();
+        } else {
+            getPool().invoke(ForkJoinTask.adapt(task));
+        }
+    }
+
+    /**
+     * Hashes the tries concurrently and persists their dirty nodes
+     */
+    public void flushAll(final Collection<? extends Trie<?>> tries) {
+        if (tries.size() < 2 || !isParallel()) {
+            tries.forEach(Trie::flush);
+        } else {
+            invoke(() -> {
+                final List<ForkJoinTask<?>> tasks = new ArrayList<>(tries.size());
+                for (final Trie<?> trie : tries) {
+                    tasks.add(ForkJoinTask.adapt(trie::flush));
+                }
+                ForkJoinTask.invokeAll(tasks);
+            });
+        }
+    }
+}
@@ -26,33 +26,30 @@
 
 package org.ethereum.trie;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.Source;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
+import org.ethereum.util.RLPWriter;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinTask;
 
-import static org.apache.commons.lang3.concurrent.ConcurrentUtils.constantFuture;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.RLP.*;
 
 public class TrieImpl implements Trie<byte[]> {
     private final static Object NULL_NODE = new Object();
     private final static int MIN_BRANCHES_CONCURRENTLY = 3;
-    private static ExecutorService executor;
+    private final static RLPWriter EMPTY_ELEMENT = RLPWriter.item(EMPTY_BYTE_ARRAY);
     private final Source<byte[], byte[]> cache;
     private Node root;
     private boolean async = true;
+    private TrieHasher hasher;
 
     public TrieImpl() {
         this((byte[]) null);
@@ -71,14 +68,6 @@ public class TrieImpl implements Trie<byte[]> {
         setRoot(root);
     }
 
-    private static ExecutorService getExecutor() {
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(4,
-                    new ThreadFactoryBuilder().setNameFormat("trie-calc-thread-%d").build());
-        }
-        return executor;
-    }
-
     private static String hash2str(final byte[] hash, final boolean shortHash) {
         final String ret = Hex.toHexString(hash);
         return "0x" + (shortHash ? ret.substring(0, 8) : ret);
@@ -96,6 +85,17 @@ public class TrieImpl implements Trie<byte[]> {
         this.async = async;
     }
 
+    /**
+     * @param hasher scheduler of the concurrent hashing, null for the {@link TrieHasher#getDefault()} one
+     */
+    public void setHasher(final TrieHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    private TrieHasher getHasher() {
+        return hasher != null ? hasher : TrieHasher.getDefault();
+    }
+
     private void encode() {
         if (root != null) {
             root.encode();
@@ -426,64 +426,56 @@ public class TrieImpl implements Trie<byte[]> {
         }
 
         public byte[] encode() {
-            return encode(1, true);
+            return encode(1, true).encode();
         }
 
-        private byte[] encode(final int depth, final boolean forceHash) {
+        /**
+         * @return writer of the node reference within the parent: the encoded node when it's
+         * shorter than a hash or the hash of the node otherwise
+         */
+        private RLPWriter encode(final int depth, final boolean forceHash) {
             if (!dirty) {
-                return hash != null ? encodeElement(hash) : rlp;
+                return hash != null ? RLPWriter.item(hash) : RLPWriter.encoded(rlp);
             } else {
                 final NodeType type = getType();
                 final byte[] ret;
                 if (type == NodeType.BranchNode) {
-                    if (depth == 1 && async) {
-                        // parallelize encode() on the first trie level only and if there are at least
-                        // MIN_BRANCHES_CONCURRENTLY branches are modified
-                        final Object[] encoded = new Object[17];
-                        int encodeCnt = 0;
-                        for (int i = 0; i < 16; i++) {
-                            final Node child = branchNodeGetChild(i);
-                            if (child == null) {
-                                encoded[i] = EMPTY_ELEMENT_RLP;
-                            } else if (!child.dirty) {
-                                encoded[i] = child.encode(depth + 1, false);
-                            } else {
-                                encodeCnt++;
-                            }
+                    final RLPWriter[] encoded = new RLPWriter[17];
+                    int dirtyCnt = 0;
+                    for (int i = 0; i < 16; i++) {
+                        final Node child = branchNodeGetChild(i);
+                        if (child == null) {
+                            encoded[i] = EMPTY_ELEMENT;
+                        } else if (!child.dirty) {
+                            encoded[i] = child.encode(depth + 1, false);
+                        } else {
+                            dirtyCnt++;
                         }
+                    }
+                    // the dirty subtrees are hashed in the TrieHasher pool when there are enough of them:
+                    // entering the pool only pays off for several subtrees while within the pool
+                    // any node with 2 dirty children is split if the workers need more tasks
+                    final TrieHasher hasher = async ? getHasher() : null;
+                    if (hasher != null && dirtyCnt >= (hasher.inPool() ? 2 : MIN_BRANCHES_CONCURRENTLY)
+                            && hasher.isParallel()) {
+                        hasher.invoke(() -> encodeChildrenConcurrently(encoded, depth));
+                    } else {
                         for (int i = 0; i < 16; i++) {
                             if (encoded[i] == null) {
-                                final Node child = branchNodeGetChild(i);
-                                if (encodeCnt >= MIN_BRANCHES_CONCURRENTLY) {
-                                    encoded[i] = getExecutor().submit(() -> child.encode(depth + 1, false));
-                                } else {
-                                    encoded[i] = child.encode(depth + 1, false);
-                                }
+                                encoded[i] = branchNodeGetChild(i).encode(depth + 1, false);
                             }
                         }
-                        final byte[] value = branchNodeGetValue();
-                        encoded[16] = constantFuture(encodeElement(value));
-                        try {
-                            ret = encodeRlpListFutures(encoded);
-                        } catch (final Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else {
-                        final byte[][] encoded = new byte[17][];
-                        for (int i = 0; i < 16; i++) {
-                            final Node child = branchNodeGetChild(i);
-                            encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false);
-                        }
-                        final byte[] value = branchNodeGetValue();
-                        encoded[16] = encodeElement(value);
-                        ret = encodeList(encoded);
                     }
+                    final byte[] value = branchNodeGetValue();
+                    encoded[16] = RLPWriter.item(value);
+                    ret = RLPWriter.list(encoded).encode();
                 } else if (type == NodeType.KVNodeNode) {
-                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()), kvNodeGetChildNode().encode(depth + 1, false));
+                    ret = RLPWriter.list(RLPWriter.item(kvNodeGetKey().toPacked()),
+                            kvNodeGetChildNode().encode(depth + 1, false)).encode();
                 } else {
                     final byte[] value = kvNodeGetValue();
-                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()),
-                                    encodeElement(value == null ? EMPTY_BYTE_ARRAY : value));
+                    ret = RLPWriter.list(RLPWriter.item(kvNodeGetKey().toPacked()),
+                                    RLPWriter.item(value == null ? EMPTY_BYTE_ARRAY : value)).encode();
                 }
                 if (hash != null) {
                     deleteHash(hash);
@@ -491,26 +483,40 @@ public class TrieImpl implements Trie<byte[]> {
                 dirty = false;
                 if (ret.length < 32 && !forceHash) {
                     rlp = ret;
-                    return ret;
+                    return RLPWriter.encoded(ret);
                 } else {
                     hash = HashUtil.INSTANCE.sha3(ret);
                     addHash(hash, ret);
-                    return encodeElement(hash);
+                    return RLPWriter.item(hash);
                 }
             }
         }
 
-        @SafeVarargs
-        private final byte[] encodeRlpListFutures(final Object... list) throws ExecutionException, InterruptedException {
-            final byte[][] vals = new byte[list.length][];
-            for (int i = 0; i < list.length; i++) {
-                if (list[i] instanceof Future) {
-                    vals[i] = ((Future<byte[]>) list[i]).get();
-                } else {
-                    vals[i] = (byte[]) list[i];
+        /**
+         * Encodes the dirty children missing in the encoded array, all but the last one
+         * are forked while the current worker doesn't have enough queued tasks
+         */
+        @SuppressWarnings("unchecked")
+        private void encodeChildrenConcurrently(final RLPWriter[] encoded, final int depth) {
+            final ForkJoinTask<RLPWriter>[] forked = new ForkJoinTask[16];
+            int last = 15;
+            while (encoded[last] != null) last--;
+            for (int i = 0; i < last; i++) {
+                if (encoded[i] == null) {
+                    final Node child = branchNodeGetChild(i);
+                    if (TrieHasher.shouldFork()) {
+                        forked[i] = ForkJoinTask.adapt(() -> child.encode(depth + 1, false)).fork();
+                    } else {
+                        encoded[i] = child.encode(depth + 1, false);
+                    }
+                }
+            }
+            encoded[last] = branchNodeGetChild(last).encode(depth + 1, false);
+            for (int i = last - 1; i >= 0; i--) {
+                if (forked[i] != null) {
+                    encoded[i] = forked[i].join();
                 }
             }
-            return encodeList(vals);
         }
 
         private void parse() {
@@ -509,7 +509,9 @@ public class RLP {
 
             while (pos < endPos) {
 
-                logger.debug("fullTraverse: level: " + level + " startPos: " + pos + " endPos: " + endPos);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("fullTraverse: level: " + level + " startPos: " + pos + " endPos: " + endPos);
+                }
 
 
                 // It's a list with a payload more than 55 bytes
@@ -569,10 +571,6 @@ public class RLP {
                     System.arraycopy(msgData, pos + lengthOfLength + 1, item,
                             0, length);
 
-                    final byte[] rlpPrefix = new byte[lengthOfLength + 1];
-                    System.arraycopy(msgData, pos, rlpPrefix, 0,
-                            lengthOfLength + 1);
-
                     final RLPItem rlpItem = new RLPItem(item);
                     rlpList.add(rlpItem);
                     pos += lengthOfLength + length + 1;
@@ -589,9 +587,6 @@ public class RLP {
                     final byte[] item = new byte[length];
                     System.arraycopy(msgData, pos + 1, item, 0, length);
 
-                    final byte[] rlpPrefix = new byte[2];
-                    System.arraycopy(msgData, pos, rlpPrefix, 0, 2);
-
                     final RLPItem rlpItem = new RLPItem(item);
                     rlpList.add(rlpItem);
                     pos += 1 + length;
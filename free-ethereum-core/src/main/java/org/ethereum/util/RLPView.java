@@ -0,0 +1,263 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.util;
+
+import org.ethereum.crypto.HashUtil;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Zero-copy view of an RLP element within a backing array
+ *
+ * Unlike {@link RLP#decode2(byte[])} which copies every nested list and item, decoding only
+ * reads the element prefix: a view is the (offset, length, type) of the element and the
+ * children are decoded into views of the same array as they are iterated. The bytes are
+ * copied only when an element value is requested with {@link #getBytes()} or {@link #getEncoded()}.
+ *
+ * The backing array shouldn't be modified while its views are used.
+ */
+public final class RLPView implements RLPElement, Iterable<RLPView> {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final byte[] data;
+    private final int start;
+    private final int offset;
+    private final int length;
+    private final boolean list;
+
+    private RLPView(final byte[] data, final int start, final int offset, final int length, final boolean list) {
+        this.data = data;
+        this.start = start;
+        this.offset = offset;
+        this.length = length;
+        this.list = list;
+    }
+
+    /**
+     * @return view of the first element of the data
+     */
+    public static RLPView decode(final byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * @return view of the element at pos which should end before limit
+     */
+    public static RLPView decode(final byte[] data, final int pos, final int limit) {
+        if (pos >= limit || limit > data.length) {
+            throw new RuntimeException("RLP wrong encoding: no element at " + pos);
+        }
+        final int prefix = data[pos] & 0xFF;
+        final RLPView ret;
+        if (prefix < OFFSET_SHORT_ITEM) {
+            ret = new RLPView(data, pos, pos, 1, false);
+        } else if (prefix <= OFFSET_LONG_ITEM) {
+            ret = new RLPView(data, pos, pos + 1, prefix - OFFSET_SHORT_ITEM, false);
+        } else if (prefix < OFFSET_SHORT_LIST) {
+            final int lenlen = prefix - OFFSET_LONG_ITEM;
+            ret = new RLPView(data, pos, pos + 1 + lenlen, readLength(data, pos + 1, lenlen, limit), false);
+        } else if (prefix <= OFFSET_LONG_LIST) {
+            ret = new RLPView(data, pos, pos + 1, prefix - OFFSET_SHORT_LIST, true);
+        } else {
+            final int lenlen = prefix - OFFSET_LONG_LIST;
+            ret = new RLPView(data, pos, pos + 1 + lenlen, readLength(data, pos + 1, lenlen, limit), true);
+        }
+        if ((long) ret.offset + ret.length > limit) {
+            throw new RuntimeException("RLP wrong encoding: element at " + pos + " of length " + ret.length +
+                    " exceeds " + limit);
+        }
+        return ret;
+    }
+
+    private static int readLength(final byte[] data, final int pos, final int lenlen, final int limit) {
+        if (pos + lenlen > limit) {
+            throw new RuntimeException("RLP wrong encoding: length at " + pos + " exceeds " + limit);
+        }
+        long ret = 0;
+        for (int i = 0; i < lenlen; i++) {
+            ret = (ret << 8) | (data[pos + i] & 0xFF);
+            if (ret > Integer.MAX_VALUE) {
+                throw new RuntimeException("RLP wrong encoding: length at " + pos + " is too large");
+            }
+        }
+        return (int) ret;
+    }
+
+    public boolean isList() {
+        return list;
+    }
+
+    /**
+     * @return true if the item or the list payload is empty
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public byte[] getBackingArray() {
+        return data;
+    }
+
+    public int getEncodedOffset() {
+        return start;
+    }
+
+    public int getEncodedLength() {
+        return offset + length - start;
+    }
+
+    public int getPayloadOffset() {
+        return offset;
+    }
+
+    public int getPayloadLength() {
+        return length;
+    }
+
+    /**
+     * @return the item value or the list payload
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * @return the element encoding with the prefix
+     */
+    public byte[] getEncoded() {
+        return Arrays.copyOfRange(data, start, offset + length);
+    }
+
+    /**
+     * The same as {@link RLPItem#getRLPData()} and {@link RLPList#getRLPData()}
+     * for the items and the lists respectively
+     */
+    @Override
+    public byte[] getRLPData() {
+        if (list) return getEncoded();
+        return length == 0 ? null : getBytes();
+    }
+
+    public long asLong() {
+        if (list || length > 8) {
+            throw new RuntimeException("RLP element at " + start + " is not a long");
+        }
+        long ret = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ret = (ret << 8) | (data[i] & 0xFF);
+        }
+        return ret;
+    }
+
+    public int asInt() {
+        if (length > 4) {
+            throw new RuntimeException("RLP element at " + start + " is not an int");
+        }
+        return (int) asLong();
+    }
+
+    public BigInteger asBigInteger() {
+        return length == 0 ? BigInteger.ZERO : new BigInteger(1, getBytes());
+    }
+
+    /**
+     * @return hash of the element encoding
+     */
+    public byte[] sha3() {
+        return HashUtil.INSTANCE.sha3(data, start, getEncodedLength());
+    }
+
+    /**
+     * Streams the children of the list, each one decoded as it is reached
+     */
+    @Override
+    public Iterator<RLPView> iterator() {
+        if (!list) {
+            throw new RuntimeException("RLP element at " + start + " is not a list");
+        }
+        return new Iterator<RLPView>() {
+            private int pos = offset;
+
+            @Override
+            public boolean hasNext() {
+                return pos < offset + length;
+            }
+
+            @Override
+            public RLPView next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final RLPView ret = decode(data, pos, offset + length);
+                pos = ret.offset + ret.length;
+                return ret;
+            }
+        };
+    }
+
+    /**
+     * @return the list child, the children before it are skipped
+     */
+    public RLPView get(final int index) {
+        int i = 0;
+        for (final RLPView child : this) {
+            if (i++ == index) return child;
+        }
+        throw new IndexOutOfBoundsException("RLP list at " + start + " has no element " + index);
+    }
+
+    public int size() {
+        int ret = 0;
+        for (final Iterator<RLPView> it = iterator(); it.hasNext(); it.next()) {
+            ret++;
+        }
+        return ret;
+    }
+
+    /**
+     * @return views of all the list children
+     */
+    public List<RLPView> getChildren() {
+        final List<RLPView> ret = new ArrayList<>();
+        for (final RLPView child : this) {
+            ret.add(child);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return (list ? "RLPList" : "RLPItem") + "[" + Hex.toHexString(data, start, getEncodedLength()) + "]";
+    }
+}
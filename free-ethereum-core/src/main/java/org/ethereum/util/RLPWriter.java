@@ -0,0 +1,353 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.spongycastle.util.BigIntegers.asUnsignedByteArray;
+
+/**
+ * Two-pass RLP encoder of an element tree
+ *
+ * Unlike {@link RLP#encodeList(byte[]...)} which needs every child encoded into its own array
+ * and copies it again into the parent, the tree only references the values: the sizes are
+ * computed as the tree is built and the whole encoding is then written once into an array
+ * or a {@link ByteBuf}. The result is the same as the {@link RLP} encoding functions.
+ *
+ * The referenced arrays shouldn't be modified until the tree is written.
+ */
+public abstract class RLPWriter {
+
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int SIZE_THRESHOLD = 56;
+
+    private static final RLPWriter EMPTY_ITEM = new Scalar(0);
+    private static final RLPWriter EMPTY_LIST = new ListWriter(new RLPWriter[0]);
+
+    private RLPWriter() {
+    }
+
+    /**
+     * Like {@link RLP#encodeElement(byte[])}
+     */
+    public static RLPWriter item(final byte[] value) {
+        if (value == null || value.length == 0) {
+            return EMPTY_ITEM;
+        }
+        return new Item(value, 0, value.length, value.length == 1 && (value[0] & 0xFF) < OFFSET_SHORT_ITEM);
+    }
+
+    /**
+     * Like {@link RLP#encodeBigInteger(BigInteger)} of the value
+     */
+    public static RLPWriter item(final long value) {
+        if (value == 0) {
+            return EMPTY_ITEM;
+        } else if (value > 0) {
+            return new Scalar(value);
+        } else {
+            return item(asUnsignedByteArray(BigInteger.valueOf(value)));
+        }
+    }
+
+    /**
+     * Like {@link RLP#encodeInt(int)}
+     */
+    public static RLPWriter itemInt(final int value) {
+        return item(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Like {@link RLP#encodeBigInteger(BigInteger)}
+     */
+    public static RLPWriter item(final BigInteger value) {
+        if (value.signum() == 0) {
+            return EMPTY_ITEM;
+        } else if (value.signum() > 0 && value.bitLength() < 64) {
+            return new Scalar(value.longValue());
+        } else {
+            return item(asUnsignedByteArray(value));
+        }
+    }
+
+    /**
+     * @param rlp already encoded element which is written as is
+     */
+    public static RLPWriter encoded(final byte[] rlp) {
+        return new Item(rlp, 0, rlp.length, true);
+    }
+
+    /**
+     * @return already encoded element of the view backing array which is written as is
+     */
+    public static RLPWriter encoded(final RLPView view) {
+        return new Item(view.getBackingArray(), view.getEncodedOffset(), view.getEncodedLength(), true);
+    }
+
+    public static RLPWriter list(final RLPWriter... elements) {
+        return elements.length == 0 ? EMPTY_LIST : new ListWriter(elements);
+    }
+
+    public static RLPWriter list(final List<RLPWriter> elements) {
+        return list(elements.toArray(new RLPWriter[elements.size()]));
+    }
+
+    /**
+     * @return list of the already encoded elements, like {@link RLP#encodeList(byte[]...)}
+     */
+    public static RLPWriter encodedList(final List<byte[]> elements) {
+        final RLPWriter[] writers = new RLPWriter[elements.size()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = encoded(elements.get(i));
+        }
+        return list(writers);
+    }
+
+    private static int prefixSize(final int length) {
+        if (length < SIZE_THRESHOLD) {
+            return 1;
+        }
+        return 1 + bytesCount(length);
+    }
+
+    private static int bytesCount(final long value) {
+        return (64 - Long.numberOfLeadingZeros(value) + 7) >> 3;
+    }
+
+    private static void writePrefix(final Sink out, final int length, final int offset) {
+        if (length < SIZE_THRESHOLD) {
+            out.put(offset + length);
+        } else {
+            final int lengthBytes = bytesCount(length);
+            out.put(offset + SIZE_THRESHOLD - 1 + lengthBytes);
+            writeBigEndian(out, length, lengthBytes);
+        }
+    }
+
+    private static void writeBigEndian(final Sink out, final long value, final int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.put((int) (value >>> (i << 3)));
+        }
+    }
+
+    /**
+     * @return size of the encoding
+     */
+    public abstract int getEncodedLength();
+
+    abstract void write(Sink out);
+
+    public byte[] encode() {
+        final byte[] ret = new byte[getEncodedLength()];
+        encode(ret, 0);
+        return ret;
+    }
+
+    /**
+     * Writes the encoding into the array at pos
+     *
+     * @return the position after the encoding
+     */
+    public int encode(final byte[] out, final int pos) {
+        final int end = pos + getEncodedLength();
+        if (pos < 0 || end > out.length) {
+            throw new IndexOutOfBoundsException("Can't write " + getEncodedLength() + " bytes at " + pos +
+                    " of " + out.length);
+        }
+        final ArraySink sink = new ArraySink(out, pos);
+        write(sink);
+        return sink.pos;
+    }
+
+    /**
+     * Writes the encoding at the buffer writer index
+     */
+    public void encode(final ByteBuf buf) {
+        final int length = getEncodedLength();
+        buf.ensureWritable(length);
+        if (buf.hasArray()) {
+            final int idx = buf.writerIndex();
+            encode(buf.array(), buf.arrayOffset() + idx);
+            buf.writerIndex(idx + length);
+        } else {
+            write(new ByteBufSink(buf));
+        }
+    }
+
+    /**
+     * @return new buffer of the allocator with the encoding, which is released by the caller
+     */
+    public ByteBuf encode(final ByteBufAllocator alloc) {
+        final ByteBuf ret = alloc.buffer(getEncodedLength());
+        try {
+            encode(ret);
+            return ret;
+        } catch (final RuntimeException e) {
+            ret.release();
+            throw e;
+        }
+    }
+
+    private abstract static class Sink {
+        abstract void put(int b);
+
+        abstract void put(byte[] src, int offset, int length);
+    }
+
+    private static final class ArraySink extends Sink {
+        private final byte[] out;
+        private int pos;
+
+        ArraySink(final byte[] out, final int pos) {
+            this.out = out;
+            this.pos = pos;
+        }
+
+        @Override
+        void put(final int b) {
+            out[pos++] = (byte) b;
+        }
+
+        @Override
+        void put(final byte[] src, final int offset, final int length) {
+            System.arraycopy(src, offset, out, pos, length);
+            pos += length;
+        }
+    }
+
+    private static final class ByteBufSink extends Sink {
+        private final ByteBuf out;
+
+        ByteBufSink(final ByteBuf out) {
+            this.out = out;
+        }
+
+        @Override
+        void put(final int b) {
+            out.writeByte(b);
+        }
+
+        @Override
+        void put(final byte[] src, final int offset, final int length) {
+            out.writeBytes(src, offset, length);
+        }
+    }
+
+    /**
+     * Byte string value or an already encoded element when raw
+     */
+    private static final class Item extends RLPWriter {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+        private final boolean raw;
+
+        Item(final byte[] data, final int offset, final int length, final boolean raw) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.raw = raw;
+        }
+
+        @Override
+        public int getEncodedLength() {
+            return raw ? length : prefixSize(length) + length;
+        }
+
+        @Override
+        void write(final Sink out) {
+            if (!raw) {
+                writePrefix(out, length, OFFSET_SHORT_ITEM);
+            }
+            out.put(data, offset, length);
+        }
+    }
+
+    /**
+     * Unsigned number written without leading zeroes
+     */
+    private static final class Scalar extends RLPWriter {
+        private final long value;
+        private final int bytes;
+
+        Scalar(final long value) {
+            this.value = value;
+            this.bytes = bytesCount(value);
+        }
+
+        @Override
+        public int getEncodedLength() {
+            return bytes == 1 && value < OFFSET_SHORT_ITEM ? 1 : 1 + bytes;
+        }
+
+        @Override
+        void write(final Sink out) {
+            if (bytes == 0) {
+                out.put(OFFSET_SHORT_ITEM);
+            } else if (bytes == 1 && value < OFFSET_SHORT_ITEM) {
+                out.put((int) value);
+            } else {
+                out.put(OFFSET_SHORT_ITEM + bytes);
+                writeBigEndian(out, value, bytes);
+            }
+        }
+    }
+
+    private static final class ListWriter extends RLPWriter {
+        private final RLPWriter[] elements;
+        private final int payloadLength;
+
+        ListWriter(final RLPWriter[] elements) {
+            this.elements = elements;
+            long length = 0;
+            for (final RLPWriter element : elements) {
+                length += element.getEncodedLength();
+            }
+            if (length > Integer.MAX_VALUE - 5) {
+                throw new RuntimeException("Input too long");
+            }
+            this.payloadLength = (int) length;
+        }
+
+        @Override
+        public int getEncodedLength() {
+            return prefixSize(payloadLength) + payloadLength;
+        }
+
+        @Override
+        void write(final Sink out) {
+            writePrefix(out, payloadLength, OFFSET_SHORT_LIST);
+            for (final RLPWriter element : elements) {
+                element.write(out);
+            }
+        }
+    }
+}
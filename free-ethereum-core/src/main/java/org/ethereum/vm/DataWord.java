@@ -30,17 +30,20 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.ByteUtil;
-import org.ethereum.util.FastByteComparisons;
-import org.spongycastle.util.Arrays;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
 
 /**
  * DataWord is the 32-byte array representation of a 256-bit number
  * Calculations can be done on this word with other DataWords
  *
+ * The number is kept in four 64-bit limbs in big-endian order ({@code w0} holds
+ * bytes 0..7, {@code w3} holds bytes 24..31) and every EVM operation works
+ * in place on those limbs, so the arithmetic opcodes never touch the heap.
+ * The 32-byte array returned by {@link #getData()} is materialized lazily,
+ * cached until the next mutation and must be treated as read-only.
+ *
  * @author Roman Mandeleil
  * @since 01.06.2014
  */
@@ -51,24 +54,33 @@ public class DataWord implements Comparable<DataWord> {
     /* Maximum value of the DataWord */
     private static final BigInteger _2_256 = BigInteger.valueOf(2).pow(256);
     private static final BigInteger MAX_VALUE = _2_256.subtract(BigInteger.ONE);
-    private byte[] data = new byte[32];
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private long w0;
+    private long w1;
+    private long w2;
+    private long w3;
+
+    /* big-endian view of the limbs, dropped on every mutation; volatile so that a word shared
+       between threads is never seen with the array published before it's filled */
+    private volatile byte[] data;
 
     public DataWord() {
     }
 
     public DataWord(final int num) {
-        this(ByteBuffer.allocate(4).putInt(num));
+        this.w3 = num & INT_MASK;
     }
 
     public DataWord(final long num) {
-        this(ByteBuffer.allocate(8).putLong(num));
+        this.w3 = num;
     }
 
-    private DataWord(final ByteBuffer buffer) {
-        final ByteBuffer data = ByteBuffer.allocate(32);
-        final byte[] array = buffer.array();
-        System.arraycopy(array, 0, data.array(), 32 - array.length, array.length);
-        this.data = data.array();
+    private DataWord(final long w0, final long w1, final long w2, final long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
     }
 
     @JsonCreator
@@ -81,30 +93,225 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public DataWord(final byte[] data) {
-        if (data == null)
-            this.data = ByteUtil.EMPTY_BYTE_ARRAY;
-        else if (data.length == 32)
-            this.data = data;
-        else if (data.length <= 32)
-            System.arraycopy(data, 0, this.data, 32 - data.length, data.length);
-        else
+        if (data == null) return;
+        if (data.length > 32)
             throw new RuntimeException("Data word can't exceed 32 bytes: " + java.util.Arrays.toString(data));
+        assign(data);
+    }
+
+    /**
+     * Reads 32 bytes of {@code src} starting at {@code offset} without copying them
+     */
+    public DataWord(final byte[] src, final int offset) {
+        this(readLong(src, offset), readLong(src, offset + 8), readLong(src, offset + 16), readLong(src, offset + 24));
+    }
+
+    private static long readLong(final byte[] src, final int off) {
+        return ((src[off] & 0xFFL) << 56) | ((src[off + 1] & 0xFFL) << 48)
+                | ((src[off + 2] & 0xFFL) << 40) | ((src[off + 3] & 0xFFL) << 32)
+                | ((src[off + 4] & 0xFFL) << 24) | ((src[off + 5] & 0xFFL) << 16)
+                | ((src[off + 6] & 0xFFL) << 8) | (src[off + 7] & 0xFFL);
+    }
+
+    private static void writeLong(final byte[] dst, final int off, final long v) {
+        dst[off] = (byte) (v >>> 56);
+        dst[off + 1] = (byte) (v >>> 48);
+        dst[off + 2] = (byte) (v >>> 40);
+        dst[off + 3] = (byte) (v >>> 32);
+        dst[off + 4] = (byte) (v >>> 24);
+        dst[off + 5] = (byte) (v >>> 16);
+        dst[off + 6] = (byte) (v >>> 8);
+        dst[off + 7] = (byte) v;
+    }
+
+    private static boolean lessUnsigned(final long a, final long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    private static int compareUnsigned(final long a0, final long a1, final long a2, final long a3,
+                                       final long b0, final long b1, final long b2, final long b3) {
+        if (a0 != b0) return lessUnsigned(a0, b0) ? -1 : 1;
+        if (a1 != b1) return lessUnsigned(a1, b1) ? -1 : 1;
+        if (a2 != b2) return lessUnsigned(a2, b2) ? -1 : 1;
+        if (a3 != b3) return lessUnsigned(a3, b3) ? -1 : 1;
+        return 0;
+    }
+
+    private static int bitLength(final long v0, final long v1, final long v2, final long v3) {
+        if (v0 != 0) return 256 - Long.numberOfLeadingZeros(v0);
+        if (v1 != 0) return 192 - Long.numberOfLeadingZeros(v1);
+        if (v2 != 0) return 128 - Long.numberOfLeadingZeros(v2);
+        return 64 - Long.numberOfLeadingZeros(v3);
+    }
+
+    private static long testBit(final long v0, final long v1, final long v2, final long v3, final int n) {
+        final long limb = n >= 192 ? v0 : n >= 128 ? v1 : n >= 64 ? v2 : v3;
+        return (limb >>> (n & 63)) & 1;
+    }
+
+    private static boolean isPowerOfTwo(final long v0, final long v1, final long v2, final long v3) {
+        return Long.bitCount(v0) + Long.bitCount(v1) + Long.bitCount(v2) + Long.bitCount(v3) == 1;
+    }
+
+    /**
+     * High 64 bits of the unsigned 128-bit product x * y
+     */
+    private static long multiplyHighUnsigned(final long x, final long y) {
+        final long x0 = x & INT_MASK, x1 = x >>> 32;
+        final long y0 = y & INT_MASK, y1 = y >>> 32;
+        final long p00 = x0 * y0, p01 = x0 * y1, p10 = x1 * y0, p11 = x1 * y1;
+        final long middle = (p00 >>> 32) + (p01 & INT_MASK) + (p10 & INT_MASK);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * Unsigned division of a 64-bit dividend by a positive divisor
+     */
+    private static long divideUnsigned(final long dividend, final long divisor) {
+        if (dividend >= 0) return dividend / divisor;
+        final long quotient = ((dividend >>> 1) / divisor) << 1;
+        final long rem = dividend - quotient * divisor;
+        return quotient + (lessUnsigned(rem, divisor) ? 0 : 1);
+    }
+
+    /**
+     * Unsigned 128-by-64 bit division (u1:u0) / v, requires u1 < v.
+     * Knuth's algorithm D on 32-bit digits as given in Hacker's Delight (divlu)
+     */
+    private static long divideUnsigned(final long u1, final long u0, final long divisor) {
+        final long b = 1L << 32;
+        final int s = Long.numberOfLeadingZeros(divisor);
+        final long v = divisor << s;
+        final long vn1 = v >>> 32;
+        final long vn0 = v & INT_MASK;
+
+        final long un32 = s == 0 ? u1 : (u1 << s) | (u0 >>> (64 - s));
+        final long un10 = u0 << s;
+        final long un1 = un10 >>> 32;
+        final long un0 = un10 & INT_MASK;
+
+        long q1 = divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (q1 >= b || lessUnsigned(b * rhat + un1, q1 * vn0)) {
+            q1--;
+            rhat += vn1;
+            if (rhat >= b) break;
+        }
+
+        final long un21 = un32 * b + un1 - q1 * v;
+        long q0 = divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (q0 >= b || lessUnsigned(b * rhat + un0, q0 * vn0)) {
+            q0--;
+            rhat += vn1;
+            if (rhat >= b) break;
+        }
+
+        return (q1 << 32) + q0;
+    }
+
+    private void assign(final byte[] bytes) {
+        if (bytes.length == 32) {
+            set(readLong(bytes, 0), readLong(bytes, 8), readLong(bytes, 16), readLong(bytes, 24));
+            return;
+        }
+        long v0 = 0, v1 = 0, v2 = 0, v3 = 0;
+        final int off = 32 - bytes.length;
+        for (int i = 0; i < bytes.length; ++i) {
+            final int pos = off + i;
+            final long b = (bytes[i] & 0xFFL) << ((7 - (pos & 7)) << 3);
+            switch (pos >>> 3) {
+                case 0: v0 |= b; break;
+                case 1: v1 |= b; break;
+                case 2: v2 |= b; break;
+                default: v3 |= b; break;
+            }
+        }
+        set(v0, v1, v2, v3);
+    }
+
+    private void set(final long v0, final long v1, final long v2, final long v3) {
+        this.w0 = v0;
+        this.w1 = v1;
+        this.w2 = v2;
+        this.w3 = v3;
+        dropData();
+    }
+
+    /**
+     * @param index limb index counting from the least significant limb
+     */
+    private long limb(final int index) {
+        switch (index) {
+            case 0: return w3;
+            case 1: return w2;
+            case 2: return w1;
+            default: return w0;
+        }
+    }
+
+    private void setLimb(final int index, final long value) {
+        switch (index) {
+            case 0: w3 = value; break;
+            case 1: w2 = value; break;
+            case 2: w1 = value; break;
+            default: w0 = value; break;
+        }
+        dropData();
+    }
+
+    private void dropData() {
+        // most words are never read as bytes, skip the volatile write for them
+        if (data != null) {
+            data = null;
+        }
     }
 
     public byte[] getData() {
-        return data;
+        byte[] bytes = data;
+        if (bytes == null) {
+            bytes = new byte[32];
+            copyTo(bytes, 0);
+            data = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the 32-byte big-endian representation into {@code dest} starting at {@code offset}
+     */
+    public void copyTo(final byte[] dest, final int offset) {
+        writeLong(dest, offset, w0);
+        writeLong(dest, offset + 8, w1);
+        writeLong(dest, offset + 16, w2);
+        writeLong(dest, offset + 24, w3);
     }
 
     public byte[] getNoLeadZeroesData() {
-        return ByteUtil.stripLeadingZeroes(data);
+        return ByteUtil.stripLeadingZeroes(getData());
     }
 
     public byte[] getLast20Bytes() {
-        return Arrays.copyOfRange(data, 12, data.length);
+        final byte[] last20 = new byte[20];
+        last20[0] = (byte) (w1 >>> 24);
+        last20[1] = (byte) (w1 >>> 16);
+        last20[2] = (byte) (w1 >>> 8);
+        last20[3] = (byte) w1;
+        writeLong(last20, 4, w2);
+        writeLong(last20, 12, w3);
+        return last20;
+    }
+
+    /**
+     * @param index byte index in the big-endian representation, 0..31
+     */
+    public byte getByte(final int index) {
+        final long limb = index < 8 ? w0 : index < 16 ? w1 : index < 24 ? w2 : w3;
+        return (byte) (limb >>> ((7 - (index & 7)) << 3));
     }
 
     public BigInteger value() {
-        return new BigInteger(1, data);
+        return new BigInteger(1, getData());
     }
 
     /**
@@ -116,13 +323,7 @@ public class DataWord implements Comparable<DataWord> {
      * @throws ArithmeticException - if this will not fit in an int.
      */
     public int intValue() {
-        int intVal = 0;
-
-        for (final byte aData : data) {
-            intVal = (intVal << 8) + (aData & 0xff);
-        }
-
-        return intVal;
+        return (int) w3;
     }
 
     /**
@@ -130,10 +331,8 @@ public class DataWord implements Comparable<DataWord> {
      * otherwise works as #intValue()
      */
     public int intValueSafe() {
-        final int bytesOccupied = bytesOccupied();
-        final int intValue = intValue();
-        if (bytesOccupied > 4 || intValue < 0) return Integer.MAX_VALUE;
-        return intValue;
+        if ((w0 | w1 | w2) != 0 || (w3 >>> 31) != 0) return Integer.MAX_VALUE;
+        return (int) w3;
     }
 
     /**
@@ -145,13 +344,7 @@ public class DataWord implements Comparable<DataWord> {
      * @throws ArithmeticException - if this will not fit in a long.
      */
     public long longValue() {
-
-        long longVal = 0;
-        for (final byte aData : data) {
-            longVal = (longVal << 8) + (aData & 0xff);
-        }
-
-        return longVal;
+        return w3;
     }
 
     /**
@@ -159,56 +352,48 @@ public class DataWord implements Comparable<DataWord> {
      * otherwise works as #longValue()
      */
     public long longValueSafe() {
-        final int bytesOccupied = bytesOccupied();
-        final long longValue = longValue();
-        if (bytesOccupied > 8 || longValue < 0) return Long.MAX_VALUE;
-        return longValue;
+        if ((w0 | w1 | w2) != 0 || w3 < 0) return Long.MAX_VALUE;
+        return w3;
     }
 
     public BigInteger sValue() {
-        return new BigInteger(data);
+        return new BigInteger(getData());
     }
 
     public String  bigIntValue() {
-        return new BigInteger(data).toString();
+        return sValue().toString();
     }
 
     public boolean isZero() {
-        for (final byte tmp : data) {
-            if (tmp != 0) return false;
-        }
-        return true;
+        return (w0 | w1 | w2 | w3) == 0;
     }
 
     // only in case of signed operation
     // when the number is explicit defined
     // as negative
     public boolean isNegative() {
-        final int result = data[0] & 0x80;
-        return result == 0x80;
+        return w0 < 0;
     }
 
-    public DataWord and(final DataWord w2) {
+    /**
+     * Overwrites this word with the unsigned value of {@code num}
+     */
+    public void setLong(final long num) {
+        set(0, 0, 0, num);
+    }
 
-        for (int i = 0; i < this.data.length; ++i) {
-            this.data[i] &= w2.data[i];
-        }
+    public DataWord and(final DataWord w2) {
+        set(this.w0 & w2.w0, this.w1 & w2.w1, this.w2 & w2.w2, this.w3 & w2.w3);
         return this;
     }
 
     public DataWord or(final DataWord w2) {
-
-        for (int i = 0; i < this.data.length; ++i) {
-            this.data[i] |= w2.data[i];
-        }
+        set(this.w0 | w2.w0, this.w1 | w2.w1, this.w2 | w2.w2, this.w3 | w2.w3);
         return this;
     }
 
     public DataWord xor(final DataWord w2) {
-
-        for (int i = 0; i < this.data.length; ++i) {
-            this.data[i] ^= w2.data[i];
-        }
+        set(this.w0 ^ w2.w0, this.w1 ^ w2.w1, this.w2 ^ w2.w2, this.w3 ^ w2.w3);
         return this;
     }
 
@@ -216,63 +401,36 @@ public class DataWord implements Comparable<DataWord> {
 
         if (this.isZero()) return;
 
-        for (int i = 0; i < this.data.length; ++i) {
-            this.data[i] = (byte) ~this.data[i];
-        }
-
-        for (int i = this.data.length - 1; i >= 0; --i) {
-            this.data[i] = (byte) (1 + this.data[i] & 0xFF);
-            if (this.data[i] != 0) break;
-        }
+        long v3 = ~w3 + 1;
+        long v2 = ~w2;
+        long v1 = ~w1;
+        long v0 = ~w0;
+        if (v3 == 0 && ++v2 == 0 && ++v1 == 0) ++v0;
+        set(v0, v1, v2, v3);
     }
 
     public void bnot() {
-        if (this.isZero()) {
-            this.data = ByteUtil.copyToArray(MAX_VALUE);
-            return;
-        }
-        this.data = ByteUtil.copyToArray(MAX_VALUE.subtract(this.value()));
+        set(~w0, ~w1, ~w2, ~w3);
     }
 
-    // By   : Holger
-    // From : http://stackoverflow.com/a/24023466/459349
     public void add(final DataWord word) {
-        final byte[] result = new byte[32];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            final int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            result[i] = (byte) v;
-            overflow = v >>> 8;
-        }
-        this.data = result;
+        addWithCarry(word.w0, word.w1, word.w2, word.w3);
     }
 
     // old add-method with BigInteger quick hack
     public void add2(final DataWord word) {
         final BigInteger result = value().add(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assign(ByteUtil.copyToArray(result.and(MAX_VALUE)));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
     public void mul(final DataWord word) {
-        final BigInteger result = value().multiply(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        mul(word.w0, word.w1, word.w2, word.w3);
     }
 
-    // TODO: improve with no BigInteger
     public void div(final DataWord word) {
-
-        if (word.isZero()) {
-            this.and(ZERO);
-            return;
-        }
-
-        final BigInteger result = value().divide(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        divMod(word.w0, word.w1, word.w2, word.w3, false);
     }
 
-    // TODO: improve with no BigInteger
     public void sDiv(final DataWord word) {
 
         if (word.isZero()) {
@@ -280,32 +438,53 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        final BigInteger result = sValue().divide(word.sValue());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        long v0 = word.w0, v1 = word.w1, v2 = word.w2, v3 = word.w3;
+        final boolean negative = (w0 < 0) != (v0 < 0);
+        if (w0 < 0) negate();
+        if (v0 < 0) {
+            v0 = ~v0;
+            v1 = ~v1;
+            v2 = ~v2;
+            v3 = ~v3 + 1;
+            if (v3 == 0 && ++v2 == 0 && ++v1 == 0) ++v0;
+        }
+        divMod(v0, v1, v2, v3, false);
+        if (negative) negate();
     }
 
-    // TODO: improve with no BigInteger
     public void sub(final DataWord word) {
-        final BigInteger result = value().subtract(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        subtract(word.w0, word.w1, word.w2, word.w3);
     }
 
-    // TODO: improve with no BigInteger
     public void exp(final DataWord word) {
-        final BigInteger result = value().modPow(word.value(), _2_256);
-        this.data = ByteUtil.copyToArray(result);
-    }
+        final long e0 = word.w0, e1 = word.w1, e2 = word.w2, e3 = word.w3;
+        final int expBits = bitLength(e0, e1, e2, e3);
+        if (expBits == 0) {
+            set(0, 0, 0, 1);
+            return;
+        }
 
-    // TODO: improve with no BigInteger
-    public void mod(final DataWord word) {
+        final int baseBits = bitLength(w0, w1, w2, w3);
+        if (baseBits <= 1) return; // 0 ^ n == 0, 1 ^ n == 1
 
-        if (word.isZero()) {
-            this.and(ZERO);
+        if (isPowerOfTwo(w0, w1, w2, w3)) {
+            // (2 ^ k) ^ n == 2 ^ (k * n)
+            final long shift = (e0 | e1 | e2) != 0 || e3 < 0 || e3 >= 256 ? 256 : (baseBits - 1) * e3;
+            set(0, 0, 0, 1);
+            shiftLeft(shift >= 256 ? 256 : (int) shift);
             return;
         }
 
-        final BigInteger result = value().mod(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        final long b0 = w0, b1 = w1, b2 = w2, b3 = w3;
+        set(0, 0, 0, 1);
+        for (int i = expBits - 1; i >= 0; --i) {
+            mul(w0, w1, w2, w3);
+            if (testBit(e0, e1, e2, e3, i) != 0) mul(b0, b1, b2, b3);
+        }
+    }
+
+    public void mod(final DataWord word) {
+        divMod(word.w0, word.w1, word.w2, word.w3, true);
     }
 
     public void sMod(final DataWord word) {
@@ -315,37 +494,302 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
-
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        long v0 = word.w0, v1 = word.w1, v2 = word.w2, v3 = word.w3;
+        final boolean negative = w0 < 0;
+        if (negative) negate();
+        if (v0 < 0) {
+            v0 = ~v0;
+            v1 = ~v1;
+            v2 = ~v2;
+            v3 = ~v3 + 1;
+            if (v3 == 0 && ++v2 == 0 && ++v1 == 0) ++v0;
+        }
+        divMod(v0, v1, v2, v3, true);
+        if (negative) negate();
     }
 
     public void addmod(final DataWord word1, final DataWord word2) {
-        if (word2.isZero()) {
-            this.data = new byte[32];
+        final long m0 = word2.w0, m1 = word2.w1, m2 = word2.w2, m3 = word2.w3;
+        if ((m0 | m1 | m2 | m3) == 0) {
+            set(0, 0, 0, 0);
+            return;
+        }
+
+        final long carry = addWithCarry(word1.w0, word1.w1, word1.w2, word1.w3);
+        if (carry == 0) {
+            divMod(m0, m1, m2, m3, true);
             return;
         }
 
-        final BigInteger result = value().add(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        // (2^256 + s) mod m == (s mod m + 2^256 mod m) mod m, and 2^256 mod m == (2^256 - m) mod m
+        final long s0 = w0, s1 = w1, s2 = w2, s3 = w3;
+        set(m0, m1, m2, m3);
+        negate();
+        divMod(m0, m1, m2, m3, true);
+        final long t0 = w0, t1 = w1, t2 = w2, t3 = w3;
+        set(s0, s1, s2, s3);
+        divMod(m0, m1, m2, m3, true);
+        addReduced(t0, t1, t2, t3, m0, m1, m2, m3);
     }
 
     public void mulmod(final DataWord word1, final DataWord word2) {
 
         if (this.isZero() || word1.isZero() || word2.isZero()) {
-            this.data = new byte[32];
+            set(0, 0, 0, 0);
+            return;
+        }
+
+        final long b0 = word1.w0, b1 = word1.w1, b2 = word1.w2, b3 = word1.w3;
+        final long m0 = word2.w0, m1 = word2.w1, m2 = word2.w2, m3 = word2.w3;
+
+        if (bitLength(w0, w1, w2, w3) + bitLength(b0, b1, b2, b3) <= 256) {
+            mul(b0, b1, b2, b3);
+            divMod(m0, m1, m2, m3, true);
+            return;
+        }
+
+        divMod(m0, m1, m2, m3, true);
+        final long a0 = w0, a1 = w1, a2 = w2, a3 = w3;
+        set(b0, b1, b2, b3);
+        divMod(m0, m1, m2, m3, true);
+        final long c0 = w0, c1 = w1, c2 = w2, c3 = w3;
+
+        if (bitLength(a0, a1, a2, a3) + bitLength(c0, c1, c2, c3) <= 256) {
+            set(a0, a1, a2, a3);
+            mul(c0, c1, c2, c3);
+            divMod(m0, m1, m2, m3, true);
+            return;
+        }
+
+        // the product doesn't fit into 256 bits: double-and-add modulo m,
+        // every intermediate result stays below the modulus
+        set(0, 0, 0, 0);
+        for (int i = bitLength(c0, c1, c2, c3) - 1; i >= 0; --i) {
+            addReduced(w0, w1, w2, w3, m0, m1, m2, m3);
+            if (testBit(c0, c1, c2, c3, i) != 0) addReduced(a0, a1, a2, a3, m0, m1, m2, m3);
+        }
+    }
+
+    /**
+     * Adds the value to this word modulo 2^256
+     *
+     * @return the carry out of the most significant limb
+     */
+    private long addWithCarry(final long v0, final long v1, final long v2, final long v3) {
+        final long r3 = w3 + v3;
+        long carry = lessUnsigned(r3, v3) ? 1 : 0;
+
+        long sum = w2 + v2;
+        final long r2 = sum + carry;
+        carry = lessUnsigned(sum, v2) || lessUnsigned(r2, sum) ? 1 : 0;
+
+        sum = w1 + v1;
+        final long r1 = sum + carry;
+        carry = lessUnsigned(sum, v1) || lessUnsigned(r1, sum) ? 1 : 0;
+
+        sum = w0 + v0;
+        final long r0 = sum + carry;
+        carry = lessUnsigned(sum, v0) || lessUnsigned(r0, sum) ? 1 : 0;
+
+        set(r0, r1, r2, r3);
+        return carry;
+    }
+
+    private void subtract(final long v0, final long v1, final long v2, final long v3) {
+        final long r3 = w3 - v3;
+        long borrow = lessUnsigned(w3, v3) ? 1 : 0;
+
+        long diff = w2 - v2;
+        final long r2 = diff - borrow;
+        borrow = lessUnsigned(w2, v2) || lessUnsigned(diff, borrow) ? 1 : 0;
+
+        diff = w1 - v1;
+        final long r1 = diff - borrow;
+        borrow = lessUnsigned(w1, v1) || lessUnsigned(diff, borrow) ? 1 : 0;
+
+        final long r0 = w0 - v0 - borrow;
+
+        set(r0, r1, r2, r3);
+    }
+
+    /**
+     * (this + v) mod m for this < m and v < m
+     */
+    private void addReduced(final long v0, final long v1, final long v2, final long v3,
+                            final long m0, final long m1, final long m2, final long m3) {
+        final long carry = addWithCarry(v0, v1, v2, v3);
+        if (carry != 0 || compareUnsigned(w0, w1, w2, w3, m0, m1, m2, m3) >= 0) {
+            subtract(m0, m1, m2, m3);
+        }
+    }
+
+    /**
+     * Schoolbook multiplication truncated to the low 256 bits
+     */
+    private void mul(final long v0, final long v1, final long v2, final long v3) {
+        // row of the least significant limb
+        final long r3 = w3 * v3;
+        long carry = multiplyHighUnsigned(w3, v3);
+
+        long lo = w3 * v2;
+        long r2 = lo + carry;
+        carry = multiplyHighUnsigned(w3, v2) + (lessUnsigned(r2, lo) ? 1 : 0);
+
+        lo = w3 * v1;
+        long r1 = lo + carry;
+        carry = multiplyHighUnsigned(w3, v1) + (lessUnsigned(r1, lo) ? 1 : 0);
+
+        long r0 = w3 * v0 + carry;
+
+        // row of w2
+        lo = w2 * v3;
+        long sum = r2 + lo;
+        carry = multiplyHighUnsigned(w2, v3) + (lessUnsigned(sum, lo) ? 1 : 0);
+        r2 = sum;
+
+        lo = w2 * v2;
+        sum = r1 + lo;
+        long overflow = lessUnsigned(sum, lo) ? 1 : 0;
+        r1 = sum + carry;
+        overflow += lessUnsigned(r1, sum) ? 1 : 0;
+        carry = multiplyHighUnsigned(w2, v2) + overflow;
+
+        r0 += w2 * v1 + carry;
+
+        // row of w1
+        lo = w1 * v3;
+        sum = r1 + lo;
+        carry = multiplyHighUnsigned(w1, v3) + (lessUnsigned(sum, lo) ? 1 : 0);
+        r1 = sum;
+
+        r0 += w1 * v2 + carry;
+
+        // row of w0
+        r0 += w0 * v3;
+
+        set(r0, r1, r2, r3);
+    }
+
+    /**
+     * Unsigned division by v, keeps either the quotient or the remainder.
+     * Division by zero results in zero as the EVM defines it
+     */
+    private void divMod(final long v0, final long v1, final long v2, final long v3, final boolean remainder) {
+        if ((v0 | v1 | v2 | v3) == 0) {
+            set(0, 0, 0, 0);
+            return;
+        }
+
+        final int cmp = compareUnsigned(w0, w1, w2, w3, v0, v1, v2, v3);
+        if (cmp < 0) {
+            if (!remainder) set(0, 0, 0, 0);
+            return;
+        }
+        if (cmp == 0) {
+            set(0, 0, 0, remainder ? 0 : 1);
             return;
         }
 
-        final BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        if (isPowerOfTwo(v0, v1, v2, v3)) {
+            final int shift = bitLength(v0, v1, v2, v3) - 1;
+            if (remainder) keepLowBits(shift);
+            else shiftRight(shift);
+            return;
+        }
+
+        if ((v0 | v1 | v2) == 0) {
+            if ((w0 | w1 | w2) == 0 && w3 >= 0 && v3 > 0) {
+                set(0, 0, 0, remainder ? w3 % v3 : w3 / v3);
+                return;
+            }
+            final long q0 = divideUnsigned(0, w0, v3);
+            long rem = w0 - q0 * v3;
+            final long q1 = divideUnsigned(rem, w1, v3);
+            rem = w1 - q1 * v3;
+            final long q2 = divideUnsigned(rem, w2, v3);
+            rem = w2 - q2 * v3;
+            final long q3 = divideUnsigned(rem, w3, v3);
+            rem = w3 - q3 * v3;
+            if (remainder) set(0, 0, 0, rem);
+            else set(q0, q1, q2, q3);
+            return;
+        }
+
+        // divisor wider than 64 bits: binary long division over the dividend bits
+        long r0 = 0, r1 = 0, r2 = 0, r3 = 0;
+        long q0 = 0, q1 = 0, q2 = 0, q3 = 0;
+        for (int i = bitLength(w0, w1, w2, w3) - 1; i >= 0; --i) {
+            final long out = r0 >>> 63;
+            r0 = (r0 << 1) | (r1 >>> 63);
+            r1 = (r1 << 1) | (r2 >>> 63);
+            r2 = (r2 << 1) | (r3 >>> 63);
+            r3 = (r3 << 1) | testBit(w0, w1, w2, w3, i);
+
+            q0 = (q0 << 1) | (q1 >>> 63);
+            q1 = (q1 << 1) | (q2 >>> 63);
+            q2 = (q2 << 1) | (q3 >>> 63);
+            q3 <<= 1;
+
+            if (out != 0 || compareUnsigned(r0, r1, r2, r3, v0, v1, v2, v3) >= 0) {
+                final long borrow3 = lessUnsigned(r3, v3) ? 1 : 0;
+                r3 -= v3;
+                long diff = r2 - v2;
+                final long borrow2 = lessUnsigned(r2, v2) || lessUnsigned(diff, borrow3) ? 1 : 0;
+                r2 = diff - borrow3;
+                diff = r1 - v1;
+                final long borrow1 = lessUnsigned(r1, v1) || lessUnsigned(diff, borrow2) ? 1 : 0;
+                r1 = diff - borrow2;
+                r0 = r0 - v0 - borrow1;
+                q3 |= 1;
+            }
+        }
+
+        if (remainder) set(r0, r1, r2, r3);
+        else set(q0, q1, q2, q3);
+    }
+
+    private void shiftLeft(final int n) {
+        if (n >= 256) {
+            set(0, 0, 0, 0);
+            return;
+        }
+        final int limbs = n >>> 6;
+        final int bits = n & 63;
+        for (int i = 3; i >= 0; --i) {
+            final int src = i - limbs;
+            final long hi = src >= 0 ? limb(src) : 0;
+            final long lo = src >= 1 ? limb(src - 1) : 0;
+            setLimb(i, bits == 0 ? hi : (hi << bits) | (lo >>> (64 - bits)));
+        }
+    }
+
+    private void shiftRight(final int n) {
+        if (n >= 256) {
+            set(0, 0, 0, 0);
+            return;
+        }
+        final int limbs = n >>> 6;
+        final int bits = n & 63;
+        for (int i = 0; i < 4; ++i) {
+            final int src = i + limbs;
+            final long lo = src < 4 ? limb(src) : 0;
+            final long hi = src < 3 ? limb(src + 1) : 0;
+            setLimb(i, bits == 0 ? lo : (lo >>> bits) | (hi << (64 - bits)));
+        }
+    }
+
+    private void keepLowBits(final int n) {
+        for (int i = 0; i < 4; ++i) {
+            final int lowBit = i << 6;
+            if (lowBit >= n) setLimb(i, 0);
+            else if (n - lowBit < 64) setLimb(i, limb(i) & ((1L << (n - lowBit)) - 1));
+        }
     }
 
     @JsonValue
     @Override
     public String toString() {
-        return Hex.toHexString(data);
+        return Hex.toHexString(getData());
     }
 
     public String toPrefixString() {
@@ -366,7 +810,7 @@ public class DataWord implements Comparable<DataWord> {
 
     @Override
     public DataWord clone() {
-        return new DataWord(Arrays.clone(data));
+        return new DataWord(w0, w1, w2, w3);
     }
 
     @Override
@@ -376,42 +820,52 @@ public class DataWord implements Comparable<DataWord> {
 
         final DataWord dataWord = (DataWord) o;
 
-        return java.util.Arrays.equals(data, dataWord.data);
+        return w0 == dataWord.w0 && w1 == dataWord.w1 && w2 == dataWord.w2 && w3 == dataWord.w3;
 
     }
 
     @Override
     public int hashCode() {
-        return java.util.Arrays.hashCode(data);
+        int result = Long.hashCode(w0);
+        result = 31 * result + Long.hashCode(w1);
+        result = 31 * result + Long.hashCode(w2);
+        result = 31 * result + Long.hashCode(w3);
+        return result;
     }
 
     @Override
     public int compareTo(final DataWord o) {
-        if (o == null || o.getData() == null) return -1;
-        final int result = FastByteComparisons.compareTo(
-                data, 0, data.length,
-                o.getData(), 0, o.getData().length);
-        // Convert result into -1, 0 or 1 as is the convention
-        return (int) Math.signum(result);
+        if (o == null) return -1;
+        return compareUnsigned(w0, w1, w2, w3, o.w0, o.w1, o.w2, o.w3);
+    }
+
+    /**
+     * Compares both words as two's complement signed numbers
+     */
+    public int sCompareTo(final DataWord o) {
+        if (w0 != o.w0) return w0 < o.w0 ? -1 : 1;
+        return compareUnsigned(0, w1, w2, w3, 0, o.w1, o.w2, o.w3);
     }
 
     public void signExtend(final byte k) {
         if (0 > k || k > 31)
             throw new IndexOutOfBoundsException();
-        final byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
-        for (int i = 31; i > k; i--) {
-            this.data[31 - i] = mask;
+        final int signBit = (k * 8) + 7;
+        final boolean negative = testBit(w0, w1, w2, w3, signBit) != 0;
+        for (int i = 0; i < 4; ++i) {
+            final int lowBit = i << 6;
+            if (lowBit + 63 <= signBit) continue;
+            final long mask = lowBit > signBit ? -1L : -1L << (signBit - lowBit + 1);
+            setLimb(i, negative ? limb(i) | mask : limb(i) & ~mask);
         }
     }
 
     public int bytesOccupied() {
-        final int firstNonZero = ByteUtil.firstNonZeroByte(data);
-        if (firstNonZero == -1) return 0;
-        return 31 - firstNonZero + 1;
+        return (bitLength(w0, w1, w2, w3) + 7) >>> 3;
     }
 
     public boolean isHex(final String hex) {
-        return Hex.toHexString(data).equals(hex);
+        return toString().equals(hex);
     }
 
     public String asString(){
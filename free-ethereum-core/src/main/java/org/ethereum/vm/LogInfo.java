@@ -32,6 +32,7 @@ import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPItem;
 import org.ethereum.util.RLPList;
+import org.ethereum.util.RLPWriter;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -87,22 +88,25 @@ public class LogInfo {
 
     /*  [address, [topic, topic ...] data] */
     public byte[] getEncoded() {
+        return getRLPWriter().encode();
+    }
+
+    public RLPWriter getRLPWriter() {
 
-        final byte[] addressEncoded = RLP.encodeElement(this.address);
+        final RLPWriter addressEncoded = RLPWriter.item(this.address);
 
-        byte[][] topicsEncoded = null;
+        RLPWriter[] topicsEncoded = {};
         if (topics != null) {
-            topicsEncoded = new byte[topics.size()][];
+            topicsEncoded = new RLPWriter[topics.size()];
             int i = 0;
             for (final DataWord topic : topics) {
-                final byte[] topicData = topic.getData();
-                topicsEncoded[i] = RLP.encodeElement(topicData);
+                topicsEncoded[i] = RLPWriter.item(topic.getData());
                 ++i;
             }
         }
 
-        final byte[] dataEncoded = RLP.encodeElement(data);
-        return RLP.encodeList(addressEncoded, RLP.encodeList(topicsEncoded), dataEncoded);
+        final RLPWriter dataEncoded = RLPWriter.item(data);
+        return RLPWriter.list(addressEncoded, RLPWriter.list(topicsEncoded), dataEncoded);
     }
 
     public Bloom getBloom() {
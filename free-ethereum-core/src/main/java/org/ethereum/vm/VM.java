@@ -28,7 +28,6 @@ package org.ethereum.vm;
 
 import org.ethereum.config.BlockchainConfig;
 import org.ethereum.config.SystemProperties;
-import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.vm.MessageCall.MsgType;
 import org.ethereum.vm.program.Program;
@@ -87,10 +86,13 @@ public class VM {
 
     private static final Logger logger = LoggerFactory.getLogger("VM");
     private static final Logger dumpLogger = LoggerFactory.getLogger("dump");
-    private static final BigInteger _32_ = BigInteger.valueOf(32);
     private static final String logString = "{}    Op: [{}]  Gas: [{}] Deep: [{}]  Hint: [{}]";
 
-    private static final BigInteger MAX_GAS = BigInteger.valueOf(Long.MAX_VALUE / 2);
+    private static final long MAX_GAS = Long.MAX_VALUE / 2;
+
+    /* Instruction handlers indexed by OpCode.ordinal() */
+    private static final Instruction[] instructions = new Instruction[OpCode.values().length];
+
     private static VMHook vmHook;
     private final boolean vmTrace;
     private final long dumpBlock;
@@ -120,21 +122,27 @@ public class VM {
      * @param offset starting position of the memory
      * @param size   number of bytes needed
      * @return offset + size, unless size is 0. In that case memNeeded is also 0.
+     *         Sums that don't fit into a long are saturated to Long.MAX_VALUE
      */
-    private static BigInteger memNeeded(final DataWord offset, final DataWord size) {
-        return size.isZero() ? BigInteger.ZERO : offset.value().add(size.value());
+    private static long memNeeded(final DataWord offset, final DataWord size) {
+        return size.isZero() ? 0 : memNeeded(offset, size.longValueSafe());
+    }
+
+    private static long memNeeded(final DataWord offset, final long size) {
+        final long sum = offset.longValueSafe() + size;
+        return sum < 0 ? Long.MAX_VALUE : sum;
     }
 
-    private long calcMemGas(final GasCost gasCosts, final long oldMemSize, final BigInteger newMemSize, final long copySize) {
+    private static long calcMemGas(final GasCost gasCosts, final long oldMemSize, final long newMemSize, final long copySize) {
         long gasCost = 0;
 
         // Avoid overflows
-        if (newMemSize.compareTo(MAX_GAS) == 1) {
-            throw Program.Exception.gasOverflow(newMemSize, MAX_GAS);
+        if (newMemSize > MAX_GAS) {
+            throw Program.Exception.gasOverflow(BigInteger.valueOf(newMemSize), BigInteger.valueOf(MAX_GAS));
         }
 
         // memory gas calc
-        final long memoryUsage = (newMemSize.longValue() + 31) / 32 * 32;
+        final long memoryUsage = (newMemSize + 31) / 32 * 32;
         if (memoryUsage > oldMemSize) {
             final long memWords = (memoryUsage / 32);
             final long memWordsOld = (oldMemSize / 32);
@@ -151,1138 +159,934 @@ public class VM {
         return gasCost;
     }
 
-    private boolean isDeadAccount(final Program program, final byte[] addr) {
+
+    private static boolean isDeadAccount(final Program program, final byte[] addr) {
         return !program.getStorage().isExist(addr) || program.getStorage().getAccountState(addr).isEmpty();
     }
 
-    public void step(final Program program) {
-
-        if (vmTrace) {
-            program.saveOpTrace();
-        }
-
-        try {
-            final BlockchainConfig blockchainConfig = program.getBlockchainConfig();
-
-            final OpCode op = OpCode.code(program.getCurrentOp());
-            if (op == null) {
-                throw Program.Exception.invalidOpCode(program.getCurrentOp());
-            }
-            if (op == DELEGATECALL) {
-                // opcode since Homestead release only
-                if (!blockchainConfig.getConstants().hasDelegateCallOpcode()) {
-                    throw Program.Exception.invalidOpCode(program.getCurrentOp());
-                }
-            }
-
-            program.setLastOp(op.val());
-            program.verifyStackSize(op.require());
-            program.verifyStackOverflow(op.require(), op.ret()); //Check not exceeding stack limits
-
-            final long oldMemSize = program.getMemSize();
-            final Stack stack = program.getStack();
-
-            String hint = "";
-            final long callGas = 0; // parameters for logging
-            final long memWords = 0;
-            long gasCost = op.getTier().asInt();
-            final long gasBefore = program.getGasLong();
-            final int stepBefore = program.getPC();
-            final GasCost gasCosts = blockchainConfig.getGasCost();
-            DataWord adjustedCallGas = null;
-
-            /*DEBUG #POC9 if( op.asInt() == 96 || op.asInt() == -128 || op.asInt() == 57 || op.asInt() == 115) {
-              //byte alphaone = 0x63;
-              //op = OpCode.code(alphaone);
-              gasCost = 3;
-            }
-
-            if( op.asInt() == -13 ) {
-              //byte alphaone = 0x63;
-              //op = OpCode.code(alphaone);
-              gasCost = 0;
-            }*/
-
-            // Calculate fees and spend gas
-            switch (op) {
-                case STOP:
-                    gasCost = gasCosts.getSTOP();
-                    break;
-                case SUICIDE:
-                    gasCost = gasCosts.getSUICIDE();
-                    final DataWord suicideAddressWord = stack.get(stack.size() - 1);
-                    if (blockchainConfig.eip161()) {
-                        if (isDeadAccount(program, suicideAddressWord.getLast20Bytes()) &&
-                                !program.getBalance(program.getOwnerAddress()).isZero()) {
-                            gasCost += gasCosts.getNEW_ACCT_SUICIDE();
-                        }
-                    } else {
-                        if (!program.getStorage().isExist(suicideAddressWord.getLast20Bytes())) {
-                            gasCost += gasCosts.getNEW_ACCT_SUICIDE();
-                        }
-                    }
-                    break;
-                case SSTORE:
-                    final DataWord newValue = stack.get(stack.size() - 2);
-                    final DataWord oldValue = program.storageLoad(stack.peek());
-                    if (oldValue == null && !newValue.isZero())
-                        gasCost = gasCosts.getSET_SSTORE();
-                    else if (oldValue != null && newValue.isZero()) {
-                        // todo: GASREFUND counter policy
-
-                        // refund step cost policy.
-                        program.futureRefundGas(gasCosts.getREFUND_SSTORE());
-                        gasCost = gasCosts.getCLEAR_SSTORE();
-                    } else
-                        gasCost = gasCosts.getRESET_SSTORE();
-                    break;
-                case SLOAD:
-                    gasCost = gasCosts.getSLOAD();
-                    break;
-                case BALANCE:
-                    gasCost = gasCosts.getBALANCE();
-                    break;
-
-                // These all operate on memory and therefore potentially expand it:
-                case MSTORE:
-                    gasCost += calcMemGas(gasCosts, oldMemSize, memNeeded(stack.peek(), new DataWord(32)), 0);
-                    break;
-                case MSTORE8:
-                    gasCost += calcMemGas(gasCosts, oldMemSize, memNeeded(stack.peek(), new DataWord(1)), 0);
-                    break;
-                case MLOAD:
-                    gasCost += calcMemGas(gasCosts, oldMemSize, memNeeded(stack.peek(), new DataWord(32)), 0);
-                    break;
-                case RETURN:
-                    gasCost = gasCosts.getSTOP() + calcMemGas(gasCosts, oldMemSize,
-                            memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                    break;
-                case SHA3:
-                    gasCost = gasCosts.getSHA3() + calcMemGas(gasCosts, oldMemSize, memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                    final DataWord size = stack.get(stack.size() - 2);
-                    final long chunkUsed = (size.longValueSafe() + 31) / 32;
-                    gasCost += chunkUsed * gasCosts.getSHA3_WORD();
-                    break;
-                case CALLDATACOPY:
-                    gasCost += calcMemGas(gasCosts, oldMemSize,
-                            memNeeded(stack.peek(), stack.get(stack.size() - 3)),
-                            stack.get(stack.size() - 3).longValueSafe());
-                    break;
-                case CODECOPY:
-                    gasCost += calcMemGas(gasCosts, oldMemSize,
-                            memNeeded(stack.peek(), stack.get(stack.size() - 3)),
-                            stack.get(stack.size() - 3).longValueSafe());
-                    break;
-                case EXTCODESIZE:
-                    gasCost = gasCosts.getEXT_CODE_SIZE();
-                    break;
-                case EXTCODECOPY:
-                    gasCost = gasCosts.getEXT_CODE_COPY() + calcMemGas(gasCosts, oldMemSize,
-                            memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 4)),
-                            stack.get(stack.size() - 4).longValueSafe());
-                    break;
-                case CALL:
-                case CALLCODE:
-                case DELEGATECALL:
-
-                    gasCost = gasCosts.getCALL();
-                    final DataWord callGasWord = stack.get(stack.size() - 1);
-
-                    final DataWord callAddressWord = stack.get(stack.size() - 2);
-
-                    //check to see if account does not exist and is not a precompiled contract
-
-                    if (op == CALL) {
-                        final DataWord value = stack.get(stack.size() - 3);
-                        if (blockchainConfig.eip161()) {
-                            if (isDeadAccount(program, callAddressWord.getLast20Bytes()) && !value.isZero()) {
-                                gasCost += gasCosts.getNEW_ACCT_CALL();
-                            }
-                        } else {
-                            if (!program.getStorage().isExist(callAddressWord.getLast20Bytes())) {
-                                gasCost += gasCosts.getNEW_ACCT_CALL();
-                            }
-                        }
-                    }
-
-                    //TODO #POC9 Make sure this is converted to BigInteger (256num support)
-                    if (op != DELEGATECALL && !stack.get(stack.size() - 3).isZero() )
-                        gasCost += gasCosts.getVT_CALL();
-
-                    final int opOff = op == DELEGATECALL ? 3 : 4;
-                    final BigInteger in = memNeeded(stack.get(stack.size() - opOff), stack.get(stack.size() - opOff - 1)); // in offset+size
-                    final BigInteger out = memNeeded(stack.get(stack.size() - opOff - 2), stack.get(stack.size() - opOff - 3)); // out offset+size
-                    gasCost += calcMemGas(gasCosts, oldMemSize, in.max(out), 0);
-
-                    if (gasCost > program.getGas().longValueSafe()) {
-                        throw Program.Exception.notEnoughOpGas(op, callGasWord, program.getGas());
+    /**
+     * Calculates the cost of the instruction about to be executed.
+     * The gas passed to CALL-like instructions is charged by the instruction itself.
+     *
+     * @param gasCost the static part of the cost, zero if it has been charged with the basic block
+     */
+    private static long gasCost(final OpCode op, final Program program, long gasCost) {
+        final BlockchainConfig blockchainConfig = program.getBlockchainConfig();
+        final GasCost gasCosts = blockchainConfig.getGasCost();
+        final Stack stack = program.getStack();
+
+        switch (op) {
+            case STOP:
+                gasCost = gasCosts.getSTOP();
+                break;
+            case SUICIDE:
+                gasCost = gasCosts.getSUICIDE();
+                final DataWord suicideAddressWord = stack.get(stack.size() - 1);
+                if (blockchainConfig.eip161()) {
+                    if (isDeadAccount(program, suicideAddressWord.getLast20Bytes()) &&
+                            !program.getBalance(program.getOwnerAddress()).isZero()) {
+                        gasCost += gasCosts.getNEW_ACCT_SUICIDE();
                     }
-
-                    final DataWord gasLeft = program.getGas().clone();
-                    gasLeft.sub(new DataWord(gasCost));
-                    adjustedCallGas = blockchainConfig.getCallGas(op, callGasWord, gasLeft);
-                    gasCost += adjustedCallGas.longValueSafe();
-                    break;
-                case CREATE:
-                    gasCost = gasCosts.getCREATE() + calcMemGas(gasCosts, oldMemSize,
-                            memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 3)), 0);
-                    break;
-                case LOG0:
-                case LOG1:
-                case LOG2:
-                case LOG3:
-                case LOG4:
-
-                    final int nTopics = op.val() - OpCode.LOG0.val();
-
-                    final BigInteger dataSize = stack.get(stack.size() - 2).value();
-                    final BigInteger dataCost = dataSize.multiply(BigInteger.valueOf(gasCosts.getLOG_DATA_GAS()));
-                    if (program.getGas().value().compareTo(dataCost) < 0) {
-                        throw Program.Exception.notEnoughOpGas(op, dataCost, program.getGas().value());
+                } else {
+                    if (!program.getStorage().isExist(suicideAddressWord.getLast20Bytes())) {
+                        gasCost += gasCosts.getNEW_ACCT_SUICIDE();
                     }
-
-                    gasCost = gasCosts.getLOG_GAS() +
-                            gasCosts.getLOG_TOPIC_GAS() * nTopics +
-                            gasCosts.getLOG_DATA_GAS() * stack.get(stack.size() - 2).longValue() +
-                            calcMemGas(gasCosts, oldMemSize, memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                    break;
-                case EXP:
-
-                    final DataWord exp = stack.get(stack.size() - 2);
-                    final int bytesOccupied = exp.bytesOccupied();
-                    gasCost = gasCosts.getEXP_GAS() + gasCosts.getEXP_BYTE_GAS() * bytesOccupied;
-                    break;
-                default:
-                    break;
-            }
-
-            //DEBUG System.out.println(" OP IS " + op.name() + " GASCOST IS " + gasCost + " NUM IS " + op.asInt());
-            program.spendGas(gasCost, op.name());
-
-            // Log debugging line for VM
-            if (program.getNumber().intValue() == dumpBlock)
-                this.dumpLine(op, gasBefore, gasCost + callGas, memWords, program);
-
-            if (vmHook != null) {
-                vmHook.step(program, op);
-            }
-
-            // Execute operation
-            switch (op) {
-                /**
-                 * Stop and Arithmetic Operations
-                 */
-                case STOP: {
-                    program.setHReturn(EMPTY_BYTE_ARRAY);
-                    program.stop();
-                }
-                break;
-                case ADD: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " + " + word2.value();
-
-                    word1.add(word2);
-                    program.stackPush(word1);
-                    program.step();
-
-                }
-                break;
-                case MUL: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " * " + word2.value();
-
-                    word1.mul(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case SUB: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " - " + word2.value();
-
-                    word1.sub(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case DIV: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " / " + word2.value();
-
-                    word1.div(word2);
-                    program.stackPush(word1);
-                    program.step();
                 }
                 break;
-                case SDIV: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.sValue() + " / " + word2.sValue();
-
-                    word1.sDiv(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case SSTORE:
+                final DataWord newValue = stack.get(stack.size() - 2);
+                final DataWord oldValue = program.storageLoad(stack.peek());
+                if (oldValue == null && !newValue.isZero())
+                    gasCost = gasCosts.getSET_SSTORE();
+                else if (oldValue != null && newValue.isZero()) {
+                    // todo: GASREFUND counter policy
+
+                    // refund step cost policy.
+                    program.futureRefundGas(gasCosts.getREFUND_SSTORE());
+                    gasCost = gasCosts.getCLEAR_SSTORE();
+                } else
+                    gasCost = gasCosts.getRESET_SSTORE();
                 break;
-                case MOD: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " % " + word2.value();
-
-                    word1.mod(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case SLOAD:
+                gasCost = gasCosts.getSLOAD();
                 break;
-                case SMOD: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.sValue() + " #% " + word2.sValue();
-
-                    word1.sMod(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case BALANCE:
+                gasCost = gasCosts.getBALANCE();
                 break;
-                case EXP: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
 
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " ** " + word2.value();
-
-                    word1.exp(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
+            // These all operate on memory and therefore potentially expand it:
+            case MSTORE:
+                gasCost += calcMemGas(gasCosts, program.getMemSize(), memNeeded(stack.peek(), 32), 0);
                 break;
-                case SIGNEXTEND: {
-                    final DataWord word1 = program.stackPop();
-                    final BigInteger k = word1.value();
-
-                    if (k.compareTo(_32_) < 0) {
-                        final DataWord word2 = program.stackPop();
-                        if (logger.isInfoEnabled())
-                            hint = word1 + "  " + word2.value();
-                        word2.signExtend(k.byteValue());
-                        program.stackPush(word2);
-                    }
-                    program.step();
-                }
+            case MSTORE8:
+                gasCost += calcMemGas(gasCosts, program.getMemSize(), memNeeded(stack.peek(), 1), 0);
                 break;
-                case NOT: {
-                    final DataWord word1 = program.stackPop();
-                    word1.bnot();
-
-                    if (logger.isInfoEnabled())
-                        hint = "" + word1.value();
-
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case MLOAD:
+                gasCost += calcMemGas(gasCosts, program.getMemSize(), memNeeded(stack.peek(), 32), 0);
                 break;
-                case LT: {
-                    // TODO: can be improved by not using BigInteger
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " < " + word2.value();
-
-                    if (word1.value().compareTo(word2.value()) == -1) {
-                        word1.and(DataWord.ZERO);
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case RETURN:
+                gasCost = gasCosts.getSTOP() + calcMemGas(gasCosts, program.getMemSize(),
+                        memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
                 break;
-                case SLT: {
-                    // TODO: can be improved by not using BigInteger
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.sValue() + " < " + word2.sValue();
-
-                    if (word1.sValue().compareTo(word2.sValue()) == -1) {
-                        word1.and(DataWord.ZERO);
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case SGT: {
-                    // TODO: can be improved by not using BigInteger
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.sValue() + " > " + word2.sValue();
-
-                    if (word1.sValue().compareTo(word2.sValue()) == 1) {
-                        word1.and(DataWord.ZERO);
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case SHA3:
+                gasCost = gasCosts.getSHA3() + calcMemGas(gasCosts, program.getMemSize(), memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
+                final DataWord size = stack.get(stack.size() - 2);
+                final long chunkUsed = (size.longValueSafe() + 31) / 32;
+                gasCost += chunkUsed * gasCosts.getSHA3_WORD();
                 break;
-                case GT: {
-                    // TODO: can be improved by not using BigInteger
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " > " + word2.value();
-
-                    if (word1.value().compareTo(word2.value()) == 1) {
-                        word1.and(DataWord.ZERO);
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case CALLDATACOPY:
+                gasCost += calcMemGas(gasCosts, program.getMemSize(),
+                        memNeeded(stack.peek(), stack.get(stack.size() - 3)),
+                        stack.get(stack.size() - 3).longValueSafe());
                 break;
-                case EQ: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " == " + word2.value();
-
-                    if (word1.xor(word2).isZero()) {
-                        word1.and(DataWord.ZERO);
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case CODECOPY:
+                gasCost += calcMemGas(gasCosts, program.getMemSize(),
+                        memNeeded(stack.peek(), stack.get(stack.size() - 3)),
+                        stack.get(stack.size() - 3).longValueSafe());
                 break;
-                case ISZERO: {
-                    final DataWord word1 = program.stackPop();
-                    if (word1.isZero()) {
-                        word1.getData()[31] = 1;
-                    } else {
-                        word1.and(DataWord.ZERO);
-                    }
-
-                    if (logger.isInfoEnabled())
-                        hint = "" + word1.value();
-
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case EXTCODESIZE:
+                gasCost = gasCosts.getEXT_CODE_SIZE();
                 break;
-
-                /**
-                 * Bitwise Logic Operations
-                 */
-                case AND: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " && " + word2.value();
-
-                    word1.and(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
+            case EXTCODECOPY:
+                gasCost = gasCosts.getEXT_CODE_COPY() + calcMemGas(gasCosts, program.getMemSize(),
+                        memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 4)),
+                        stack.get(stack.size() - 4).longValueSafe());
                 break;
-                case OR: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
+            case CALL:
+            case CALLCODE:
+            case DELEGATECALL:
 
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " || " + word2.value();
+                gasCost = gasCosts.getCALL();
+                final DataWord callGasWord = stack.get(stack.size() - 1);
 
-                    word1.or(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case XOR: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
+                final DataWord callAddressWord = stack.get(stack.size() - 2);
 
-                    if (logger.isInfoEnabled())
-                        hint = word1.value() + " ^ " + word2.value();
+                //check to see if account does not exist and is not a precompiled contract
 
-                    word1.xor(word2);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case BYTE: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-                    final DataWord result;
-                    if (word1.value().compareTo(_32_) == -1) {
-                        final byte tmp = word2.getData()[word1.intValue()];
-                        word2.and(DataWord.ZERO);
-                        word2.getData()[31] = tmp;
-                        result = word2;
+                if (op == CALL) {
+                    final DataWord value = stack.get(stack.size() - 3);
+                    if (blockchainConfig.eip161()) {
+                        if (isDeadAccount(program, callAddressWord.getLast20Bytes()) && !value.isZero()) {
+                            gasCost += gasCosts.getNEW_ACCT_CALL();
+                        }
                     } else {
-                        result = new DataWord();
+                        if (!program.getStorage().isExist(callAddressWord.getLast20Bytes())) {
+                            gasCost += gasCosts.getNEW_ACCT_CALL();
+                        }
                     }
-
-                    if (logger.isInfoEnabled())
-                        hint = "" + result.value();
-
-                    program.stackPush(result);
-                    program.step();
                 }
-                break;
-                case ADDMOD: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-                    final DataWord word3 = program.stackPop();
-                    word1.addmod(word2, word3);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-                case MULMOD: {
-                    final DataWord word1 = program.stackPop();
-                    final DataWord word2 = program.stackPop();
-                    final DataWord word3 = program.stackPop();
-                    word1.mulmod(word2, word3);
-                    program.stackPush(word1);
-                    program.step();
-                }
-                break;
-
-                /**
-                 * SHA3
-                 */
-                case SHA3: {
-                    final DataWord memOffsetData = program.stackPop();
-                    final DataWord lengthData = program.stackPop();
-                    final byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
 
-                    final byte[] encoded = HashUtil.INSTANCE.sha3(buffer);
-                    final DataWord word = new DataWord(encoded);
+                //TODO #POC9 Make sure this is converted to BigInteger (256num support)
+                if (op != DELEGATECALL && !stack.get(stack.size() - 3).isZero() )
+                    gasCost += gasCosts.getVT_CALL();
 
-                    if (logger.isInfoEnabled())
-                        hint = word.toString();
+                final int opOff = op == DELEGATECALL ? 3 : 4;
+                final long in = memNeeded(stack.get(stack.size() - opOff), stack.get(stack.size() - opOff - 1)); // in offset+size
+                final long out = memNeeded(stack.get(stack.size() - opOff - 2), stack.get(stack.size() - opOff - 3)); // out offset+size
+                gasCost += calcMemGas(gasCosts, program.getMemSize(), Math.max(in, out), 0);
 
-                    program.stackPush(word);
-                    program.step();
+                if (gasCost > program.getGas().longValueSafe()) {
+                    throw Program.Exception.notEnoughOpGas(op, callGasWord, program.getGas());
                 }
                 break;
-
-                /**
-                 * Environmental Information
-                 */
-                case ADDRESS: {
-                    final DataWord address = program.getOwnerAddress();
-
-                    if (logger.isInfoEnabled())
-                        hint = "address: " + Hex.toHexString(address.getLast20Bytes());
-
-                    program.stackPush(address);
-                    program.step();
-                }
+            case CREATE:
+                gasCost = gasCosts.getCREATE() + calcMemGas(gasCosts, program.getMemSize(),
+                        memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 3)), 0);
                 break;
-                case BALANCE: {
-                    final DataWord address = program.stackPop();
-                    final DataWord balance = program.getBalance(address);
-
-                    if (logger.isInfoEnabled())
-                        hint = "address: "
-                                + Hex.toHexString(address.getLast20Bytes())
-                                + " balance: " + balance.toString();
-
-                    program.stackPush(balance);
-                    program.step();
+            case LOG0:
+            case LOG1:
+            case LOG2:
+            case LOG3:
+            case LOG4:
+
+                final int nTopics = op.val() - OpCode.LOG0.val();
+
+                final BigInteger dataSize = stack.get(stack.size() - 2).value();
+                final BigInteger dataCost = dataSize.multiply(BigInteger.valueOf(gasCosts.getLOG_DATA_GAS()));
+                if (program.getGas().value().compareTo(dataCost) < 0) {
+                    throw Program.Exception.notEnoughOpGas(op, dataCost, program.getGas().value());
                 }
-                break;
-                case ORIGIN: {
-                    final DataWord originAddress = program.getOriginAddress();
 
-                    if (logger.isInfoEnabled())
-                        hint = "address: " + Hex.toHexString(originAddress.getLast20Bytes());
-
-                    program.stackPush(originAddress);
-                    program.step();
-                }
-                break;
-                case CALLER: {
-                    final DataWord callerAddress = program.getCallerAddress();
-
-                    if (logger.isInfoEnabled())
-                        hint = "address: " + Hex.toHexString(callerAddress.getLast20Bytes());
-
-                    program.stackPush(callerAddress);
-                    program.step();
-                }
-                break;
-                case CALLVALUE: {
-                    final DataWord callValue = program.getCallValue();
-
-                    if (logger.isInfoEnabled())
-                        hint = "value: " + callValue;
-
-                    program.stackPush(callValue);
-                    program.step();
-                }
-                break;
-                case CALLDATALOAD: {
-                    final DataWord dataOffs = program.stackPop();
-                    final DataWord value = program.getDataValue(dataOffs);
-
-                    if (logger.isInfoEnabled())
-                        hint = "data: " + value;
-
-                    program.stackPush(value);
-                    program.step();
-                }
+                gasCost = gasCosts.getLOG_GAS() +
+                        gasCosts.getLOG_TOPIC_GAS() * nTopics +
+                        gasCosts.getLOG_DATA_GAS() * stack.get(stack.size() - 2).longValue() +
+                        calcMemGas(gasCosts, program.getMemSize(), memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
                 break;
-                case CALLDATASIZE: {
-                    final DataWord dataSize = program.getDataSize();
-
-                    if (logger.isInfoEnabled())
-                        hint = "size: " + dataSize.value();
+            case EXP:
 
-                    program.stackPush(dataSize);
-                    program.step();
-                }
+                final DataWord exp = stack.get(stack.size() - 2);
+                final int bytesOccupied = exp.bytesOccupied();
+                gasCost = gasCosts.getEXP_GAS() + gasCosts.getEXP_BYTE_GAS() * bytesOccupied;
                 break;
-                case CALLDATACOPY: {
-                    final DataWord memOffsetData = program.stackPop();
-                    final DataWord dataOffsetData = program.stackPop();
-                    final DataWord lengthData = program.stackPop();
-
-                    final byte[] msgData = program.getDataCopy(dataOffsetData, lengthData);
-
-                    if (logger.isInfoEnabled())
-                        hint = "data: " + Hex.toHexString(msgData);
-
-                    program.memorySave(memOffsetData.intValueSafe(), msgData);
-                    program.step();
-                }
+            default:
                 break;
-                case CODESIZE:
-                case EXTCODESIZE: {
-
-                    final int length;
-                    if (op == OpCode.CODESIZE)
-                        length = program.getCode().length;
-                    else {
-                        final DataWord address = program.stackPop();
-                        length = program.getCodeAt(address).length;
-                    }
-                    final DataWord codeLength = new DataWord(length);
-
-                    if (logger.isInfoEnabled())
-                        hint = "size: " + length;
-
-                    program.stackPush(codeLength);
-                    program.step();
-                }
-                break;
-                case CODECOPY:
-                case EXTCODECOPY: {
-
-                    byte[] fullCode = EMPTY_BYTE_ARRAY;
-                    if (op == OpCode.CODECOPY)
-                        fullCode = program.getCode();
-
-                    if (op == OpCode.EXTCODECOPY) {
-                        final DataWord address = program.stackPop();
-                        fullCode = program.getCodeAt(address);
-                    }
-
-                    final int memOffset = program.stackPop().intValueSafe();
-                    final int codeOffset = program.stackPop().intValueSafe();
-                    final int lengthData = program.stackPop().intValueSafe();
-
-                    final int sizeToBeCopied =
-                            (long) codeOffset + lengthData > fullCode.length ?
-                                    (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
-                                    : lengthData;
-
-                    final byte[] codeCopy = new byte[lengthData];
-
-                    if (codeOffset < fullCode.length)
-                        System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
-
-                    if (logger.isInfoEnabled())
-                        hint = "code: " + Hex.toHexString(codeCopy);
-
-                    program.memorySave(memOffset, codeCopy);
-                    program.step();
-                }
-                break;
-                case GASPRICE: {
-                    final DataWord gasPrice = program.getGasPrice();
-
-                    if (logger.isInfoEnabled())
-                        hint = "price: " + gasPrice.toString();
-
-                    program.stackPush(gasPrice);
-                    program.step();
-                }
-                break;
-
-                /**
-                 * Block Information
-                 */
-                case BLOCKHASH: {
-
-                    final int blockIndex = program.stackPop().intValueSafe();
-
-                    final DataWord blockHash = program.getBlockHash(blockIndex);
+        }
+        return gasCost;
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = "blockHash: " + blockHash;
+    private static void verifyOpCode(final OpCode op, final Program program) {
+        if (op == null) {
+            throw Program.Exception.invalidOpCode(program.getCurrentOp());
+        }
+        if (op == DELEGATECALL) {
+            // opcode since Homestead release only
+            if (!program.getBlockchainConfig().getConstants().hasDelegateCallOpcode()) {
+                throw Program.Exception.invalidOpCode(program.getCurrentOp());
+            }
+        }
+    }
 
-                    program.stackPush(blockHash);
-                    program.step();
-                }
-                break;
-                case COINBASE: {
-                    final DataWord coinbase = program.getCoinbase();
+    /**
+     * Tracing, dumping, hooks and verbose logging need the instrumented path,
+     * which checks and charges every instruction on its own
+     */
+    private boolean isInstrumented(final Program program) {
+        return vmTrace || vmHook != null || logger.isInfoEnabled() || program.isTraced()
+                || program.getNumber().intValue() == dumpBlock;
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = "coinbase: " + Hex.toHexString(coinbase.getLast20Bytes());
+    public void step(final Program program) {
+        if (isInstrumented(program)) {
+            stepInstrumented(program);
+        } else {
+            stepFast(program);
+        }
+    }
 
-                    program.stackPush(coinbase);
-                    program.step();
-                }
-                break;
-                case TIMESTAMP: {
-                    final DataWord timestamp = program.getTimestamp();
+    private void stepFast(final Program program) {
+        try {
+            final boolean blockMetered = program.enterBasicBlock();
 
-                    if (logger.isInfoEnabled())
-                        hint = "timestamp: " + timestamp.value();
+            final OpCode op = program.getCurrentOpCode();
+            verifyOpCode(op, program);
 
-                    program.stackPush(timestamp);
-                    program.step();
-                }
-                break;
-                case NUMBER: {
-                    final DataWord number = program.getNumber();
+            program.setLastOp(op.val());
+            if (!blockMetered) {
+                program.verifyStackSize(op.require());
+                program.verifyStackOverflow(op.require(), op.ret());
+            }
 
-                    if (logger.isInfoEnabled())
-                        hint = "number: " + number.value();
+            final long gasCost = gasCost(op, program, blockMetered ? 0 : op.getTier().asInt());
+            if (gasCost != 0) {
+                program.spendGas(gasCost, op.name());
+            }
 
-                    program.stackPush(number);
-                    program.step();
-                }
-                break;
-                case DIFFICULTY: {
-                    final DataWord difficulty = program.getDifficulty();
+            instructions[op.ordinal()].execute(program, op);
 
-                    if (logger.isInfoEnabled())
-                        hint = "difficulty: " + difficulty;
+            program.setPreviouslyExecutedOp(op.val());
+            vmCounter++;
+        } catch (final RuntimeException e) {
+            throw halt(program, e);
+        }
+    }
 
-                    program.stackPush(difficulty);
-                    program.step();
-                }
-                break;
-                case GASLIMIT: {
-                    final DataWord gaslimit = program.getGasLimit();
+    private void stepInstrumented(final Program program) {
 
-                    if (logger.isInfoEnabled())
-                        hint = "gaslimit: " + gaslimit;
+        if (vmTrace) {
+            program.saveOpTrace();
+        }
 
-                    program.stackPush(gaslimit);
-                    program.step();
-                }
-                break;
-                case POP: {
-                    program.stackPop();
-                    program.step();
-                }   break;
-                case DUP1: case DUP2: case DUP3: case DUP4:
-                case DUP5: case DUP6: case DUP7: case DUP8:
-                case DUP9: case DUP10: case DUP11: case DUP12:
-                case DUP13: case DUP14: case DUP15: case DUP16:{
-
-                    final int n = op.val() - OpCode.DUP1.val() + 1;
-                    final DataWord word_1 = stack.get(stack.size() - n);
-                    program.stackPush(word_1.clone());
-                    program.step();
-
-                }   break;
-                case SWAP1: case SWAP2: case SWAP3: case SWAP4:
-                case SWAP5: case SWAP6: case SWAP7: case SWAP8:
-                case SWAP9: case SWAP10: case SWAP11: case SWAP12:
-                case SWAP13: case SWAP14: case SWAP15: case SWAP16:{
-
-                    final int n = op.val() - OpCode.SWAP1.val() + 2;
-                    stack.swap(stack.size() - 1, stack.size() - n);
-                    program.step();
-                }
-                break;
-                case LOG0:
-                case LOG1:
-                case LOG2:
-                case LOG3:
-                case LOG4: {
+        try {
+            final OpCode op = program.getCurrentOpCode();
+            verifyOpCode(op, program);
 
-                    final DataWord address = program.getOwnerAddress();
+            program.setLastOp(op.val());
+            program.verifyStackSize(op.require());
+            program.verifyStackOverflow(op.require(), op.ret()); //Check not exceeding stack limits
 
-                    final DataWord memStart = stack.pop();
-                    final DataWord memOffset = stack.pop();
+            final long gasBefore = program.getGasLong();
+            final long gasCost = gasCost(op, program, op.getTier().asInt());
+            program.spendGas(gasCost, op.name());
 
-                    final int nTopics = op.val() - OpCode.LOG0.val();
+            // Log debugging line for VM
+            if (program.getNumber().intValue() == dumpBlock)
+                this.dumpLine(op, gasBefore, gasCost, 0, program);
 
-                    final List<DataWord> topics = new ArrayList<>();
-                    for (int i = 0; i < nTopics; ++i) {
-                        final DataWord topic = stack.pop();
-                        topics.add(topic);
-                    }
+            if (vmHook != null) {
+                vmHook.step(program, op);
+            }
 
-                    final byte[] data = program.memoryChunk(memStart.intValueSafe(), memOffset.intValueSafe());
+            // the handlers pop and modify the operands in place
+            final DataWord[] operands = logger.isInfoEnabled() ? operands(program, op) : null;
 
-                    final LogInfo logInfo =
-                            new LogInfo(address.getLast20Bytes(), topics, data);
+            // creates are logged before the nested execution, calls by their handler
+            if (op == CREATE && logger.isInfoEnabled()) {
+                logStep(program, op, "");
+            }
 
-                    if (logger.isInfoEnabled())
-                        hint = logInfo.toString();
+            instructions[op.ordinal()].execute(program, op);
 
-                    program.getResult().addLogInfo(logInfo);
-                    program.step();
-                }
-                break;
-                case MLOAD: {
-                    final DataWord addr = program.stackPop();
-                    final DataWord data = program.memoryLoad(addr);
+            program.setPreviouslyExecutedOp(op.val());
 
-                    if (logger.isInfoEnabled())
-                        hint = "data: " + data;
+            if (operands != null && op != CALL && op != CALLCODE && op != CREATE) {
+                logStep(program, op, hint(program, op, operands));
+            }
 
-                    program.stackPush(data);
-                    program.step();
-                }
-                break;
-                case MSTORE: {
-                    final DataWord addr = program.stackPop();
-                    final DataWord value = program.stackPop();
+            vmCounter++;
+        } catch (final RuntimeException e) {
+            throw halt(program, e);
+        } finally {
+            program.fullTrace();
+        }
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = "addr: " + addr + " value: " + value;
+    private static DataWord[] operands(final Program program, final OpCode op) {
+        final Stack stack = program.getStack();
+        final DataWord[] ret = new DataWord[op.require()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = stack.get(stack.size() - 1 - i).clone();
+        }
+        return ret;
+    }
 
-                    program.memorySave(addr, value);
-                    program.step();
-                }
-                break;
-                case MSTORE8: {
-                    final DataWord addr = program.stackPop();
-                    final DataWord value = program.stackPop();
-                    final byte[] byteVal = {value.getData()[31]};
-                    program.memorySave(addr.intValueSafe(), byteVal);
-                    program.step();
+    /**
+     * @return details of the executed instruction for the trace log
+     * @param operands copies of the instruction operands, topmost first
+     */
+    private static String hint(final Program program, final OpCode op, final DataWord[] operands) {
+        final Stack stack = program.getStack();
+        final DataWord result = op.ret() > 0 && !stack.isEmpty() ? stack.peek() : null;
+        final DataWord word1 = operands.length > 0 ? operands[0] : null;
+        final DataWord word2 = operands.length > 1 ? operands[1] : null;
+
+        switch (op) {
+            case ADD:
+                return word1.value() + " + " + word2.value();
+            case MUL:
+                return word1.value() + " * " + word2.value();
+            case SUB:
+                return word1.value() + " - " + word2.value();
+            case DIV:
+                return word1.value() + " / " + word2.value();
+            case SDIV:
+                return word1.sValue() + " / " + word2.sValue();
+            case MOD:
+                return word1.value() + " % " + word2.value();
+            case SMOD:
+                return word1.sValue() + " #% " + word2.sValue();
+            case EXP:
+                return word1.value() + " ** " + word2.value();
+            case SIGNEXTEND:
+                return word1.intValueSafe() < 32 ? word1 + "  " + word2.value() : "";
+            case LT:
+                return word1.value() + " < " + word2.value();
+            case SLT:
+                return word1.sValue() + " < " + word2.sValue();
+            case SGT:
+                return word1.sValue() + " > " + word2.sValue();
+            case GT:
+                return word1.value() + " > " + word2.value();
+            case EQ:
+                return word1.value() + " == " + word2.value();
+            case AND:
+                return word1.value() + " && " + word2.value();
+            case OR:
+                return word1.value() + " || " + word2.value();
+            case XOR:
+                return word1.value() + " ^ " + word2.value();
+            case NOT:
+            case ISZERO:
+            case BYTE:
+                return "" + result.value();
+            case SHA3:
+            case PC:
+                return result.toString();
+            case ADDRESS:
+            case ORIGIN:
+            case CALLER:
+                return "address: " + Hex.toHexString(result.getLast20Bytes());
+            case BALANCE:
+                return "address: " + Hex.toHexString(word1.getLast20Bytes()) + " balance: " + result;
+            case CALLVALUE:
+                return "value: " + result;
+            case CALLDATALOAD:
+            case MLOAD:
+                return "data: " + result;
+            case CALLDATASIZE:
+                return "size: " + result.value();
+            case CALLDATACOPY:
+                return "data: " + Hex.toHexString(program.getDataCopy(word2, operands[2]));
+            case CODESIZE:
+            case EXTCODESIZE:
+                return "size: " + result.intValue();
+            case CODECOPY:
+                return "code: " + Hex.toHexString(program.memoryChunk(word1.intValueSafe(), operands[2].intValueSafe()));
+            case EXTCODECOPY:
+                return "code: " + Hex.toHexString(program.memoryChunk(word2.intValueSafe(), operands[3].intValueSafe()));
+            case GASPRICE:
+                return "price: " + result;
+            case BLOCKHASH:
+                return "blockHash: " + result;
+            case COINBASE:
+                return "coinbase: " + Hex.toHexString(result.getLast20Bytes());
+            case TIMESTAMP:
+                return "timestamp: " + result.value();
+            case NUMBER:
+                return "number: " + result.value();
+            case DIFFICULTY:
+                return "difficulty: " + result;
+            case GASLIMIT:
+                return "gaslimit: " + result;
+            case LOG0:
+            case LOG1:
+            case LOG2:
+            case LOG3:
+            case LOG4: {
+                final List<LogInfo> logs = program.getResult().getLogInfoList();
+                return logs.get(logs.size() - 1).toString();
+            }
+            case MSTORE:
+                return "addr: " + word1 + " value: " + word2;
+            case SLOAD:
+                return "key: " + word1 + " value: " + program.storageLoad(word1);
+            case SSTORE:
+                return "[" + program.getOwnerAddress().toPrefixString() + "] key: " + word1 + " value: " + word2;
+            case JUMP:
+                return "~> " + program.getPC();
+            case JUMPI:
+                return word2.isZero() ? "" : "~> " + program.getPC();
+            case MSIZE:
+                return "" + result.intValue();
+            case GAS:
+                return "" + result;
+            case RETURN:
+                return "data: " + Hex.toHexString(program.getResult().getHReturn())
+                        + " offset: " + word1.value()
+                        + " size: " + word2.value();
+            case SUICIDE:
+                return "address: " + Hex.toHexString(program.getOwnerAddress().getLast20Bytes());
+            default:
+                if (op.val() >= PUSH1.val() && op.val() <= PUSH32.val()) {
+                    final byte[] data = result.getData();
+                    return Hex.toHexString(data, data.length - (op.val() - PUSH1.val() + 1), op.val() - PUSH1.val() + 1);
                 }
-                break;
-                case SLOAD: {
-                    final DataWord key = program.stackPop();
-                    DataWord val = program.storageLoad(key);
+                return "";
+        }
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = "key: " + key + " value: " + val;
+    private static void logStep(final Program program, final OpCode op, final String hint) {
+        logger.info(logString, String.format("%5s", "[" + program.getPC() + "]"),
+                String.format("%-12s", op.name()),
+                program.getGas().value(),
+                program.getCallDeep(), hint);
+    }
 
-                    if (val == null)
-                        val = key.and(DataWord.ZERO);
+    private static RuntimeException halt(final Program program, final RuntimeException e) {
+        logger.warn("VM halted: [{}]", e);
+        program.spendAllGas();
+        program.resetFutureRefund();
+        program.stop();
+        return e;
+    }
 
-                    program.stackPush(val);
-                    program.step();
-                }
-                break;
-                case SSTORE: {
-                    final DataWord addr = program.stackPop();
-                    final DataWord value = program.stackPop();
+    public void play(final Program program) {
+        try {
+            if (vmHook != null) {
+                vmHook.startPlay(program);
+            }
 
-                    if (logger.isInfoEnabled())
-                        hint = "[" + program.getOwnerAddress().toPrefixString() + "] key: " + addr + " value: " + value;
+            if (program.byTestingSuite()) return;
 
-                    program.storageSave(addr, value);
-                    program.step();
+            if (isInstrumented(program)) {
+                while (!program.isStopped()) {
+                    stepInstrumented(program);
                 }
-                break;
-                case JUMP: {
-                    final DataWord pos = program.stackPop();
-                    final int nextPC = program.verifyJumpDest(pos);
-
-                    if (logger.isInfoEnabled())
-                        hint = "~> " + nextPC;
-
-                    program.setPC(nextPC);
-
+            } else {
+                while (!program.isStopped()) {
+                    stepFast(program);
                 }
-                break;
-                case JUMPI: {
-                    final DataWord pos = program.stackPop();
-                    final DataWord cond = program.stackPop();
-
-                    if (!cond.isZero()) {
-                        final int nextPC = program.verifyJumpDest(pos);
-
-                        if (logger.isInfoEnabled())
-                            hint = "~> " + nextPC;
-
-                        program.setPC(nextPC);
-                    } else {
-                        program.step();
-                    }
+            }
 
-                }
-                break;
-                case PC: {
-                    final int pc = program.getPC();
-                    final DataWord pcWord = new DataWord(pc);
+        } catch (final RuntimeException e) {
+            program.setRuntimeFailure(e);
+        } catch (final StackOverflowError soe) {
+            logger.error("\n !!! StackOverflowError: update your java run command with -Xss2M !!!\n", soe);
+            System.exit(-1);
+        } finally {
+            if (vmHook != null) {
+                vmHook.stopPlay(program);
+            }
+        }
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = pcWord.toString();
+    /**
+     * Executes a single instruction whose gas has already been charged and stack size verified
+     */
+    @FunctionalInterface
+    interface Instruction {
+        void execute(Program program, OpCode op);
+    }
 
-                    program.stackPush(pcWord);
-                    program.step();
-                }
-                break;
-                case MSIZE: {
-                    final int memSize = program.getMemSize();
-                    final DataWord wordMemSize = new DataWord(memSize);
+    private static void define(final OpCode op, final Instruction instruction) {
+        instructions[op.ordinal()] = instruction;
+    }
 
-                    if (logger.isInfoEnabled())
-                        hint = "" + memSize;
+    private static void define(final OpCode from, final OpCode to, final Instruction instruction) {
+        for (int i = from.ordinal(); i <= to.ordinal(); ++i) {
+            instructions[i] = instruction;
+        }
+    }
 
-                    program.stackPush(wordMemSize);
-                    program.step();
-                }
-                break;
-                case GAS: {
-                    final DataWord gas = program.getGas();
+    static {
+        /*
+         * Stop and Arithmetic Operations
+         */
+        define(STOP, (program, op) -> {
+            program.setHReturn(EMPTY_BYTE_ARRAY);
+            program.stop();
+        });
+        define(ADD, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.add(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(MUL, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.mul(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SUB, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.sub(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(DIV, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.div(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SDIV, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.sDiv(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(MOD, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.mod(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SMOD, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.sMod(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(ADDMOD, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            final DataWord word2 = program.stackPop();
+            final DataWord word3 = program.stackPop();
+            word1.addmod(word2, word3);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(MULMOD, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            final DataWord word2 = program.stackPop();
+            final DataWord word3 = program.stackPop();
+            word1.mulmod(word2, word3);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(EXP, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.exp(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SIGNEXTEND, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            final int k = word1.intValueSafe();
+
+            if (k < 32) {
+                final DataWord word2 = program.stackPop();
+                word2.signExtend((byte) k);
+                program.stackPush(word2);
+            }
+            program.step();
+        });
+
+        /*
+         * Comparison and Bitwise Logic Operations
+         */
+        define(LT, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.compareTo(program.stackPop()) < 0 ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(GT, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.compareTo(program.stackPop()) > 0 ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SLT, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.sCompareTo(program.stackPop()) < 0 ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(SGT, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.sCompareTo(program.stackPop()) > 0 ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(EQ, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.equals(program.stackPop()) ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(ISZERO, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.setLong(word1.isZero() ? 1 : 0);
+            program.stackPush(word1);
+            program.step();
+        });
+        define(AND, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.and(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(OR, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.or(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(XOR, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.xor(program.stackPop());
+            program.stackPush(word1);
+            program.step();
+        });
+        define(NOT, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            word1.bnot();
+            program.stackPush(word1);
+            program.step();
+        });
+        define(BYTE, (program, op) -> {
+            final DataWord word1 = program.stackPop();
+            final DataWord word2 = program.stackPop();
+            final DataWord result;
+            if (word1.intValueSafe() < 32) {
+                word2.setLong(word2.getByte(word1.intValue()) & 0xFF);
+                result = word2;
+            } else {
+                result = new DataWord();
+            }
+            program.stackPush(result);
+            program.step();
+        });
+
+        /*
+         * SHA3
+         */
+        define(SHA3, (program, op) -> {
+            final DataWord memOffsetData = program.stackPop();
+            final DataWord lengthData = program.stackPop();
+
+            program.stackPush(program.memorySha3(memOffsetData.intValueSafe(), lengthData.intValueSafe()));
+            program.step();
+        });
+
+        /*
+         * Environmental Information
+         */
+        define(ADDRESS, (program, op) -> {
+            program.stackPush(program.getOwnerAddress());
+            program.step();
+        });
+        define(BALANCE, (program, op) -> {
+            final DataWord address = program.stackPop();
+            program.stackPush(program.getBalance(address));
+            program.step();
+        });
+        define(ORIGIN, (program, op) -> {
+            program.stackPush(program.getOriginAddress());
+            program.step();
+        });
+        define(CALLER, (program, op) -> {
+            program.stackPush(program.getCallerAddress());
+            program.step();
+        });
+        define(CALLVALUE, (program, op) -> {
+            program.stackPush(program.getCallValue());
+            program.step();
+        });
+        define(CALLDATALOAD, (program, op) -> {
+            final DataWord dataOffs = program.stackPop();
+            program.stackPush(program.getDataValue(dataOffs));
+            program.step();
+        });
+        define(CALLDATASIZE, (program, op) -> {
+            program.stackPush(program.getDataSize());
+            program.step();
+        });
+        define(CALLDATACOPY, (program, op) -> {
+            final DataWord memOffsetData = program.stackPop();
+            final DataWord dataOffsetData = program.stackPop();
+            final DataWord lengthData = program.stackPop();
+
+            final byte[] msgData = program.getDataCopy(dataOffsetData, lengthData);
+            program.memorySave(memOffsetData.intValueSafe(), msgData);
+            program.step();
+        });
+        define(CODESIZE, (program, op) -> {
+            program.stackPush(new DataWord(program.getCode().length));
+            program.step();
+        });
+        define(EXTCODESIZE, (program, op) -> {
+            final DataWord address = program.stackPop();
+            program.stackPush(new DataWord(program.getCodeAt(address).length));
+            program.step();
+        });
+        define(CODECOPY, (program, op) -> codeCopy(program, program.getCode()));
+        define(EXTCODECOPY, (program, op) -> {
+            final DataWord address = program.stackPop();
+            codeCopy(program, program.getCodeAt(address));
+        });
+        define(GASPRICE, (program, op) -> {
+            program.stackPush(program.getGasPrice());
+            program.step();
+        });
+
+        /*
+         * Block Information
+         */
+        define(BLOCKHASH, (program, op) -> {
+            final int blockIndex = program.stackPop().intValueSafe();
+            program.stackPush(program.getBlockHash(blockIndex));
+            program.step();
+        });
+        define(COINBASE, (program, op) -> {
+            program.stackPush(program.getCoinbase());
+            program.step();
+        });
+        define(TIMESTAMP, (program, op) -> {
+            program.stackPush(program.getTimestamp());
+            program.step();
+        });
+        define(NUMBER, (program, op) -> {
+            program.stackPush(program.getNumber());
+            program.step();
+        });
+        define(DIFFICULTY, (program, op) -> {
+            program.stackPush(program.getDifficulty());
+            program.step();
+        });
+        define(GASLIMIT, (program, op) -> {
+            program.stackPush(program.getGasLimit());
+            program.step();
+        });
+
+        /*
+         * Stack, Memory, Storage and Flow Operations
+         */
+        define(POP, (program, op) -> {
+            program.stackPop();
+            program.step();
+        });
+        define(MLOAD, (program, op) -> {
+            final DataWord addr = program.stackPop();
+            program.stackPush(program.memoryLoad(addr));
+            program.step();
+        });
+        define(MSTORE, (program, op) -> {
+            final DataWord addr = program.stackPop();
+            final DataWord value = program.stackPop();
+            program.memorySave(addr, value);
+            program.step();
+        });
+        define(MSTORE8, (program, op) -> {
+            final DataWord addr = program.stackPop();
+            final DataWord value = program.stackPop();
+            program.memorySave(addr.intValueSafe(), value.getByte(31));
+            program.step();
+        });
+        define(SLOAD, (program, op) -> {
+            final DataWord key = program.stackPop();
+            final DataWord val = program.storageLoad(key);
+            program.stackPush(val == null ? key.and(DataWord.ZERO) : val);
+            program.step();
+        });
+        define(SSTORE, (program, op) -> {
+            final DataWord addr = program.stackPop();
+            final DataWord value = program.stackPop();
+            program.storageSave(addr, value);
+            program.step();
+        });
+        define(JUMP, (program, op) -> {
+            final DataWord pos = program.stackPop();
+            program.setPC(program.verifyJumpDest(pos));
+        });
+        define(JUMPI, (program, op) -> {
+            final DataWord pos = program.stackPop();
+            final DataWord cond = program.stackPop();
+
+            if (!cond.isZero()) {
+                program.setPC(program.verifyJumpDest(pos));
+            } else {
+                program.step();
+            }
+        });
+        define(PC, (program, op) -> {
+            program.stackPush(new DataWord(program.getPC()));
+            program.step();
+        });
+        define(MSIZE, (program, op) -> {
+            program.stackPush(new DataWord(program.getMemSize()));
+            program.step();
+        });
+        define(GAS, (program, op) -> {
+            program.stackPush(program.getGas());
+            program.step();
+        });
+        define(JUMPDEST, (program, op) -> program.step());
+
+        define(PUSH1, PUSH32, (program, op) -> program.sweepPush(op.val() - PUSH1.val() + 1));
+        define(DUP1, DUP16, (program, op) -> {
+            program.getStack().dup(op.val() - DUP1.val() + 1);
+            program.step();
+        });
+        define(SWAP1, SWAP16, (program, op) -> {
+            final Stack stack = program.getStack();
+            final int n = op.val() - SWAP1.val() + 2;
+            stack.swap(stack.size() - 1, stack.size() - n);
+            program.step();
+        });
+
+        /*
+         * Logging Operations
+         */
+        define(LOG0, LOG4, (program, op) -> {
+            final Stack stack = program.getStack();
+            final DataWord address = program.getOwnerAddress();
 
-                    if (logger.isInfoEnabled())
-                        hint = "" + gas;
+            final DataWord memStart = stack.pop();
+            final DataWord memOffset = stack.pop();
 
-                    program.stackPush(gas);
-                    program.step();
-                }
-                break;
+            final int nTopics = op.val() - OpCode.LOG0.val();
 
-                case PUSH1:
-                case PUSH2:
-                case PUSH3:
-                case PUSH4:
-                case PUSH5:
-                case PUSH6:
-                case PUSH7:
-                case PUSH8:
-                case PUSH9:
-                case PUSH10:
-                case PUSH11:
-                case PUSH12:
-                case PUSH13:
-                case PUSH14:
-                case PUSH15:
-                case PUSH16:
-                case PUSH17:
-                case PUSH18:
-                case PUSH19:
-                case PUSH20:
-                case PUSH21:
-                case PUSH22:
-                case PUSH23:
-                case PUSH24:
-                case PUSH25:
-                case PUSH26:
-                case PUSH27:
-                case PUSH28:
-                case PUSH29:
-                case PUSH30:
-                case PUSH31:
-                case PUSH32: {
-                    program.step();
-                    final int nPush = op.val() - PUSH1.val() + 1;
-
-                    final byte[] data = program.sweep(nPush);
-
-                    if (logger.isInfoEnabled())
-                        hint = "" + Hex.toHexString(data);
-
-                    program.stackPush(data);
-                }
-                break;
-                case JUMPDEST: {
-                    program.step();
-                }
-                break;
-                case CREATE: {
-                    final DataWord value = program.stackPop();
-                    final DataWord inOffset = program.stackPop();
-                    final DataWord inSize = program.stackPop();
+            final List<DataWord> topics = new ArrayList<>(nTopics);
+            for (int i = 0; i < nTopics; ++i) {
+                topics.add(stack.pop());
+            }
 
-                    if (logger.isInfoEnabled())
-                        logger.info(logString, String.format("%5s", "[" + program.getPC() + "]"),
-                                String.format("%-12s", op.name()),
-                                program.getGas().value(),
-                                program.getCallDeep(), hint);
+            final byte[] data = program.memoryChunk(memStart.intValueSafe(), memOffset.intValueSafe());
 
-                    program.createContract(value, inOffset, inSize);
+            program.getResult().addLogInfo(new LogInfo(address.getLast20Bytes(), topics, data));
+            program.step();
+        });
 
-                    program.step();
-                }
-                break;
-                case CALL:
-                case CALLCODE:
-                case DELEGATECALL: {
-                    program.stackPop(); // use adjustedCallGas instead of requested
-                    final DataWord codeAddress = program.stackPop();
-                    final DataWord value = !op.equals(DELEGATECALL) ?
-                            program.stackPop() : DataWord.ZERO;
-
-                    if( !value.isZero()) {
-                        adjustedCallGas.add(new DataWord(gasCosts.getSTIPEND_CALL()));
-                    }
+        /*
+         * System Operations
+         */
+        define(CREATE, (program, op) -> {
+            final DataWord value = program.stackPop();
+            final DataWord inOffset = program.stackPop();
+            final DataWord inSize = program.stackPop();
 
-                    final DataWord inDataOffs = program.stackPop();
-                    final DataWord inDataSize = program.stackPop();
-
-                    final DataWord outDataOffs = program.stackPop();
-                    final DataWord outDataSize = program.stackPop();
-
-                    if (logger.isInfoEnabled()) {
-                        hint = "addr: " + Hex.toHexString(codeAddress.getLast20Bytes())
-                                + " gas: " + adjustedCallGas.shortHex()
-                                + " inOff: " + inDataOffs.shortHex()
-                                + " inSize: " + inDataSize.shortHex();
-                        logger.info(logString, String.format("%5s", "[" + program.getPC() + "]"),
-                                String.format("%-12s", op.name()),
-                                program.getGas().value(),
-                                program.getCallDeep(), hint);
-                    }
+            program.createContract(value, inOffset, inSize);
 
-                    program.memoryExpand(outDataOffs, outDataSize);
+            program.step();
+        });
+        final Instruction call = (program, op) -> {
+            final DataWord callGasWord = program.stackPop();
+            final DataWord adjustedCallGas = program.getBlockchainConfig().getCallGas(op, callGasWord, program.getGas());
+            program.spendGas(adjustedCallGas.longValueSafe(), op.name());
 
-                    final MessageCall msg = new MessageCall(
-                            MsgType.fromOpcode(op),
-                            adjustedCallGas, codeAddress, value, inDataOffs, inDataSize,
-                            outDataOffs, outDataSize);
+            final DataWord codeAddress = program.stackPop();
+            final DataWord value = !op.equals(DELEGATECALL) ?
+                    program.stackPop() : DataWord.ZERO;
 
-                    final PrecompiledContracts.PrecompiledContract contract =
-                            PrecompiledContracts.getContractForAddress(codeAddress);
+            if (!value.isZero()) {
+                adjustedCallGas.add(new DataWord(program.getBlockchainConfig().getGasCost().getSTIPEND_CALL()));
+            }
 
-                    if (op.equals(CALL)) {
-                        program.getResult().addTouchAccount(codeAddress.getLast20Bytes());
-                    }
+            final DataWord inDataOffs = program.stackPop();
+            final DataWord inDataSize = program.stackPop();
 
-                    if (contract != null) {
-                        program.callToPrecompiledAddress(msg, contract);
-                    } else {
-                        program.callToAddress(msg);
-                    }
+            final DataWord outDataOffs = program.stackPop();
+            final DataWord outDataSize = program.stackPop();
 
-                    program.step();
-                }
-                break;
-                case RETURN: {
-                    final DataWord offset = program.stackPop();
-                    final DataWord size = program.stackPop();
+            if (logger.isInfoEnabled()) {
+                logStep(program, op, "addr: " + Hex.toHexString(codeAddress.getLast20Bytes())
+                        + " gas: " + adjustedCallGas.shortHex()
+                        + " inOff: " + inDataOffs.shortHex()
+                        + " inSize: " + inDataSize.shortHex());
+            }
 
-                    final byte[] hReturn = program.memoryChunk(offset.intValueSafe(), size.intValueSafe());
-                    program.setHReturn(hReturn);
+            program.memoryExpand(outDataOffs, outDataSize);
 
-                    if (logger.isInfoEnabled())
-                        hint = "data: " + Hex.toHexString(hReturn)
-                                + " offset: " + offset.value()
-                                + " size: " + size.value();
+            final MessageCall msg = new MessageCall(
+                    MsgType.fromOpcode(op),
+                    adjustedCallGas, codeAddress, value, inDataOffs, inDataSize,
+                    outDataOffs, outDataSize);
 
-                    program.step();
-                    program.stop();
-                }
-                break;
-                case SUICIDE: {
-                    final DataWord address = program.stackPop();
-                    program.suicide(address);
-                    program.getResult().addTouchAccount(address.getLast20Bytes());
+            final PrecompiledContracts.PrecompiledContract contract =
+                    PrecompiledContracts.getContractForAddress(codeAddress);
 
-                    if (logger.isInfoEnabled())
-                        hint = "address: " + Hex.toHexString(program.getOwnerAddress().getLast20Bytes());
+            if (op.equals(CALL)) {
+                program.getResult().addTouchAccount(codeAddress.getLast20Bytes());
+            }
 
-                    program.stop();
-                }
-                break;
-                default:
-                    break;
+            if (contract != null) {
+                program.callToPrecompiledAddress(msg, contract);
+            } else {
+                program.callToAddress(msg);
             }
 
-            program.setPreviouslyExecutedOp(op.val());
+            program.step();
+        };
+        define(CALL, call);
+        define(CALLCODE, call);
+        define(DELEGATECALL, call);
+        define(RETURN, (program, op) -> {
+            final DataWord offset = program.stackPop();
+            final DataWord size = program.stackPop();
 
-            if (logger.isInfoEnabled() && !op.equals(CALL)
-                    && !op.equals(CALLCODE)
-                    && !op.equals(CREATE))
-                logger.info(logString, String.format("%5s", "[" + program.getPC() + "]"),
-                        String.format("%-12s",
-                                op.name()), program.getGas().value(),
-                        program.getCallDeep(), hint);
+            final byte[] hReturn = program.memoryChunk(offset.intValueSafe(), size.intValueSafe());
+            program.setHReturn(hReturn);
 
-            vmCounter++;
-        } catch (final RuntimeException e) {
-            logger.warn("VM halted: [{}]", e);
-            program.spendAllGas();
-            program.resetFutureRefund();
+            program.step();
             program.stop();
-            throw e;
-        } finally {
-            program.fullTrace();
-        }
+        });
+        define(SUICIDE, (program, op) -> {
+            final DataWord address = program.stackPop();
+            program.suicide(address);
+            program.getResult().addTouchAccount(address.getLast20Bytes());
+
+            program.stop();
+        });
     }
 
-    public void play(final Program program) {
-        try {
-            if (vmHook != null) {
-                vmHook.startPlay(program);
-            }
+    private static void codeCopy(final Program program, final byte[] fullCode) {
+        final int memOffset = program.stackPop().intValueSafe();
+        final int codeOffset = program.stackPop().intValueSafe();
+        final int lengthData = program.stackPop().intValueSafe();
 
-            if (program.byTestingSuite()) return;
+        final int sizeToBeCopied =
+                (long) codeOffset + lengthData > fullCode.length ?
+                        (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
+                        : lengthData;
 
-            while (!program.isStopped()) {
-                this.step(program);
-            }
+        final byte[] codeCopy = new byte[lengthData];
 
-        } catch (final RuntimeException e) {
-            program.setRuntimeFailure(e);
-        } catch (final StackOverflowError soe) {
-            logger.error("\n !!! StackOverflowError: update your java run command with -Xss2M !!!\n", soe);
-            System.exit(-1);
-        } finally {
-            if (vmHook != null) {
-                vmHook.stopPlay(program);
-            }
-        }
+        if (codeOffset < fullCode.length)
+            System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
+
+        program.memorySave(memOffset, codeCopy);
+        program.step();
     }
 
     /*
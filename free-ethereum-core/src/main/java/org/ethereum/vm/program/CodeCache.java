@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.vm.program;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import org.ethereum.core.Repository;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.FastByteComparisons;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * LRU cache of contract code and its {@link ProgramPrecompile} keyed by code hash.
+ *
+ * Code is immutable for a given hash, so a single instance is shared by all
+ * the executions: block import, pending state and local calls.
+ * The cache is bounded by the estimated memory size of its entries.
+ * The lookups don't lock, so the concurrent executions only contend on the misses.
+ */
+public class CodeCache {
+
+    private final Cache<ByteArrayWrapper, Entry> entries;
+    private final AtomicLong size = new AtomicLong();
+
+    private final LongAdder codeHits = new LongAdder();
+    private final LongAdder codeMisses = new LongAdder();
+    private final LongAdder precompileHits = new LongAdder();
+    private final LongAdder precompileMisses = new LongAdder();
+
+    /**
+     * @param maxSize max estimated size of the cached entries in bytes
+     */
+    public CodeCache(final long maxSize) {
+        final RemovalListener<ByteArrayWrapper, Entry> onRemoval = n -> size.addAndGet(-n.getValue().size);
+        // a single segment so the whole budget is shared by the entries, the reads don't lock it
+        entries = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxSize)
+                .weigher((ByteArrayWrapper key, Entry entry) -> entry.size)
+                .removalListener(onRemoval)
+                .recordStats()
+                .build();
+    }
+
+    private static boolean isEmptyCode(final byte[] codeHash) {
+        return FastByteComparisons.equal(codeHash, HashUtil.INSTANCE.getEMPTY_DATA_HASH());
+    }
+
+    /**
+     * Returns the code of the account, fetching it from the repository on a cache miss.
+     * The returned array is shared and must not be modified
+     */
+    public byte[] getCode(final Repository repository, final byte[] address) {
+        final byte[] codeHash = repository.getCodeHash(address);
+        if (codeHash == null || isEmptyCode(codeHash)) {
+            return EMPTY_BYTE_ARRAY;
+        }
+
+        final ByteArrayWrapper key = new ByteArrayWrapper(codeHash);
+        final Entry entry = entries.getIfPresent(key);
+        if (entry != null) {
+            codeHits.increment();
+            return entry.code;
+        }
+
+        codeMisses.increment();
+        final byte[] code = repository.getCode(address);
+        if (code != null && code.length > 0) {
+            add(key, new Entry(code, null), false);
+        }
+        return code;
+    }
+
+    /**
+     * @return the cached analysis of the code with the given hash or null if it hasn't been analysed yet
+     */
+    public ProgramPrecompile getPrecompile(final byte[] codeHash) {
+        final Entry entry = entries.getIfPresent(new ByteArrayWrapper(codeHash));
+        final ProgramPrecompile ret = entry == null ? null : entry.precompile;
+        (ret == null ? precompileMisses : precompileHits).increment();
+        return ret;
+    }
+
+    public void putPrecompile(final byte[] codeHash, final byte[] code, final ProgramPrecompile precompile) {
+        final ByteArrayWrapper key = new ByteArrayWrapper(codeHash);
+        final Entry entry = entries.getIfPresent(key);
+        if (entry == null || entry.precompile == null) {
+            // replaced as the weight of an entry is fixed once it is added
+            add(key, new Entry(code, precompile), true);
+        }
+    }
+
+    private void add(final ByteArrayWrapper key, final Entry entry, final boolean replace) {
+        size.addAndGet(entry.size);
+        if (replace) {
+            entries.put(key, entry);
+        } else if (entries.asMap().putIfAbsent(key, entry) != null) {
+            size.addAndGet(-entry.size);
+        }
+    }
+
+    public long getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return estimated size of the cached entries in bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getCodeHits() {
+        return codeHits.sum();
+    }
+
+    public long getCodeMisses() {
+        return codeMisses.sum();
+    }
+
+    public long getPrecompileHits() {
+        return precompileHits.sum();
+    }
+
+    public long getPrecompileMisses() {
+        return precompileMisses.sum();
+    }
+
+    public long getEvictions() {
+        return entries.stats().evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "CodeCache{entries: " + getEntryCount() + ", size: " + getSize() +
+                ", code hits/misses: " + getCodeHits() + "/" + getCodeMisses() +
+                ", precompile hits/misses: " + getPrecompileHits() + "/" + getPrecompileMisses() +
+                ", evictions: " + getEvictions() + "}";
+    }
+
+    private static class Entry {
+        final byte[] code;
+        final ProgramPrecompile precompile;
+        final int size;
+
+        Entry(final byte[] code, final ProgramPrecompile precompile) {
+            this.code = code;
+            this.precompile = precompile;
+            // array header plus the key with its wrapper and the map entry
+            this.size = code.length + 16 + 128 + (precompile == null ? 0 : (int) precompile.estimateSize());
+        }
+    }
+}
@@ -26,27 +26,37 @@
 
 package org.ethereum.vm.program;
 
+import org.ethereum.crypto.HashUtil;
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import static java.lang.Math.ceil;
-import static java.lang.Math.min;
+import static java.lang.Math.max;
 import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * EVM memory kept in a single contiguous byte array.
+ *
+ * The array grows geometrically, while {@link #internalSize()} keeps reporting
+ * the allocated size rounded up to {@link #CHUNK_SIZE} and {@link #size()} the
+ * word aligned size the gas is charged for.
+ */
 public class Memory implements ProgramListenerAware {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private final List<byte[]> chunks = new LinkedList<>();
+    private byte[] buffer = EMPTY_BYTE_ARRAY;
+    private int allocated;
     private int softSize;
     private ProgramListener programListener;
+    private final byte[] hashOut = new byte[WORD_SIZE];
 
     @Override
     public void setProgramListener(final ProgramListener traceListener) {
@@ -57,27 +67,7 @@ public class Memory implements ProgramListenerAware {
         if (size <= 0) return EMPTY_BYTE_ARRAY;
 
         extend(address, size);
-        final byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            final int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
-
-        return data;
+        return Arrays.copyOfRange(buffer, address, address + size);
     }
 
     public void write(final int address, final byte[] data, int dataSize, final boolean limited) {
@@ -88,31 +78,34 @@ public class Memory implements ProgramListenerAware {
         if (!limited)
             extend(address, dataSize);
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toCapture = 0;
+        final int toCapture;
         if (limited)
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
         else
             toCapture = dataSize;
 
-        int start = 0;
-        while (toCapture > 0) {
-            final int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
+        if (toCapture > 0)
+            System.arraycopy(data, 0, buffer, address, toCapture);
 
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
+        if (programListener != null) programListener.onMemoryWrite(address, data, dataSize);
+    }
 
-            // mark remind
-            toCapture -= captured;
-            start += captured;
-        }
+    /**
+     * Stores the word at the given address straight from its limbs
+     */
+    public void writeWord(final int address, final DataWord word) {
+        extend(address, WORD_SIZE);
+        word.copyTo(buffer, address);
 
-        if (programListener != null) programListener.onMemoryWrite(address, data, dataSize);
+        if (programListener != null) programListener.onMemoryWrite(address, word.getData(), WORD_SIZE);
     }
 
+    public void writeByte(final int address, final byte value) {
+        extend(address, 1);
+        buffer[address] = value;
+
+        if (programListener != null) programListener.onMemoryWrite(address, new byte[]{value}, 1);
+    }
 
     public void extendAndWrite(final int address, final int allocSize, final byte[] data) {
         extend(address, allocSize);
@@ -124,14 +117,16 @@ public class Memory implements ProgramListenerAware {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > allocated) {
+            allocated = (newSize + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+            if (allocated > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) max(allocated, Math.min(2L * buffer.length, Integer.MAX_VALUE)));
+            }
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (toAllocate + WORD_SIZE - 1) / WORD_SIZE * WORD_SIZE;
             softSize += toAllocate;
 
             if (programListener != null) programListener.onMemoryExtend(toAllocate);
@@ -139,18 +134,26 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(final int address) {
-        return new DataWord(read(address, 32));
+        extend(address, WORD_SIZE);
+        return new DataWord(buffer, address);
+    }
+
+    /**
+     * @return keccak hash of the memory range, hashed in place instead of copying the range out
+     */
+    public DataWord sha3(final int address, final int size) {
+        if (size <= 0) {
+            HashUtil.INSTANCE.sha3(EMPTY_BYTE_ARRAY, 0, 0, hashOut, 0);
+        } else {
+            extend(address, size);
+            HashUtil.INSTANCE.sha3(buffer, address, size, hashOut, 0);
+        }
+        return new DataWord(hashOut, 0);
     }
 
     // just access expecting all data valid
     public byte readByte(final int address) {
-
-        final int chunkIndex = address / CHUNK_SIZE;
-        final int chunkOffset = address % CHUNK_SIZE;
-
-        final byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return buffer[address];
     }
 
     @Override
@@ -188,35 +191,17 @@ public class Memory implements ProgramListenerAware {
     }
 
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return allocated;
     }
 
+    /**
+     * @return copies of the allocated memory split into {@link #CHUNK_SIZE} pieces
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(final int chunkIndex, final int chunkOffset, final int size, final byte[] src, final int srcPos) {
-
-        final byte[] chunk = chunks.get(chunkIndex);
-        final int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
-    }
-
-    private int grabMax(final int chunkIndex, final int chunkOffset, final int size, final byte[] dest, final int destPos) {
-
-        final byte[] chunk = chunks.get(chunkIndex);
-        final int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
-    }
-
-    private void addChunks(final int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
+        final List<byte[]> chunks = new ArrayList<>(allocated / CHUNK_SIZE);
+        for (int i = 0; i < allocated; i += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(buffer, i, i + CHUNK_SIZE));
         }
+        return chunks;
     }
 }
@@ -79,7 +79,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    static final int MAX_STACKSIZE = 1024;
     private final SystemProperties config;
     private final BlockchainConfig blockchainConfig;
     private final Transaction transaction;
@@ -103,6 +103,7 @@ public class Program {
     private boolean stopped;
     private ByteArraySet touchedAccounts = new ByteArraySet();
     private ProgramPrecompile programPrecompile;
+    private boolean blockMetered;
 
     public Program(final byte[] ops, final ProgramInvoke programInvoke) {
         this(ops, programInvoke, null);
@@ -125,7 +126,8 @@ public class Program {
         this.ops = nullToEmpty(ops);
 
         traceListener = new ProgramTraceListener(config.vmTrace());
-        this.memory = setupProgramListener(new Memory());
+        // only the trace listener observes the memory, untraced writes don't build the event data
+        this.memory = config.vmTrace() ? setupProgramListener(new Memory()) : new Memory();
         this.stack = setupProgramListener(new Stack());
         this.storage = setupProgramListener(new Storage(programInvoke));
         this.trace = new ProgramTrace(config, programInvoke);
@@ -268,20 +270,37 @@ public class Program {
 
     private ProgramPrecompile getProgramPrecompile() {
         if (programPrecompile == null) {
-            if (codeHash != null && commonConfig.precompileSource() != null) {
-                programPrecompile = commonConfig.precompileSource().get(codeHash);
+            final CodeCache codeCache = commonConfig.codeCache();
+            if (codeHash != null) {
+                programPrecompile = codeCache.getPrecompile(codeHash);
             }
             if (programPrecompile == null) {
-                programPrecompile = ProgramPrecompile.Companion.compile(ops);
-
-                if (codeHash != null && commonConfig.precompileSource() != null) {
-                    commonConfig.precompileSource().put(codeHash, programPrecompile);
+                programPrecompile = loadProgramPrecompile();
+                if (codeHash != null) {
+                    codeCache.putPrecompile(codeHash, ops, programPrecompile);
                 }
             }
         }
         return programPrecompile;
     }
 
+    private ProgramPrecompile loadProgramPrecompile() {
+        ProgramPrecompile ret = null;
+        if (codeHash != null && commonConfig.precompileSource() != null) {
+            ret = commonConfig.precompileSource().get(codeHash);
+        }
+        if (ret == null) {
+            ret = ProgramPrecompile.Companion.compile(ops);
+
+            if (codeHash != null && commonConfig.precompileSource() != null) {
+                commonConfig.precompileSource().put(codeHash, ret);
+            }
+        } else if (!ret.isDecoded()) {
+            ret.decode(ops);
+        }
+        return ret;
+    }
+
     public Program withCommonConfig(final CommonConfig commonConfig) {
         this.commonConfig = commonConfig;
         return this;
@@ -328,6 +347,10 @@ public class Program {
         return isEmpty(ops) ? 0 : ops[pc];
     }
 
+    public OpCode getCurrentOpCode() {
+        return isEmpty(ops) ? OpCode.STOP : getProgramPrecompile().getOp(pc);
+    }
+
     /**
      * Last Op can only be set publicly (no getLastOp method), is used for logging.
      */
@@ -419,6 +442,39 @@ public class Program {
         return stack.pop();
     }
 
+    /**
+     * Pushes the pre-decoded immediate of the PUSH instruction at the current pc
+     * and moves to the next instruction
+     */
+    public DataWord sweepPush(final int n) {
+        final DataWord word = getProgramPrecompile().getPushWord(pc).clone();
+        setPC(pc + n + 1);
+        stackPush(word);
+        return word;
+    }
+
+    /**
+     * When the current pc starts a basic block and the whole block fits into the stack and gas left,
+     * charges its static gas at once. Otherwise the block is left to be checked instruction by instruction,
+     * so failures happen exactly where they would without the block accounting.
+     *
+     * @return true if the current instruction belongs to a block charged in advance
+     */
+    public boolean enterBasicBlock() {
+        final ProgramPrecompile precompile = getProgramPrecompile();
+        final int block = precompile.blockAt(pc);
+        if (block >= 0) {
+            final long blockGas = precompile.getBlockGas(block);
+            blockMetered = stack.size() >= precompile.getBlockStackRequired(block)
+                    && stack.size() + precompile.getBlockStackGrowth(block) <= MAX_STACKSIZE
+                    && getGasLong() >= blockGas;
+            if (blockMetered) {
+                spendGas(blockGas, "basic block");
+            }
+        }
+        return blockMetered;
+    }
+
     /**
      * Verifies that the stack is at least <code>stackSize</code>
      *
@@ -443,7 +499,11 @@ public class Program {
     }
 
     public void memorySave(final DataWord addrB, final DataWord value) {
-        memory.write(addrB.intValue(), value.getData(), value.getData().length, false);
+        memory.writeWord(addrB.intValue(), value);
+    }
+
+    public void memorySave(final int addr, final byte value) {
+        memory.writeByte(addr, value);
     }
 
     private void memorySaveLimited(final int addr, final byte[] data, final int dataSize) {
@@ -483,6 +543,10 @@ public class Program {
         return memory.read(offset, size);
     }
 
+    public DataWord memorySha3(final int offset, final int size) {
+        return memory.sha3(offset, size);
+    }
+
     /**
      * Allocates extra memory in the program for
      * a specified size, calculated from a given offset
@@ -690,7 +754,7 @@ public class Program {
 
 
         // FETCH THE CODE
-        final byte[] programCode = getStorage().isExist(codeAddress) ? getStorage().getCode(codeAddress) : EMPTY_BYTE_ARRAY;
+        final byte[] programCode = getStorage().isExist(codeAddress) ? commonConfig.codeCache().getCode(getStorage(), codeAddress) : EMPTY_BYTE_ARRAY;
 
 
         BigInteger contextBalance = ZERO;
@@ -813,7 +877,7 @@ public class Program {
     }
 
     public byte[] getCodeAt(final DataWord address) {
-        final byte[] code = invoke.getRepository().getCode(address.getLast20Bytes());
+        final byte[] code = commonConfig.codeCache().getCode(invoke.getRepository(), address.getLast20Bytes());
         return nullToEmpty(code);
     }
 
@@ -913,9 +977,16 @@ public class Program {
         return memory.toString();
     }
 
+    /**
+     * @return true if the state of the program is dumped after every step
+     */
+    public boolean isTraced() {
+        return logger.isTraceEnabled() || listener != null;
+    }
+
     public void fullTrace() {
 
-        if (logger.isTraceEnabled() || listener != null) {
+        if (isTraced()) {
 
             final StringBuilder stackData = new StringBuilder();
             for (int i = 0; i < stack.size(); ++i) {
@@ -1239,7 +1310,7 @@ public class Program {
     }
 
     @SuppressWarnings("serial")
-    public class StackTooLargeException extends BytecodeExecutionException {
+    public static class StackTooLargeException extends BytecodeExecutionException {
         public StackTooLargeException(final String message) {
             super(message);
         }
@@ -29,72 +29,240 @@ package org.ethereum.vm.program
 import org.ethereum.util.ByteUtil
 import org.ethereum.util.RLP
 import org.ethereum.util.RLPList
+import org.ethereum.vm.DataWord
 import org.ethereum.vm.OpCode
+import org.ethereum.vm.OpCode.*
+import java.math.BigInteger
 import java.util.*
 
+/**
+ * Pre-decoded form of a contract code: opcodes resolved once per offset, PUSH immediates
+ * materialized as words, valid JUMPDESTs and the basic blocks of the code.
+ *
+ * A basic block starts at offset 0, at every JUMPDEST and right after a block terminator.
+ * For each block the static (tier) gas of its instructions and its stack bounds are summed up
+ * so that the VM can charge and check them once when the block is entered.
+ */
 class ProgramPrecompile {
 
-    private val jumpdest = HashSet<Int>()
+    private val jumpdest = BitSet()
+    private val blockStarts = BitSet()
+
+    private var opcodes: Array<OpCode?> = emptyArray()
+    private var pushWords: Array<DataWord?> = emptyArray()
+
+    private var blockStart = IntArray(0)
+    private var blockGas = LongArray(0)
+    private var blockStackRequired = IntArray(0)
+    private var blockStackGrowth = IntArray(0)
 
+    /**
+     * Only the block table is stored, the instruction stream is cheap to rebuild
+     * from the code with [decode]
+     */
     fun serialize(): ByteArray {
-        val jdBytes = arrayOfNulls<ByteArray>(jumpdest.size + 1)
-        var cnt = 0
-        jdBytes[cnt++] = RLP.encodeInt(version)
-        for (dst in jumpdest) {
-            jdBytes[cnt++] = RLP.encodeInt(dst)
+        val blocks = arrayOfNulls<ByteArray>(blockStart.size)
+        for (i in blockStart.indices) {
+            blocks[i] = RLP.encodeList(RLP.encodeInt(blockStart[i]), RLP.encodeBigInteger(BigInteger.valueOf(blockGas[i])),
+                    RLP.encodeInt(blockStackRequired[i]), RLP.encodeInt(blockStackGrowth[i]))
         }
 
-        return RLP.encodeList(*jdBytes)
+        return RLP.encodeList(RLP.encodeInt(version), RLP.encodeList(*blocks))
     }
 
     fun hasJumpDest(pc: Int): Boolean {
-        return jumpdest.contains(pc)
+        return jumpdest.get(pc)
+    }
+
+    var isDecoded = false
+        private set
+
+    /**
+     * @return the opcode at [pc] or `null` if the byte is not a valid instruction
+     */
+    fun getOp(pc: Int): OpCode? {
+        return if (pc < opcodes.size) opcodes[pc] else STOP
+    }
+
+    /**
+     * @return the immediate of the PUSH instruction at [pc], shared between executions and thus not to be modified
+     */
+    fun getPushWord(pc: Int): DataWord {
+        return pushWords[pc]!!
+    }
+
+    /**
+     * @return index of the basic block starting at [pc] or -1 if [pc] is not the start of a block
+     */
+    fun blockAt(pc: Int): Int {
+        return if (blockStarts.get(pc)) Arrays.binarySearch(blockStart, pc) else -1
+    }
+
+    fun getBlockGas(block: Int): Long {
+        return blockGas[block]
+    }
+
+    /**
+     * @return minimum number of stack items the block needs on entry
+     */
+    fun getBlockStackRequired(block: Int): Int {
+        return blockStackRequired[block]
+    }
+
+    /**
+     * @return maximum number of items the block pushes over its entry stack size
+     */
+    fun getBlockStackGrowth(block: Int): Int {
+        return blockStackGrowth[block]
+    }
+
+    /**
+     * @return rough estimate of the memory held by this instance in bytes
+     */
+    fun estimateSize(): Long {
+        val pushCount = pushWords.count { it != null }
+        // references to opcodes and words, 48 bytes per word, 20 bytes per block entry, bitsets
+        return 8L * opcodes.size + 48L * pushCount + 20L * blockStart.size + opcodes.size / 4 + 128
+    }
+
+    /**
+     * Resolves the opcodes, PUSH immediates and JUMPDESTs of [ops]
+     */
+    fun decode(ops: ByteArray): ProgramPrecompile {
+        opcodes = arrayOfNulls(ops.size)
+        pushWords = arrayOfNulls(ops.size)
+        var i = 0
+        while (i < ops.size) {
+            val op = OpCode.code(ops[i])
+            opcodes[i] = op
+
+            if (op == JUMPDEST) jumpdest.set(i)
+
+            if (op != null && op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt()) {
+                val nPush = op.asInt() - PUSH1.asInt() + 1
+                // immediates running past the end of the code are padded with zeros
+                pushWords[i] = DataWord(Arrays.copyOfRange(ops, i + 1, i + nPush + 1))
+                i += nPush
+            }
+            ++i
+        }
+        isDecoded = true
+        return this
+    }
+
+    private fun analyseBlocks() {
+        val starts = ArrayList<Int>()
+        val gas = ArrayList<Long>()
+        val required = ArrayList<Int>()
+        val growth = ArrayList<Int>()
+
+        var pc = 0
+        while (pc < opcodes.size) {
+            starts.add(pc)
+            var blockGas = 0L
+            var stackDelta = 0
+            var stackRequired = 0
+            var stackGrowth = 0
+            while (pc < opcodes.size) {
+                val op = opcodes[pc] ?: break
+
+                blockGas += staticGas(op)
+                stackRequired = Math.max(stackRequired, op.require() - stackDelta)
+                stackDelta += op.ret() - op.require()
+                stackGrowth = Math.max(stackGrowth, stackDelta)
+
+                pc += instructionSize(op)
+                if (op in terminators || pc < opcodes.size && opcodes[pc] == JUMPDEST) break
+            }
+            gas.add(blockGas)
+            required.add(stackRequired)
+            growth.add(stackGrowth)
+
+            // invalid opcode: leave it to the VM to fail on it and start over after it
+            if (pc < opcodes.size && opcodes[pc] == null) ++pc
+        }
+
+        setBlocks(starts.toIntArray(), gas.toLongArray(), required.toIntArray(), growth.toIntArray())
+    }
+
+    private fun setBlocks(start: IntArray, gas: LongArray, required: IntArray, growth: IntArray) {
+        blockStart = start
+        blockGas = gas
+        blockStackRequired = required
+        blockStackGrowth = growth
+        blockStarts.clear()
+        for (pc in start) blockStarts.set(pc)
     }
 
     companion object {
-        private val version = 1
+        private val version = 2
+
+        /**
+         * Instructions ending a basic block: control flow changes and instructions observing the remaining gas,
+         * so that no gas is charged in advance for instructions following them
+         */
+        private val terminators = EnumSet.of(STOP, JUMP, JUMPI, RETURN, SUICIDE,
+                GAS, CALL, CALLCODE, DELEGATECALL, CREATE)
 
+        /**
+         * Instructions whose cost is fully computed by the VM at execution time, replacing their tier gas
+         */
+        private val dynamicGas = EnumSet.of(STOP, SUICIDE, SSTORE, SLOAD, BALANCE, RETURN, SHA3,
+                EXTCODESIZE, EXTCODECOPY, CALL, CALLCODE, DELEGATECALL, CREATE,
+                LOG0, LOG1, LOG2, LOG3, LOG4, EXP)
+
+        /**
+         * @return the part of the [op] cost that doesn't depend on the program state
+         */
+        fun staticGas(op: OpCode): Int {
+            return if (op in dynamicGas) 0 else op.tier.asInt()
+        }
+
+        private fun instructionSize(op: OpCode): Int {
+            return if (op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt())
+                op.asInt() - PUSH1.asInt() + 2
+            else
+                1
+        }
+
+        /**
+         * Restores the block table, [decode] has to be called with the code before the instance is used
+         */
         fun deserialize(stream: ByteArray): ProgramPrecompile? {
             val l = RLP.decode2(stream)[0] as RLPList
             val ver = ByteUtil.byteArrayToInt(l[0].rlpData)
             if (ver != version) return null
-            val ret = ProgramPrecompile()
-            for (i in 1..l.size - 1) {
-                ret.jumpdest.add(ByteUtil.byteArrayToInt(l[i].rlpData))
+            val blocks = l[1] as RLPList
+            val start = IntArray(blocks.size)
+            val gas = LongArray(blocks.size)
+            val required = IntArray(blocks.size)
+            val growth = IntArray(blocks.size)
+            for (i in blocks.indices) {
+                val block = blocks[i] as RLPList
+                start[i] = ByteUtil.byteArrayToInt(block[0].rlpData)
+                gas[i] = ByteUtil.byteArrayToLong(block[1].rlpData)
+                required[i] = ByteUtil.byteArrayToInt(block[2].rlpData)
+                growth[i] = ByteUtil.byteArrayToInt(block[3].rlpData)
             }
+            val ret = ProgramPrecompile()
+            ret.setBlocks(start, gas, required, growth)
             return ret
         }
 
         fun compile(ops: ByteArray): ProgramPrecompile {
-            val ret = ProgramPrecompile()
-            var i = 0
-            while (i < ops.size) {
-
-                val op = OpCode.code(ops[i])
-                if (op == null) {
-                    ++i
-                    continue
-                }
-
-                if (op == OpCode.JUMPDEST) ret.jumpdest.add(i)
-
-                if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                    i += op.asInt() - OpCode.PUSH1.asInt() + 1
-                }
-                ++i
-            }
+            val ret = ProgramPrecompile().decode(ops)
+            ret.analyseBlocks()
             return ret
         }
 
         @Throws(Exception::class)
         @JvmStatic fun main(args: Array<String>) {
-            val pp = ProgramPrecompile()
-            pp.jumpdest.add(100)
-            pp.jumpdest.add(200)
+            val pp = ProgramPrecompile.compile(byteArrayOf(0x60, 0x04, 0x56, 0x00, 0x5b, 0x00))
             val bytes = pp.serialize()
 
-            val pp1 = ProgramPrecompile.deserialize(bytes)
-            println(pp1!!.jumpdest)
+            val pp1 = ProgramPrecompile.deserialize(bytes)!!.decode(byteArrayOf(0x60, 0x04, 0x56, 0x00, 0x5b, 0x00))
+            println(pp1.jumpdest)
+            println(pp1.blockStart.joinToString())
         }
     }
 }
@@ -23,14 +23,25 @@
  * THE SOFTWARE.
  *
  */
-
 package org.ethereum.vm.program
 
 import org.ethereum.vm.DataWord
 import org.ethereum.vm.program.listener.ProgramListener
 import org.ethereum.vm.program.listener.ProgramListenerAware
+import java.util.*
+
+/**
+ * Fixed capacity operand stack of the EVM.
+ *
+ * Backed by a plain array of [Program.MAX_STACKSIZE] slots and not synchronized:
+ * a stack belongs to a single [Program] and is only touched by the thread executing it.
+ * Slots hold references, popped words are handed over to the caller as is
+ * (they end up in storage, logs and message calls) and are never recycled.
+ */
+class Stack : Iterable<DataWord>, ProgramListenerAware {
 
-class Stack : java.util.Stack<DataWord>(), ProgramListenerAware {
+    private val slots = arrayOfNulls<DataWord>(Program.MAX_STACKSIZE)
+    private var size = 0
 
     private var programListener: ProgramListener? = null
 
@@ -38,24 +49,58 @@ class Stack : java.util.Stack<DataWord>(), ProgramListenerAware {
         this.programListener = listener
     }
 
-    @Synchronized override fun pop(): DataWord {
-        if (programListener != null) programListener!!.onStackPop()
-        return super.pop()
+    fun size(): Int = size
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun pop(): DataWord {
+        if (size == 0) throw EmptyStackException()
+        programListener?.onStackPop()
+        val item = slots[--size]!!
+        slots[size] = null
+        return item
+    }
+
+    fun push(item: DataWord): DataWord {
+        if (size == slots.size) throw Program.StackTooLargeException("Expected: overflow " + slots.size + " elements stack limit")
+        programListener?.onStackPush(item)
+        slots[size++] = item
+        return item
+    }
+
+    fun peek(): DataWord {
+        if (size == 0) throw EmptyStackException()
+        return slots[size - 1]!!
     }
 
-    override fun push(item: DataWord): DataWord {
-        if (programListener != null) programListener!!.onStackPush(item)
-        return super.push(item)
+    /**
+     * @param index position counting from the bottom of the stack
+     */
+    operator fun get(index: Int): DataWord {
+        if (index < 0 || index >= size) throw ArrayIndexOutOfBoundsException(index)
+        return slots[index]!!
+    }
+
+    /**
+     * Pushes a copy of the n-th word counting from the top, DUP1 being n = 1
+     */
+    fun dup(n: Int) {
+        push(get(size - n).clone())
     }
 
     fun swap(from: Int, to: Int) {
         if (isAccessible(from) && isAccessible(to) && from != to) {
-            if (programListener != null) programListener!!.onStackSwap(from, to)
-            val tmp = get(from)
-            set(from, set(to, tmp))
+            programListener?.onStackSwap(from, to)
+            val tmp = slots[from]
+            slots[from] = slots[to]
+            slots[to] = tmp
         }
     }
 
+    fun toArray(): Array<DataWord> = Array(size) { slots[it]!! }
+
+    override fun iterator(): Iterator<DataWord> = toArray().iterator()
+
     private fun isAccessible(from: Int): Boolean {
         return from in 0..(size - 1)
     }
@@ -62,4 +62,20 @@ class SystemPropertiesTest {
         val blockchainConfig2 = systemProperties2.blockchainConfig
         Assert.assertNotEquals(blockchainConfig1.javaClass, blockchainConfig2.javaClass)
     }
+
+    @Test
+    fun dbSettingsTest() {
+        val systemProperties = SystemProperties()
+        val blockchain = systemProperties.dbSettings("blockchain")
+        Assert.assertEquals(10 * 1024 * 1024, blockchain.blockSize)
+        Assert.assertEquals(0, blockchain.cacheSize)
+        Assert.assertFalse(blockchain.isCompression)
+
+        systemProperties.overrideParams("database.options.state.maxOpenFiles", "100")
+        val state = systemProperties.dbSettings("state")
+        Assert.assertEquals(4 * 1024, state.blockSize)
+        Assert.assertEquals(100, state.maxOpenFiles)
+        // not overridden in the state section
+        Assert.assertFalse(state.isCompression)
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.manager.AdminInfo;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelTransactionExecutorTest {
+
+    // increments storage slot 0 on each call
+    private static final byte[] COUNTER = Hex.decode("600a80600b6000396000f3" + "60005460010160005500");
+    // stores the balance of the block coinbase
+    private static final byte[] COINBASE_READER = Hex.decode("600680600b6000396000f3" + "413160005500");
+
+    private static final BigInteger ETHER = BigInteger.TEN.pow(18);
+
+    @AfterClass
+    public static void cleanup() {
+        SystemProperties.resetToDefault();
+    }
+
+    private static List<ECKey> senders() {
+        final List<ECKey> ret = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            ret.add(ECKey.fromPrivate(BigInteger.valueOf(1000 + i)));
+        }
+        return ret;
+    }
+
+    private static byte[] address(final int i) {
+        return HashUtil.INSTANCE.calcNewAddr(new byte[20], BigInteger.valueOf(i).toByteArray());
+    }
+
+    private static StandaloneBlockchain createBlockchain(final List<ECKey> senders) {
+        final StandaloneBlockchain sb = new StandaloneBlockchain();
+        for (final ECKey sender : senders) {
+            sb.withAccountBalance(sender.getAddress(), ETHER.multiply(BigInteger.valueOf(100)));
+        }
+        return sb;
+    }
+
+    private static List<Block> run(final StandaloneBlockchain sb, final List<ECKey> senders) {
+        final List<Block> ret = new ArrayList<>();
+        final long[] nonces = new long[senders.size()];
+
+        final Transaction counter = sb.createTransaction(senders.get(0), nonces[0]++, new byte[0], BigInteger.ZERO, COUNTER);
+        final Transaction reader = sb.createTransaction(senders.get(0), nonces[0]++, new byte[0], BigInteger.ZERO, COINBASE_READER);
+        sb.submitTransaction(counter);
+        sb.submitTransaction(reader);
+        ret.add(sb.createBlock());
+
+        for (int block = 0; block < 3; block++) {
+            // independent transfers
+            for (int i = 0; i < senders.size(); i++) {
+                sb.submitTransaction(sb.createTransaction(senders.get(i), nonces[i]++,
+                        address(block * 100 + i), BigInteger.valueOf(1000 + i), new byte[0]));
+            }
+            // the same storage slot and the same sender
+            sb.submitTransaction(sb.createTransaction(senders.get(1), nonces[1]++, counter.getContractAddress(), BigInteger.ZERO, new byte[0]));
+            sb.submitTransaction(sb.createTransaction(senders.get(2), nonces[2]++, counter.getContractAddress(), BigInteger.ZERO, new byte[0]));
+            sb.submitTransaction(sb.createTransaction(senders.get(2), nonces[2]++, counter.getContractAddress(), BigInteger.ZERO, new byte[0]));
+            // the receiver is the next transaction sender
+            sb.submitTransaction(sb.createTransaction(senders.get(3), nonces[3]++, senders.get(4).getAddress(), ETHER, new byte[0]));
+            sb.submitTransaction(sb.createTransaction(senders.get(4), nonces[4]++, address(block * 100 + 99), ETHER.add(ETHER), new byte[0]));
+            // reads the fees paid by the preceding transactions
+            sb.submitTransaction(sb.createTransaction(senders.get(5), nonces[5]++, reader.getContractAddress(), BigInteger.ZERO, new byte[0]));
+            ret.add(sb.createBlock());
+        }
+        return ret;
+    }
+
+    @Test
+    public void sameResultAsSequential() {
+        final List<ECKey> senders = senders();
+
+        final StandaloneBlockchain sequential = createBlockchain(senders);
+        final List<Block> expected = run(sequential, senders);
+
+        final StandaloneBlockchain parallel = createBlockchain(senders);
+        final AdminInfo adminInfo = new AdminInfo();
+        final ParallelTransactionExecutor executor = new ParallelTransactionExecutor(4);
+        parallel.getBlockchain()
+                .withParallelExecutor(executor)
+                .withAdminInfo(adminInfo);
+        final List<Block> actual;
+        try {
+            actual = run(parallel, senders);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTransactionsList().size(), actual.get(i).getTransactionsList().size());
+            assertArrayEquals(expected.get(i).getStateRoot(), actual.get(i).getStateRoot());
+            assertArrayEquals(expected.get(i).getReceiptsRoot(), actual.get(i).getReceiptsRoot());
+            assertEquals(expected.get(i).getGasUsed(), actual.get(i).getGasUsed());
+        }
+
+        // each block is executed when created and when imported
+        assertEquals(2 * (2 + 3 * 12), adminInfo.getParallelTxCount());
+        assertTrue(adminInfo.getParallelTxConflicts() > 0);
+        assertTrue(adminInfo.getParallelTxConflicts() < adminInfo.getParallelTxCount());
+    }
+}
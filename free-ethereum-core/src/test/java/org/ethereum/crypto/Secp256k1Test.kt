@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.crypto
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.spongycastle.math.ec.ECAlgorithms
+import org.spongycastle.util.encoders.Hex
+import java.math.BigInteger
+import java.util.*
+
+class Secp256k1Test {
+
+    private val random = Random(42)
+
+    @Test
+    fun curveConstants() {
+        assertEquals(ECKey.CURVE.curve.field.characteristic, Secp256k1.P)
+        assertEquals(ECKey.CURVE.n, Secp256k1.N)
+        assertEquals(ECKey.CURVE.g.affineXCoord.toBigInteger(), Secp256k1.GX)
+        assertEquals(ECKey.CURVE.g.affineYCoord.toBigInteger(), Secp256k1.GY)
+
+        val lambdaG = ECKey.CURVE.g.multiply(Secp256k1.LAMBDA).normalize()
+        assertEquals(Secp256k1.GX.multiply(Secp256k1.BETA).mod(Secp256k1.P), lambdaG.affineXCoord.toBigInteger())
+        assertEquals(Secp256k1.GY, lambdaG.affineYCoord.toBigInteger())
+    }
+
+    @Test
+    fun scalarSplit() {
+        for (i in 0..999) {
+            val k = BigInteger(256, random).mod(Secp256k1.N)
+            val (k1, k2) = Secp256k1.split(k)
+            assertEquals(k, k1.add(k2.multiply(Secp256k1.LAMBDA)).mod(Secp256k1.N))
+            assertTrue(k1.abs().bitLength() <= 129)
+            assertTrue(k2.abs().bitLength() <= 129)
+        }
+    }
+
+    @Test
+    fun wnaf() {
+        for (i in 0..999) {
+            val k = BigInteger(130, random)
+            for (w in intArrayOf(5, 8)) {
+                val digits = Secp256k1.wnaf(k, w)
+                var sum = BigInteger.ZERO
+                for (j in digits.indices.reversed()) {
+                    val d = digits[j]
+                    if (d != 0) {
+                        assertTrue(d % 2 != 0 && Math.abs(d) < 1 shl (w - 1))
+                    }
+                    sum = sum.shiftLeft(1).add(BigInteger.valueOf(d.toLong()))
+                }
+                assertEquals(k, sum)
+            }
+        }
+    }
+
+    @Test
+    fun recoveryMatchesReference() {
+        for (i in 0..99) {
+            val key = ECKey()
+            val hash = HashUtil.sha3(byteArrayOf(i.toByte()))
+            val sig = key.sign(hash)
+            for (recId in 0..3) {
+                assertArrayEquals(referenceRecover(recId, sig.r, sig.s, hash),
+                        Secp256k1.recoverPublicKey(recId, sig.r, sig.s, hash))
+            }
+            assertArrayEquals(key.pubKey, Secp256k1.recoverPublicKey(sig.v - 27, sig.r, sig.s, hash))
+        }
+    }
+
+    @Test
+    fun recoveryOfRandomValues() {
+        for (i in 0..199) {
+            val r = BigInteger(256, random).mod(Secp256k1.N)
+            val s = BigInteger(256, random).mod(Secp256k1.N)
+            val hash = ByteArray(32).apply { random.nextBytes(this) }
+            val recId = i % 2
+            val expected = try {
+                referenceRecover(recId, r, s, hash)
+            } catch (e: IllegalArgumentException) {
+                try {
+                    Secp256k1.recoverPublicKey(recId, r, s, hash)
+                    fail()
+                } catch (expected: IllegalArgumentException) {
+                }
+                continue
+            }
+            assertArrayEquals(expected, Secp256k1.recoverPublicKey(recId, r, s, hash))
+        }
+    }
+
+    @Test
+    fun verify() {
+        for (i in 0..49) {
+            val key = ECKey()
+            val hash = HashUtil.sha3(byteArrayOf(i.toByte()))
+            val sig = key.sign(hash)
+            val compressed = ECKey.CURVE.curve.decodePoint(key.pubKey).getEncoded(true)
+            assertTrue(Secp256k1.verify(hash, sig.r, sig.s, key.pubKey))
+            assertTrue(Secp256k1.verify(hash, sig.r, sig.s, compressed))
+            assertFalse(Secp256k1.verify(hash, sig.r, sig.s.add(BigInteger.ONE), key.pubKey))
+            assertFalse(Secp256k1.verify(HashUtil.sha3(hash), sig.r, sig.s, key.pubKey))
+            assertFalse(Secp256k1.verify(hash, sig.r.add(Secp256k1.N), sig.s, key.pubKey))
+            assertFalse(Secp256k1.verify(hash, sig.r, BigInteger.ZERO, key.pubKey))
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun verifyPointNotOnCurve() {
+        val pub = Hex.decode("040947751e3022ecf3016be03ec77ab0ce3c2662b4843898cb068d74f698ccc8ad" +
+                "75aa17564ae80a20bb044ee7a6d903e8e8df624b089c95d66a0570f051e5a05c")
+        Secp256k1.verify(ByteArray(32), BigInteger.ONE, BigInteger.ONE, pub)
+    }
+
+    private fun referenceRecover(recId: Int, r: BigInteger, s: BigInteger, hash: ByteArray): ByteArray? {
+        val n = ECKey.CURVE.n
+        val x = r.add(BigInteger.valueOf(recId / 2L).multiply(n))
+        if (x >= Secp256k1.P) return null
+        val enc = ByteArray(33)
+        enc[0] = if (recId and 1 == 1) 3 else 2
+        val xBytes = x.toByteArray()
+        val len = minOf(32, xBytes.size)
+        System.arraycopy(xBytes, xBytes.size - len, enc, 33 - len, len)
+        val R = ECKey.CURVE.curve.decodePoint(enc)
+        val e = BigInteger(1, hash)
+        val rInv = r.modInverse(n)
+        val q = ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.g, BigInteger.ZERO.subtract(e).mod(n).multiply(rInv).mod(n),
+                R, rInv.multiply(s).mod(n))
+        return q.getEncoded(false)
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.ethereum.datasource.MemSizeEstimator.ByteArrayEstimator;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+public class BatchSourceWriterTest {
+
+    private static class BatchRecordingDb extends HashMapDB<byte[]> {
+        final List<Integer> batches = new ArrayList<>();
+
+        @Override
+        public void updateBatch(final Map<byte[], byte[]> rows) {
+            batches.add(rows.size());
+            super.updateBatch(rows);
+        }
+    }
+
+    @Test
+    public void boundedBatches() {
+        final BatchRecordingDb db = new BatchRecordingDb();
+        // 4 + 4 bytes key and 4 + 4 bytes value per row
+        final BatchSourceWriter<byte[], byte[]> writer = new BatchSourceWriter<>(db)
+                .withMaxBatchSize(160, ByteArrayEstimator, ByteArrayEstimator);
+        for (int i = 0; i < 25; i++) {
+            writer.put(intToBytes(i), intToBytes(i));
+        }
+        writer.flush();
+
+        assertEquals(3, db.batches.size());
+        assertEquals(10, (int) db.batches.get(0));
+        assertEquals(5, (int) db.batches.get(2));
+        assertEquals(25 * 16, writer.getBytesWritten());
+        for (int i = 0; i < 25; i++) {
+            assertArrayEquals(intToBytes(i), db.get(intToBytes(i)));
+        }
+
+        writer.delete(intToBytes(1));
+        writer.flush();
+        assertNull(db.get(intToBytes(1)));
+        assertEquals(4, db.batches.size());
+    }
+
+    @Test
+    public void singleBatch() {
+        final BatchRecordingDb db = new BatchRecordingDb();
+        final BatchSourceWriter<byte[], byte[]> writer = new BatchSourceWriter<>(db)
+                .withMaxBatchSize(0, ByteArrayEstimator, ByteArrayEstimator);
+        for (int i = 0; i < 25; i++) {
+            writer.put(intToBytes(i), intToBytes(i));
+        }
+        writer.flush();
+        assertEquals(1, db.batches.size());
+        assertEquals(25 * 16, writer.getBytesWritten());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.Test;
+
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+public class MigratingSourceTest {
+
+    @Test
+    public void movesRowsOnAccess() {
+        final HashMapDB<byte[]> legacy = new HashMapDB<>();
+        final HashMapDB<byte[]> target = new HashMapDB<>();
+        for (int i = 0; i < 3; i++) {
+            legacy.put(intToBytes(i), intToBytes(i + 10));
+        }
+        final MigratingSource src = new MigratingSource(target, legacy);
+
+        assertArrayEquals(intToBytes(10), src.get(intToBytes(0)));
+        assertArrayEquals(intToBytes(10), target.get(intToBytes(0)));
+        assertNull(legacy.get(intToBytes(0)));
+        assertEquals(1, src.getMigrated());
+
+        // a new value takes precedence over the legacy one
+        src.put(intToBytes(1), intToBytes(21));
+        assertArrayEquals(intToBytes(21), src.get(intToBytes(1)));
+
+        // a deleted row doesn't come back from the legacy source
+        src.delete(intToBytes(2));
+        assertNull(src.get(intToBytes(2)));
+        assertNull(src.get(intToBytes(3)));
+        assertEquals(1, src.getMigrated());
+    }
+}
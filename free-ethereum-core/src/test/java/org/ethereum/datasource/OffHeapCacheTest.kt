@@ -0,0 +1,226 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.datasource
+
+import org.ethereum.crypto.HashUtil
+import org.ethereum.datasource.inmem.HashMapDB
+import org.ethereum.db.RepositoryRoot
+import org.ethereum.db.StateSource
+import org.ethereum.util.ByteUtil.longToBytes
+import org.ethereum.vm.DataWord
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Testing [OffHeapCache]
+ */
+class OffHeapCacheTest {
+
+    private fun intToKey(i: Int): ByteArray {
+        return HashUtil.sha3(longToBytes(i.toLong()))
+    }
+
+    private fun intToValue(i: Int, size: Int = 100): ByteArray {
+        return ByteArray(size) { (i + it).toByte() }
+    }
+
+    @Test
+    fun readAndWriteThrough() {
+        val src = HashMapDB<ByteArray>()
+        val cache = OffHeapCache(src, 1 shl 20)
+        for (i in 0..99) {
+            src.put(intToKey(i), intToValue(i))
+        }
+        assertNull(cache.getCached(intToKey(0)))
+        assertArrayEquals(intToValue(0), cache[intToKey(0)])
+        assertArrayEquals(intToValue(0), cache.getCached(intToKey(0)).value())
+        assertEquals(1, cache.misses)
+
+        // source changes don't affect the cache
+        src.delete(intToKey(0))
+        assertArrayEquals(intToValue(0), cache[intToKey(0)])
+        assertEquals(1, cache.hits)
+
+        cache.put(intToKey(1), intToValue(2, 300))
+        assertArrayEquals(intToValue(2, 300), src[intToKey(1)])
+        assertArrayEquals(intToValue(2, 300), cache.getCached(intToKey(1)).value())
+        cache.delete(intToKey(1))
+        assertNull(src[intToKey(1)])
+        assertNull(cache.getCached(intToKey(1)))
+        assertNull(cache[intToKey(1)])
+
+        // missing values are not cached
+        assertNull(cache.getCached(intToKey(1000)))
+        assertFalse(cache.flush())
+    }
+
+    @Test
+    fun memoryBudget() {
+        val src = HashMapDB<ByteArray>()
+        val capacity = 4L shl 20
+        val cache = OffHeapCache(src, capacity)
+        val random = Random(1)
+        val sizes = IntArray(50000) { 32 + random.nextInt(600) }
+        for (i in sizes.indices) {
+            cache.put(intToKey(i), intToValue(i, sizes[i]))
+        }
+        assertTrue(cache.capacity <= capacity)
+        assertTrue(cache.estimateCacheSize() <= cache.capacity)
+        // the chunks are at most 25% larger than the entries
+        assertTrue(cache.estimateCacheSize() > cache.capacity / 2)
+        assertTrue(cache.evictions > 0)
+        assertTrue(cache.entryCount < sizes.size)
+        for (i in sizes.indices) {
+            val cached = cache.getCached(intToKey(i))
+            if (cached != null) {
+                assertArrayEquals(intToValue(i, sizes[i]), cached.value())
+            }
+            assertArrayEquals(intToValue(i, sizes[i]), cache[intToKey(i)])
+        }
+    }
+
+    @Test
+    fun frequentEntriesSurviveScans() {
+        val src = HashMapDB<ByteArray>()
+        val cache = OffHeapCache(src, 1 shl 20)
+        for (i in 0..110999) {
+            src.put(intToKey(i), intToValue(i))
+        }
+        for (round in 0..4) {
+            for (i in 0..999) {
+                cache[intToKey(i)]
+            }
+        }
+        // scans of the keys read once, larger than the cache, interleaved with the hot keys reads
+        var next = 1000
+        for (scan in 0..10) {
+            for (n in 0..9999) {
+                cache[intToKey(next++)]
+            }
+            if (scan < 10) {
+                for (i in 0..999) {
+                    cache[intToKey(i)]
+                }
+            }
+        }
+        assertTrue(cache.rejections > 0)
+        val hot = (0..999).count { cache.getCached(intToKey(it)) != null }
+        assertTrue("hot entries cached: $hot", hot > 900)
+    }
+
+    @Test
+    fun pagesMoveBetweenSizeClasses() {
+        val src = HashMapDB<ByteArray>()
+        val cache = OffHeapCache(src, 1 shl 20)
+        for (i in 0..19999) {
+            cache.put(intToKey(i), intToValue(i))
+        }
+        assertTrue(cache.evictions > 0)
+        // the pages of the small entries are taken over by the large ones once those get hot
+        for (i in 0..99) {
+            src.put(intToKey(100000 + i), intToValue(i, 2000))
+        }
+        for (round in 0..4) {
+            for (i in 0..99) {
+                assertArrayEquals(intToValue(i, 2000), cache[intToKey(100000 + i)])
+            }
+        }
+        val large = (0..99).count { cache.getCached(intToKey(100000 + it)) != null }
+        assertTrue("large entries cached: $large", large > 90)
+
+        // the drained pages are reused without evictions
+        val drained = OffHeapCache(HashMapDB(), 1 shl 20)
+        for (i in 0..1999) {
+            drained.put(intToKey(i), intToValue(i))
+        }
+        for (i in 0..1999) {
+            drained.delete(intToKey(i))
+        }
+        assertEquals(0, drained.entryCount)
+        for (i in 0..199) {
+            drained.put(intToKey(100000 + i), intToValue(i, 2000))
+        }
+        assertEquals(0, drained.evictions)
+        assertEquals(0, drained.rejections)
+        assertEquals(200, drained.entryCount)
+        for (i in 0..199) {
+            assertArrayEquals(intToValue(i, 2000), drained.getCached(intToKey(100000 + i)).value())
+        }
+    }
+
+    @Test
+    fun concurrentAccess() {
+        val src = HashMapDB<ByteArray>()
+        val cache = OffHeapCache(src, 2L shl 20)
+        val executor = Executors.newFixedThreadPool(8)
+        val failures = Collections.synchronizedList(ArrayList<String>())
+        for (t in 0..7) {
+            executor.submit {
+                val random = Random(t.toLong())
+                for (n in 0..19999) {
+                    val i = random.nextInt(20000)
+                    val size = 32 + i % 500
+                    if (i % 8 == t) {
+                        cache.put(intToKey(i), intToValue(i, size))
+                    } else {
+                        val value = cache[intToKey(i)]
+                        if (value != null && !Arrays.equals(intToValue(i, size), value)) {
+                            failures.add("key $i")
+                        }
+                    }
+                }
+            }
+        }
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+        assertEquals(emptyList<String>(), failures)
+        assertTrue(cache.estimateCacheSize() <= cache.capacity)
+    }
+
+    @Test
+    fun stateSourceNodeCache() {
+        val stateSource = StateSource(HashMapDB(), false, 0, 1L shl 20)
+        assertNull(stateSource.readCache)
+        val address = ByteArray(20)
+        val repository = RepositoryRoot(stateSource)
+        repository.addBalance(address, BigInteger.TEN)
+        repository.addStorageRow(address, DataWord(1), DataWord(2))
+        repository.commit()
+        stateSource.flush()
+        // the second flush empties the async write cache so the reads go down to the node cache
+        stateSource.flush()
+
+        val snapshot = RepositoryRoot(stateSource, repository.root)
+        assertEquals(BigInteger.TEN, snapshot.getBalance(address))
+        assertEquals(DataWord(2), snapshot.getStorageValue(address, DataWord(1)))
+        assertTrue(stateSource.offHeapCache.hits > 0)
+    }
+}
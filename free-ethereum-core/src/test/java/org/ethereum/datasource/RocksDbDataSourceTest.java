@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.rocksdb.RocksDbDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+public class RocksDbDataSourceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private RocksDbDataSource open() {
+        final SystemProperties config = new SystemProperties();
+        config.setDataBaseDir(folder.getRoot().getAbsolutePath());
+        final RocksDbDataSource ret = new RocksDbDataSource(config);
+        ret.setName("blockchain");
+        ret.init();
+        return ret;
+    }
+
+    @Test
+    public void columnFamilies() {
+        RocksDbDataSource db = open();
+        final DbSource<byte[]> state = db.getColumnFamily("state");
+        final DbSource<byte[]> block = db.getColumnFamily("block");
+        db.put(intToBytes(1), intToBytes(10));
+        state.put(intToBytes(1), intToBytes(11));
+
+        block.put(intToBytes(1), intToBytes(12));
+        final Map<byte[], byte[]> batch = new HashMap<>();
+        for (int i = 2; i < 11; i++) {
+            batch.put(intToBytes(i), intToBytes(i + 100));
+        }
+        batch.put(intToBytes(1), null);
+        block.updateBatch(batch);
+
+        assertArrayEquals(intToBytes(10), db.get(intToBytes(1)));
+        assertArrayEquals(intToBytes(11), state.get(intToBytes(1)));
+        assertNull(block.get(intToBytes(1)));
+        assertArrayEquals(intToBytes(102), block.get(intToBytes(2)));
+        assertEquals(9, block.keys().size());
+
+        // the column families are found on reopening
+        db.close();
+        db = open();
+        assertArrayEquals(intToBytes(10), db.get(intToBytes(1)));
+        assertArrayEquals(intToBytes(11), db.getColumnFamily("state").get(intToBytes(1)));
+        assertArrayEquals(intToBytes(102), db.getColumnFamily("block").get(intToBytes(2)));
+        db.close();
+    }
+
+    @Test
+    public void keysWithPrefix() {
+        final RocksDbDataSource db = open();
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                db.put(new byte[] {(byte) i, (byte) j}, new byte[] {1});
+            }
+        }
+        assertEquals(12, db.keys().size());
+        assertEquals(3, db.keys(new byte[] {2}).size());
+        assertEquals(1, db.keys(new byte[] {2, 1}).size());
+        assertEquals(0, db.keys(new byte[] {5}).size());
+        db.delete(new byte[] {2, 1});
+        assertEquals(2, db.keys(new byte[] {2}).size());
+        db.close();
+    }
+}
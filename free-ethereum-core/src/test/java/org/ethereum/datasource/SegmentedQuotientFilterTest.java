@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.Test;
+
+import static org.ethereum.crypto.HashUtil.INSTANCE;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
+
+public class SegmentedQuotientFilterTest {
+
+    private static byte[] key(final int i) {
+        return INSTANCE.sha3(intToBytes(i));
+    }
+
+    @Test
+    public void growsWithoutFalseNegatives() {
+        final SegmentedQuotientFilter filter = new SegmentedQuotientFilter(4, 400, 40);
+        for (int i = 0; i < 20_000; i++) {
+            filter.insert(key(i));
+        }
+        // way over the expected size the segments stack new filters
+        assertTrue(filter.getFilterCount() > 4);
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(filter.maybeContains(key(i)));
+        }
+        int falsePositives = 0;
+        for (int i = 20_000; i < 30_000; i++) {
+            if (filter.maybeContains(key(i))) falsePositives++;
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 1000);
+    }
+
+    @Test
+    public void collidingDeleteKeepsLiveKey() {
+        final BloomedSource source = new BloomedSource(new HashMapDB<>(), 1 << 20);
+        final byte[] live = key(1);
+        // same fingerprint and segment as the live key but never inserted
+        final byte[] unknown = live.clone();
+        unknown[10] ^= 1;
+        final byte[] stale = live.clone();
+        stale[11] ^= 1;
+        for (int i = 2; i < 20_000; i++) {
+            source.put(key(i), intToBytes(i));
+        }
+        source.put(live, intToBytes(1));
+        source.put(stale, intToBytes(2));
+
+        source.delete(unknown);
+        source.delete(stale);
+        assertArrayEquals(intToBytes(1), source.get(live));
+        assertNull(source.get(stale));
+    }
+
+    @Test
+    public void persistsModifiedSegments() {
+        final int[] puts = {0};
+        final HashMapDB<byte[]> db = new HashMapDB<byte[]>() {
+            @Override
+            public void put(final byte[] key, final byte[] val) {
+                puts[0]++;
+                super.put(key, val);
+            }
+        };
+        final BloomedSource source = new BloomedSource(db, 1 << 20);
+        for (int i = 0; i < 1000; i++) {
+            source.put(key(i), intToBytes(i));
+        }
+        assertTrue(source.flush());
+        assertFalse(source.flush());
+
+        // a single key modifies a single segment
+        source.put(key(1000), intToBytes(1000));
+        puts[0] = 0;
+        assertTrue(source.flush());
+        assertEquals(1, puts[0]);
+
+        final BloomedSource reloaded = new BloomedSource(db, 1 << 20);
+        for (int i = 0; i <= 1000; i++) {
+            assertArrayEquals(intToBytes(i), reloaded.get(key(i)));
+        }
+        for (int i = 1001; i < 2000; i++) {
+            assertNull(reloaded.get(key(i)));
+        }
+        assertEquals(1001, reloaded.getMisses());
+        assertEquals(999, reloaded.getHits() + reloaded.getFalseMisses());
+        assertTrue(reloaded.getFalsePositiveRate() < 0.1);
+
+        reloaded.delete(key(5));
+        assertNull(reloaded.get(key(5)));
+    }
+}
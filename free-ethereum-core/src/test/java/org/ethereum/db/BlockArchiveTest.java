@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.core.Genesis;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockArchiveTest {
+
+    private static final List<Block> blocks = new ArrayList<>();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadBlocks() throws Exception {
+        blocks.add(Genesis.Companion.getInstance());
+        final List<String> lines = Files.readAllLines(Paths.get(ClassLoader.getSystemResource("blockstore/load.dmp").toURI()),
+                StandardCharsets.UTF_8);
+        for (final String line : lines.subList(0, 600)) {
+            blocks.add(new Block(Hex.decode(line)));
+        }
+    }
+
+    private static IndexedBlockStore store(final BlockArchive archive) {
+        final IndexedBlockStore ret = new IndexedBlockStore();
+        ret.init(new HashMapDB<>(), new HashMapDB<>());
+        if (archive != null) {
+            ret.setArchive(archive, 100);
+        }
+        BigInteger td = BigInteger.ZERO;
+        for (final Block block : blocks) {
+            td = td.add(block.getCumulativeDifficulty());
+            ret.saveBlock(block, td, true);
+        }
+        return ret;
+    }
+
+    @Test
+    public void sameBlocksAsStore() {
+        final IndexedBlockStore expected = store(null);
+        final BlockArchive archive = new BlockArchive(folder.getRoot(), 64);
+        final IndexedBlockStore store = store(archive);
+
+        // archived in batches of 128 behind the depth
+        assertTrue(archive.size() > blocks.size() - 100 - 128);
+        assertTrue(archive.size() <= blocks.size() - 100);
+        for (final Block block : blocks) {
+            final long number = block.getNumber();
+            assertArrayEquals(block.getEncoded(), store.getChainBlockByNumber(number).getEncoded());
+            assertArrayEquals(block.getEncoded(), store.getBlockByHash(block.getHash()).getEncoded());
+            if (number < archive.size()) {
+                assertArrayEquals(block.getHeader().getEncoded(), BlockArchive.toBytes(archive.getHeader(number)));
+                assertArrayEquals(block.getEncodedBody(), BlockArchive.toBytes(archive.getBody(number)));
+                // only a reference by number is left in the blocks source
+                assertEquals(9, store.blocksDS.get(block.getHash()).length);
+            }
+        }
+        assertNull(archive.getBlock(archive.size()));
+
+        final byte[] best = blocks.get(blocks.size() - 1).getHash();
+        final List<BlockHeader> expectedHeaders = expected.getListHeadersEndWith(best, 300);
+        final List<BlockHeader> headers = store.getListHeadersEndWith(best, 300);
+        assertEquals(300, headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertArrayEquals(expectedHeaders.get(i).getEncoded(), headers.get(i).getEncoded());
+        }
+        assertEquals(blocks.size(), store.getListHeadersEndWith(best, 1000).size());
+        store.close();
+    }
+
+    @Test
+    public void catchesUpInBatches() {
+        final IndexedBlockStore store = new IndexedBlockStore();
+        store.init(new HashMapDB<>(), new HashMapDB<>());
+        BigInteger td = BigInteger.ZERO;
+        for (final Block block : blocks.subList(0, blocks.size() - 2)) {
+            td = td.add(block.getCumulativeDifficulty());
+            store.saveBlock(block, td, true);
+        }
+
+        // an existing database isn't archived in a single save
+        final BlockArchive archive = new BlockArchive(folder.getRoot(), 64);
+        store.setArchive(archive, 100);
+        for (int i = 2; i > 0; i--) {
+            final Block block = blocks.get(blocks.size() - i);
+            td = td.add(block.getCumulativeDifficulty());
+            store.saveBlock(block, td, true);
+            assertEquals(128 * (3 - i), archive.size());
+        }
+        for (final Block block : blocks) {
+            assertArrayEquals(block.getEncoded(), store.getChainBlockByNumber(block.getNumber()).getEncoded());
+        }
+        store.close();
+    }
+
+    @Test
+    public void waitsForFastSyncGap() {
+        final IndexedBlockStore store = new IndexedBlockStore();
+        store.init(new HashMapDB<>(), new HashMapDB<>());
+        final BlockArchive archive = new BlockArchive(folder.getRoot(), 64);
+        store.setArchive(archive, 100);
+
+        // the fast sync saves the blocks after the pivot first
+        store.saveBlock(blocks.get(0), BigInteger.ZERO, true);
+        for (final Block block : blocks.subList(300, blocks.size())) {
+            store.saveBlock(block, BigInteger.ZERO, true);
+        }
+        assertEquals(1, archive.size());
+
+        // and then downloads the ones before it in the reverse order
+        for (int i = 299; i > 1; i--) {
+            store.saveBlock(blocks.get(i), BigInteger.ZERO, true);
+            assertEquals(1, archive.size());
+        }
+        store.saveBlock(blocks.get(1), BigInteger.ZERO, true);
+        assertEquals(129, archive.size());
+        for (final Block block : blocks) {
+            assertArrayEquals(block.getEncoded(), store.getChainBlockByNumber(block.getNumber()).getEncoded());
+        }
+        store.close();
+    }
+
+    @Test
+    public void reopenAfterTornWrite() throws Exception {
+        BlockArchive archive = new BlockArchive(folder.getRoot(), 64);
+        for (int i = 0; i < 100; i++) {
+            archive.append(blocks.get(i));
+        }
+        archive.sync();
+        archive.close();
+
+        // a block partially written to the last segment
+        final File index = new File(folder.getRoot(), "blocks-000001.idx");
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            file.seek(file.length());
+            file.writeLong(0);
+            file.writeLong(1 << 20);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "blocks-000001.dat"), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[100]);
+        }
+
+        archive = new BlockArchive(folder.getRoot(), 64);
+        assertEquals(100, archive.size());
+        assertArrayEquals(blocks.get(99).getEncoded(), archive.getBlock(99).getEncoded());
+        archive.append(blocks.get(100));
+        assertArrayEquals(blocks.get(100).getEncoded(), archive.getBlock(100).getEncoded());
+        assertArrayEquals(blocks.get(5).getEncoded(), archive.getBlock(5).getEncoded());
+        archive.close();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockIdentifier;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EncodedBlockCacheTest {
+
+    private static byte[] address(final int i) {
+        final byte[] ret = new byte[20];
+        ret[19] = (byte) i;
+        return ret;
+    }
+
+    private static List<Block> createBlocks(final StandaloneBlockchain sb, final int count) {
+        final List<Block> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j <= i % 3; j++) {
+                sb.sendEther(address(j), BigInteger.valueOf(i + 1));
+            }
+            ret.add(sb.createBlock());
+        }
+        return ret;
+    }
+
+    private static List<BlockIdentifier> identifiers(final BlockchainImpl blockchain, final int count) {
+        final List<BlockIdentifier> ret = new ArrayList<>();
+        for (int i = 0; i <= count + 1; i++) {
+            ret.add(new BlockIdentifier(null, i));
+            final Block block = blockchain.getBlockByNumber(i);
+            if (block != null) {
+                ret.add(new BlockIdentifier(block.getHash(), 0));
+            }
+        }
+        return ret;
+    }
+
+    private static void assertEncodedEqual(final List<byte[]> expected, final List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Runs every header query against the blockchain with the given cache
+     */
+    private static List<List<byte[]>> queryHeaders(final BlockchainImpl blockchain, final EncodedBlockCache cache,
+                                                   final int count) {
+        blockchain.withEncodedBlockCache(cache);
+        final List<List<byte[]>> ret = new ArrayList<>();
+        for (final BlockIdentifier identifier : identifiers(blockchain, count)) {
+            for (int skip = 0; skip < 3; skip++) {
+                for (final int limit : new int[] {1, 3, 20}) {
+                    ret.add(blockchain.getListOfEncodedHeadersStartFrom(identifier, skip, limit, false));
+                    ret.add(blockchain.getListOfEncodedHeadersStartFrom(identifier, skip, limit, true));
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void servesSameEncodings() {
+        final StandaloneBlockchain sb = new StandaloneBlockchain();
+        final List<Block> blocks = createBlocks(sb, 8);
+        final BlockchainImpl blockchain = sb.getBlockchain();
+        final EncodedBlockCache cache = blockchain.getEncodedBlockCache();
+        assertNotNull(cache);
+
+        final List<byte[]> hashes = new ArrayList<>();
+        blocks.forEach(b -> hashes.add(b.getHash()));
+        final List<List<byte[]>> expectedHeaders = queryHeaders(blockchain, null, blocks.size());
+        final List<byte[]> expectedBodies = blockchain.getListOfBodiesByHashes(hashes);
+        final List<byte[]> expectedReceipts = blockchain.getListOfEncodedReceiptsByHashes(hashes);
+
+        // the first pass reads the genesis from the block store
+        for (int pass = 0; pass < 2; pass++) {
+            final long misses = cache.getMisses();
+            final List<List<byte[]>> headers = queryHeaders(blockchain, cache, blocks.size());
+            for (int i = 0; i < expectedHeaders.size(); i++) {
+                assertEncodedEqual(expectedHeaders.get(i), headers.get(i));
+            }
+            assertEncodedEqual(expectedBodies, blockchain.getListOfBodiesByHashes(hashes));
+            assertEncodedEqual(expectedReceipts, blockchain.getListOfEncodedReceiptsByHashes(hashes));
+            if (pass > 0) {
+                assertEquals(misses, cache.getMisses());
+            }
+        }
+        assertTrue(cache.getHits() > 0);
+        assertEquals(blocks.size() + 1, cache.getEntryCount());
+    }
+
+    @Test
+    public void dropsChainIndexOnRebranch() {
+        final StandaloneBlockchain sb = new StandaloneBlockchain();
+        final BlockchainImpl blockchain = sb.getBlockchain();
+        final Block b1 = sb.createBlock();
+        final Block b2 = sb.createBlock();
+        final Block f2 = sb.createForkBlock(b1);
+        final Block f3 = sb.createForkBlock(f2);
+        assertArrayEquals(f3.getHash(), blockchain.getBestBlock().getHash());
+
+        final List<byte[]> headers = blockchain.getListOfEncodedHeadersStartFrom(new BlockIdentifier(null, 1), 0, 5, false);
+        assertEncodedEqual(Arrays.asList(b1.getHeader().getEncoded(), f2.getHeader().getEncoded(),
+                f3.getHeader().getEncoded()), headers);
+        assertEquals(Collections.emptyList(),
+                blockchain.getListOfEncodedHeadersStartFrom(new BlockIdentifier(b2.getHash(), 0), 0, 5, false));
+        // the forked out block is still served by hash
+        assertArrayEquals(b2.getEncodedBody(),
+                blockchain.getListOfBodiesByHashes(Collections.singletonList(b2.getHash())).get(0));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final StandaloneBlockchain sb = new StandaloneBlockchain();
+        final List<Block> blocks = createBlocks(sb, 3);
+
+        final EncodedBlockCache unbounded = new EncodedBlockCache(Long.MAX_VALUE);
+        unbounded.putBlock(blocks.get(1), Collections.emptyList(), true);
+        unbounded.putBlock(blocks.get(2), Collections.emptyList(), true);
+        final EncodedBlockCache cache = new EncodedBlockCache(unbounded.getSize());
+        for (final Block block : blocks) {
+            cache.putBlock(block, Collections.emptyList(), true);
+        }
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.getBody(blocks.get(0).getHash()));
+        assertNull(cache.getChainHash(blocks.get(0).getNumber()));
+        assertArrayEquals(blocks.get(2).getHash(), cache.getChainHash(blocks.get(2).getNumber()));
+
+        // touch the second block so that the third one is the eldest
+        assertNotNull(cache.getHeader(blocks.get(1).getHash()));
+        // the headers read before the rebranch don't go to the chain index
+        final long version = cache.getChainVersion();
+        cache.reBranch(blocks.get(2));
+        cache.putChainHeaders(Collections.singletonList(blocks.get(0).getHeader()), version);
+
+        assertEquals(2, cache.getEvictions());
+        assertTrue(cache.getSize() <= unbounded.getSize());
+        assertArrayEquals(blocks.get(0).getHeader().getEncoded(), cache.getHeader(blocks.get(0).getHash()));
+        assertNull(cache.getChainHash(blocks.get(0).getNumber()));
+        assertNull(cache.getHeader(blocks.get(2).getHash()));
+        assertNull(cache.getChainHash(blocks.get(2).getNumber()));
+        assertNotNull(cache.getHeader(blocks.get(1).getHash()));
+    }
+}
@@ -27,16 +27,20 @@
 package org.ethereum.db;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.AsyncWriteCache;
+import org.ethereum.datasource.Source;
 import org.ethereum.datasource.WriteCache;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import static org.ethereum.datasource.MemSizeEstimator.ByteArrayEstimator;
 import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.*;
 
 public class FlushDbManagerTest {
 
@@ -124,4 +128,82 @@ public class FlushDbManagerTest {
 
         if (exception[0] != null) throw exception[0];
     }
+
+    @Test
+    public void postponesFlushWhileRunning() throws Exception {
+        // holds the first flush in the database until it is released
+        final CountDownLatch flushStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFlush = new CountDownLatch(1);
+        final HashMapDB<byte[]> db = new HashMapDB<byte[]>() {
+            private void block() {
+                flushStarted.countDown();
+                try {
+                    releaseFlush.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void put(final byte[] key, final byte[] val) {
+                block();
+                super.put(key, val);
+            }
+
+            @Override
+            public void updateBatch(final Map<byte[], byte[]> rows) {
+                block();
+                super.updateBatch(rows);
+            }
+        };
+        final AsyncWriteCache<byte[], byte[]> cache = new AsyncWriteCache<byte[], byte[]>(db) {
+            @Override
+            protected WriteCache<byte[], byte[]> createCache(final Source<byte[], byte[]> source) {
+                final WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(source, WriteCache.CacheType.SIMPLE);
+                ret.withSizeEstimators(ByteArrayEstimator, ByteArrayEstimator);
+                return ret;
+            }
+        };
+
+        final DbFlushManager dbFlushManager = new DbFlushManager(SystemProperties.getDefault(), Collections.emptySet(), null);
+        dbFlushManager.addCache(cache);
+        dbFlushManager.setSizeThreshold(1);
+        dbFlushManager.setMaxSize(1 << 20);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(intToBytes(i), intToBytes(i));
+        }
+        dbFlushManager.commit();
+        flushStarted.await();
+        // the next flushes are postponed while the first one is running
+        for (int i = 10; i < 20; i++) {
+            cache.put(intToBytes(i), intToBytes(i));
+            dbFlushManager.commit();
+        }
+        assertEquals(0, dbFlushManager.getStallTime());
+        assertNull(db.get(intToBytes(15)));
+
+        // over the max size the commit waits for the running flush
+        dbFlushManager.setMaxSize(1);
+        final CountDownLatch committed = new CountDownLatch(1);
+        final Thread committer = new Thread(() -> {
+            dbFlushManager.commit();
+            committed.countDown();
+        });
+        committer.start();
+        while (committer.getState() != Thread.State.WAITING && committed.getCount() > 0) {
+            Thread.yield();
+        }
+        assertEquals(1, committed.getCount());
+        assertEquals(0, dbFlushManager.getFlushCount());
+
+        releaseFlush.countDown();
+        committed.await();
+        dbFlushManager.flushSync();
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(intToBytes(i), db.get(intToBytes(i)));
+        }
+        assertEquals(3, dbFlushManager.getFlushCount());
+        assertTrue(dbFlushManager.getFlushedBytes() > 20 * 8);
+    }
 }
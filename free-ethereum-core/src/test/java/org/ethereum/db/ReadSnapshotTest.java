@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ReadSnapshotTest {
+
+    private static byte[] address(final int i) {
+        final byte[] ret = new byte[20];
+        ret[19] = (byte) i;
+        return ret;
+    }
+
+    private static void setState(final RepositoryRoot repo, final int value) {
+        for (int i = 0; i < 8; i++) {
+            repo.addBalance(address(i), BigInteger.valueOf(value));
+            repo.addStorageRow(address(i), new DataWord(1), new DataWord(value));
+        }
+        repo.saveCode(address(0), new byte[] {(byte) value});
+        repo.commit();
+    }
+
+    private static void assertState(final ReadSnapshot snapshot, final int block) {
+        for (int i = 0; i < 8; i++) {
+            // the balances sum up the values of blocks 1..block
+            assertEquals(BigInteger.valueOf(block * (block + 1) / 2), snapshot.getBalance(address(i)));
+            assertEquals(new DataWord(block), snapshot.getStorageValue(address(i), new DataWord(1)));
+            assertNull(snapshot.getStorageValue(address(i), new DataWord(2)));
+        }
+        assertArrayEquals(new byte[] {(byte) block}, snapshot.getCode(address(0)));
+        assertEquals(0, snapshot.getCode(address(1)).length);
+        assertFalse(snapshot.isExist(address(100)));
+    }
+
+    private void testSnapshots(final StateSnapshot stateSnapshot) throws Exception {
+        final StateSource stateSource = new StateSource(new HashMapDB<>(), false);
+        final RepositoryRoot repo = new RepositoryRoot(stateSource, null, stateSnapshot);
+        final ReadSnapshots snapshots = new ReadSnapshots(SystemProperties.getDefault(), stateSource, stateSnapshot);
+
+        final List<byte[]> roots = new ArrayList<>();
+        for (int block = 1; block <= 3; block++) {
+            setState(repo, block);
+            roots.add(repo.getRoot());
+        }
+        final ReadSnapshot first = snapshots.create(roots.get(0));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> reads = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final int block = i % roots.size() + 1;
+                reads.add(executor.submit(() -> {
+                    try (ReadSnapshot snapshot = snapshots.create(roots.get(block - 1))) {
+                        assertState(snapshot, block);
+                    }
+                }));
+            }
+            // blocks imported meanwhile don't change the states of the snapshots
+            for (int block = 4; block <= 6; block++) {
+                setState(repo, block);
+                stateSource.getWriteCache().flush();
+            }
+            for (final Future<?> read : reads) {
+                read.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertState(first, 1);
+        assertTrue(snapshots.getGeneration() > first.getGeneration());
+        first.close();
+        first.close();
+
+        assertEquals(41, snapshots.getCreatedCount());
+        assertEquals(0, snapshots.getActiveCount());
+        assertTrue(snapshots.getMaxActiveCount() >= 1);
+        assertTrue(snapshots.getMaxConcurrentReads() >= 1);
+        assertTrue(snapshots.getReadCount() > 41 * 8);
+    }
+
+    @Test
+    public void trieSnapshots() throws Exception {
+        testSnapshots(null);
+    }
+
+    @Test
+    public void flatSnapshots() throws Exception {
+        testSnapshots(new StateSnapshot(new HashMapDB<>(), 8));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StateRootPipelineTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setup() {
+        executor = StateRootPipeline.newExecutor();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        executor.shutdownNow();
+        SystemProperties.resetToDefault();
+    }
+
+    private static byte[] address(final int i) {
+        final byte[] ret = new byte[20];
+        ret[19] = (byte) i;
+        return ret;
+    }
+
+    /**
+     * @return random changes of a few accounts, each list element is a transaction
+     */
+    private static List<List<Consumer<Repository>>> transactions(final Random random, final int count) {
+        final List<List<Consumer<Repository>>> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final List<Consumer<Repository>> tx = new ArrayList<>();
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                final byte[] addr = address(random.nextInt(8));
+                final int op = random.nextInt(9);
+                final int value = random.nextInt(4);
+                if (op < 3) {
+                    tx.add(r -> r.addBalance(addr, BigInteger.valueOf(value + 1)));
+                } else if (op < 7) {
+                    final DataWord key = new DataWord(random.nextInt(6));
+                    tx.add(r -> r.addStorageRow(addr, key, new DataWord(value)));
+                } else if (op < 8) {
+                    tx.add(r -> r.increaseNonce(addr));
+                } else {
+                    tx.add(r -> r.saveCode(addr, new byte[] {(byte) value}));
+                }
+            }
+            // like the suicided accounts which are deleted at the end of a transaction
+            if (random.nextInt(4) == 0) {
+                final byte[] addr = address(random.nextInt(8));
+                tx.add(r -> r.delete(addr));
+                if (random.nextBoolean()) {
+                    // like the fee paid to a suicided miner
+                    tx.add(r -> r.addBalance(addr, BigInteger.ONE));
+                }
+            }
+            ret.add(tx);
+        }
+        return ret;
+    }
+
+    private static RepositoryRoot initialState() {
+        final RepositoryRoot ret = new RepositoryRoot(new HashMapDB<>());
+        for (int i = 0; i < 8; i += 2) {
+            ret.addBalance(address(i), BigInteger.TEN);
+            ret.addStorageRow(address(i), new DataWord(1), new DataWord(i + 1));
+        }
+        ret.commit();
+        return ret;
+    }
+
+    private static void apply(final Repository repo, final List<Consumer<Repository>> tx) {
+        final Repository txTrack = repo.startTracking();
+        tx.forEach(op -> op.accept(txTrack));
+        txTrack.commit();
+    }
+
+    @Test
+    public void sameRootsAsSynchronous() {
+        final Random random = new Random(1);
+        for (int block = 0; block < 20; block++) {
+            final List<List<Consumer<Repository>>> txs = transactions(random, 30);
+
+            final RepositoryRoot expectedRepo = initialState();
+            final List<byte[]> expected = new ArrayList<>();
+            for (final List<Consumer<Repository>> tx : txs) {
+                apply(expectedRepo, tx);
+                expected.add(expectedRepo.getRoot());
+            }
+
+            final RepositoryRoot repo = initialState();
+            final byte[][] actual = new byte[txs.size()][];
+            final StateRootPipeline pipeline = new StateRootPipeline(repo, executor);
+            for (int i = 0; i < txs.size(); i++) {
+                apply(repo, txs.get(i));
+                final int txIndex = i;
+                pipeline.submit(root -> actual[txIndex] = root);
+            }
+            pipeline.await();
+
+            for (int i = 0; i < txs.size(); i++) {
+                assertArrayEquals("block " + block + " tx " + i, expected.get(i), actual[i]);
+            }
+            // the block repository itself is flushed once
+            assertArrayEquals(expectedRepo.getRoot(), repo.getRoot());
+        }
+    }
+
+    @Test
+    public void stopsRecordingAfterAwait() {
+        final RepositoryRoot repo = initialState();
+        final StateRootPipeline pipeline = new StateRootPipeline(repo, executor);
+        final List<byte[]> roots = new ArrayList<>();
+        repo.addBalance(address(1), BigInteger.ONE);
+        pipeline.submit(roots::add);
+        pipeline.await();
+        repo.addBalance(address(1), BigInteger.ONE);
+        pipeline.submit(roots::add);
+        pipeline.await();
+
+        assertEquals(2, roots.size());
+        assertArrayEquals(roots.get(0), roots.get(1));
+    }
+
+    private static List<Block> runBlocks(final StandaloneBlockchain sb, final ECKey sender) {
+        // increments storage slot 0 on each call
+        final byte[] counterCode = Hex.decode("600a80600b6000396000f3" + "60005460010160005500");
+        final List<Block> ret = new ArrayList<>();
+        long nonce = 0;
+        final Transaction counter = sb.createTransaction(sender, nonce++, new byte[0], BigInteger.ZERO, counterCode);
+        sb.submitTransaction(counter);
+        ret.add(sb.createBlock());
+        for (int block = 0; block < 3; block++) {
+            for (int i = 0; i < 10; i++) {
+                sb.submitTransaction(i % 2 == 0 ?
+                        sb.createTransaction(sender, nonce++, counter.getContractAddress(), BigInteger.ZERO, new byte[0]) :
+                        sb.createTransaction(sender, nonce++, address(block * 16 + i), BigInteger.valueOf(i), new byte[0]));
+            }
+            ret.add(sb.createBlock());
+        }
+        return ret;
+    }
+
+    @Test
+    public void blockImport() {
+        final ECKey sender = ECKey.fromPrivate(BigInteger.valueOf(1001));
+        final BigInteger balance = BigInteger.TEN.pow(20);
+
+        final StandaloneBlockchain sequential = new StandaloneBlockchain().withAccountBalance(sender.getAddress(), balance);
+        final List<Block> expected = runBlocks(sequential, sender);
+
+        final StandaloneBlockchain pipelined = new StandaloneBlockchain().withAccountBalance(sender.getAddress(), balance);
+        pipelined.getBlockchain().withStateRootExecutor(executor);
+        final List<Block> actual = runBlocks(pipelined, sender);
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTransactionsList().size(), actual.get(i).getTransactionsList().size());
+            assertArrayEquals(expected.get(i).getStateRoot(), actual.get(i).getStateRoot());
+            // the receipts contain the intermediate state roots
+            assertArrayEquals(expected.get(i).getReceiptsRoot(), actual.get(i).getReceiptsRoot());
+        }
+    }
+}
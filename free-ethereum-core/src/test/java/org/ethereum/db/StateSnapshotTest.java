@@ -0,0 +1,325 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.NoDeleteSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class StateSnapshotTest {
+
+    private static byte[] address(final int i) {
+        final byte[] ret = new byte[20];
+        ret[19] = (byte) i;
+        return ret;
+    }
+
+    /**
+     * Applies a block of random transactions
+     */
+    private static void applyBlock(final Random random, final Repository... repos) {
+        for (int tx = 0; tx < 5; tx++) {
+            final List<Repository> tracks = new ArrayList<>();
+            for (final Repository repo : repos) {
+                tracks.add(repo.startTracking());
+            }
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                final byte[] addr = address(random.nextInt(8));
+                final int op = random.nextInt(4);
+                final int value = random.nextInt(4);
+                final DataWord key = new DataWord(random.nextInt(6));
+                for (final Repository track : tracks) {
+                    if (op == 0) {
+                        track.addBalance(addr, BigInteger.valueOf(value + 1));
+                    } else {
+                        // zero values delete the slots
+                        track.addStorageRow(addr, key, new DataWord(value));
+                    }
+                }
+            }
+            // like the suicided accounts which are deleted at the end of a transaction
+            if (random.nextInt(3) == 0) {
+                final byte[] addr = address(random.nextInt(8));
+                tracks.forEach(track -> track.delete(addr));
+            }
+            tracks.forEach(Repository::commit);
+        }
+        for (final Repository repo : repos) {
+            repo.commit();
+        }
+    }
+
+    private static void assertSameState(final Repository expected, final Repository actual) {
+        for (int i = 0; i < 8; i++) {
+            final AccountState expectedAccount = expected.getAccountState(address(i));
+            final AccountState actualAccount = actual.getAccountState(address(i));
+            if (expectedAccount == null) {
+                assertNull(actualAccount);
+            } else {
+                assertArrayEquals(expectedAccount.getEncoded(), actualAccount.getEncoded());
+            }
+            for (int key = 0; key < 6; key++) {
+                assertEquals(expected.getStorageValue(address(i), new DataWord(key)),
+                        actual.getStorageValue(address(i), new DataWord(key)));
+            }
+        }
+    }
+
+    /**
+     * @return repository which has no trie nodes, so all its values come from the snapshot
+     */
+    private static Repository snapshotOnly(final StateSnapshot snapshot, final byte[] root) {
+        assertTrue(snapshot.contains(root));
+        return new RepositoryRoot(new HashMapDB<>(), root, snapshot);
+    }
+
+    @Test
+    public void sameStateAsTrie() {
+        final StateSnapshot snapshot = new StateSnapshot(new HashMapDB<>(), 4);
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS, null, snapshot);
+        final RepositoryRoot expected = new RepositoryRoot(new NoDeleteSource<>(new HashMapDB<>()));
+
+        final Random random = new Random(1);
+        final List<byte[]> roots = new ArrayList<>();
+        for (int block = 0; block < 30; block++) {
+            applyBlock(random, repo, expected);
+            assertArrayEquals(expected.getRoot(), repo.getRoot());
+            roots.add(repo.getRoot());
+
+            assertSameState(expected, repo);
+            assertSameState(expected, snapshotOnly(snapshot, repo.getRoot()));
+        }
+        // the older states are merged into the database
+        assertEquals(4, snapshot.getDiffLayerCount());
+        assertArrayEquals(roots.get(roots.size() - 5), snapshot.getDiskRoot());
+        assertFalse(snapshot.contains(roots.get(roots.size() - 6)));
+        // and read from the trie
+        assertSameState(repo.getSnapshotTo(roots.get(roots.size() - 6)),
+                new RepositoryRoot(stateDS, roots.get(roots.size() - 6)));
+    }
+
+    @Test
+    public void forksAndRestart() {
+        final HashMapDB<byte[]> db = new HashMapDB<>();
+        final StateSnapshot snapshot = new StateSnapshot(db, 4);
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS, null, snapshot);
+
+        final Random random = new Random(2);
+        applyBlock(random, repo);
+        final byte[] forkPoint = repo.getRoot();
+        applyBlock(random, repo);
+
+        final RepositoryRoot fork = (RepositoryRoot) repo.getSnapshotTo(forkPoint);
+        final RepositoryRoot expectedFork = new RepositoryRoot(stateDS, forkPoint);
+        applyBlock(random, fork, expectedFork);
+        assertSameState(expectedFork, snapshotOnly(snapshot, fork.getRoot()));
+        assertSameState(new RepositoryRoot(stateDS, forkPoint), snapshotOnly(snapshot, forkPoint));
+
+        final StateSnapshot reloaded = new StateSnapshot(db, 4);
+        assertEquals(snapshot.getDiffLayerCount(), reloaded.getDiffLayerCount());
+        assertSameState(expectedFork, snapshotOnly(reloaded, fork.getRoot()));
+        assertSameState(repo, snapshotOnly(reloaded, repo.getRoot()));
+
+        // the main chain state goes on and the fork is dropped once its parent is merged
+        for (int i = 0; i < 5; i++) {
+            applyBlock(random, repo);
+        }
+        assertFalse(snapshot.contains(fork.getRoot()));
+        assertFalse(snapshot.contains(forkPoint));
+        assertSameState(repo, snapshotOnly(new StateSnapshot(db, 4), repo.getRoot()));
+    }
+
+    @Test
+    public void generate() {
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS);
+        final Random random = new Random(3);
+        for (int block = 0; block < 5; block++) {
+            applyBlock(random, repo);
+        }
+
+        final HashMapDB<byte[]> db = new HashMapDB<>();
+        final StateSnapshot snapshot = new StateSnapshot(db, 4);
+        assertFalse(snapshot.contains(repo.getRoot()));
+        snapshot.generate(stateDS, repo.getRoot());
+        assertArrayEquals(repo.getRoot(), snapshot.getDiskRoot());
+        assertSameState(repo, snapshotOnly(snapshot, repo.getRoot()));
+        assertSameState(repo, snapshotOnly(new StateSnapshot(db, 4), repo.getRoot()));
+    }
+
+    @Test
+    public void generateInBackground() throws Exception {
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS);
+        final Random random = new Random(4);
+        for (int block = 0; block < 5; block++) {
+            applyBlock(random, repo);
+        }
+        final byte[] root = repo.getRoot();
+
+        // holds the generation until the blocks below are imported
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Source<byte[], byte[]> blockingDS = new HashMapDB<byte[]>() {
+            @Override
+            public byte[] get(final byte[] key) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return stateDS.get(key);
+            }
+        };
+        final HashMapDB<byte[]> db = new HashMapDB<>();
+        final StateSnapshot snapshot = new StateSnapshot(db, 4);
+        final Future<?> generation = snapshot.generateInBackground(blockingDS, root);
+        assertTrue(snapshot.isGenerating());
+        assertNull(snapshot.getDiskRoot());
+
+        final RepositoryRoot live = new RepositoryRoot(stateDS, root, snapshot);
+        final List<byte[]> roots = new ArrayList<>();
+        for (int block = 0; block < 6; block++) {
+            applyBlock(random, live);
+            roots.add(live.getRoot());
+            // the values come from the trie meanwhile
+            assertSameState(new RepositoryRoot(stateDS, live.getRoot()), live);
+        }
+        assertEquals(6, snapshot.getDiffLayerCount());
+
+        latch.countDown();
+        generation.get();
+        assertFalse(snapshot.isGenerating());
+        // the states committed during the generation are merged down to the configured layers
+        assertEquals(4, snapshot.getDiffLayerCount());
+        assertArrayEquals(roots.get(1), snapshot.getDiskRoot());
+        final Repository expected = new RepositoryRoot(stateDS, live.getRoot());
+        assertSameState(expected, snapshotOnly(snapshot, live.getRoot()));
+        assertSameState(expected, snapshotOnly(new StateSnapshot(db, 4), live.getRoot()));
+    }
+
+    @Test
+    public void generationRestartsAtNewestState() throws Exception {
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS);
+        final Random random = new Random(5);
+        for (int block = 0; block < 5; block++) {
+            applyBlock(random, repo);
+        }
+        final byte[] root = repo.getRoot();
+
+        // fails the first generation like a state pruned from under it
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Source<byte[], byte[]> failingDS = new HashMapDB<byte[]>() {
+            @Override
+            public byte[] get(final byte[] key) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                if (failed.compareAndSet(false, true)) {
+                    throw new RuntimeException("Pruned node");
+                }
+                return stateDS.get(key);
+            }
+        };
+        final StateSnapshot snapshot = new StateSnapshot(new HashMapDB<>(), 4);
+        final Future<?> generation = snapshot.generateInBackground(failingDS, root);
+
+        final RepositoryRoot live = new RepositoryRoot(stateDS, root, snapshot);
+        for (int block = 0; block < 3; block++) {
+            applyBlock(random, live);
+        }
+        latch.countDown();
+        generation.get();
+        assertTrue(failed.get());
+        assertFalse(snapshot.isGenerating());
+        assertArrayEquals(live.getRoot(), snapshot.getDiskRoot());
+        assertEquals(0, snapshot.getDiffLayerCount());
+        assertSameState(new RepositoryRoot(stateDS, live.getRoot()), snapshotOnly(snapshot, live.getRoot()));
+    }
+
+    @Test
+    public void generationLayersAreBounded() throws Exception {
+        final Source<byte[], byte[]> stateDS = new NoDeleteSource<>(new HashMapDB<>());
+        final RepositoryRoot repo = new RepositoryRoot(stateDS);
+        final Random random = new Random(6);
+        for (int block = 0; block < 5; block++) {
+            applyBlock(random, repo);
+        }
+        final byte[] root = repo.getRoot();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Source<byte[], byte[]> blockingDS = new HashMapDB<byte[]>() {
+            @Override
+            public byte[] get(final byte[] key) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return stateDS.get(key);
+            }
+        };
+        final StateSnapshot snapshot = new StateSnapshot(new HashMapDB<>(), 2, 3);
+        final Future<?> generation = snapshot.generateInBackground(blockingDS, root);
+
+        final RepositoryRoot live = new RepositoryRoot(stateDS, root, snapshot);
+        for (int block = 0; block < 3; block++) {
+            applyBlock(random, live);
+        }
+        assertEquals(3, snapshot.getDiffLayerCount());
+        // one more state drops the layers and the generation goes on from the newest state
+        for (int block = 0; block < 2; block++) {
+            applyBlock(random, live);
+            assertEquals(0, snapshot.getDiffLayerCount());
+            assertTrue(snapshot.isGenerating());
+            assertSameState(new RepositoryRoot(stateDS, live.getRoot()), live);
+        }
+        latch.countDown();
+        generation.get();
+        assertFalse(snapshot.isGenerating());
+        assertArrayEquals(live.getRoot(), snapshot.getDiskRoot());
+        assertSameState(new RepositoryRoot(stateDS, live.getRoot()), snapshotOnly(snapshot, live.getRoot()));
+    }
+}
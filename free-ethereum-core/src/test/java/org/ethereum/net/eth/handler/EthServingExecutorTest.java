@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.net.eth.handler;
+
+import org.ethereum.net.eth.message.BlockBodiesMessage;
+import org.ethereum.net.eth.message.EthMessage;
+import org.ethereum.net.eth.message.GetBlockBodiesMessage;
+import org.ethereum.net.rlpx.Node;
+import org.ethereum.net.rlpx.discover.NodeStatistics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class EthServingExecutorTest {
+
+    private EthServingExecutor executor;
+
+    private static NodeStatistics stats() {
+        return new NodeStatistics(new Node(new byte[64], "127.0.0.1", 30303));
+    }
+
+    private static GetBlockBodiesMessage request(final int i) {
+        return new GetBlockBodiesMessage(Collections.singletonList(new byte[] {(byte) i}));
+    }
+
+    private static Supplier<EthMessage> response(final CountDownLatch latch, final int size) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new BlockBodiesMessage(Collections.singletonList(new byte[size]));
+        };
+    }
+
+    private static void waitFor(final Supplier<Boolean> condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.get()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void servesPeerRequestsInOrder() throws InterruptedException {
+        executor = new EthServingExecutor(4, 16, 0, 0, 0);
+        final NodeStatistics stats = stats();
+        final EthServingExecutor.Peer peer = executor.newPeer(stats);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            final int size = i;
+            peer.submit(request(i), response(latch, size), r -> sent.add(((BlockBodiesMessage) r).getBlockBodies().get(0).length));
+        }
+
+        // a single request of the peer is served at a time
+        waitFor(() -> executor.getRunning() == 1);
+        assertEquals(2, executor.getQueueDepth());
+        assertEquals(2, stats.ethServingQueued.get());
+        assertTrue(sent.isEmpty());
+
+        latch.countDown();
+        waitFor(() -> sent.size() == 3);
+        assertEquals(3, executor.getServed());
+        assertEquals(3, stats.ethServingRequests.get());
+        assertEquals(0, stats.ethServingQueued.get());
+        assertEquals(Arrays.asList(0, 1, 2), sent);
+    }
+
+    @Test
+    public void dropsRequestsOverQueueLimit() throws InterruptedException {
+        executor = new EthServingExecutor(4, 1, 0, 0, 0);
+        final NodeStatistics stats = stats();
+        final EthServingExecutor.Peer peer = executor.newPeer(stats);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger sent = new AtomicInteger();
+        peer.submit(request(1), response(latch, 1), r -> sent.incrementAndGet());
+        waitFor(() -> executor.getRunning() == 1);
+        peer.submit(request(2), response(latch, 1), r -> sent.incrementAndGet());
+        peer.submit(request(3), response(latch, 1), r -> sent.incrementAndGet());
+        assertEquals(1, executor.getDropped());
+        assertEquals(1, stats.ethServingDropped.get());
+
+        latch.countDown();
+        waitFor(() -> sent.get() == 2);
+        Thread.sleep(50);
+        assertEquals(2, sent.get());
+    }
+
+    @Test
+    public void coalescesIdenticalRequests() throws InterruptedException {
+        executor = new EthServingExecutor(4, 16, 0, 0, 0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        final Supplier<EthMessage> responder = () -> {
+            reads.incrementAndGet();
+            return response(latch, 10).get();
+        };
+        final List<EthMessage> sent = Collections.synchronizedList(new ArrayList<>());
+        final NodeStatistics second = stats();
+        executor.newPeer(stats()).submit(request(1), responder, sent::add);
+        waitFor(() -> reads.get() == 1);
+        executor.newPeer(second).submit(request(1), responder, sent::add);
+        waitFor(() -> executor.getCoalesced() == 1);
+
+        latch.countDown();
+        waitFor(() -> sent.size() == 2);
+        assertEquals(1, reads.get());
+        assertSame(sent.get(0), sent.get(1));
+        assertEquals(1, second.ethServingCoalesced.get());
+    }
+
+    @Test
+    public void limitsPeerRate() throws InterruptedException {
+        executor = new EthServingExecutor(4, 16, 10_000, 0, 0);
+        final CountDownLatch latch = new CountDownLatch(0);
+        final List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+        final EthServingExecutor.Peer peer = executor.newPeer(stats());
+        for (int i = 0; i < 2; i++) {
+            peer.submit(request(i), response(latch, 3000), r -> sent.add(System.nanoTime()));
+        }
+        // another peer isn't limited by it
+        final List<Long> other = Collections.synchronizedList(new ArrayList<>());
+        executor.newPeer(stats()).submit(request(5), response(latch, 3000), r -> other.add(System.nanoTime()));
+
+        waitFor(() -> sent.size() == 2 && other.size() == 1);
+        // the second response waits for the 3000 bytes of the first one
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(sent.get(1) - sent.get(0)) >= 250);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(other.get(0) - sent.get(0)) < 250);
+    }
+
+    @Test
+    public void limitsTotalRateUntilSyncDone() throws InterruptedException {
+        executor = new EthServingExecutor(4, 16, 0, 0, 10_000);
+        final CountDownLatch latch = new CountDownLatch(0);
+        final List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+        executor.newPeer(stats()).submit(request(1), response(latch, 3000), r -> sent.add(System.nanoTime()));
+        waitFor(() -> sent.size() == 1);
+        // another peer waits for the 3000 bytes of the first one while syncing
+        executor.newPeer(stats()).submit(request(2), response(latch, 3000), r -> sent.add(System.nanoTime()));
+        waitFor(() -> sent.size() == 2);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(sent.get(1) - sent.get(0)) >= 250);
+    }
+}
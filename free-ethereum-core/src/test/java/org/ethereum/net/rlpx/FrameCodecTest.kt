@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.net.rlpx
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.buffer.Unpooled
+import io.netty.channel.embedded.EmbeddedChannel
+import org.ethereum.crypto.ECKey
+import org.ethereum.net.rlpx.discover.NodeStatistics
+import org.ethereum.net.server.Channel
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.util.*
+
+class FrameCodecTest {
+
+    private var iCodec: FrameCodec? = null
+    private var rCodec: FrameCodec? = null
+
+    @Before
+    fun setUp() {
+        val remoteKey = ECKey()
+        val myKey = ECKey()
+        val initiator = EncryptionHandshake(remoteKey.pubKeyPoint)
+        val responder = EncryptionHandshake()
+        val initiatePacket = initiator.encryptAuthMessage(initiator.createAuthInitiate(null, myKey))
+        val responsePacket = responder.handleAuthInitiate(initiatePacket, remoteKey)
+        initiator.handleAuthResponse(myKey, initiatePacket, responsePacket)
+        iCodec = FrameCodec(initiator.secrets)
+        rCodec = FrameCodec(responder.secrets)
+    }
+
+    private fun frames(): List<FrameCodec.Frame> {
+        val random = Random(1)
+        val ret = listOf(0, 1, 15, 16, 17, 100, 3000).mapIndexed { i, size ->
+            val payload = ByteArray(size + 2)
+            random.nextBytes(payload)
+            // a range of the payload array, like the chunks of a large message
+            FrameCodec.Frame((i * 50).toLong(), payload, 1, size)
+        }
+        ret[3].contextId = 7
+        ret[3].totalFrameSize = 1234
+        return ret
+    }
+
+    private fun assertSameFrame(expected: FrameCodec.Frame, actual: FrameCodec.Frame) {
+        assertEquals(expected.type, actual.type)
+        assertEquals(expected.size, actual.size)
+        assertEquals(expected.contextId, actual.contextId)
+        assertEquals(expected.totalFrameSize, actual.totalFrameSize)
+        assertArrayEquals(expected.payloadArray, actual.payloadArray)
+    }
+
+    private fun roundTrip(out: ByteBuf, inp: ByteBuf) {
+        val frames = frames()
+        frames.forEach { iCodec!!.writeFrame(it, out) }
+        // the frames arrive in small pieces, the partial ones are left in the buffer
+        val received = ArrayList<FrameCodec.Frame>()
+        while (out.isReadable) {
+            inp.writeBytes(out, out.readableBytes().coerceAtMost(7))
+            while (true) {
+                val readable = inp.readableBytes()
+                val read = rCodec!!.readFrames(inp) ?: break
+                assertTrue(readable > inp.readableBytes())
+                received.addAll(read)
+            }
+        }
+        assertEquals(0, inp.readableBytes())
+        assertEquals(frames.size, received.size)
+        frames.indices.forEach { assertSameFrame(frames[it], received[it]) }
+        out.release()
+        inp.release()
+    }
+
+    @Test
+    fun heapBuffers() {
+        roundTrip(Unpooled.buffer(), Unpooled.buffer())
+    }
+
+    @Test
+    fun pooledDirectBuffers() {
+        roundTrip(PooledByteBufAllocator.DEFAULT.directBuffer(), PooledByteBufAllocator.DEFAULT.directBuffer())
+    }
+
+    @Test
+    fun handlerEncodesToHeapBuffers() {
+        val channel = Channel()
+        Channel::class.java.getDeclaredField("nodeStatistics").apply { isAccessible = true }
+                .set(channel, NodeStatistics(Node(ByteArray(64), "127.0.0.1", 30303)))
+        val embedded = EmbeddedChannel(FrameCodecHandler(iCodec!!, channel))
+        val frame = frames()[6]
+        assertTrue(embedded.writeOutbound(frame))
+
+        val out = embedded.readOutbound() as ByteBuf
+        assertTrue(out.hasArray())
+        assertSameFrame(frame, rCodec!!.readFrames(out)[0])
+        out.release()
+        embedded.finish()
+    }
+
+    @Test
+    fun readsFramesWrittenToBuffer() {
+        val frames = frames()
+        val out = Unpooled.directBuffer()
+        frames.forEach { iCodec!!.writeFrame(it, out) }
+        val bytes = ByteArray(out.readableBytes())
+        out.readBytes(bytes)
+        out.release()
+
+        val inp = DataInputStream(ByteArrayInputStream(bytes))
+        frames.forEach { assertSameFrame(it, rCodec!!.readFrames(inp)[0]) }
+    }
+
+    @Test
+    fun rejectsTamperedFrame() {
+        val out = Unpooled.buffer()
+        iCodec!!.writeFrame(FrameCodec.Frame(1, ByteArray(40)), out)
+        out.setByte(40, out.getByte(40).toInt() xor 1)
+        try {
+            rCodec!!.readFrames(out)
+            fail()
+        } catch (e: java.io.IOException) {
+            assertEquals("MAC mismatch", e.message)
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.trie
+
+import org.ethereum.crypto.HashUtil.sha3
+import org.ethereum.datasource.inmem.HashMapDB
+import org.ethereum.db.RepositoryRoot
+import org.ethereum.util.ByteUtil.intToBytes
+import org.ethereum.vm.DataWord
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.spongycastle.util.encoders.Hex
+import java.math.BigInteger
+import java.util.*
+import java.util.concurrent.ForkJoinPool
+
+class TrieHasherTest {
+
+    private fun fill(trie: TrieImpl, random: Random, count: Int) {
+        for (i in 0 until count) {
+            val key = sha3(intToBytes(random.nextInt(count * 2)))
+            if (random.nextInt(5) == 0) {
+                trie.delete(key)
+            } else {
+                trie.put(key, ByteArray(1 + random.nextInt(40)) { it.toByte() })
+            }
+        }
+    }
+
+    @Test
+    fun sameRootAsSequential() {
+        val sequentialDb = HashMapDB<ByteArray>()
+        val parallelDb = HashMapDB<ByteArray>()
+        val sequential = TrieImpl(sequentialDb)
+        sequential.setAsync(false)
+        val parallel = TrieImpl(parallelDb)
+        parallel.setHasher(TrieHasher(4))
+
+        val sequentialRandom = Random(1)
+        val parallelRandom = Random(1)
+        for (round in 0..4) {
+            fill(sequential, sequentialRandom, 3000)
+            fill(parallel, parallelRandom, 3000)
+            assertArrayEquals(sequential.rootHash, parallel.rootHash)
+            sequential.flush()
+            parallel.flush()
+        }
+        assertEquals(sequentialDb.keys().map { Hex.toHexString(it) }.toSet(), parallelDb.keys().map { Hex.toHexString(it) }.toSet())
+    }
+
+    private fun storageRoots(parallelism: Int): Pair<ByteArray, RepositoryRoot.HashTime> {
+        val repository = RepositoryRoot(HashMapDB<ByteArray>())
+        repository.setTrieHasher(TrieHasher(parallelism))
+        for (contract in 1..20) {
+            val addr = ByteArray(20)
+            addr[19] = contract.toByte()
+            repository.addBalance(addr, BigInteger.ONE)
+            for (slot in 0 until contract * 10) {
+                repository.addStorageRow(addr, DataWord(slot), DataWord(slot * contract + 1))
+            }
+        }
+        return Pair(repository.root, repository.hashTime)
+    }
+
+    @Test
+    fun storageTriesOfAllContracts() {
+        val (sequentialRoot, _) = storageRoots(1)
+        val (parallelRoot, hashTime) = storageRoots(4)
+        assertArrayEquals(sequentialRoot, parallelRoot)
+        assertEquals(20, hashTime.storageTries)
+    }
+
+    @Test
+    fun foreignPoolWorkersEnterHasherPool() {
+        val hasher = TrieHasher(4)
+        val expected = TrieImpl(HashMapDB())
+        expected.setAsync(false)
+        fill(expected, Random(1), 3000)
+
+        val trie = TrieImpl(HashMapDB())
+        trie.setHasher(hasher)
+        fill(trie, Random(1), 3000)
+        val workers = Collections.synchronizedSet(HashSet<String>())
+        val foreignPool = ForkJoinPool(2)
+        val root = foreignPool.submit<ByteArray> {
+            assertFalse(hasher.inPool())
+            hasher.invoke { workers.add(Thread.currentThread().name) }
+            trie.rootHash
+        }.get()
+        foreignPool.shutdown()
+        assertArrayEquals(expected.rootHash, root)
+        assertTrue(workers.all { it.startsWith("trie-hash-thread-") })
+        assertEquals(1, workers.size)
+    }
+}
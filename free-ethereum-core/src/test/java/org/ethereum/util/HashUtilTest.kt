@@ -27,9 +27,14 @@
 package org.ethereum.util
 
 import org.ethereum.crypto.HashUtil
-import org.junit.Assert.assertEquals
+import org.ethereum.crypto.cryptohash.Keccak256
+import org.junit.Assert.*
 import org.junit.Test
 import org.spongycastle.util.encoders.Hex
+import java.nio.ByteBuffer
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
 
 class HashUtilTest {
 
@@ -107,4 +112,84 @@ class HashUtilTest {
         val result2 = Hex.toHexString(HashUtil.ripemd160("test2".toByteArray()))
         assertEquals(expected2, result2)
     }
+
+
+    // longer than the 136 byte Keccak-256 block
+    private val data = ByteArray(300).apply { Random(1).nextBytes(this) }
+
+    private fun reference(input: ByteArray, start: Int = 0, length: Int = input.size): ByteArray {
+        val digest = Keccak256()
+        digest.update(input, start, length)
+        return digest.digest()
+    }
+
+    @Test
+    fun testSha3_Slices() {
+        assertArrayEquals(reference(data), HashUtil.sha3(data))
+        assertArrayEquals(reference(data, 7, 200), HashUtil.sha3(data, 7, 200))
+        assertArrayEquals(reference(data, 0, 150), HashUtil.sha3(data.copyOf(100), data.copyOfRange(100, 150)))
+
+        val out = ByteArray(40)
+        HashUtil.sha3(data, 7, 200, out, 5)
+        assertArrayEquals(reference(data, 7, 200), out.copyOfRange(5, 37))
+        assertEquals(0, out[4].toInt())
+        assertEquals(0, out[37].toInt())
+    }
+
+    @Test
+    fun testSha3_ByteBuffers() {
+        val heap = ByteBuffer.wrap(data, 10, 250).slice()
+        assertArrayEquals(reference(data, 10, 250), HashUtil.sha3(heap))
+        assertFalse(heap.hasRemaining())
+
+        val direct = ByteBuffer.allocateDirect(data.size)
+        direct.put(data).flip().position(3)
+        val out = ByteArray(32)
+        HashUtil.sha3(direct, out, 0)
+        assertArrayEquals(reference(data, 3, data.size - 3), out)
+
+        assertArrayEquals(reference(data), HashUtil.sha3(ByteBuffer.wrap(data).asReadOnlyBuffer()))
+    }
+
+    @Test
+    fun testSha3_Batch() {
+        val inputs = (0..20).map { data.copyOf(it * 13) }
+        val expected = inputs.map { reference(it) }
+
+        val hashes = HashUtil.sha3Batch(inputs)
+        assertEquals(expected.size, hashes.size)
+        for (i in expected.indices) assertArrayEquals(expected[i], hashes[i])
+
+        val out = ByteArray(1 + 32 * inputs.size)
+        HashUtil.sha3Batch(inputs.toTypedArray(), out, 1)
+        for (i in expected.indices) assertArrayEquals(expected[i], out.copyOfRange(1 + 32 * i, 33 + 32 * i))
+    }
+
+    @Test
+    fun testSha3_StateIsResetAfterFailure() {
+        try {
+            HashUtil.sha3(data, 200, 200)
+            fail()
+        } catch (e: IndexOutOfBoundsException) {
+        }
+        assertArrayEquals(reference(data), HashUtil.sha3(data))
+    }
+
+    @Test
+    fun testSha3_Concurrent() {
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val tasks = (0..7).map { t ->
+                Callable {
+                    for (i in 0..999) {
+                        val length = (i * 31 + t) % data.size
+                        assertArrayEquals(reference(data, 0, length), HashUtil.sha3(data, 0, length))
+                    }
+                }
+            }
+            executor.invokeAll(tasks).forEach { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+    }
 }
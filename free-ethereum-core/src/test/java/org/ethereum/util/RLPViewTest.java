@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.util;
+
+import org.ethereum.crypto.HashUtil;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RLPViewTest {
+
+    private static byte[] randomElement(final Random random, final int depth) {
+        if (depth > 0 && random.nextInt(3) == 0) {
+            final byte[][] children = new byte[random.nextInt(depth == 3 ? 40 : 6)][];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = randomElement(random, depth - 1);
+            }
+            return RLP.encodeList(children);
+        }
+        // the lengths around the 55 bytes boundary of the short items
+        final int[] lengths = {0, 1, 1, 2, 20, 32, 54, 55, 56, 300};
+        final byte[] item = new byte[lengths[random.nextInt(lengths.length)]];
+        random.nextBytes(item);
+        return RLP.encodeElement(item);
+    }
+
+    private static void assertSameElement(final RLPElement expected, final RLPView actual) {
+        assertEquals(expected instanceof RLPList, actual.isList());
+        assertArrayEquals(expected.getRLPData(), actual.getRLPData());
+        if (actual.isList()) {
+            final RLPList list = (RLPList) expected;
+            assertEquals(list.size(), actual.size());
+            final Iterator<RLPView> it = actual.iterator();
+            for (final RLPElement child : list) {
+                assertSameElement(child, it.next());
+            }
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void sameAsDecode2() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            final byte[] encoded = RLP.encodeList(randomElement(random, 3), randomElement(random, 3));
+            final RLPView view = RLPView.decode(encoded);
+            assertSameElement(RLP.decode2(encoded).get(0), view);
+            assertEquals(encoded.length, view.getEncodedLength());
+            assertArrayEquals(HashUtil.INSTANCE.sha3(encoded), view.sha3());
+        }
+    }
+
+    @Test
+    public void viewsShareTheBackingArray() {
+        final byte[] encoded = RLP.encodeList(RLP.encodeInt(1000), RLP.encodeList(RLP.encodeElement(new byte[60])),
+                RLP.encodeBigInteger(BigInteger.TEN.pow(30)), RLP.encodeElement(null));
+        final RLPView view = RLPView.decode(encoded);
+        assertSame(encoded, view.get(1).get(0).getBackingArray());
+        assertEquals(60, view.get(1).get(0).getPayloadLength());
+        assertEquals(1000, view.get(0).asInt());
+        assertEquals(BigInteger.TEN.pow(30), view.get(2).asBigInteger());
+        assertTrue(view.get(3).isEmpty());
+        assertNull(view.get(3).getRLPData());
+        assertEquals(0, view.get(3).asLong());
+        assertEquals(4, view.getChildren().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void truncatedList() {
+        final byte[] encoded = RLP.encodeList(RLP.encodeElement(new byte[100]));
+        for (final RLPView child : RLPView.decode(java.util.Arrays.copyOf(encoded, encoded.length - 1))) {
+            child.getBytes();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void truncatedItem() {
+        final byte[] encoded = RLP.encodeList(RLP.encodeElement(new byte[100]));
+        encoded[2] = (byte) 0xff;
+        RLPView.decode(encoded).get(0);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.ethereum.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RLPWriterTest {
+
+    private static final class Element {
+        final byte[] expected;
+        final RLPWriter writer;
+
+        Element(final byte[] expected, final RLPWriter writer) {
+            this.expected = expected;
+            this.writer = writer;
+        }
+    }
+
+    private static Element randomElement(final Random random, final int depth) {
+        if (depth > 0 && random.nextInt(3) == 0) {
+            final int size = random.nextInt(depth == 3 ? 40 : 6);
+            final byte[][] expected = new byte[size][];
+            final RLPWriter[] writers = new RLPWriter[size];
+            for (int i = 0; i < size; i++) {
+                final Element child = randomElement(random, depth - 1);
+                expected[i] = child.expected;
+                writers[i] = child.writer;
+            }
+            return new Element(RLP.encodeList(expected), RLPWriter.list(writers));
+        }
+        switch (random.nextInt(4)) {
+            case 0: {
+                final long value = random.nextInt(3) == 0 ? random.nextInt(300) : random.nextLong();
+                return new Element(RLP.encodeBigInteger(BigInteger.valueOf(value)), RLPWriter.item(value));
+            }
+            case 1: {
+                final int value = random.nextInt(3) == 0 ? random.nextInt(300) : random.nextInt();
+                return new Element(RLP.encodeInt(value), RLPWriter.itemInt(value));
+            }
+            case 2: {
+                final BigInteger value = new BigInteger(random.nextInt(300), random);
+                return new Element(RLP.encodeBigInteger(value), RLPWriter.item(value));
+            }
+            default: {
+                // the lengths around the 55 bytes boundary of the short items
+                final int[] lengths = {0, 1, 1, 2, 20, 32, 54, 55, 56, 300};
+                final byte[] item = new byte[lengths[random.nextInt(lengths.length)]];
+                random.nextBytes(item);
+                final byte[] expected = RLP.encodeElement(item);
+                return new Element(expected, random.nextBoolean() ? RLPWriter.item(item) : RLPWriter.encoded(expected));
+            }
+        }
+    }
+
+    @Test
+    public void sameAsEncodeList() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            final Element first = randomElement(random, 3);
+            final Element second = randomElement(random, 3);
+            final byte[] expected = RLP.encodeList(first.expected, second.expected);
+            final RLPWriter writer = RLPWriter.list(first.writer, second.writer);
+            assertEquals(expected.length, writer.getEncodedLength());
+            assertArrayEquals(expected, writer.encode());
+        }
+    }
+
+    @Test
+    public void items() {
+        assertArrayEquals(RLP.encodeElement(null), RLPWriter.item((byte[]) null).encode());
+        assertArrayEquals(RLP.encodeElement(new byte[] {0}), RLPWriter.item(new byte[] {0}).encode());
+        assertArrayEquals(RLP.encodeElement(new byte[] {(byte) 0x80}), RLPWriter.item(new byte[] {(byte) 0x80}).encode());
+        assertArrayEquals(RLP.encodeList(), RLPWriter.list().encode());
+        for (final long value : new long[] {0, 1, 0x7f, 0x80, 0xff, 0x100, Long.MAX_VALUE, -1, Long.MIN_VALUE}) {
+            assertArrayEquals(RLP.encodeBigInteger(BigInteger.valueOf(value)), RLPWriter.item(value).encode());
+            assertArrayEquals(RLP.encodeBigInteger(BigInteger.valueOf(value)),
+                    RLPWriter.item(BigInteger.valueOf(value)).encode());
+        }
+        for (final int value : new int[] {0, 1, 0x7f, 0x80, 0xffff, 0x10000, Integer.MAX_VALUE, -1}) {
+            assertArrayEquals(RLP.encodeInt(value), RLPWriter.itemInt(value).encode());
+        }
+    }
+
+    @Test
+    public void encodedView() {
+        final byte[] encoded = RLP.encodeList(RLP.encodeElement(new byte[60]), RLP.encodeInt(1000));
+        final RLPView view = RLPView.decode(encoded).get(0);
+        assertArrayEquals(view.getEncoded(), RLPWriter.encoded(view).encode());
+    }
+
+    @Test
+    public void writesAtOffset() {
+        final RLPWriter writer = RLPWriter.list(RLPWriter.item(new byte[100]), RLPWriter.item(7));
+        final byte[] expected = writer.encode();
+        final byte[] out = new byte[expected.length + 3];
+        assertEquals(out.length - 1, writer.encode(out, 2));
+        assertArrayEquals(expected, Arrays.copyOfRange(out, 2, out.length - 1));
+        try {
+            writer.encode(out, 4);
+            fail();
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void writesToByteBuf() {
+        final RLPWriter writer = RLPWriter.list(RLPWriter.item(new byte[100]), RLPWriter.item(7));
+        final byte[] expected = writer.encode();
+
+        for (final ByteBuf buf : new ByteBuf[] {Unpooled.buffer(1), Unpooled.directBuffer(1)}) {
+            buf.writeByte(42);
+            writer.encode(buf);
+            assertEquals(42, buf.readByte());
+            final byte[] actual = new byte[buf.readableBytes()];
+            buf.readBytes(actual);
+            assertArrayEquals(expected, actual);
+            buf.release();
+        }
+
+        final ByteBuf pooled = writer.encode(PooledByteBufAllocator.DEFAULT);
+        try {
+            final byte[] actual = new byte[pooled.readableBytes()];
+            pooled.readBytes(actual);
+            assertArrayEquals(expected, actual);
+        } finally {
+            pooled.release();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -438,4 +439,98 @@ public class DataWordTest {
         assertEquals(32, wr.getData().length);
         assertTrue(wr.isZero());
     }
+
+    @Test
+    public void testArithmeticAgainstBigInteger() {
+        final BigInteger _2_256 = BigInteger.valueOf(2).pow(256);
+        final Random rnd = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            final BigInteger a = randomWord(rnd);
+            final BigInteger b = randomWord(rnd);
+            final BigInteger m = randomWord(rnd);
+            final BigInteger sa = a.testBit(255) ? a.subtract(_2_256) : a;
+            final BigInteger sb = b.testBit(255) ? b.subtract(_2_256) : b;
+
+            assertWord(a.add(b).mod(_2_256), op(a, b, "add"));
+            assertWord(a.subtract(b).mod(_2_256), op(a, b, "sub"));
+            assertWord(a.multiply(b).mod(_2_256), op(a, b, "mul"));
+            assertWord(b.signum() == 0 ? BigInteger.ZERO : a.divide(b), op(a, b, "div"));
+            assertWord(b.signum() == 0 ? BigInteger.ZERO : a.mod(b), op(a, b, "mod"));
+            assertWord(b.signum() == 0 ? BigInteger.ZERO : sa.divide(sb).mod(_2_256), op(a, b, "sdiv"));
+            assertWord(b.signum() == 0 ? BigInteger.ZERO :
+                    (sa.signum() < 0 ? sa.abs().mod(sb.abs()).negate() : sa.abs().mod(sb.abs())).mod(_2_256), op(a, b, "smod"));
+            assertWord(a.modPow(b.mod(BigInteger.valueOf(1024)), _2_256),
+                    op(a, b.mod(BigInteger.valueOf(1024)), "exp"));
+
+            final DataWord addmod = word(a);
+            addmod.addmod(word(b), word(m));
+            assertWord(m.signum() == 0 ? BigInteger.ZERO : a.add(b).mod(m), addmod);
+
+            final DataWord mulmod = word(a);
+            mulmod.mulmod(word(b), word(m));
+            assertWord(m.signum() == 0 ? BigInteger.ZERO : a.multiply(b).mod(m), mulmod);
+
+            assertEquals(Integer.signum(a.compareTo(b)), word(a).compareTo(word(b)));
+            assertEquals(Integer.signum(sa.compareTo(sb)), word(a).sCompareTo(word(b)));
+        }
+    }
+
+    @Test
+    public void testSignExtendAgainstBigInteger() {
+        final Random rnd = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            final BigInteger a = randomWord(rnd);
+            final byte k = (byte) rnd.nextInt(32);
+            final DataWord x = word(a);
+            x.signExtend(k);
+
+            final byte[] expected = word(a).getData().clone();
+            final byte mask = a.testBit((k * 8) + 7) ? (byte) 0xff : 0;
+            for (int j = 31; j > k; j--) {
+                expected[31 - j] = mask;
+            }
+            assertEquals(Hex.toHexString(expected), x.toString());
+        }
+    }
+
+    private static BigInteger randomWord(final Random rnd) {
+        // mix of short, long, power-of-two and full-width values to hit every division path
+        switch (rnd.nextInt(6)) {
+            case 0: return BigInteger.valueOf(rnd.nextInt(1000));
+            case 1: return new BigInteger(64, rnd);
+            case 2: return BigInteger.ONE.shiftLeft(rnd.nextInt(256));
+            case 3: return new BigInteger(1 + rnd.nextInt(255), rnd);
+            case 4: return BigInteger.ONE.shiftLeft(256).subtract(BigInteger.valueOf(1 + rnd.nextInt(1000)));
+            default: return new BigInteger(256, rnd);
+        }
+    }
+
+    private static DataWord word(final BigInteger value) {
+        final byte[] bytes = new byte[32];
+        final byte[] raw = value.toByteArray();
+        final int len = Math.min(raw.length, 32);
+        System.arraycopy(raw, raw.length - len, bytes, 32 - len, len);
+        return new DataWord(bytes);
+    }
+
+    private static DataWord op(final BigInteger a, final BigInteger b, final String op) {
+        final DataWord x = word(a);
+        final DataWord y = word(b);
+        switch (op) {
+            case "add": x.add(y); break;
+            case "sub": x.sub(y); break;
+            case "mul": x.mul(y); break;
+            case "div": x.div(y); break;
+            case "mod": x.mod(y); break;
+            case "sdiv": x.sDiv(y); break;
+            case "smod": x.sMod(y); break;
+            case "exp": x.exp(y); break;
+        }
+        return x;
+    }
+
+    private static void assertWord(final BigInteger expected, final DataWord actual) {
+        assertEquals(Hex.toHexString(word(expected).getData()), actual.toString());
+    }
 }
@@ -523,6 +523,25 @@ class MemoryTest {
         assertTrue(zero == 10)
     }
 
+    @Test
+    fun memoryWordReadWrite() {
+
+        val memoryBuffer = Memory()
+        val word = DataWord("0102030405060708091011121314151617181920212223242526272829303132")
+
+        memoryBuffer.writeWord(CHUNK_SIZE - 10, word)
+        memoryBuffer.writeByte(3000, 7.toByte())
+
+        assertEquals(word, memoryBuffer.readWord(CHUNK_SIZE - 10))
+        assertEquals(3, memoryBuffer.chunks.size)
+        assertEquals(3 * CHUNK_SIZE, memoryBuffer.internalSize())
+        assertEquals(3008, memoryBuffer.size())
+        assertEquals(0x01, memoryBuffer.chunks[0][CHUNK_SIZE - 10].toInt())
+        assertEquals(0x32, memoryBuffer.chunks[1][21].toInt())
+        assertEquals(7, memoryBuffer.readByte(3000).toInt())
+        assertArrayEquals(word.data, memoryBuffer.read(CHUNK_SIZE - 10, 32))
+    }
+
     companion object {
 
         private val WORD_SIZE = 32
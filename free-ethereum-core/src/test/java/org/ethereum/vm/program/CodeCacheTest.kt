@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.vm.program
+
+import org.ethereum.crypto.HashUtil
+import org.ethereum.datasource.inmem.HashMapDB
+import org.ethereum.db.RepositoryRoot
+import org.junit.Assert.*
+import org.junit.Test
+import org.spongycastle.util.encoders.Hex
+
+class CodeCacheTest {
+
+    private val code = Hex.decode("60016002016000f3")
+
+    @Test
+    fun codeHitsAndMisses() {
+        val repository = RepositoryRoot(HashMapDB())
+        val address = Hex.decode("cd2a3d9f938e13cd947ec05abc7fe734df8dd826")
+        val empty = Hex.decode("0000000000000000000000000000000000000001")
+        repository.createAccount(address)
+        repository.saveCode(address, code)
+
+        val cache = CodeCache(1024 * 1024)
+        assertArrayEquals(code, cache.getCode(repository, address))
+        assertArrayEquals(code, cache.getCode(repository, address))
+        assertEquals(0, cache.getCode(repository, empty).size)
+
+        assertEquals(1, cache.codeMisses)
+        assertEquals(1, cache.codeHits)
+        assertEquals(1, cache.entryCount)
+
+        val codeHash = HashUtil.sha3(code)
+        assertNull(cache.getPrecompile(codeHash))
+        val precompile = ProgramPrecompile.compile(code)
+        cache.putPrecompile(codeHash, code, precompile)
+        assertSame(precompile, cache.getPrecompile(codeHash))
+        assertEquals(1, cache.precompileMisses)
+        assertEquals(1, cache.precompileHits)
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsed() {
+        val first = ProgramPrecompile.compile(code)
+        val entrySize = code.size + 16 + 128 + first.estimateSize()
+        val cache = CodeCache(entrySize * 2)
+
+        val hashes = (1..3).map { HashUtil.sha3(byteArrayOf(it.toByte())) }
+        cache.putPrecompile(hashes[0], code, first)
+        cache.putPrecompile(hashes[1], code, ProgramPrecompile.compile(code))
+        // touch the first entry so that the second one is the eldest
+        assertNotNull(cache.getPrecompile(hashes[0]))
+        cache.putPrecompile(hashes[2], code, ProgramPrecompile.compile(code))
+
+        assertEquals(2, cache.entryCount)
+        assertEquals(1, cache.evictions)
+        assertTrue(cache.size <= entrySize * 2)
+        assertSame(first, cache.getPrecompile(hashes[0]))
+        assertNull(cache.getPrecompile(hashes[1]))
+        assertNotNull(cache.getPrecompile(hashes[2]))
+    }
+}
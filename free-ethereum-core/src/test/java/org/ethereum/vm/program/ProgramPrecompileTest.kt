@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright 2017 Alexander Orlov <alexander.orlov@loxal.net>. All rights reserved.
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.ethereum.vm.program
+
+import org.ethereum.vm.DataWord
+import org.ethereum.vm.OpCode
+import org.junit.Assert.*
+import org.junit.Test
+import org.spongycastle.util.encoders.Hex
+
+class ProgramPrecompileTest {
+
+    @Test
+    fun basicBlocks() {
+        // PUSH1 4 JUMP STOP JUMPDEST PUSH1 1 PUSH1 2 ADD STOP
+        val pp = ProgramPrecompile.compile(Hex.decode("600456005b600160020100"))
+
+        assertTrue(pp.hasJumpDest(4))
+        assertFalse(pp.hasJumpDest(1))
+
+        assertEquals(0, pp.blockAt(0).toLong())
+        assertEquals(3 + 8, pp.getBlockGas(0))
+        assertEquals(0, pp.getBlockStackRequired(0).toLong())
+        assertEquals(1, pp.getBlockStackGrowth(0).toLong())
+
+        assertEquals(1, pp.blockAt(3).toLong())
+        assertEquals(0, pp.getBlockGas(1))
+
+        assertEquals(2, pp.blockAt(4).toLong())
+        assertEquals(1 + 3 + 3 + 3, pp.getBlockGas(2))
+        assertEquals(2, pp.getBlockStackGrowth(2).toLong())
+
+        assertEquals(-1, pp.blockAt(5).toLong())
+        assertEquals(OpCode.ADD, pp.getOp(9))
+        assertEquals(DataWord(2), pp.getPushWord(7))
+    }
+
+    @Test
+    fun stackRequirementAndInvalidOpcode() {
+        // POP POP PUSH1 1 INVALID PUSH2 0x01 (truncated)
+        val pp = ProgramPrecompile.compile(Hex.decode("50506001fe6101"))
+
+        assertEquals(2, pp.getBlockStackRequired(0).toLong())
+        assertEquals(0, pp.getBlockStackGrowth(0).toLong())
+        assertNull(pp.getOp(4))
+        assertEquals(1, pp.blockAt(5).toLong())
+        assertEquals(DataWord(0x0100), pp.getPushWord(5))
+    }
+
+    @Test
+    fun serialization() {
+        val code = Hex.decode("600456005b600160020100")
+        val pp = ProgramPrecompile.compile(code)
+
+        val pp1 = ProgramPrecompile.deserialize(pp.serialize())!!
+        assertFalse(pp1.isDecoded)
+        pp1.decode(code)
+
+        for (pc in code.indices) {
+            assertEquals(pp.blockAt(pc).toLong(), pp1.blockAt(pc).toLong())
+            assertEquals(pp.hasJumpDest(pc), pp1.hasJumpDest(pc))
+        }
+        assertEquals(pp.getBlockGas(2), pp1.getBlockGas(2))
+        assertEquals(pp.getBlockStackGrowth(2).toLong(), pp1.getBlockStackGrowth(2).toLong())
+    }
+}